@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api;
+
+/**
+ * This exception is thrown when a request is rejected without being sent because the bulkhead of its traffic class
+ * has no free slot and its queue is full.
+ * 
+ * @author Rahul Khanna
+ */
+public class BulkheadFullException extends DoiException {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @see {@link Exception#Exception(String)}
+	 */
+	public BulkheadFullException(String message) {
+		super(message);
+	}
+}
@@ -21,24 +21,97 @@
 
 package au.edu.anu.doi.api;
 
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import javax.ws.rs.client.Client;
-import javax.ws.rs.client.Invocation.Builder;
-import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import javax.xml.bind.JAXBException;
 
+import org.apache.commons.io.IOUtils;
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import au.edu.anu.doi.api.DoiServiceEventListener.CircuitBreakerStateEvent;
+import au.edu.anu.doi.api.DoiServiceEventListener.DoiServiceEvent;
+import au.edu.anu.doi.api.DoiServiceEventListener.DoiServiceEventType;
+import au.edu.anu.doi.api.bulk.BulkExecutor;
+import au.edu.anu.doi.api.bulk.BulkOptions;
+import au.edu.anu.doi.api.bulk.BulkResultHandler;
+import au.edu.anu.doi.api.bulk.BulkSummary;
+import au.edu.anu.doi.api.bulk.MintRequest;
+import au.edu.anu.doi.api.concurrent.AdaptiveConcurrencyLimiter;
+import au.edu.anu.doi.api.concurrent.AdaptiveConcurrencyLimiter.Permit;
+import au.edu.anu.doi.api.concurrent.Bulkhead;
+import au.edu.anu.doi.api.concurrent.CircuitBreaker;
+import au.edu.anu.doi.api.concurrent.DelayScheduler;
+import au.edu.anu.doi.api.concurrent.DoiExecutors;
+import au.edu.anu.doi.api.concurrent.ExecutionMode;
+import au.edu.anu.doi.api.concurrent.Futures;
+import au.edu.anu.doi.api.concurrent.LatencyTracker;
+import au.edu.anu.doi.api.concurrent.PriorityScheduler;
+import au.edu.anu.doi.api.concurrent.RateLimiter;
+import au.edu.anu.doi.api.concurrent.RetryPolicy;
 import au.edu.anu.doi.api.config.DoiConfig;
+import au.edu.anu.doi.api.http.CompressingTransport;
+import au.edu.anu.doi.api.http.CompressionStats;
+import au.edu.anu.doi.api.http.ContentCoding;
 import au.edu.anu.doi.api.http.DoiHttpRequest;
 import au.edu.anu.doi.api.http.DoiHttpRequest.UpdateDoiBuilder;
+import au.edu.anu.doi.api.http.DoiHttpResponse;
+import au.edu.anu.doi.api.http.DoiTransport;
+import au.edu.anu.doi.api.http.DoiTransportException;
+import au.edu.anu.doi.api.http.DoiTransports;
+import au.edu.anu.doi.api.http.JerseyTransport;
+import au.edu.anu.doi.api.http.ResourceDocSource;
+import au.edu.anu.doi.api.http.ResponseBody;
+import au.edu.anu.doi.api.ledger.IdempotencyLedger;
+import au.edu.anu.doi.api.ledger.LedgerEntry;
+import au.edu.anu.doi.api.ledger.MintKey;
+import au.edu.anu.doi.api.ledger.PendingMintResolver;
+import au.edu.anu.doi.api.reactive.MetadataPublisher;
+import au.edu.anu.doi.api.reactive.MetadataResult;
 import au.edu.anu.doi.api.response.DoiResponse;
 import au.edu.anu.doi.api.response.DoiResponseUnmarshaller;
 
@@ -46,10 +119,17 @@ import au.edu.anu.doi.api.response.DoiResponseUnmarshaller;
  * @author Rahul Khanna
  *
  */
-public class DoiService {
+public class DoiService implements AutoCloseable {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(DoiService.class);
 
+	private static final int HEDGING_LATENCY_SAMPLES = 1000;
+	private static final int HEDGING_MIN_LATENCY_SAMPLES = 20;
+	// buffer used to copy a response body to a stream or file without decoding it
+	private static final int COPY_BUFFER_SIZE = 8192;
+	// responses are under a kilobyte, a longer body is truncated, and reported as invalid
+	private static final int MAX_RESPONSE_BODY_BYTES = 64 * 1024;
+
 	public enum ResponseFormat {
 		XML, JSON, STRING;
 
@@ -59,72 +139,747 @@ public class DoiService {
 		}
 	}
 
-	private Client client;
-	private DoiConfig doiConfig;
-	private DoiResponseUnmarshaller doiRespUnmarshaller;
+	// all state is either immutable or thread-safe, and assigned once in a constructor, so that a single instance
+	// can be shared by any number of threads
+	private final DoiTransport transport;
+	private final DoiConfig doiConfig;
+	private final Executor responseExecutor;
+	private final ExecutorService virtualThreadExecutor;
+	private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+	private final RateLimiter rateLimiter;
+	private final RetryPolicy retryPolicy;
+	private final CircuitBreaker circuitBreaker;
+	private final Map<TrafficClass, Bulkhead> bulkheads;
+	private final PriorityScheduler priorityScheduler;
+	private final Map<DoiServiceEventType, LatencyTracker> latencyTrackers;
+	private final IdempotencyLedger mintLedger;
+	private final Executor ledgerExecutor;
+	private final AtomicReference<PendingMintResolver> pendingMintResolver;
+	private final Set<MintKey> inFlightMints;
+	private final DoiServiceMetrics metrics;
+
+	private final ConcurrentMap<String, CompletableFuture<String>> inFlightMetadataRequests;
+	private final DoiResponseUnmarshaller doiRespUnmarshaller;
+
+	private final CopyOnWriteArrayList<DoiServiceEventListener> doiSvcEvtListeners;
 
-	private List<DoiServiceEventListener> doiSvcEvtListeners = new ArrayList<>();
+	// -1 to use the request timeout in the configuration
+	private final long timeoutNanos;
+	private final RequestPriority priority;
 
 	public DoiService(Client client, DoiConfig doiConfig) {
-		Objects.requireNonNull(client);
+		this(client, doiConfig, null);
+	}
+
+	/**
+	 * Creates a DoiService that submits requests using a JAX-RS client.
+	 * 
+	 * @param client
+	 *            JAX-RS client used to submit requests. The client isn't closed by the DoiService.
+	 * @param doiConfig
+	 *            DOI service configuration
+	 * @param responseExecutor
+	 *            Executor on which responses of asynchronous requests are processed. See
+	 *            {@link #DoiService(DoiTransport, DoiConfig, Executor)}
+	 */
+	public DoiService(Client client, DoiConfig doiConfig, Executor responseExecutor) {
+		this(new JerseyTransport(client), doiConfig, responseExecutor);
+	}
+
+	public DoiService(DoiTransport transport, DoiConfig doiConfig) {
+		this(transport, doiConfig, null);
+	}
+
+	/**
+	 * Creates a DoiService whose asynchronous operations process responses on the specified executor.
+	 * 
+	 * @param transport
+	 *            Transport used to submit requests, for example one created by
+	 *            {@link DoiTransports#newTransport(DoiConfig)}. The transport isn't closed by the DoiService.
+	 * @param doiConfig
+	 *            DOI service configuration
+	 * @param responseExecutor
+	 *            Executor on which responses of asynchronous requests are processed and unmarshalled, instead of
+	 *            the transport's I/O thread. If null, the common ForkJoinPool is used in
+	 *            {@link ExecutionMode#PLATFORM} mode and each request's own virtual thread in
+	 *            {@link ExecutionMode#VIRTUAL} mode.
+	 */
+	public DoiService(DoiTransport transport, DoiConfig doiConfig, Executor responseExecutor) {
+		Objects.requireNonNull(transport);
 		Objects.requireNonNull(doiConfig);
 
-		this.client = client;
+		ContentCoding requestCoding = doiConfig.getRequestContentCoding() != null
+				? doiConfig.getRequestContentCoding() : ContentCoding.IDENTITY;
+		CompressionStats compressionStats = requestCoding != ContentCoding.IDENTITY
+				|| doiConfig.isResponseCompressionEnabled() ? new CompressionStats() : null;
+		this.transport = compressionStats != null ? new CompressingTransport(transport, requestCoding,
+				doiConfig.isResponseCompressionEnabled(), compressionStats) : transport;
 		this.doiConfig = doiConfig;
 
+		ExecutionMode executionMode = DoiExecutors.effectiveMode(doiConfig.getExecutionMode());
+		this.virtualThreadExecutor = executionMode == ExecutionMode.VIRTUAL
+				? DoiExecutors.newVirtualThreadPerTaskExecutor() : null;
+		this.concurrencyLimiter = doiConfig.isAdaptiveConcurrencyEnabled()
+				? new AdaptiveConcurrencyLimiter(doiConfig.getInitialConcurrencyLimit(),
+						doiConfig.getMinConcurrencyLimit(), doiConfig.getMaxConcurrencyLimit())
+				: null;
+		this.rateLimiter = doiConfig.getRateLimit() > 0.0
+				? new RateLimiter(doiConfig.getRateLimit(), Math.max(1, doiConfig.getRateLimitBurst())) : null;
+		if (doiConfig.isHedgingEnabled()) {
+			// mint and update are never hedged
+			Map<DoiServiceEventType, LatencyTracker> trackers = new EnumMap<>(DoiServiceEventType.class);
+			trackers.put(DoiServiceEventType.SERVICE_STATUS,
+					new LatencyTracker(HEDGING_LATENCY_SAMPLES, HEDGING_MIN_LATENCY_SAMPLES));
+			trackers.put(DoiServiceEventType.GET_METADATA,
+					new LatencyTracker(HEDGING_LATENCY_SAMPLES, HEDGING_MIN_LATENCY_SAMPLES));
+			this.latencyTrackers = Collections.unmodifiableMap(trackers);
+		} else {
+			this.latencyTrackers = null;
+		}
+		if (doiConfig.isBulkheadEnabled()) {
+			Map<TrafficClass, Bulkhead> pools = new EnumMap<>(TrafficClass.class);
+			for (TrafficClass trafficClass : TrafficClass.values()) {
+				pools.put(trafficClass, new Bulkhead(trafficClass.toString(),
+						Math.max(1, doiConfig.getBulkheadMaxConcurrent(trafficClass)),
+						Math.max(0, doiConfig.getBulkheadMaxQueued(trafficClass)),
+						Math.max(1, doiConfig.getSchedulerInteractiveWeight())));
+			}
+			this.bulkheads = Collections.unmodifiableMap(pools);
+		} else {
+			this.bulkheads = null;
+		}
+		this.priorityScheduler = doiConfig.isPrioritySchedulingEnabled()
+				? new PriorityScheduler(Math.max(1, doiConfig.getSchedulerMaxConcurrent()),
+						Math.max(1, doiConfig.getSchedulerInteractiveWeight()))
+				: null;
+		this.retryPolicy = doiConfig.getRetryMaxAttempts() > 1
+				? new RetryPolicy(doiConfig.getRetryMaxAttempts(), doiConfig.getRetryBaseDelayMillis(),
+						Math.max(doiConfig.getRetryBaseDelayMillis(), doiConfig.getRetryMaxDelayMillis()),
+						TimeUnit.MILLISECONDS)
+				: null;
+		this.circuitBreaker = doiConfig.isCircuitBreakerEnabled()
+				? new CircuitBreaker(doiConfig.getCircuitBreakerWindowSize(), doiConfig.getCircuitBreakerMinCalls(),
+						doiConfig.getCircuitBreakerFailureRateThreshold(),
+						doiConfig.getCircuitBreakerOpenDurationMillis(), TimeUnit.MILLISECONDS,
+						this::probeServiceStatus,
+						(previousState, state) -> publishEvent(new CircuitBreakerStateEvent(previousState, state)))
+				: null;
+		this.metrics = new DoiServiceMetrics(concurrencyLimiter, circuitBreaker, bulkheads, priorityScheduler,
+				compressionStats);
+
+		if (responseExecutor != null) {
+			this.responseExecutor = responseExecutor;
+		} else if (virtualThreadExecutor != null) {
+			// continue on the virtual thread that received the response
+			this.responseExecutor = Runnable::run;
+		} else {
+			this.responseExecutor = ForkJoinPool.commonPool();
+		}
+
+		if (doiConfig.getMintLedgerFile() != null) {
+			try {
+				this.mintLedger = new IdempotencyLedger(Paths.get(doiConfig.getMintLedgerFile()));
+			} catch (IOException e) {
+				throw new UncheckedIOException("Unable to open mint ledger " + doiConfig.getMintLedgerFile(), e);
+			}
+			// ledger writes and pending mint resolution block
+			this.ledgerExecutor = virtualThreadExecutor != null ? virtualThreadExecutor : this.responseExecutor;
+		} else {
+			this.mintLedger = null;
+			this.ledgerExecutor = null;
+		}
+		this.pendingMintResolver = new AtomicReference<>();
+		this.inFlightMints = ConcurrentHashMap.newKeySet();
+		this.inFlightMetadataRequests = new ConcurrentHashMap<>();
+
 		this.doiRespUnmarshaller = new DoiResponseUnmarshaller();
+		this.doiSvcEvtListeners = new CopyOnWriteArrayList<>();
+		this.timeoutNanos = -1L;
+		this.priority = RequestPriority.INTERACTIVE;
+	}
+
+	/**
+	 * Creates a view of a DoiService with a different deadline and priority. The view shares the transport, limits,
+	 * metrics and listeners of the original.
+	 */
+	private DoiService(DoiService doiService, long timeoutNanos, RequestPriority priority) {
+		this.transport = doiService.transport;
+		this.doiConfig = doiService.doiConfig;
+		this.responseExecutor = doiService.responseExecutor;
+		this.virtualThreadExecutor = doiService.virtualThreadExecutor;
+		this.concurrencyLimiter = doiService.concurrencyLimiter;
+		this.rateLimiter = doiService.rateLimiter;
+		this.retryPolicy = doiService.retryPolicy;
+		this.circuitBreaker = doiService.circuitBreaker;
+		this.bulkheads = doiService.bulkheads;
+		this.priorityScheduler = doiService.priorityScheduler;
+		this.latencyTrackers = doiService.latencyTrackers;
+		this.mintLedger = doiService.mintLedger;
+		this.ledgerExecutor = doiService.ledgerExecutor;
+		this.pendingMintResolver = doiService.pendingMintResolver;
+		this.inFlightMints = doiService.inFlightMints;
+		this.metrics = doiService.metrics;
+		this.inFlightMetadataRequests = doiService.inFlightMetadataRequests;
+		this.doiRespUnmarshaller = doiService.doiRespUnmarshaller;
+		this.doiSvcEvtListeners = doiService.doiSvcEvtListeners;
+		this.timeoutNanos = timeoutNanos;
+		this.priority = priority;
+	}
+
+	/**
+	 * Creates a view of this service whose calls fail with a {@link DeadlineExceededException} if they don't complete
+	 * within the specified timeout, measured from when each call is made. The deadline covers building the request,
+	 * rate limiting, queueing, retries, network time and processing the response, and overrides the request timeout
+	 * in the configuration. The view shares the transport, limits, metrics and listeners of this service.
+	 * 
+	 * @param timeout
+	 *            Maximum duration of each call. 0 for no deadline
+	 * @param unit
+	 *            Unit of timeout
+	 * @return DoiService view with the deadline
+	 */
+	public DoiService withTimeout(long timeout, TimeUnit unit) {
+		if (timeout < 0) {
+			throw new IllegalArgumentException("timeout must not be negative");
+		}
+		return new DoiService(this, unit.toNanos(timeout), priority);
+	}
+
+	/**
+	 * Creates a view of this service whose requests are submitted with the specified priority. If priority scheduling
+	 * is enabled in the configuration, requests of interactive views are dispatched ahead of queued requests of bulk
+	 * views. Requests are interactive unless specified otherwise, except for those of {@link #mintAll} and
+	 * {@link #getMetadata(Publisher, int)}, which are bulk. The view shares the transport, limits, metrics and listeners
+	 * of this service.
+	 * 
+	 * @param priority
+	 *            Priority of requests
+	 * @return DoiService view with the priority
+	 */
+	public DoiService withPriority(RequestPriority priority) {
+		Objects.requireNonNull(priority);
+		return new DoiService(this, timeoutNanos, priority);
 	}
 
 	public DoiResponse getServiceStatus() throws DoiException {
+		if (getTimeoutNanos() > 0) {
+			return await(getServiceStatusAsync());
+		}
 		try {
 			DoiHttpRequest httpReq = new DoiHttpRequest.ServiceStatusBuilder(doiConfig).build();
-			Response respFromAnds = submitRequest(httpReq);
+			DoiHttpResponse respFromAnds = submitWithRetry(httpReq, true,
+					req -> submitReadRequest(DoiServiceEventType.SERVICE_STATUS, req));
 			return processResponse(respFromAnds, "MT090");
+		} catch (CircuitBreakerOpenException | BulkheadFullException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new DoiException(e);
 		}
 	}
 
+	/**
+	 * Retrieves the metadata of a DOI. If a request for the same DOI is already in flight, its result is shared
+	 * instead of submitting another request.
+	 * 
+	 * @param doi
+	 *            DOI whose metadata is to be retrieved
+	 * @return Metadata document
+	 * @throws DoiException
+	 *             if the metadata couldn't be retrieved
+	 */
 	public String getMetadata(String doi) throws DoiException {
+		if (getTimeoutNanos() > 0) {
+			return await(getMetadataAsync(doi));
+		}
+		if (doi == null) {
+			return fetchMetadata(doi);
+		}
+		CompletableFuture<String> metadataFuture = new CompletableFuture<>();
+		CompletableFuture<String> inFlightFuture = inFlightMetadataRequests.putIfAbsent(doi, metadataFuture);
+		if (inFlightFuture != null) {
+			metrics.incrementCoalescedRequests();
+			try {
+				return inFlightFuture.join();
+			} catch (CompletionException e) {
+				throw Futures.toDoiException(e);
+			}
+		}
+
 		try {
-			DoiHttpRequest httpReq = new DoiHttpRequest.GetMetadataBuilder(doiConfig, doi).build();
-			Response respFromAnds = submitRequest(httpReq);
-			String metadata = extractEntityAsString(respFromAnds);
-			LOGGER.debug("DOI Get Metadata response:{}{}", System.lineSeparator(), metadata);
-			respFromAnds.close();
+			String metadata = fetchMetadata(doi);
+			inFlightMetadataRequests.remove(doi, metadataFuture);
+			metadataFuture.complete(metadata);
 			return metadata;
-
-		} catch (Exception e) {
-			throw new DoiException(e);
+		} catch (DoiException | RuntimeException e) {
+			inFlightMetadataRequests.remove(doi, metadataFuture);
+			metadataFuture.completeExceptionally(e);
+			throw e;
 		}
 	}
 
+	/**
+	 * Retrieves the metadata of a DOI, copying the response bytes unchanged to an output stream as they're received
+	 * rather than decoding them into a String. Unlike {@link #getMetadata(String)}, concurrent requests for the same
+	 * DOI aren't shared.
+	 * 
+	 * @param doi
+	 *            DOI whose metadata is to be retrieved
+	 * @param out
+	 *            Stream the metadata document is written to, left open
+	 * @return Number of bytes written
+	 * @throws DoiException
+	 *             if the metadata couldn't be retrieved or written. Part of the document may have been written, as when
+	 *             the deadline of a view created by {@link #withTimeout(long, TimeUnit)} expires during the copy,
+	 *             which stops it
+	 */
+	public long getMetadata(String doi, OutputStream out) throws DoiException {
+		Objects.requireNonNull(out);
+		return copyMetadata(doi, body -> IOUtils.copyLarge(body, out, new byte[COPY_BUFFER_SIZE]));
+	}
+
+	/**
+	 * Retrieves the metadata of a DOI, transferring the response bytes unchanged into a file as they're received rather
+	 * than decoding them into a String. The file is created, or replaced, once the service has responded.
+	 * 
+	 * @param doi
+	 *            DOI whose metadata is to be retrieved
+	 * @param target
+	 *            File the metadata document is written to
+	 * @return Number of bytes written
+	 * @throws DoiException
+	 *             if the metadata couldn't be retrieved or written. The file may have been left with part of the
+	 *             document, as when the deadline of a view created by {@link #withTimeout(long, TimeUnit)} expires
+	 *             during the copy, which stops it
+	 * @see #getMetadata(String, OutputStream)
+	 */
+	public long getMetadata(String doi, Path target) throws DoiException {
+		Objects.requireNonNull(target);
+		return copyMetadata(doi, body -> {
+			try (FileChannel targetChannel = FileChannel.open(target, StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				ReadableByteChannel bodyChannel = Channels.newChannel(body);
+				long position = 0L;
+				long nTransferred;
+				while ((nTransferred = targetChannel.transferFrom(bodyChannel, position, COPY_BUFFER_SIZE)) > 0) {
+					position += nTransferred;
+				}
+				return position;
+			}
+		});
+	}
+
+	/**
+	 * Mints a DOI. If a mint ledger is configured, a DOI already minted for the same App ID, URL and metadata is
+	 * returned instead of minting a duplicate.
+	 * 
+	 * @param doiUrl
+	 *            URL the minted DOI will resolve to
+	 * @param resourceDoc
+	 *            Metadata document
+	 * @return Mint response
+	 * @throws DoiException
+	 *             if the DOI couldn't be minted, or an earlier mint of the same URL and metadata has an unknown
+	 *             outcome that couldn't be resolved
+	 */
 	public DoiResponse mint(String doiUrl, String resourceDoc) throws DoiException {
+		if (getTimeoutNanos() > 0) {
+			return await(mintAsync(doiUrl, resourceDoc));
+		}
+		return submitMint(() -> new DoiHttpRequest.MintDoiBuilder(doiConfig, doiUrl, resourceDoc).build(), doiUrl);
+	}
+
+	/**
+	 * Mints a DOI with a metadata document streamed into the request, so the document isn't held in memory. A document
+	 * read from an InputStream or a channel is sent once and the request isn't retried, and can't be minted if a mint
+	 * ledger is configured as the ledger has to read the document before it's sent.
+	 * 
+	 * @param doiUrl
+	 *            URL the minted DOI will resolve to
+	 * @param resourceDoc
+	 *            Metadata document source
+	 * @return Mint response
+	 * @throws DoiException
+	 *             if the DOI couldn't be minted, or an earlier mint of the same URL and metadata has an unknown
+	 *             outcome that couldn't be resolved
+	 * @see #mint(String, String)
+	 */
+	public DoiResponse mintFrom(String doiUrl, ResourceDocSource resourceDoc) throws DoiException {
+		if (getTimeoutNanos() > 0) {
+			return await(mintFromAsync(doiUrl, resourceDoc));
+		}
+		return submitMint(() -> new DoiHttpRequest.MintDoiBuilder(doiConfig, doiUrl, resourceDoc).build(), doiUrl);
+	}
+
+	private DoiResponse submitMint(Supplier<DoiHttpRequest> requestBuilder, String doiUrl) throws DoiException {
 		try {
-			DoiHttpRequest httpReq = new DoiHttpRequest.MintDoiBuilder(doiConfig, doiUrl, resourceDoc).build();
-			Response respFromAnds = submitRequest(httpReq);
+			DoiHttpRequest httpReq = requestBuilder.get();
+			if (mintLedger != null) {
+				try {
+					return mintWithLedgerAsync(httpReq, doiUrl).join();
+				} catch (CompletionException e) {
+					throw Futures.toDoiException(e);
+				}
+			}
+			DoiHttpResponse respFromAnds = submitWithRetry(httpReq, doiConfig.isMintRetryEnabled(), this::submitRequest);
 			return processResponse(respFromAnds, "MT001");
+		} catch (DoiException e) {
+			if (e instanceof CircuitBreakerOpenException || e instanceof BulkheadFullException || mintLedger != null) {
+				throw e;
+			}
+			throw new DoiException(e);
 		} catch (Exception e) {
 			throw new DoiException(e);
 		}
 	}
 
 	public DoiResponse update(String doi, String doiUrl, String resourceDoc) throws DoiException {
+		if (getTimeoutNanos() > 0) {
+			return await(updateAsync(doi, doiUrl, resourceDoc));
+		}
+		return submitUpdate(() -> newUpdateRequest(doi, doiUrl, resourceDoc));
+	}
+
+	/**
+	 * Updates a DOI with a metadata document streamed into the request, so the document isn't held in memory. A
+	 * document read from an InputStream or a channel is sent once and the request isn't retried.
+	 * 
+	 * @param doi
+	 *            DOI to update
+	 * @param doiUrl
+	 *            New URL, if any
+	 * @param resourceDoc
+	 *            New metadata document source
+	 * @return Update response
+	 * @throws DoiException
+	 *             if the DOI couldn't be updated
+	 * @see #update(String, String, String)
+	 */
+	public DoiResponse updateFrom(String doi, String doiUrl, ResourceDocSource resourceDoc) throws DoiException {
+		if (getTimeoutNanos() > 0) {
+			return await(updateFromAsync(doi, doiUrl, resourceDoc));
+		}
+		return submitUpdate(() -> newUpdateBuilder(doi, doiUrl).newXml(resourceDoc).build());
+	}
+
+	private DoiResponse submitUpdate(Supplier<DoiHttpRequest> requestBuilder) throws DoiException {
+		try {
+			DoiHttpRequest httpReq = requestBuilder.get();
+			DoiHttpResponse respFromAnds = submitWithRetry(httpReq, true, this::submitRequest);
+			return processResponse(respFromAnds, "MT002");
+		} catch (CircuitBreakerOpenException | BulkheadFullException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new DoiException(e);
+		}
+
+	}
+
+	/**
+	 * Asynchronous variant of {@link #getServiceStatus()}.
+	 * 
+	 * @return Future completed with the service status response, or exceptionally with a DoiException
+	 */
+	public CompletableFuture<DoiResponse> getServiceStatusAsync() {
+		return withDeadline("Service status request", this::requestServiceStatusAsync);
+	}
+
+	/**
+	 * Warms up this service before its first requests. The response unmarshallers are created, and the configured
+	 * number of service status requests are submitted concurrently, which opens as many connections to the DOI service,
+	 * resolving its host name and completing the TCP and TLS handshakes, and runs the full request and response path.
+	 * With a pooled transport the connections are kept open for the requests that follow.
+	 * 
+	 * @return Time taken to warm up in milliseconds
+	 * @throws DoiException
+	 *             if a service status request fails
+	 */
+	public long warmUp() throws DoiException {
+		long startNanos = System.nanoTime();
+		int connections = Math.max(1, doiConfig.getWarmUpConnections());
+		doiRespUnmarshaller.prefill(connections);
+		List<CompletableFuture<DoiResponse>> statusRequests = new ArrayList<>(connections);
+		for (int i = 0; i < connections; i++) {
+			statusRequests.add(getServiceStatusAsync());
+		}
+		await(CompletableFuture.allOf(statusRequests.toArray(new CompletableFuture<?>[0])));
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+		LOGGER.info("Warmed up {} connection(s) to {} in {}ms", connections, doiConfig.getBaseUri(), elapsedMillis);
+		return elapsedMillis;
+	}
+
+	private CompletableFuture<DoiResponse> requestServiceStatusAsync() {
 		try {
-			UpdateDoiBuilder updateDoiBuilder = new DoiHttpRequest.UpdateDoiBuilder(doiConfig, doi);
-			if (doiUrl != null && doiUrl.length() > 0) {
-				updateDoiBuilder = updateDoiBuilder.newUrl(doiUrl);
+			DoiHttpRequest httpReq = new DoiHttpRequest.ServiceStatusBuilder(doiConfig).build();
+			return processResponseAsync(submitWithRetryAsync(httpReq, true,
+					req -> submitReadRequestAsync(DoiServiceEventType.SERVICE_STATUS, req)),
+					resp -> processResponse(resp, "MT090"));
+		} catch (Exception e) {
+			return Futures.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Asynchronous variant of {@link #getMetadata(String)}.
+	 * 
+	 * @param doi
+	 *            DOI whose metadata is to be retrieved
+	 * @return Future completed with the metadata document, or exceptionally with a DoiException
+	 */
+	public CompletableFuture<String> getMetadataAsync(String doi) {
+		return withDeadline("Get metadata request", () -> requestMetadataAsync(doi));
+	}
+
+	private CompletableFuture<String> requestMetadataAsync(String doi) {
+		if (doi == null) {
+			return fetchMetadataAsync(doi);
+		}
+		CompletableFuture<String> metadataFuture = new CompletableFuture<>();
+		CompletableFuture<String> inFlightFuture = inFlightMetadataRequests.putIfAbsent(doi, metadataFuture);
+		if (inFlightFuture != null) {
+			metrics.incrementCoalescedRequests();
+			// a dependent future so one caller cancelling doesn't affect the others
+			return inFlightFuture.thenApply(Function.identity());
+		}
+
+		fetchMetadataAsync(doi).whenComplete((metadata, throwable) -> {
+			inFlightMetadataRequests.remove(doi, metadataFuture);
+			if (throwable != null) {
+				metadataFuture.completeExceptionally(throwable);
+			} else {
+				metadataFuture.complete(metadata);
 			}
-			if (resourceDoc != null && resourceDoc.length() > 0) {
-				updateDoiBuilder = updateDoiBuilder.newXml(resourceDoc);
+		});
+		return metadataFuture.thenApply(Function.identity());
+	}
+
+	/**
+	 * Asynchronous variant of {@link #mint(String, String)}.
+	 * 
+	 * @param doiUrl
+	 *            URL the minted DOI will resolve to
+	 * @param resourceDoc
+	 *            Metadata document
+	 * @return Future completed with the mint response, or exceptionally with a DoiException
+	 */
+	public CompletableFuture<DoiResponse> mintAsync(String doiUrl, String resourceDoc) {
+		return withDeadline("Mint request", () -> requestMintAsync(
+				() -> new DoiHttpRequest.MintDoiBuilder(doiConfig, doiUrl, resourceDoc).build(), doiUrl));
+	}
+
+	/**
+	 * Asynchronous variant of {@link #mintFrom(String, ResourceDocSource)}.
+	 * 
+	 * @param doiUrl
+	 *            URL the minted DOI will resolve to
+	 * @param resourceDoc
+	 *            Metadata document source
+	 * @return Future completed with the mint response, or exceptionally with a DoiException
+	 */
+	public CompletableFuture<DoiResponse> mintFromAsync(String doiUrl, ResourceDocSource resourceDoc) {
+		return withDeadline("Mint request", () -> requestMintAsync(
+				() -> new DoiHttpRequest.MintDoiBuilder(doiConfig, doiUrl, resourceDoc).build(), doiUrl));
+	}
+
+	private CompletableFuture<DoiResponse> requestMintAsync(Supplier<DoiHttpRequest> requestBuilder, String doiUrl) {
+		try {
+			DoiHttpRequest httpReq = requestBuilder.get();
+			if (mintLedger != null) {
+				return mintWithLedgerAsync(httpReq, doiUrl);
 			}
-			DoiHttpRequest httpReq = updateDoiBuilder.build();
-			Response respFromAnds = submitRequest(httpReq);
-			return processResponse(respFromAnds, "MT002");
+			return processResponseAsync(
+					submitWithRetryAsync(httpReq, doiConfig.isMintRetryEnabled(), this::submitRequestAsync),
+					resp -> processResponse(resp, "MT001"));
+		} catch (Exception e) {
+			return Futures.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Asynchronous variant of {@link #update(String, String, String)}.
+	 * 
+	 * @param doi
+	 *            DOI to update
+	 * @param doiUrl
+	 *            New URL, if any
+	 * @param resourceDoc
+	 *            New metadata document, if any
+	 * @return Future completed with the update response, or exceptionally with a DoiException
+	 */
+	public CompletableFuture<DoiResponse> updateAsync(String doi, String doiUrl, String resourceDoc) {
+		return withDeadline("Update request",
+				() -> requestUpdateAsync(() -> newUpdateRequest(doi, doiUrl, resourceDoc)));
+	}
+
+	/**
+	 * Asynchronous variant of {@link #updateFrom(String, String, ResourceDocSource)}.
+	 * 
+	 * @param doi
+	 *            DOI to update
+	 * @param doiUrl
+	 *            New URL, if any
+	 * @param resourceDoc
+	 *            New metadata document source
+	 * @return Future completed with the update response, or exceptionally with a DoiException
+	 */
+	public CompletableFuture<DoiResponse> updateFromAsync(String doi, String doiUrl, ResourceDocSource resourceDoc) {
+		return withDeadline("Update request",
+				() -> requestUpdateAsync(() -> newUpdateBuilder(doi, doiUrl).newXml(resourceDoc).build()));
+	}
+
+	private CompletableFuture<DoiResponse> requestUpdateAsync(Supplier<DoiHttpRequest> requestBuilder) {
+		try {
+			DoiHttpRequest httpReq = requestBuilder.get();
+			return processResponseAsync(submitWithRetryAsync(httpReq, true, this::submitRequestAsync),
+					resp -> processResponse(resp, "MT002"));
+		} catch (Exception e) {
+			return Futures.failedFuture(e);
+		}
+	}
+
+	private DoiHttpRequest newUpdateRequest(String doi, String doiUrl, String resourceDoc) {
+		UpdateDoiBuilder updateDoiBuilder = newUpdateBuilder(doi, doiUrl);
+		if (resourceDoc != null && resourceDoc.length() > 0) {
+			updateDoiBuilder = updateDoiBuilder.newXml(resourceDoc);
+		}
+		return updateDoiBuilder.build();
+	}
+
+	private UpdateDoiBuilder newUpdateBuilder(String doi, String doiUrl) {
+		UpdateDoiBuilder updateDoiBuilder = new DoiHttpRequest.UpdateDoiBuilder(doiConfig, doi);
+		if (doiUrl != null && doiUrl.length() > 0) {
+			updateDoiBuilder = updateDoiBuilder.newUrl(doiUrl);
+		}
+		return updateDoiBuilder;
+	}
+
+	/**
+	 * Mints a DOI for each of the specified requests, keeping at most {@link BulkOptions#getMaxInFlight()} requests in
+	 * flight. The requests are read lazily so the input can be streamed from a large source. The result of each mint
+	 * is passed to the handler as it completes. Blocks until all requests have completed.
+	 * 
+	 * @param mintRequests
+	 *            Mint requests
+	 * @param options
+	 *            Bulk options
+	 * @param handler
+	 *            Handler receiving the response or exception for each request
+	 * @return Summary of the bulk mint
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for in-flight requests to complete
+	 */
+	public BulkSummary mintAll(Iterable<MintRequest> mintRequests, BulkOptions options,
+			BulkResultHandler<MintRequest, DoiResponse> handler) throws InterruptedException {
+		DoiService bulkService = withPriority(RequestPriority.BULK);
+		BulkExecutor<MintRequest, DoiResponse> bulkExecutor = new BulkExecutor<>(
+				mintReq -> bulkService.mintAsync(mintReq.getUrl(), mintReq.getResourceDoc()), options);
+		return bulkExecutor.execute(mintRequests, handler);
+	}
+
+	/**
+	 * Retrieves the metadata of each DOI published by the specified publisher. DOIs are requested from the publisher
+	 * only as the subscriber of the returned publisher signals demand, so a slow subscriber throttles the retrieval.
+	 * 
+	 * @param dois
+	 *            Publisher of DOIs
+	 * @param maxConcurrency
+	 *            Maximum number of metadata requests in flight
+	 * @return Publisher of the metadata, or the failure, for each DOI in completion order
+	 */
+	public Publisher<MetadataResult> getMetadata(Publisher<String> dois, int maxConcurrency) {
+		return new MetadataPublisher(dois, withPriority(RequestPriority.BULK)::getMetadataAsync, maxConcurrency);
+	}
+
+	private String fetchMetadata(String doi) throws DoiException {
+		try {
+			DoiHttpRequest httpReq = new DoiHttpRequest.GetMetadataBuilder(doiConfig, doi).build();
+			DoiHttpResponse respFromAnds = submitWithRetry(httpReq, true,
+					req -> submitReadRequest(DoiServiceEventType.GET_METADATA, req));
+			String metadata = respFromAnds.readBodyAsString();
+			LOGGER.debug("DOI Get Metadata response:{}{}", System.lineSeparator(), metadata);
+			respFromAnds.close();
+			return metadata;
+
+		} catch (CircuitBreakerOpenException | BulkheadFullException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new DoiException(e);
 		}
+	}
+
+	private CompletableFuture<String> fetchMetadataAsync(String doi) {
+		try {
+			DoiHttpRequest httpReq = new DoiHttpRequest.GetMetadataBuilder(doiConfig, doi).build();
+			CompletableFuture<DoiHttpResponse> respFuture = submitWithRetryAsync(httpReq, true,
+					req -> submitReadRequestAsync(DoiServiceEventType.GET_METADATA, req));
+			return processResponseAsync(respFuture, resp -> {
+				String metadata = resp.readBodyAsString();
+				LOGGER.debug("DOI Get Metadata response:{}{}", System.lineSeparator(), metadata);
+				resp.close();
+				return metadata;
+			});
+		} catch (Exception e) {
+			return Futures.failedFuture(e);
+		}
+	}
 
+	private long copyMetadata(String doi, BodyCopier copier) throws DoiException {
+		if (getTimeoutNanos() > 0) {
+			return await(withDeadline("Get metadata request", () -> copyMetadataAsync(doi, copier)));
+		}
+		try {
+			DoiHttpRequest httpReq = new DoiHttpRequest.GetMetadataBuilder(doiConfig, doi).build();
+			DoiHttpResponse respFromAnds = submitWithRetry(httpReq, true,
+					req -> submitReadRequest(DoiServiceEventType.GET_METADATA, req));
+			return copyMetadataBody(respFromAnds, copier);
+		} catch (DoiException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new DoiException(e);
+		}
+	}
+
+	/**
+	 * Copies the metadata of a DOI asynchronously. Cancelling the returned future, as a deadline does, stops the copy so
+	 * that nothing more is written once the caller has returned.
+	 */
+	private CompletableFuture<Long> copyMetadataAsync(String doi, BodyCopier copier) {
+		try {
+			DoiHttpRequest httpReq = new DoiHttpRequest.GetMetadataBuilder(doiConfig, doi).build();
+			CompletableFuture<DoiHttpResponse> respFuture = submitWithRetryAsync(httpReq, true,
+					req -> submitReadRequestAsync(DoiServiceEventType.GET_METADATA, req));
+			AtomicBoolean abandoned = new AtomicBoolean();
+			CompletableFuture<Long> result = processResponseAsync(respFuture,
+					resp -> copyMetadataBody(resp, body -> copier.copy(new AbandonableInputStream(body, abandoned))));
+			result.whenComplete((nBytes, throwable) -> {
+				if (result.isCancelled()) {
+					abandoned.set(true);
+				}
+			});
+			return result;
+		} catch (Exception e) {
+			return Futures.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Copies the body of a metadata response, which is only written if the service returned the metadata. An error
+	 * page is never copied as metadata.
+	 */
+	private static long copyMetadataBody(DoiHttpResponse resp, BodyCopier copier) throws DoiException {
+		try {
+			if (resp.getStatus() != Status.OK.getStatusCode()) {
+				throw new DoiException(String.format("Unable to retrieve metadata. HTTP %d", resp.getStatus()));
+			}
+			try (InputStream body = resp.readBody()) {
+				long nBytes = copier.copy(body);
+				LOGGER.debug("DOI Get Metadata response: {} bytes", nBytes);
+				return nBytes;
+			}
+		} catch (IOException | DoiTransportException e) {
+			throw new DoiException("Unable to copy metadata", e);
+		} finally {
+			resp.close();
+		}
 	}
 
 	public Response activate(String doi, String doiUrl) throws DoiException {
@@ -148,11 +903,38 @@ public class DoiService {
 		return doiResponseAsString;
 	}
 
+	/**
+	 * Releases the resources this service created: the mint ledger, whose journal it keeps locked, and the executor of
+	 * virtual threads, if any. The transport, client and executors passed to the service are left open. A view shares
+	 * these resources, so closing a view closes the service it was created from, and the other way round.
+	 */
+	@Override
+	public void close() {
+		if (mintLedger != null) {
+			try {
+				mintLedger.close();
+			} catch (IOException e) {
+				LOGGER.warn("Unable to close mint ledger {}", doiConfig.getMintLedgerFile(), e);
+			}
+		}
+		if (virtualThreadExecutor != null) {
+			virtualThreadExecutor.shutdown();
+		}
+	}
+
+	/**
+	 * Gets the metrics of this DoiService. The returned object is a live view, each call to one of its methods
+	 * returns the current value.
+	 * 
+	 * @return Metrics
+	 */
+	public DoiServiceMetrics getMetrics() {
+		return metrics;
+	}
+
 	public void addListener(DoiServiceEventListener listener) {
 		Objects.requireNonNull(listener);
-		if (!doiSvcEvtListeners.contains(listener)) {
-			doiSvcEvtListeners.add(listener);
-		}
+		doiSvcEvtListeners.addIfAbsent(listener);
 	}
 
 	public void removeListener(DoiServiceEventListener listener) {
@@ -160,29 +942,880 @@ public class DoiService {
 		doiSvcEvtListeners.remove(listener);
 	}
 
-	private Response submitRequest(DoiHttpRequest httpRequest) {
-		// create WebTarget from URI
-		WebTarget webTarget = client.target(httpRequest.getUri());
-		// add http headers, if any
-		Builder builder = webTarget.request();
-		for (Entry<String, List<String>> headerEntry : httpRequest.getHeaders().entrySet()) {
-			for (String headerValue : headerEntry.getValue()) {
-				builder = builder.header(headerEntry.getKey(), headerValue);
+	/**
+	 * Sets the resolver used to determine whether a mint request with an unknown outcome, recorded as pending in the
+	 * mint ledger, minted a DOI. Without a resolver, minting a URL and metadata with a pending entry fails.
+	 * 
+	 * @param resolver
+	 *            Resolver, or null
+	 */
+	public void setPendingMintResolver(PendingMintResolver resolver) {
+		this.pendingMintResolver.set(resolver);
+	}
+
+	/**
+	 * Gets the entries of the mint ledger whose outcome isn't known.
+	 * 
+	 * @return Pending entries, empty if no mint ledger is configured
+	 */
+	public List<LedgerEntry> getPendingMints() {
+		if (mintLedger == null) {
+			return Collections.emptyList();
+		}
+		return mintLedger.getPendingEntries();
+	}
+
+	/**
+	 * Resolves the pending entries of the mint ledger, such as those left by a previous run that ended before the
+	 * outcome of its mint requests was known. Should be called on startup, before minting.
+	 * 
+	 * @return Entries that remain pending because their outcome couldn't be determined
+	 * @throws DoiException
+	 *             if the ledger can't be updated
+	 */
+	public List<LedgerEntry> resolvePendingMints() throws DoiException {
+		List<LedgerEntry> unresolvedEntries = new ArrayList<>();
+		if (mintLedger == null) {
+			return unresolvedEntries;
+		}
+		for (LedgerEntry pendingEntry : mintLedger.getPendingEntries()) {
+			if (!inFlightMints.add(pendingEntry.getKey())) {
+				// being minted now
+				continue;
+			}
+			try {
+				resolvePendingMint(pendingEntry);
+			} catch (DoiException e) {
+				LOGGER.warn("Unable to resolve pending mint of {}: {}", pendingEntry.getKey().getUrl(), e.getMessage());
+				unresolvedEntries.add(pendingEntry);
+			} catch (IOException e) {
+				throw new DoiException("Unable to update mint ledger", e);
+			} finally {
+				inFlightMints.remove(pendingEntry.getKey());
+			}
+		}
+		return unresolvedEntries;
+	}
+
+	/**
+	 * Records the outcome of the pending mints of a URL, where the outcome was determined outside this service, for
+	 * example by looking the URL up in the DOI registry.
+	 * 
+	 * @param url
+	 *            URL of the pending mints
+	 * @param doi
+	 *            DOI minted for the URL, or null if the pending mints certainly didn't mint a DOI
+	 * @return Number of pending entries resolved
+	 * @throws DoiException
+	 *             if the ledger can't be updated
+	 */
+	public int resolvePendingMints(String url, String doi) throws DoiException {
+		Objects.requireNonNull(url);
+		int resolved = 0;
+		for (LedgerEntry pendingEntry : getPendingMints()) {
+			if (!pendingEntry.getKey().getUrl().equals(url) || !inFlightMints.add(pendingEntry.getKey())) {
+				continue;
+			}
+			try {
+				recordResolvedMint(pendingEntry, doi);
+				resolved++;
+			} catch (IOException e) {
+				throw new DoiException("Unable to update mint ledger", e);
+			} finally {
+				inFlightMints.remove(pendingEntry.getKey());
+			}
+		}
+		return resolved;
+	}
+
+	private long getTimeoutNanos() {
+		return timeoutNanos >= 0 ? timeoutNanos : TimeUnit.MILLISECONDS.toNanos(doiConfig.getRequestTimeoutMillis());
+	}
+
+	/**
+	 * Makes an asynchronous call, failing it with a {@link DeadlineExceededException} and cancelling it if it doesn't
+	 * complete within the timeout.
+	 */
+	private <T> CompletableFuture<T> withDeadline(String operation, Supplier<CompletableFuture<T>> call) {
+		long timeoutNanos = getTimeoutNanos();
+		if (timeoutNanos <= 0) {
+			return call.get();
+		}
+		long startNanos = System.nanoTime();
+		CompletableFuture<T> future = call.get();
+		long remainingNanos = Math.max(0L, timeoutNanos - (System.nanoTime() - startNanos));
+		return Futures.withTimeout(future, remainingNanos, TimeUnit.NANOSECONDS, () -> {
+			metrics.incrementDeadlineExceeded();
+			return new DeadlineExceededException(String.format("%s didn't complete within %dms", operation,
+					TimeUnit.NANOSECONDS.toMillis(timeoutNanos)));
+		});
+	}
+
+	/**
+	 * Waits for the result of an asynchronous call whose deadline is already applied.
+	 */
+	private static <T> T await(CompletableFuture<T> future) throws DoiException {
+		try {
+			return future.join();
+		} catch (CompletionException | CancellationException e) {
+			throw Futures.toDoiException(e);
+		}
+	}
+
+	/**
+	 * Submits a request once it has a slot in the bulkhead of its traffic class, if bulkheads are enabled. A bulkhead
+	 * gives freed slots to interactive requests ahead of queued bulk requests. The priority scheduler's permit is taken
+	 * last, just before the request is sent, so that requests waiting at the bulkhead, circuit breaker, rate limiter
+	 * or concurrency limiter hold none of the scheduler's permits.
+	 */
+	private DoiHttpResponse submitRequest(DoiHttpRequest httpRequest) throws InterruptedException, DoiException {
+		if (bulkheads == null) {
+			return submitThroughCircuitBreaker(httpRequest);
+		}
+		Bulkhead.Permit permit = awaitPermit(
+				bulkheads.get(TrafficClass.of(httpRequest.getRequestType())).acquire(priority),
+				Bulkhead.Permit::release);
+		try {
+			return submitThroughCircuitBreaker(httpRequest);
+		} finally {
+			permit.release();
+		}
+	}
+
+	/**
+	 * Submits a request asynchronously once it has a slot in the bulkhead of its traffic class, if bulkheads are
+	 * enabled. Fails with a {@link BulkheadFullException} if the bulkhead's queue is full.
+	 */
+	private CompletableFuture<DoiHttpResponse> submitRequestAsync(DoiHttpRequest httpRequest) {
+		if (bulkheads == null) {
+			return submitThroughCircuitBreakerAsync(httpRequest);
+		}
+		Bulkhead bulkhead = bulkheads.get(TrafficClass.of(httpRequest.getRequestType()));
+		return Futures.thenComposeCancellable(bulkhead.acquire(priority), permit -> {
+			CompletableFuture<DoiHttpResponse> respFuture;
+			try {
+				respFuture = submitThroughCircuitBreakerAsync(httpRequest);
+			} catch (RuntimeException e) {
+				permit.release();
+				throw e;
+			}
+			respFuture.whenComplete((resp, throwable) -> permit.release());
+			return respFuture;
+		});
+	}
+
+	/**
+	 * Waits for a permit. If interrupted while waiting, the permit is given up.
+	 */
+	private static <P> P awaitPermit(CompletableFuture<P> permitFuture, Consumer<P> release)
+			throws InterruptedException, DoiException {
+		try {
+			return permitFuture.get();
+		} catch (ExecutionException e) {
+			throw Futures.toDoiException(e);
+		} catch (InterruptedException e) {
+			if (!permitFuture.cancel(false) && !permitFuture.isCompletedExceptionally()) {
+				// granted just as the thread was interrupted
+				release.accept(permitFuture.join());
+			}
+			throw e;
+		}
+	}
+
+	private DoiHttpResponse submitThroughCircuitBreaker(DoiHttpRequest httpRequest)
+			throws InterruptedException, DoiException {
+		if (circuitBreaker == null) {
+			return sendRequest(httpRequest);
+		}
+		if (!circuitBreaker.allowRequest()) {
+			throw newCircuitBreakerOpenException();
+		}
+		DoiHttpResponse httpResponse;
+		try {
+			httpResponse = sendRequest(httpRequest);
+		} catch (RuntimeException e) {
+			circuitBreaker.onFailure();
+			throw e;
+		}
+		recordOutcome(httpResponse.getStatus());
+		return httpResponse;
+	}
+
+	/**
+	 * Submits a request asynchronously, failing with a {@link CircuitBreakerOpenException} without sending it if the
+	 * circuit breaker is open. The returned future is completed on the transport's I/O thread, so callers must not perform
+	 * any significant processing in stages attached to it directly.
+	 */
+	private CompletableFuture<DoiHttpResponse> submitThroughCircuitBreakerAsync(DoiHttpRequest httpRequest) {
+		if (circuitBreaker == null) {
+			return sendRequestAsync(httpRequest);
+		}
+		if (!circuitBreaker.allowRequest()) {
+			return Futures.failedFuture(newCircuitBreakerOpenException());
+		}
+		CompletableFuture<DoiHttpResponse> respFuture = sendRequestAsync(httpRequest);
+		respFuture.whenComplete((resp, throwable) -> {
+			if (respFuture.isCancelled()) {
+				return;
+			}
+			if (throwable != null) {
+				circuitBreaker.onFailure();
+			} else {
+				recordOutcome(resp.getStatus());
 			}
+		});
+		return respFuture;
+	}
+
+	private DoiHttpResponse sendRequest(DoiHttpRequest httpRequest) throws InterruptedException, DoiException {
+		if (rateLimiter != null) {
+			rateLimiter.acquire(rateLimitKey(httpRequest));
+		}
+		if (concurrencyLimiter == null) {
+			return invoke(httpRequest, null);
 		}
-		// submit request
-		Response httpResponse = builder.method(httpRequest.getMethod(), httpRequest.getEntity());
+		Permit permit = awaitPermit(concurrencyLimiter.acquire(), Permit::ignore);
+		DoiHttpResponse httpResponse;
+		try {
+			httpResponse = invoke(httpRequest, permit);
+		} catch (RuntimeException e) {
+			permit.dropped();
+			throw e;
+		} catch (InterruptedException | DoiException e) {
+			// not sent, interrupted while waiting for the priority scheduler
+			permit.ignore();
+			throw e;
+		}
+		releasePermit(permit, httpResponse.getStatus());
 		return httpResponse;
 	}
 
-	private DoiResponse processResponse(Response respFromDoiSvc, String expectedRespCode) throws DoiException {
+	/**
+	 * Submits a request using the transport's asynchronous send, or as a blocking call on a new virtual thread in
+	 * {@link ExecutionMode#VIRTUAL} mode. The returned future is completed on the transport's I/O thread, so callers must
+	 * not perform any significant processing in stages attached to it directly. Cancelling the returned future aborts
+	 * the request.
+	 */
+	private CompletableFuture<DoiHttpResponse> sendRequestAsync(DoiHttpRequest httpRequest) {
+		if (virtualThreadExecutor != null) {
+			return sendOnVirtualThreadAsync(httpRequest);
+		}
+		if (rateLimiter != null) {
+			return Futures.thenComposeCancellable(rateLimiter.acquireAsync(rateLimitKey(httpRequest)),
+					v -> submitWithinConcurrencyLimitAsync(httpRequest));
+		}
+		return submitWithinConcurrencyLimitAsync(httpRequest);
+	}
+
+	/**
+	 * Submits a request as a blocking call on a new virtual thread. Cancelling the returned future interrupts the
+	 * thread, and a response received after the future is cancelled is closed, as the transports' asynchronous sends do.
+	 */
+	private CompletableFuture<DoiHttpResponse> sendOnVirtualThreadAsync(DoiHttpRequest httpRequest) {
+		CompletableFuture<DoiHttpResponse> respFuture = new CompletableFuture<>();
+		Future<?> task;
+		try {
+			task = virtualThreadExecutor.submit(() -> {
+				if (respFuture.isDone()) {
+					// cancelled before the thread started
+					return;
+				}
+				try {
+					DoiHttpResponse resp = sendRequest(httpRequest);
+					if (!respFuture.complete(resp)) {
+						// cancelled, nobody will read this response
+						resp.close();
+					}
+				} catch (Throwable e) {
+					respFuture.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			return Futures.failedFuture(e);
+		}
+		Futures.propagateCancellation(respFuture, task);
+		return respFuture;
+	}
+
+	private CompletableFuture<DoiHttpResponse> submitWithinConcurrencyLimitAsync(DoiHttpRequest httpRequest) {
+		if (concurrencyLimiter == null) {
+			return invokeAsync(httpRequest, null);
+		}
+		return Futures.thenComposeCancellable(concurrencyLimiter.acquire(), permit -> {
+			CompletableFuture<DoiHttpResponse> respFuture;
+			try {
+				respFuture = invokeAsync(httpRequest, permit);
+			} catch (RuntimeException e) {
+				permit.ignore();
+				throw e;
+			}
+			respFuture.whenComplete((resp, throwable) -> {
+				if (respFuture.isCancelled()) {
+					permit.ignore();
+				} else if (throwable != null) {
+					permit.dropped();
+				} else {
+					releasePermit(permit, resp.getStatus());
+				}
+			});
+			return respFuture;
+		});
+	}
+
+	/**
+	 * Sends a request using the transport once the priority scheduler, if enabled, dispatches it. The scheduler is the
+	 * last gate before the transport, so a request waiting at an earlier gate holds none of its permits.
+	 * 
+	 * @param limiterPermit
+	 *            Concurrency limiter permit held by the request, whose latency is timed from dispatch, or null
+	 */
+	private DoiHttpResponse invoke(DoiHttpRequest httpRequest, Permit limiterPermit)
+			throws InterruptedException, DoiException {
+		if (priorityScheduler == null) {
+			return transport.send(httpRequest);
+		}
+		PriorityScheduler.Permit permit = awaitPermit(priorityScheduler.acquire(priority),
+				PriorityScheduler.Permit::release);
+		try {
+			if (limiterPermit != null) {
+				limiterPermit.restartTimer();
+			}
+			return transport.send(httpRequest);
+		} finally {
+			permit.release();
+		}
+	}
+
+	/**
+	 * Sends a request asynchronously using the transport once the priority scheduler, if enabled, dispatches it.
+	 * Cancelling the returned future aborts the request.
+	 * 
+	 * @param limiterPermit
+	 *            Concurrency limiter permit held by the request, whose latency is timed from dispatch, or null
+	 */
+	private CompletableFuture<DoiHttpResponse> invokeAsync(DoiHttpRequest httpRequest, Permit limiterPermit) {
+		if (priorityScheduler == null) {
+			return transport.sendAsync(httpRequest);
+		}
+		return Futures.thenComposeCancellable(priorityScheduler.acquire(priority), permit -> {
+			CompletableFuture<DoiHttpResponse> respFuture;
+			try {
+				if (limiterPermit != null) {
+					limiterPermit.restartTimer();
+				}
+				respFuture = transport.sendAsync(httpRequest);
+			} catch (RuntimeException e) {
+				permit.release();
+				throw e;
+			}
+			respFuture.whenComplete((resp, throwable) -> permit.release());
+			return respFuture;
+		});
+	}
+
+	/**
+	 * Mints a DOI, recording the mint request in the mint ledger as pending before it's submitted and as completed
+	 * once the DOI is minted. An entry is removed if the request certainly didn't mint a DOI, and is otherwise left
+	 * pending to be resolved before the URL and metadata are minted again. Retries, if enabled for mint requests,
+	 * follow the same steps so that a request that may have minted a DOI is resolved rather than resubmitted.
+	 * <p>
+	 * Cancelling the returned future, as when its deadline expires, doesn't abort a submitted request, whose outcome
+	 * must be recorded before the same URL and metadata can be minted again. The mint stays in progress until then,
+	 * but isn't retried.
+	 */
+	private CompletableFuture<DoiResponse> mintWithLedgerAsync(DoiHttpRequest httpReq, String doiUrl) {
+		MintKey key;
+		try {
+			key = createMintKey(httpReq, doiUrl);
+		} catch (DoiException e) {
+			return Futures.failedFuture(e);
+		} catch (IOException e) {
+			return Futures.failedFuture(new DoiException("Unable to read metadata document", e));
+		}
+		if (!inFlightMints.add(key)) {
+			return Futures.failedFuture(
+					new DoiException("A mint of the same URL and metadata is already in progress: " + doiUrl));
+		}
+		CompletableFuture<DoiResponse> attempts = new CompletableFuture<>();
+		CompletableFuture<DoiResponse> result = new CompletableFuture<>();
+		attempts.whenComplete((doiResponse, throwable) -> {
+			// released before the caller sees the outcome, so that it can mint the same URL and metadata again
+			inFlightMints.remove(key);
+			if (throwable != null) {
+				result.completeExceptionally(throwable);
+			} else {
+				result.complete(doiResponse);
+			}
+		});
+		mintAttemptWithLedger(httpReq, key, 1, attempts, result);
+		return result;
+	}
+
+	/**
+	 * Creates the mint ledger key of a mint request. A streamed metadata document is read to hash it, so it must be
+	 * possible to read it again when the request is sent.
+	 */
+	private static MintKey createMintKey(DoiHttpRequest httpReq, String doiUrl) throws DoiException, IOException {
+		ResourceDocSource resourceDoc = httpReq.getResourceDocSource();
+		if (resourceDoc == null) {
+			return MintKey.of(httpReq.getAppId(), doiUrl, httpReq.getEntity().getEntity().asMap().getFirst("xml"));
+		}
+		if (!resourceDoc.isRepeatable()) {
+			throw new DoiException(
+					"A mint ledger requires a metadata document that can be read more than once: " + resourceDoc);
+		}
+		try (InputStream in = resourceDoc.open()) {
+			return MintKey.of(httpReq.getAppId(), doiUrl, in);
+		}
+	}
+
+	/**
+	 * Makes an attempt to mint a DOI, completing attempts once no further attempt will be made. No attempt is made
+	 * after the caller's result has been completed, as by a deadline or cancellation.
+	 */
+	private void mintAttemptWithLedger(DoiHttpRequest httpReq, MintKey key, int attempt,
+			CompletableFuture<DoiResponse> attempts, CompletableFuture<DoiResponse> result) {
+		if (result.isDone()) {
+			LOGGER.debug("Not attempting mint of {}, the caller no longer awaits it", key.getUrl());
+			attempts.cancel(false);
+			return;
+		}
+		try {
+			LedgerEntry entry = mintLedger.get(key);
+			if (entry != null && entry.getState() == LedgerEntry.State.PENDING && resolvePendingMint(entry) != null) {
+				entry = mintLedger.get(key);
+			}
+			if (entry != null && entry.getState() == LedgerEntry.State.COMPLETED) {
+				LOGGER.info("DOI {} already minted for {}", entry.getDoi(), key.getUrl());
+				attempts.complete(createPreviouslyMintedResponse(entry));
+				return;
+			}
+			mintLedger.markPending(key);
+		} catch (DoiException e) {
+			attempts.completeExceptionally(e);
+			return;
+		} catch (IOException e) {
+			attempts.completeExceptionally(new DoiException("Unable to record pending mint in mint ledger", e));
+			return;
+		}
+
+		submitRequestAsync(httpReq).whenCompleteAsync((resp, throwable) -> {
+			int status = resp != null ? resp.getStatus() : -1;
+			boolean retry = retryPolicy != null && doiConfig.isMintRetryEnabled() && retryPolicy.canRetry(attempt)
+					&& (throwable != null ? isRetryable(throwable) : isRetryable(status));
+			if (throwable == null && !retry) {
+				DoiResponse doiResponse;
+				try {
+					doiResponse = processResponse(resp, "MT001");
+				} catch (DoiException e) {
+					recordMintOutcome(key, null, isMintRejected(status, e));
+					attempts.completeExceptionally(e);
+					return;
+				}
+				recordMintOutcome(key, doiResponse.getDoi(), false);
+				attempts.complete(doiResponse);
+				return;
+			}
+
+			if (resp != null) {
+				resp.close();
+			}
+			recordMintOutcome(key, null, isMintRejected(status, throwable));
+			if (!retry) {
+				attempts.completeExceptionally(Futures.toDoiException(throwable));
+				return;
+			}
+			long backoffNanos = retryPolicy.getBackoffNanos(attempt);
+			metrics.incrementRetries();
+			LOGGER.debug("Attempt {} of {} failed ({}), retrying in {}ms", attempt, httpReq.getUri(),
+					throwable != null ? throwable : "HTTP " + status, TimeUnit.NANOSECONDS.toMillis(backoffNanos));
+			DelayScheduler.delay(backoffNanos, TimeUnit.NANOSECONDS)
+					.thenRunAsync(() -> mintAttemptWithLedger(httpReq, key, attempt + 1, attempts, result), ledgerExecutor);
+		}, ledgerExecutor);
+	}
+
+	/**
+	 * Resolves a pending entry of the mint ledger, marking it completed if a DOI was minted or removing it if not.
+	 * 
+	 * @return DOI minted for the entry, or null if no DOI was minted
+	 * @throws DoiException
+	 *             if no resolver is set or the resolver can't determine the outcome
+	 */
+	private String resolvePendingMint(LedgerEntry pendingEntry) throws DoiException, IOException {
+		PendingMintResolver resolver = pendingMintResolver.get();
+		if (resolver == null) {
+			throw new DoiException(String.format(
+					"Outcome of an earlier mint of %s is unknown and no PendingMintResolver is set to resolve it",
+					pendingEntry.getKey().getUrl()));
+		}
+		String doi = resolver.resolve(pendingEntry);
+		recordResolvedMint(pendingEntry, doi);
+		return doi;
+	}
+
+	private void recordResolvedMint(LedgerEntry pendingEntry, String doi) throws IOException {
+		if (doi != null) {
+			LOGGER.info("Pending mint of {} resolved to DOI {}", pendingEntry.getKey().getUrl(), doi);
+			mintLedger.markCompleted(pendingEntry.getKey(), doi);
+		} else {
+			LOGGER.info("Pending mint of {} resolved as not minted", pendingEntry.getKey().getUrl());
+			mintLedger.remove(pendingEntry.getKey());
+		}
+	}
+
+	/**
+	 * Records the outcome of a mint request in the mint ledger. A request whose outcome is unknown stays pending.
+	 */
+	private void recordMintOutcome(MintKey key, String doi, boolean rejected) {
+		try {
+			if (doi != null) {
+				mintLedger.markCompleted(key, doi);
+			} else if (rejected) {
+				mintLedger.remove(key);
+			}
+		} catch (IOException e) {
+			LOGGER.error("Unable to record outcome of mint of {} in mint ledger. Entry remains pending.", key.getUrl(),
+					e);
+		}
+	}
+
+	/**
+	 * Checks whether a failed mint request certainly didn't mint a DOI: it was rejected with a 4xx status or a failure
+	 * response, rejected by the circuit breaker or a bulkhead, or never connected to the DOI service.
+	 */
+	private static boolean isMintRejected(int httpStatus, Throwable failure) {
+		if (httpStatus >= 400 && httpStatus < 500) {
+			return true;
+		}
+		for (Throwable t = failure; t != null; t = t.getCause()) {
+			if (t instanceof CircuitBreakerOpenException || t instanceof BulkheadFullException
+					|| t instanceof ConnectException) {
+				return true;
+			}
+			if (t instanceof DoiException && ((DoiException) t).getResp() != null
+					&& !"success".equals(((DoiException) t).getResp().getType())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static DoiResponse createPreviouslyMintedResponse(LedgerEntry entry) {
+		DoiResponse doiResponse = new DoiResponse();
+		doiResponse.setType("success");
+		doiResponse.setCode("MT001");
+		doiResponse.setDoi(entry.getDoi());
+		doiResponse.setUrl(entry.getKey().getUrl());
+		doiResponse.setAppId(entry.getKey().getAppId());
+		doiResponse.setMessage("DOI previously minted for this URL and metadata");
+		return doiResponse;
+	}
+
+	/**
+	 * Submits a request, retrying it with backoff while it fails in a way that may be transient. The same
+	 * {@link DoiHttpRequest} is submitted on each attempt.
+	 * 
+	 * @param retryable
+	 *            false if the request mustn't be retried because it isn't idempotent. A request whose body can only be
+	 *            read once is never retried
+	 */
+	private DoiHttpResponse submitWithRetry(DoiHttpRequest httpRequest, boolean retryable, RequestSubmitter submitter)
+			throws InterruptedException, DoiException {
+		if (retryPolicy == null || !retryable || !httpRequest.isRepeatable()) {
+			return submitter.submit(httpRequest);
+		}
+		for (int attempt = 1;; attempt++) {
+			DoiHttpResponse response;
+			try {
+				response = submitter.submit(httpRequest);
+			} catch (RuntimeException | DoiException e) {
+				if (!retryPolicy.canRetry(attempt) || !isRetryable(e)) {
+					throw e;
+				}
+				backOff(httpRequest, attempt, e.toString());
+				continue;
+			}
+			if (!retryPolicy.canRetry(attempt) || !isRetryable(response.getStatus())) {
+				return response;
+			}
+			response.close();
+			backOff(httpRequest, attempt, "HTTP " + response.getStatus());
+		}
+	}
+
+	private void backOff(DoiHttpRequest httpRequest, int attempt, String reason) throws InterruptedException {
+		long backoffNanos = retryPolicy.getBackoffNanos(attempt);
+		metrics.incrementRetries();
+		LOGGER.debug("Attempt {} of {} failed ({}), retrying in {}ms", attempt, httpRequest.getUri(), reason,
+				TimeUnit.NANOSECONDS.toMillis(backoffNanos));
+		TimeUnit.NANOSECONDS.sleep(backoffNanos);
+	}
+
+	/**
+	 * Asynchronous counterpart of {@link #submitWithRetry(DoiHttpRequest, boolean, RequestSubmitter)}. Backoffs are
+	 * scheduled rather than slept, so the submitter must not block.
+	 */
+	private CompletableFuture<DoiHttpResponse> submitWithRetryAsync(DoiHttpRequest httpRequest, boolean retryable,
+			Function<DoiHttpRequest, CompletableFuture<DoiHttpResponse>> submitter) {
+		if (retryPolicy == null || !retryable || !httpRequest.isRepeatable()) {
+			return submitter.apply(httpRequest);
+		}
+		CompletableFuture<DoiHttpResponse> result = new CompletableFuture<>();
+		attemptAsync(httpRequest, submitter, 1, result);
+		return result;
+	}
+
+	private void attemptAsync(DoiHttpRequest httpRequest,
+			Function<DoiHttpRequest, CompletableFuture<DoiHttpResponse>> submitter, int attempt,
+			CompletableFuture<DoiHttpResponse> result) {
+		if (result.isDone()) {
+			// cancelled during backoff
+			return;
+		}
+		CompletableFuture<DoiHttpResponse> attemptFuture;
+		try {
+			attemptFuture = submitter.apply(httpRequest);
+		} catch (RuntimeException e) {
+			result.completeExceptionally(e);
+			return;
+		}
+		Futures.propagateCancellation(result, attemptFuture);
+		attemptFuture.whenComplete((resp, throwable) -> {
+			String reason;
+			if (throwable != null) {
+				if (!retryPolicy.canRetry(attempt) || !isRetryable(throwable)) {
+					result.completeExceptionally(throwable);
+					return;
+				}
+				reason = throwable.toString();
+			} else {
+				if (!retryPolicy.canRetry(attempt) || !isRetryable(resp.getStatus())) {
+					if (!result.complete(resp)) {
+						resp.close();
+					}
+					return;
+				}
+				resp.close();
+				reason = "HTTP " + resp.getStatus();
+			}
+			long backoffNanos = retryPolicy.getBackoffNanos(attempt);
+			metrics.incrementRetries();
+			LOGGER.debug("Attempt {} of {} failed ({}), retrying in {}ms", attempt, httpRequest.getUri(), reason,
+					TimeUnit.NANOSECONDS.toMillis(backoffNanos));
+			DelayScheduler.schedule(() -> attemptAsync(httpRequest, submitter, attempt + 1, result), backoffNanos,
+					TimeUnit.NANOSECONDS);
+		});
+	}
+
+	/**
+	 * Checks whether a response status indicates a transient failure: a 5xx server error or 429 Too Many Requests.
+	 * Other statuses, including authentication failures and metadata validation failures, are terminal.
+	 */
+	private static boolean isRetryable(int httpStatus) {
+		return httpStatus >= 500 || httpStatus == 429;
+	}
+
+	/**
+	 * Checks whether a failure is transient: a connection failure, reset or timeout reported by the transport. A request
+	 * rejected by the circuit breaker or a bulkhead, a cancelled request or an interrupted thread is terminal.
+	 */
+	private static boolean isRetryable(Throwable throwable) {
+		while ((throwable instanceof CompletionException || throwable instanceof ExecutionException
+				|| (throwable instanceof DoiException && !(throwable instanceof CircuitBreakerOpenException)))
+				&& throwable.getCause() != null) {
+			throwable = throwable.getCause();
+		}
+		return throwable instanceof DoiTransportException;
+	}
+
+	/**
+	 * Submits a read-only request, hedging it if enabled.
+	 */
+	private DoiHttpResponse submitReadRequest(DoiServiceEventType operation, DoiHttpRequest httpRequest)
+			throws InterruptedException, DoiException {
+		if (latencyTrackers == null) {
+			return submitRequest(httpRequest);
+		}
+		try {
+			return submitHedgedRequestAsync(operation, httpRequest).join();
+		} catch (CompletionException e) {
+			throw Futures.toDoiException(e);
+		}
+	}
+
+	/**
+	 * Submits a read-only request asynchronously, hedging it if enabled.
+	 */
+	private CompletableFuture<DoiHttpResponse> submitReadRequestAsync(DoiServiceEventType operation,
+			DoiHttpRequest httpRequest) {
+		if (latencyTrackers == null) {
+			return submitRequestAsync(httpRequest);
+		}
+		return submitHedgedRequestAsync(operation, httpRequest);
+	}
+
+	/**
+	 * Submits a request and, if no response has been received within the configured percentile of recent latencies
+	 * of the operation, submits an identical hedge request. The first response received completes the returned future
+	 * and the other request is cancelled. The request fails only if every submitted request fails. Must only be used
+	 * for idempotent requests.
+	 */
+	private CompletableFuture<DoiHttpResponse> submitHedgedRequestAsync(DoiServiceEventType operation,
+			DoiHttpRequest httpRequest) {
+		LatencyTracker latencyTracker = latencyTrackers.get(operation);
+		CompletableFuture<DoiHttpResponse> result = new CompletableFuture<>();
+		AtomicInteger outstandingAttempts = new AtomicInteger(1);
+		metrics.incrementHedgeableRequests();
+
+		CompletableFuture<DoiHttpResponse> primary = submitHedgeAttempt(httpRequest, latencyTracker, result,
+				outstandingAttempts);
+		Futures.propagateCancellation(result, primary);
+
+		long percentileNanos = latencyTracker.getPercentile(doiConfig.getHedgingPercentile());
+		if (percentileNanos >= 0) {
+			long hedgeDelayNanos = Math.max(percentileNanos,
+					TimeUnit.MILLISECONDS.toNanos(doiConfig.getHedgingMinDelayMillis()));
+			DelayScheduler.schedule(() -> {
+				if (result.isDone()) {
+					return;
+				}
+				outstandingAttempts.incrementAndGet();
+				metrics.incrementHedgedRequests();
+				LOGGER.debug("No response after {}ms, submitting hedge request for {}",
+						TimeUnit.NANOSECONDS.toMillis(hedgeDelayNanos), httpRequest.getUri());
+				CompletableFuture<DoiHttpResponse> hedge = submitHedgeAttempt(httpRequest, latencyTracker, result,
+						outstandingAttempts);
+				Futures.propagateCancellation(result, hedge);
+				// whichever attempt loses is cancelled once the result is known
+				result.whenComplete((resp, throwable) -> {
+					primary.cancel(true);
+					hedge.cancel(true);
+				});
+			}, hedgeDelayNanos, TimeUnit.NANOSECONDS);
+		}
+		return result;
+	}
+
+	private CompletableFuture<DoiHttpResponse> submitHedgeAttempt(DoiHttpRequest httpRequest, LatencyTracker latencyTracker,
+			CompletableFuture<DoiHttpResponse> result, AtomicInteger outstandingAttempts) {
+		long startNanos = System.nanoTime();
+		CompletableFuture<DoiHttpResponse> attempt = submitRequestAsync(httpRequest);
+		attempt.whenComplete((resp, throwable) -> {
+			if (throwable == null) {
+				latencyTracker.record(System.nanoTime() - startNanos);
+				if (!result.complete(resp)) {
+					resp.close();
+				}
+			} else if (outstandingAttempts.decrementAndGet() == 0) {
+				result.completeExceptionally(throwable);
+			}
+		});
+		return attempt;
+	}
+
+	private static String rateLimitKey(DoiHttpRequest httpRequest) {
+		return httpRequest.getAppId() != null ? httpRequest.getAppId() : "";
+	}
+
+	/**
+	 * Records the outcome of a request in the circuit breaker. Only a 5xx response counts as a failure. A 429 response
+	 * comes from a service that is up but throttling, so it counts as a success.
+	 */
+	private void recordOutcome(int httpStatus) {
+		if (httpStatus >= 500) {
+			circuitBreaker.onFailure();
+		} else {
+			circuitBreaker.onSuccess();
+		}
+	}
+
+	private CircuitBreakerOpenException newCircuitBreakerOpenException() {
+		return new CircuitBreakerOpenException("DOI service unavailable, circuit breaker is " + circuitBreaker.getState());
+	}
+
+	/**
+	 * Checks the service status, bypassing the circuit breaker, to decide whether a half-open circuit breaker can close.
+	 * A check that doesn't complete within the probe timeout is cancelled and fails, so that a hung request can't
+	 * leave the breaker half-open.
+	 */
+	private CompletableFuture<Boolean> probeServiceStatus() {
+		DoiHttpRequest httpReq = new DoiHttpRequest.ServiceStatusBuilder(doiConfig).build();
+		CompletableFuture<DoiResponse> statusFuture = processResponseAsync(sendRequestAsync(httpReq),
+				resp -> processResponse(resp, "MT090"));
+		CompletableFuture<Boolean> probeResult = statusFuture.thenApply(doiResponse -> true);
+		Futures.propagateCancellation(probeResult, statusFuture);
+		long probeTimeoutMillis = doiConfig.getCircuitBreakerProbeTimeoutMillis();
+		if (probeTimeoutMillis <= 0) {
+			return probeResult;
+		}
+		return Futures.withTimeout(probeResult, probeTimeoutMillis, TimeUnit.MILLISECONDS,
+				() -> new DoiException(
+						String.format("Service status check didn't complete within %dms", probeTimeoutMillis)));
+	}
+
+	private void publishEvent(DoiServiceEvent event) {
+		for (DoiServiceEventListener listener : doiSvcEvtListeners) {
+			try {
+				listener.notify(event);
+			} catch (RuntimeException e) {
+				LOGGER.warn("DOI service event listener failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Releases a concurrency limiter permit. A 5xx or 429 response indicates an overloaded service and shrinks the
+	 * limit.
+	 */
+	private void releasePermit(Permit permit, int httpStatus) {
+		if (httpStatus >= 500 || httpStatus == 429) {
+			permit.dropped();
+		} else {
+			permit.success();
+		}
+	}
+
+	/**
+	 * Processes the response of an asynchronous request on the response executor. Cancelling the returned future, as
+	 * a deadline does, cancels the request, releasing the permits it holds.
+	 */
+	private <T> CompletableFuture<T> processResponseAsync(CompletableFuture<DoiHttpResponse> respFuture,
+			ResponseProcessor<T> processor) {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		Futures.propagateCancellation(result, respFuture);
+		respFuture.whenCompleteAsync((resp, throwable) -> {
+			if (throwable != null) {
+				result.completeExceptionally(Futures.toDoiException(throwable));
+				return;
+			}
+			if (result.isDone()) {
+				// cancelled, or past its deadline, while the request was in flight
+				resp.close();
+				return;
+			}
+			try {
+				result.complete(processor.process(resp));
+			} catch (Exception e) {
+				result.completeExceptionally(Futures.toDoiException(e));
+			}
+		}, responseExecutor);
+		return result;
+	}
+
+	private DoiResponse processResponse(DoiHttpResponse respFromDoiSvc, String expectedRespCode) throws DoiException {
 		Objects.requireNonNull(respFromDoiSvc);
 		Objects.requireNonNull(expectedRespCode);
 
-		String respBody = extractEntityAsString(respFromDoiSvc);
-		respFromDoiSvc.close();
-		LOGGER.debug("DOI Service response: {}", respBody);
+		// the body is parsed from its bytes, and only decoded to a string if it's logged or reported in an exception
+		ResponseBody body;
+		try {
+			body = ResponseBody.read(respFromDoiSvc, MAX_RESPONSE_BODY_BYTES);
+		} finally {
+			respFromDoiSvc.close();
+		}
+		LOGGER.debug("DOI Service response: {}", body);
 		if (respFromDoiSvc.getStatus() != Status.OK.getStatusCode()) {
+			String respBody = body.toString();
 			DoiException doiException = new DoiException(
 					String.format("Unexpected HTTP Status: %d [%s]", respFromDoiSvc.getStatus(), respBody));
 			doiException.setRespStr(respBody);
@@ -192,8 +1825,9 @@ public class DoiService {
 		// unmarshall response body into a DoiResponse object
 		DoiResponse doiResponse = null;
 		try {
-			doiResponse = unmarshallDoiResponse(respBody);
+			doiResponse = unmarshallDoiResponse(body);
 		} catch (JAXBException e) {
+			String respBody = body.toString();
 			DoiException doiException = new DoiException(String.format("Invalid response format: %s", respBody));
 			doiException.setRespStr(respBody);
 			throw doiException;
@@ -201,6 +1835,7 @@ public class DoiService {
 
 		// throw exception if response type is failure
 		if (!doiResponse.getType().equals("success")) {
+			String respBody = body.toString();
 			DoiException doiException = new DoiException(
 					String.format("Response type failure: %s. Expected %s. Body: %s", doiResponse.getCode(),
 							expectedRespCode, respBody));
@@ -211,6 +1846,7 @@ public class DoiService {
 
 		// throw exception if the request failed.
 		if (!doiResponse.getCode().equals(expectedRespCode)) {
+			String respBody = body.toString();
 			DoiException doiException = new DoiException(
 					String.format("Unexpected response code: %s. Expected %s. Body: %s", doiResponse.getCode(),
 							expectedRespCode, respBody));
@@ -221,8 +1857,62 @@ public class DoiService {
 		return doiResponse;
 	}
 
-	private DoiResponse unmarshallDoiResponse(String str) throws JAXBException {
-		return (DoiResponse) doiRespUnmarshaller.unmarshal(str);
+	private DoiResponse unmarshallDoiResponse(ResponseBody body) throws JAXBException {
+		Charset charset = body.getCharset();
+		if (charset != null && !charset.equals(StandardCharsets.UTF_8) && !charset.equals(StandardCharsets.US_ASCII)) {
+			// a body in another charset is decoded as its content type says, which its XML declaration may not match
+			return doiRespUnmarshaller.unmarshal(body.toString());
+		}
+		return doiRespUnmarshaller.unmarshal(body.getBuffer(), 0, body.getLength());
+	}
+
+	@FunctionalInterface
+	private interface RequestSubmitter {
+		DoiHttpResponse submit(DoiHttpRequest httpRequest) throws InterruptedException, DoiException;
 	}
 
+	@FunctionalInterface
+	private interface BodyCopier {
+		long copy(InputStream body) throws IOException;
+	}
+
+	/**
+	 * Response body whose reads fail once its copy is abandoned. Data received after that is discarded rather than
+	 * returned, so a blocked read that completes late doesn't write any more of the copy.
+	 */
+	private static class AbandonableInputStream extends FilterInputStream {
+		private final AtomicBoolean abandoned;
+
+		AbandonableInputStream(InputStream in, AtomicBoolean abandoned) {
+			super(in);
+			this.abandoned = abandoned;
+		}
+
+		@Override
+		public int read() throws IOException {
+			checkAbandoned();
+			int b = super.read();
+			checkAbandoned();
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			checkAbandoned();
+			int nRead = super.read(b, off, len);
+			checkAbandoned();
+			return nRead;
+		}
+
+		private void checkAbandoned() throws IOException {
+			if (abandoned.get()) {
+				throw new InterruptedIOException("Metadata copy abandoned");
+			}
+		}
+	}
+
+	@FunctionalInterface
+	private interface ResponseProcessor<T> {
+		T process(DoiHttpResponse resp) throws Exception;
+	}
 }
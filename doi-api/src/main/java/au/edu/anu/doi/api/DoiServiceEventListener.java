@@ -23,6 +23,8 @@ package au.edu.anu.doi.api;
 
 import java.util.Date;
 
+import au.edu.anu.doi.api.concurrent.CircuitBreaker;
+
 /**
  * @author Rahul Khanna
  *
@@ -31,7 +33,7 @@ public interface DoiServiceEventListener {
 
 	public enum DoiServiceEventType
 	{
-		SERVICE_STATUS, GET_METADATA, MINT_DOI, UPDATE_DOI, ACTIVATE_DOI, DEACTIVATE_DOI
+		SERVICE_STATUS, GET_METADATA, MINT_DOI, UPDATE_DOI, ACTIVATE_DOI, DEACTIVATE_DOI, CIRCUIT_BREAKER_STATE_CHANGE
 	};
 	
 
@@ -41,5 +43,39 @@ public interface DoiServiceEventListener {
 		private Date timestamp;
 		private DoiServiceEventType eventType;
 		
+		public DoiServiceEvent(DoiServiceEventType eventType) {
+			this.timestamp = new Date();
+			this.eventType = eventType;
+		}
+
+		public Date getTimestamp() {
+			return timestamp;
+		}
+
+		public DoiServiceEventType getEventType() {
+			return eventType;
+		}
+	}
+
+	/**
+	 * Published when the circuit breaker of a DoiService changes state.
+	 */
+	public class CircuitBreakerStateEvent extends DoiServiceEvent {
+		private CircuitBreaker.State previousState;
+		private CircuitBreaker.State state;
+
+		public CircuitBreakerStateEvent(CircuitBreaker.State previousState, CircuitBreaker.State state) {
+			super(DoiServiceEventType.CIRCUIT_BREAKER_STATE_CHANGE);
+			this.previousState = previousState;
+			this.state = state;
+		}
+
+		public CircuitBreaker.State getPreviousState() {
+			return previousState;
+		}
+
+		public CircuitBreaker.State getState() {
+			return state;
+		}
 	}
 }
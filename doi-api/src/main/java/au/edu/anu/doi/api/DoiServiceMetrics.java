@@ -0,0 +1,310 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import au.edu.anu.doi.api.concurrent.AdaptiveConcurrencyLimiter;
+import au.edu.anu.doi.api.concurrent.Bulkhead;
+import au.edu.anu.doi.api.concurrent.CircuitBreaker;
+import au.edu.anu.doi.api.concurrent.PriorityScheduler;
+import au.edu.anu.doi.api.http.CompressionStats;
+
+/**
+ * Live view of the runtime metrics of a {@link DoiService}.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public class DoiServiceMetrics {
+
+	private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+	private final CircuitBreaker circuitBreaker;
+	private final Map<TrafficClass, Bulkhead> bulkheads;
+	private final PriorityScheduler priorityScheduler;
+	private final CompressionStats compressionStats;
+	private final LongAdder coalescedRequests = new LongAdder();
+	private final LongAdder hedgeableRequests = new LongAdder();
+	private final LongAdder hedgedRequests = new LongAdder();
+	private final LongAdder retries = new LongAdder();
+	private final LongAdder deadlineExceeded = new LongAdder();
+
+	DoiServiceMetrics(AdaptiveConcurrencyLimiter concurrencyLimiter, CircuitBreaker circuitBreaker,
+			Map<TrafficClass, Bulkhead> bulkheads, PriorityScheduler priorityScheduler,
+			CompressionStats compressionStats) {
+		this.concurrencyLimiter = concurrencyLimiter;
+		this.circuitBreaker = circuitBreaker;
+		this.bulkheads = bulkheads;
+		this.priorityScheduler = priorityScheduler;
+		this.compressionStats = compressionStats;
+	}
+
+	/**
+	 * Gets the current limit of the adaptive concurrency limiter.
+	 * 
+	 * @return Concurrency limit, or -1 if adaptive concurrency limiting is disabled
+	 */
+	public int getConcurrencyLimit() {
+		return concurrencyLimiter != null ? concurrencyLimiter.getLimit() : -1;
+	}
+
+	/**
+	 * Gets the number of requests holding a permit of the adaptive concurrency limiter.
+	 * 
+	 * @return Number of in-flight requests, or -1 if adaptive concurrency limiting is disabled
+	 */
+	public int getInFlightRequests() {
+		return concurrencyLimiter != null ? concurrencyLimiter.getInFlight() : -1;
+	}
+
+	/**
+	 * Gets the number of requests waiting for a permit of the adaptive concurrency limiter.
+	 * 
+	 * @return Queue depth, 0 if adaptive concurrency limiting is disabled
+	 */
+	public int getConcurrencyQueueDepth() {
+		return concurrencyLimiter != null ? concurrencyLimiter.getQueueDepth() : 0;
+	}
+
+	/**
+	 * Gets the number of metadata requests that were served by attaching to an identical request already in flight.
+	 * 
+	 * @return Number of coalesced requests
+	 */
+	public long getCoalescedRequests() {
+		return coalescedRequests.sum();
+	}
+
+	void incrementCoalescedRequests() {
+		coalescedRequests.increment();
+	}
+
+	/**
+	 * Gets the number of hedge requests submitted because a read-only request didn't receive a response in time.
+	 * 
+	 * @return Number of hedge requests
+	 */
+	public long getHedgedRequests() {
+		return hedgedRequests.sum();
+	}
+
+	/**
+	 * Gets the fraction of hedging-eligible requests for which a hedge request was submitted, which is the extra load
+	 * hedging places on the DOI service.
+	 * 
+	 * @return Hedge rate between 0 and 1
+	 */
+	public double getHedgeRate() {
+		long hedgeable = hedgeableRequests.sum();
+		return hedgeable > 0 ? (double) hedgedRequests.sum() / hedgeable : 0.0;
+	}
+
+	/**
+	 * Gets the number of times a request was retried after a transient failure.
+	 * 
+	 * @return Number of retries
+	 */
+	public long getRetries() {
+		return retries.sum();
+	}
+
+	/**
+	 * Gets the number of calls that failed because they didn't complete before their deadline.
+	 * 
+	 * @return Number of calls that exceeded their deadline
+	 */
+	public long getDeadlineExceeded() {
+		return deadlineExceeded.sum();
+	}
+
+	/**
+	 * Gets the current state of the circuit breaker.
+	 * 
+	 * @return Circuit breaker state, or null if the circuit breaker is disabled
+	 */
+	public CircuitBreaker.State getCircuitBreakerState() {
+		return circuitBreaker != null ? circuitBreaker.getState() : null;
+	}
+
+	/**
+	 * Gets the number of requests of a traffic class holding a slot in its bulkhead.
+	 * 
+	 * @param trafficClass
+	 *            Traffic class
+	 * @return Number of in-flight requests, or -1 if bulkheads are disabled
+	 */
+	public int getBulkheadInFlight(TrafficClass trafficClass) {
+		return bulkheads != null ? bulkheads.get(trafficClass).getInFlight() : -1;
+	}
+
+	/**
+	 * Gets the number of requests of a traffic class waiting for a slot in its bulkhead.
+	 * 
+	 * @param trafficClass
+	 *            Traffic class
+	 * @return Queue depth, 0 if bulkheads are disabled
+	 */
+	public int getBulkheadQueueDepth(TrafficClass trafficClass) {
+		return bulkheads != null ? bulkheads.get(trafficClass).getQueueDepth() : 0;
+	}
+
+	/**
+	 * Gets the number of requests of a traffic class rejected because its bulkhead's queue was full.
+	 * 
+	 * @param trafficClass
+	 *            Traffic class
+	 * @return Number of rejected requests, 0 if bulkheads are disabled
+	 */
+	public long getBulkheadRejections(TrafficClass trafficClass) {
+		return bulkheads != null ? bulkheads.get(trafficClass).getRejections() : 0L;
+	}
+
+	/**
+	 * Gets the number of requests dispatched by the priority scheduler that haven't completed.
+	 * 
+	 * @return Number of in-flight requests, or -1 if priority scheduling is disabled
+	 */
+	public int getSchedulerInFlight() {
+		return priorityScheduler != null ? priorityScheduler.getInFlight() : -1;
+	}
+
+	/**
+	 * Gets the number of requests of a priority waiting to be dispatched by the priority scheduler.
+	 * 
+	 * @param priority
+	 *            Request priority
+	 * @return Queue depth, 0 if priority scheduling is disabled
+	 */
+	public int getSchedulerQueueDepth(RequestPriority priority) {
+		return priorityScheduler != null ? priorityScheduler.getQueueDepth(priority) : 0;
+	}
+
+	/**
+	 * Gets a percentile of the time recent requests of a priority waited to be dispatched by the priority scheduler.
+	 * 
+	 * @param priority
+	 *            Request priority
+	 * @param percentile
+	 *            Percentile between 0 and 100
+	 * @return Wait time in milliseconds, or -1 if priority scheduling is disabled or no request of the priority has
+	 *         been dispatched
+	 */
+	public double getSchedulerWaitMillis(RequestPriority priority, double percentile) {
+		long waitNanos = priorityScheduler != null ? priorityScheduler.getWaitTimePercentile(priority, percentile)
+				: -1L;
+		return waitNanos >= 0 ? waitNanos / 1000000.0 : -1.0;
+	}
+
+	/**
+	 * Gets the mean time requests of a priority waited to be dispatched by the priority scheduler.
+	 * 
+	 * @param priority
+	 *            Request priority
+	 * @return Mean wait time in milliseconds, 0 if priority scheduling is disabled or no request of the priority has
+	 *         been dispatched
+	 */
+	public double getSchedulerMeanWaitMillis(RequestPriority priority) {
+		return priorityScheduler != null ? priorityScheduler.getMeanWaitTime(priority) / 1000000.0 : 0.0;
+	}
+
+	/**
+	 * Gets the size of compressed request bodies before they were compressed.
+	 * 
+	 * @return Bytes before compression, 0 if compression is disabled
+	 */
+	public long getRequestBytesUncompressed() {
+		return compressionStats != null ? compressionStats.getRequestBytesUncompressed() : 0L;
+	}
+
+	/**
+	 * Gets the size of compressed request bodies as sent.
+	 * 
+	 * @return Bytes after compression, 0 if compression is disabled
+	 */
+	public long getRequestBytesCompressed() {
+		return compressionStats != null ? compressionStats.getRequestBytesCompressed() : 0L;
+	}
+
+	/**
+	 * Gets the size of compressed response bodies as received.
+	 * 
+	 * @return Bytes before decompression, 0 if compression is disabled
+	 */
+	public long getResponseBytesCompressed() {
+		return compressionStats != null ? compressionStats.getResponseBytesCompressed() : 0L;
+	}
+
+	/**
+	 * Gets the size of compressed response bodies after they were decompressed.
+	 * 
+	 * @return Bytes after decompression, 0 if compression is disabled
+	 */
+	public long getResponseBytesUncompressed() {
+		return compressionStats != null ? compressionStats.getResponseBytesUncompressed() : 0L;
+	}
+
+	void incrementRetries() {
+		retries.increment();
+	}
+
+	void incrementDeadlineExceeded() {
+		deadlineExceeded.increment();
+	}
+
+	void incrementHedgeableRequests() {
+		hedgeableRequests.increment();
+	}
+
+	void incrementHedgedRequests() {
+		hedgedRequests.increment();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(String.format(
+				"DoiServiceMetrics [concurrencyLimit=%d, inFlightRequests=%d, concurrencyQueueDepth=%d, coalescedRequests=%d, hedgedRequests=%d, hedgeRate=%.3f, retries=%d, deadlineExceeded=%d, circuitBreakerState=%s",
+				getConcurrencyLimit(), getInFlightRequests(), getConcurrencyQueueDepth(), getCoalescedRequests(),
+				getHedgedRequests(), getHedgeRate(), getRetries(), getDeadlineExceeded(), getCircuitBreakerState()));
+		if (bulkheads != null) {
+			for (TrafficClass trafficClass : TrafficClass.values()) {
+				sb.append(String.format(", %sBulkhead=[inFlight=%d, queueDepth=%d, rejections=%d]", trafficClass,
+						getBulkheadInFlight(trafficClass), getBulkheadQueueDepth(trafficClass),
+						getBulkheadRejections(trafficClass)));
+			}
+		}
+		if (priorityScheduler != null) {
+			for (RequestPriority priority : RequestPriority.values()) {
+				sb.append(String.format(", %sScheduler=[queueDepth=%d, meanWaitMillis=%.3f, p99WaitMillis=%.3f]",
+						priority, getSchedulerQueueDepth(priority), getSchedulerMeanWaitMillis(priority),
+						getSchedulerWaitMillis(priority, 99.0)));
+			}
+		}
+		if (compressionStats != null) {
+			sb.append(String.format(
+					", compression=[requestBytesUncompressed=%d, requestBytesCompressed=%d, responseBytesCompressed=%d, responseBytesUncompressed=%d]",
+					getRequestBytesUncompressed(), getRequestBytesCompressed(), getResponseBytesCompressed(),
+					getResponseBytesUncompressed()));
+		}
+		return sb.append("]").toString();
+	}
+}
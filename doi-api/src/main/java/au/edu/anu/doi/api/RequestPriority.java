@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api;
+
+/**
+ * Priority of requests submitted to the DOI service. When priority scheduling is enabled, interactive requests are
+ * dispatched ahead of queued bulk requests.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public enum RequestPriority {
+	/**
+	 * Requests a user is waiting on, such as a curator minting a single DOI
+	 */
+	INTERACTIVE,
+
+	/**
+	 * Requests of background and batch jobs
+	 */
+	BULK;
+
+	@Override
+	public String toString() {
+		return super.toString().toLowerCase();
+	}
+}
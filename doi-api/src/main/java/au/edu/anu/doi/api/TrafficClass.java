@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api;
+
+import au.edu.anu.doi.api.DoiServiceEventListener.DoiServiceEventType;
+
+/**
+ * Classes of requests isolated from each other by bulkheads, so that one class saturating the client doesn't starve
+ * the others.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public enum TrafficClass {
+	/**
+	 * Metadata retrieval
+	 */
+	READ,
+
+	/**
+	 * Requests that change DOIs: mint, update, activate and deactivate
+	 */
+	WRITE,
+
+	/**
+	 * Service status checks
+	 */
+	STATUS;
+
+	/**
+	 * Gets the traffic class of a type of request.
+	 * 
+	 * @param requestType
+	 *            Request type
+	 * @return Traffic class
+	 */
+	public static TrafficClass of(DoiServiceEventType requestType) {
+		switch (requestType) {
+		case GET_METADATA:
+			return READ;
+		case SERVICE_STATUS:
+			return STATUS;
+		default:
+			return WRITE;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return super.toString().toLowerCase();
+	}
+}
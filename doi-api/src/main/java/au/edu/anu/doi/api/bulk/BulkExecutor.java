@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.bulk;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import au.edu.anu.doi.api.concurrent.Futures;
+
+/**
+ * Executes an asynchronous operation over a stream of requests keeping at most a fixed number of them in flight. The
+ * input is read lazily, one item per free slot, so it is never materialised in full. The result of each item is passed
+ * to a {@link BulkResultHandler} as soon as it completes; the slot is only freed once the handler returns so a slow
+ * handler also throttles submission.
+ * 
+ * @author Rahul Khanna
+ *
+ * @param <R>
+ *            Type of request
+ * @param <T>
+ *            Type of response
+ */
+public class BulkExecutor<R, T> {
+	private static final Logger LOGGER = LoggerFactory.getLogger(BulkExecutor.class);
+
+	private final Function<R, CompletableFuture<T>> operation;
+	private final BulkOptions options;
+
+	public BulkExecutor(Function<R, CompletableFuture<T>> operation, BulkOptions options) {
+		Objects.requireNonNull(operation);
+		Objects.requireNonNull(options);
+		this.operation = operation;
+		this.options = options;
+	}
+
+	/**
+	 * Submits each request and blocks until all have completed and their results have been handled.
+	 * 
+	 * @param requests
+	 *            Requests to submit
+	 * @param handler
+	 *            Handler receiving the result of each request
+	 * @return Summary of the results
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for a free slot. Requests already submitted continue to completion.
+	 * @throws RuntimeException
+	 *             if reading the requests fails. Thrown once the results of the requests already submitted have been
+	 *             handled.
+	 */
+	public BulkSummary execute(Iterable<R> requests, BulkResultHandler<R, T> handler) throws InterruptedException {
+		Objects.requireNonNull(requests);
+		Objects.requireNonNull(handler);
+
+		final int maxInFlight = options.getMaxInFlight();
+		final Semaphore slots = new Semaphore(maxInFlight);
+		final AtomicLong succeeded = new AtomicLong();
+		final AtomicLong failed = new AtomicLong();
+		final Object handlerLock = new Object();
+		long submitted = 0;
+		long startTime = System.nanoTime();
+
+		Iterator<R> requestIter = requests.iterator();
+		boolean awaitInFlight = true;
+		try {
+			while (true) {
+				// only read the next request once there is a free slot for it
+				slots.acquire();
+				boolean slotTaken = false;
+				try {
+					if (!requestIter.hasNext()) {
+						break;
+					}
+					R request = requestIter.next();
+					submitted++;
+					CompletableFuture<T> respFuture;
+					try {
+						respFuture = operation.apply(request);
+					} catch (RuntimeException e) {
+						respFuture = new CompletableFuture<>();
+						respFuture.completeExceptionally(e);
+					}
+					respFuture.whenComplete((resp, throwable) -> {
+						try {
+							BulkResult<R, T> result;
+							if (throwable == null) {
+								succeeded.incrementAndGet();
+								result = new BulkResult<>(request, resp, null);
+							} else {
+								failed.incrementAndGet();
+								result = new BulkResult<>(request, null, Futures.toDoiException(throwable));
+							}
+							synchronized (handlerLock) {
+								handler.onResult(result);
+							}
+						} catch (RuntimeException e) {
+							LOGGER.error("Bulk result handler failed for request {}", request, e);
+						} finally {
+							slots.release();
+						}
+					});
+					slotTaken = true;
+				} finally {
+					if (!slotTaken) {
+						slots.release();
+					}
+				}
+			}
+
+			// all slots free once every submitted request has been handled
+			slots.acquire(maxInFlight);
+			slots.release(maxInFlight);
+			awaitInFlight = false;
+		} catch (InterruptedException e) {
+			awaitInFlight = false;
+			throw e;
+		} finally {
+			if (awaitInFlight) {
+				// reading the requests failed. The results of those already submitted are handled before the failure
+				// is passed on
+				slots.acquireUninterruptibly(maxInFlight);
+				slots.release(maxInFlight);
+			}
+		}
+
+		BulkSummary summary = new BulkSummary(submitted, succeeded.get(), failed.get(),
+				(System.nanoTime() - startTime) / 1000000L);
+		LOGGER.debug("Bulk operation completed: {}", summary);
+		return summary;
+	}
+}
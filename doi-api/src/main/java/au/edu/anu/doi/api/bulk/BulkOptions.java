@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.bulk;
+
+/**
+ * Options controlling the execution of a bulk operation.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public class BulkOptions {
+	public static final int DEFAULT_MAX_IN_FLIGHT = 8;
+
+	private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+	/**
+	 * Sets the maximum number of requests submitted but not yet completed at any time. Reading of the input is paused
+	 * while this many requests are in flight.
+	 * 
+	 * @param maxInFlight
+	 *            Maximum number of in-flight requests, at least 1
+	 * @return this
+	 */
+	public BulkOptions maxInFlight(int maxInFlight) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("maxInFlight must be at least 1");
+		}
+		this.maxInFlight = maxInFlight;
+		return this;
+	}
+
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.bulk;
+
+import au.edu.anu.doi.api.DoiException;
+
+/**
+ * Outcome of a single item of a bulk operation. Either the response or the exception is set.
+ * 
+ * @author Rahul Khanna
+ *
+ * @param <R>
+ *            Type of request
+ * @param <T>
+ *            Type of response
+ */
+public class BulkResult<R, T> {
+	private final R request;
+	private final T response;
+	private final DoiException exception;
+
+	public BulkResult(R request, T response, DoiException exception) {
+		this.request = request;
+		this.response = response;
+		this.exception = exception;
+	}
+
+	public R getRequest() {
+		return request;
+	}
+
+	public T getResponse() {
+		return response;
+	}
+
+	public DoiException getException() {
+		return exception;
+	}
+
+	public boolean isSuccess() {
+		return exception == null;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("BulkResult [request=%s, response=%s, exception=%s]", request, response, exception);
+	}
+}
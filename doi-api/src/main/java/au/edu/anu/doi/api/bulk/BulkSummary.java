@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.bulk;
+
+/**
+ * Summary of a completed bulk operation.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public class BulkSummary {
+	private final long submitted;
+	private final long succeeded;
+	private final long failed;
+	private final long elapsedMillis;
+
+	public BulkSummary(long submitted, long succeeded, long failed, long elapsedMillis) {
+		this.submitted = submitted;
+		this.succeeded = succeeded;
+		this.failed = failed;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	public long getSubmitted() {
+		return submitted;
+	}
+
+	public long getSucceeded() {
+		return succeeded;
+	}
+
+	public long getFailed() {
+		return failed;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("BulkSummary [submitted=%d, succeeded=%d, failed=%d, elapsedMillis=%d]", submitted,
+				succeeded, failed, elapsedMillis);
+	}
+}
@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.bulk;
+
+import java.util.Objects;
+
+/**
+ * A single item of a bulk mint: the URL the new DOI will resolve to and its metadata document.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public class MintRequest {
+	private final String url;
+	private final String resourceDoc;
+
+	public MintRequest(String url, String resourceDoc) {
+		Objects.requireNonNull(url);
+		Objects.requireNonNull(resourceDoc);
+		this.url = url;
+		this.resourceDoc = resourceDoc;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public String getResourceDoc() {
+		return resourceDoc;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("MintRequest [url=%s]", url);
+	}
+}
@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of concurrent requests to a limit that adapts to the health of the DOI service using additive
+ * increase, multiplicative decrease (AIMD). While the latency of successful requests stays close to its moving average
+ * and the limit is being used, the limit grows by about one every {@code limit} requests. A timeout, connection
+ * failure, 5xx response or a latency spike shrinks the limit by {@code backoffRatio}.
+ * <p>
+ * Permits are acquired asynchronously. Requests that can't be admitted immediately wait in a FIFO queue and are
+ * admitted as permits are released.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public class AdaptiveConcurrencyLimiter {
+	private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+	public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+	public static final double DEFAULT_LATENCY_TOLERANCE = 2.0;
+
+	private static final double LATENCY_SMOOTHING = 0.05;
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final double backoffRatio;
+	private final double latencyTolerance;
+
+	private final Deque<CompletableFuture<Permit>> waiters = new ArrayDeque<>();
+	private double limit;
+	private int inFlight;
+	private double smoothedLatencyNanos = -1.0;
+
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+		this(initialLimit, minLimit, maxLimit, DEFAULT_BACKOFF_RATIO, DEFAULT_LATENCY_TOLERANCE);
+	}
+
+	/**
+	 * @param initialLimit
+	 *            Initial concurrency limit
+	 * @param minLimit
+	 *            Minimum concurrency limit, at least 1
+	 * @param maxLimit
+	 *            Maximum concurrency limit
+	 * @param backoffRatio
+	 *            Factor, between 0 and 1, the limit is multiplied by when a request is dropped
+	 * @param latencyTolerance
+	 *            Multiple of the average latency above which a response is treated as a latency spike
+	 */
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+			double latencyTolerance) {
+		if (minLimit < 1 || maxLimit < minLimit) {
+			throw new IllegalArgumentException(
+					String.format("Invalid concurrency limits: min %d, max %d", minLimit, maxLimit));
+		}
+		if (backoffRatio <= 0.0 || backoffRatio >= 1.0) {
+			throw new IllegalArgumentException("backoffRatio must be between 0 and 1");
+		}
+		if (latencyTolerance <= 1.0) {
+			throw new IllegalArgumentException("latencyTolerance must be greater than 1");
+		}
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.backoffRatio = backoffRatio;
+		this.latencyTolerance = latencyTolerance;
+		this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+	}
+
+	/**
+	 * Acquires a permit to submit a request. The returned future completes once the request can be submitted.
+	 * Cancelling the returned future while queued removes it from the queue. The permit must be released by calling
+	 * exactly one of its methods once the request has completed.
+	 * 
+	 * @return Future completed with a permit
+	 */
+	public CompletableFuture<Permit> acquire() {
+		CompletableFuture<Permit> permitFuture = new CompletableFuture<>();
+		synchronized (this) {
+			if (!waiters.isEmpty() || inFlight >= (int) limit) {
+				waiters.addLast(permitFuture);
+				permitFuture.whenComplete((permit, throwable) -> {
+					if (permitFuture.isCancelled()) {
+						removeWaiter(permitFuture);
+					}
+				});
+				return permitFuture;
+			}
+			inFlight++;
+		}
+		permitFuture.complete(new Permit());
+		return permitFuture;
+	}
+
+	/**
+	 * Gets the current concurrency limit.
+	 * 
+	 * @return Concurrency limit
+	 */
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	/**
+	 * Gets the number of requests currently holding a permit.
+	 * 
+	 * @return Number of in-flight requests
+	 */
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * Gets the number of requests waiting for a permit.
+	 * 
+	 * @return Queue depth
+	 */
+	public synchronized int getQueueDepth() {
+		return waiters.size();
+	}
+
+	private synchronized void removeWaiter(CompletableFuture<Permit> waiter) {
+		waiters.remove(waiter);
+	}
+
+	private synchronized void onSuccess(long latencyNanos) {
+		if (smoothedLatencyNanos < 0) {
+			smoothedLatencyNanos = latencyNanos;
+		}
+		if (latencyNanos > smoothedLatencyNanos * latencyTolerance) {
+			decreaseLimit();
+		} else if (inFlight * 2 >= limit) {
+			// only grow the limit if it's actually being used
+			limit = Math.min(maxLimit, limit + 1.0 / limit);
+		}
+		smoothedLatencyNanos += (latencyNanos - smoothedLatencyNanos) * LATENCY_SMOOTHING;
+	}
+
+	private synchronized void onDropped() {
+		decreaseLimit();
+	}
+
+	private void decreaseLimit() {
+		double prevLimit = limit;
+		limit = Math.max(minLimit, limit * backoffRatio);
+		if ((int) prevLimit != (int) limit) {
+			LOGGER.debug("Concurrency limit decreased from {} to {}", (int) prevLimit, (int) limit);
+		}
+	}
+
+	/**
+	 * Frees the slot of a released permit and admits as many waiting requests as the current limit allows.
+	 */
+	private void releaseSlot() {
+		List<CompletableFuture<Permit>> admitted = new ArrayList<>();
+		synchronized (this) {
+			inFlight--;
+			while (!waiters.isEmpty() && inFlight < (int) limit) {
+				admitted.add(waiters.pollFirst());
+				inFlight++;
+			}
+		}
+		// complete outside the lock as dependent stages run synchronously
+		for (CompletableFuture<Permit> waiter : admitted) {
+			Permit permit = new Permit();
+			if (!waiter.complete(permit)) {
+				// waiter was cancelled while queued
+				permit.ignore();
+			}
+		}
+	}
+
+	/**
+	 * Permit to submit a single request. The outcome of the request is reported by calling one of the methods.
+	 */
+	public class Permit {
+		private volatile long startNanos = System.nanoTime();
+		private final AtomicBoolean released = new AtomicBoolean(false);
+
+		/**
+		 * Restarts the latency measurement, for a request that waited for something else after the permit was granted,
+		 * so that the wait isn't sampled as latency of the service.
+		 */
+		public void restartTimer() {
+			startNanos = System.nanoTime();
+		}
+
+		/**
+		 * Reports that the request completed normally, sampling its latency.
+		 */
+		public void success() {
+			if (released.compareAndSet(false, true)) {
+				onSuccess(System.nanoTime() - startNanos);
+				releaseSlot();
+			}
+		}
+
+		/**
+		 * Reports that the request timed out, failed to connect or was rejected by an overloaded service.
+		 */
+		public void dropped() {
+			if (released.compareAndSet(false, true)) {
+				onDropped();
+				releaseSlot();
+			}
+		}
+
+		/**
+		 * Releases the permit without affecting the limit, for example when the request wasn't submitted.
+		 */
+		public void ignore() {
+			if (released.compareAndSet(false, true)) {
+				releaseSlot();
+			}
+		}
+	}
+}
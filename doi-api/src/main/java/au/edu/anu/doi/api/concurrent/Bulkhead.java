@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import au.edu.anu.doi.api.BulkheadFullException;
+import au.edu.anu.doi.api.RequestPriority;
+
+/**
+ * Bounds the number of concurrent requests of one class and the number queued behind them. A request that finds all
+ * slots taken waits in a FIFO queue for its priority, and a freed slot goes to a waiting interactive request ahead of
+ * bulk requests, weighted as by {@link PriorityScheduler} so that bulk requests aren't starved. If the queue for the
+ * request's priority is also full the request is rejected immediately, so a saturated class fails fast instead of
+ * accumulating an unbounded backlog, and a backlog of bulk requests doesn't cause interactive requests to be
+ * rejected.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public class Bulkhead {
+
+	private final String name;
+	private final int maxConcurrent;
+	private final int maxQueued;
+
+	private final PriorityWaitQueue<CompletableFuture<Permit>> waiters;
+	private final LongAdder rejections = new LongAdder();
+	private int inFlight;
+
+	/**
+	 * @param name
+	 *            Name of the bulkhead, used in exception messages
+	 * @param maxConcurrent
+	 *            Maximum number of requests holding a permit, at least 1
+	 * @param maxQueued
+	 *            Maximum number of requests of each priority waiting for a permit, 0 to reject requests when no slot
+	 *            is free
+	 * @param interactiveWeight
+	 *            Number of interactive requests given a freed slot for each bulk request while both are waiting, at
+	 *            least 1
+	 */
+	public Bulkhead(String name, int maxConcurrent, int maxQueued, int interactiveWeight) {
+		if (maxConcurrent < 1) {
+			throw new IllegalArgumentException("maxConcurrent must be at least 1");
+		}
+		if (maxQueued < 0) {
+			throw new IllegalArgumentException("maxQueued must not be negative");
+		}
+		this.name = name;
+		this.maxConcurrent = maxConcurrent;
+		this.maxQueued = maxQueued;
+		this.waiters = new PriorityWaitQueue<>(interactiveWeight);
+	}
+
+	/**
+	 * Acquires a permit for a request of the specified priority. The returned future completes once a slot is free, or
+	 * exceptionally with a {@link BulkheadFullException} if the queue for the priority is full. Cancelling the
+	 * returned future while queued removes it from the queue. The permit must be released once the request has
+	 * completed.
+	 * 
+	 * @param priority
+	 *            Priority of the request
+	 * @return Future completed with a permit
+	 */
+	public CompletableFuture<Permit> acquire(RequestPriority priority) {
+		CompletableFuture<Permit> permitFuture = new CompletableFuture<>();
+		synchronized (this) {
+			if (waiters.isEmpty() && inFlight < maxConcurrent) {
+				inFlight++;
+			} else if (waiters.size(priority) < maxQueued) {
+				waiters.add(priority, permitFuture);
+				permitFuture.whenComplete((permit, throwable) -> {
+					if (permitFuture.isCancelled()) {
+						removeWaiter(priority, permitFuture);
+					}
+				});
+				return permitFuture;
+			} else {
+				rejections.increment();
+				return Futures.failedFuture(new BulkheadFullException(String.format(
+						"Bulkhead %s is full: %d in flight, %d %s requests queued", name, inFlight,
+						waiters.size(priority), priority)));
+			}
+		}
+		permitFuture.complete(new Permit());
+		return permitFuture;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return Number of requests holding a permit
+	 */
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * @return Number of requests waiting for a permit
+	 */
+	public synchronized int getQueueDepth() {
+		int queueDepth = 0;
+		for (RequestPriority priority : RequestPriority.values()) {
+			queueDepth += waiters.size(priority);
+		}
+		return queueDepth;
+	}
+
+	/**
+	 * @param priority
+	 *            Priority
+	 * @return Number of requests of the priority waiting for a permit
+	 */
+	public synchronized int getQueueDepth(RequestPriority priority) {
+		return waiters.size(priority);
+	}
+
+	/**
+	 * @return Number of requests rejected because the queue was full
+	 */
+	public long getRejections() {
+		return rejections.sum();
+	}
+
+	private synchronized void removeWaiter(RequestPriority priority, CompletableFuture<Permit> waiter) {
+		waiters.remove(priority, waiter);
+	}
+
+	private void releaseSlot() {
+		CompletableFuture<Permit> next;
+		synchronized (this) {
+			next = waiters.poll();
+			if (next == null) {
+				inFlight--;
+				return;
+			}
+		}
+		// the slot passes to the next waiter, completed outside the lock as dependent stages run synchronously
+		Permit permit = new Permit();
+		if (!next.complete(permit)) {
+			permit.release();
+		}
+	}
+
+	/**
+	 * Permit to submit a single request.
+	 */
+	public class Permit {
+		private final AtomicBoolean released = new AtomicBoolean(false);
+
+		/**
+		 * Releases the permit. Subsequent calls have no effect.
+		 */
+		public void release() {
+			if (released.compareAndSet(false, true)) {
+				releaseSlot();
+			}
+		}
+	}
+}
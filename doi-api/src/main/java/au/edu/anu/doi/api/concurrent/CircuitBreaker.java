@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stops requests from being sent to a service that is failing. The outcomes of the most recent {@code windowSize}
+ * requests are tracked and once the ratio of failures in the window reaches {@code failureRateThreshold}, the breaker
+ * opens and requests are rejected without being sent.
+ * <p>
+ * The first request checked after {@code openDuration} moves the breaker to half-open and starts a single probe. If
+ * the probe succeeds the breaker closes and requests are sent again, otherwise it stays open for another
+ * {@code openDuration}. Requests are rejected while the probe is running, including the one that started it. Nothing is
+ * scheduled while the breaker is open, so a breaker that's no longer used doesn't keep probing the service.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public class CircuitBreaker {
+	private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	@FunctionalInterface
+	public interface StateListener {
+		void stateChanged(State previousState, State newState);
+	}
+
+	private final int minCalls;
+	private final double failureRateThreshold;
+	private final long openDurationNanos;
+	private final Supplier<CompletableFuture<Boolean>> probe;
+	private final StateListener stateListener;
+
+	// ring buffer of the most recent outcomes, true for a failure
+	private final boolean[] window;
+	private int windowIndex;
+	private int windowCount;
+	private int windowFailures;
+	private volatile State state = State.CLOSED;
+	private volatile long openedAtNanos;
+
+	/**
+	 * @param windowSize
+	 *            Number of most recent requests whose outcomes are considered
+	 * @param minCalls
+	 *            Minimum number of outcomes in the window before the breaker can open
+	 * @param failureRateThreshold
+	 *            Ratio of failures, between 0 and 1, in the window at which the breaker opens
+	 * @param openDuration
+	 *            Time the breaker stays open before probing the service
+	 * @param unit
+	 *            Unit of openDuration
+	 * @param probe
+	 *            Checks the health of the service, bypassing the breaker. Completes with true if the service is
+	 *            healthy
+	 * @param stateListener
+	 *            Notified of each state change, or null
+	 */
+	public CircuitBreaker(int windowSize, int minCalls, double failureRateThreshold, long openDuration, TimeUnit unit,
+			Supplier<CompletableFuture<Boolean>> probe, StateListener stateListener) {
+		if (windowSize < 1) {
+			throw new IllegalArgumentException("windowSize must be at least 1");
+		}
+		if (failureRateThreshold <= 0.0 || failureRateThreshold > 1.0) {
+			throw new IllegalArgumentException("failureRateThreshold must be greater than 0 and at most 1");
+		}
+		this.window = new boolean[windowSize];
+		this.minCalls = Math.max(1, Math.min(minCalls, windowSize));
+		this.failureRateThreshold = failureRateThreshold;
+		this.openDurationNanos = unit.toNanos(openDuration);
+		this.probe = probe;
+		this.stateListener = stateListener;
+	}
+
+	/**
+	 * Checks whether a request may be sent. If the breaker has been open for {@code openDuration}, a probe is started.
+	 * 
+	 * @return true if the breaker is closed
+	 */
+	public boolean allowRequest() {
+		State current = state;
+		if (current == State.CLOSED) {
+			return true;
+		}
+		if (current == State.OPEN && System.nanoTime() - openedAtNanos >= openDurationNanos) {
+			startProbe();
+		}
+		return false;
+	}
+
+	/**
+	 * Records a request that received a response from a healthy service.
+	 */
+	public void onSuccess() {
+		record(false);
+	}
+
+	/**
+	 * Records a request that failed because of the service, for example a timeout, a connection failure or a 5xx
+	 * response.
+	 */
+	public void onFailure() {
+		record(true);
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	private void record(boolean failure) {
+		synchronized (this) {
+			// outcomes of requests sent before the breaker opened are irrelevant
+			if (state != State.CLOSED) {
+				return;
+			}
+			if (windowCount == window.length) {
+				if (window[windowIndex]) {
+					windowFailures--;
+				}
+			} else {
+				windowCount++;
+			}
+			window[windowIndex] = failure;
+			if (failure) {
+				windowFailures++;
+			}
+			windowIndex = (windowIndex + 1) % window.length;
+
+			if (!failure || windowCount < minCalls || (double) windowFailures / windowCount < failureRateThreshold) {
+				return;
+			}
+			LOGGER.warn("{} of the last {} requests failed, opening circuit breaker", windowFailures, windowCount);
+			open();
+		}
+		stateChanged(State.CLOSED, State.OPEN);
+	}
+
+	private void open() {
+		openedAtNanos = System.nanoTime();
+		state = State.OPEN;
+	}
+
+	private void startProbe() {
+		synchronized (this) {
+			// another request may have started the probe
+			if (state != State.OPEN) {
+				return;
+			}
+			state = State.HALF_OPEN;
+		}
+		stateChanged(State.OPEN, State.HALF_OPEN);
+
+		CompletableFuture<Boolean> probeResult;
+		try {
+			probeResult = probe.get();
+		} catch (RuntimeException e) {
+			probeResult = Futures.failedFuture(e);
+		}
+		probeResult.whenComplete((healthy, throwable) -> {
+			if (throwable == null && Boolean.TRUE.equals(healthy)) {
+				synchronized (this) {
+					windowIndex = 0;
+					windowCount = 0;
+					windowFailures = 0;
+					state = State.CLOSED;
+				}
+				LOGGER.info("Circuit breaker probe succeeded, closing circuit breaker");
+				stateChanged(State.HALF_OPEN, State.CLOSED);
+			} else {
+				synchronized (this) {
+					open();
+				}
+				LOGGER.warn("Circuit breaker probe failed, circuit breaker remains open", throwable);
+				stateChanged(State.HALF_OPEN, State.OPEN);
+			}
+		});
+	}
+
+	private void stateChanged(State previousState, State newState) {
+		if (stateListener == null) {
+			return;
+		}
+		try {
+			stateListener.stateChanged(previousState, newState);
+		} catch (RuntimeException e) {
+			LOGGER.warn("Circuit breaker state listener failed", e);
+		}
+	}
+}
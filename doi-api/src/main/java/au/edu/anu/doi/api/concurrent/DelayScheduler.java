@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules delayed completion of futures on a single shared daemon thread. Stages dependent on the returned futures
+ * must not block.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public final class DelayScheduler {
+
+	private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "doi-delay-scheduler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private DelayScheduler() {
+	}
+
+	/**
+	 * Creates a future that completes after the specified delay.
+	 * 
+	 * @param delay
+	 *            Delay
+	 * @param unit
+	 *            Unit of the delay
+	 * @return Future completed after the delay
+	 */
+	public static CompletableFuture<Void> delay(long delay, TimeUnit unit) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		if (delay <= 0) {
+			future.complete(null);
+		} else {
+			SCHEDULER.schedule(() -> future.complete(null), delay, unit);
+		}
+		return future;
+	}
+
+	/**
+	 * Runs a task after the specified delay.
+	 * 
+	 * @param task
+	 *            Task to run. Must not block
+	 * @param delay
+	 *            Delay
+	 * @param unit
+	 *            Unit of the delay
+	 */
+	public static void schedule(Runnable task, long delay, TimeUnit unit) {
+		SCHEDULER.schedule(task, delay, unit);
+	}
+}
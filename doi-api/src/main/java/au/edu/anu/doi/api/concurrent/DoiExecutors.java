@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates executors for each {@link ExecutionMode}. Virtual threads are looked up reflectively so this class compiles
+ * and runs on the Java 8 baseline.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public final class DoiExecutors {
+	private static final Logger LOGGER = LoggerFactory.getLogger(DoiExecutors.class);
+
+	private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findVirtualThreadFactoryMethod();
+
+	private DoiExecutors() {
+	}
+
+	/**
+	 * Checks if the running JVM supports virtual threads.
+	 * 
+	 * @return true if virtual threads are available
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+	}
+
+	/**
+	 * Resolves the execution mode that can actually be used in the running JVM.
+	 * 
+	 * @param requested
+	 *            Requested execution mode
+	 * @return The requested mode, or {@link ExecutionMode#PLATFORM} if virtual threads were requested but aren't
+	 *         supported
+	 */
+	public static ExecutionMode effectiveMode(ExecutionMode requested) {
+		if (requested == ExecutionMode.VIRTUAL && !isVirtualThreadSupported()) {
+			LOGGER.warn("Virtual threads require Java 21 or later. Running on {}, falling back to platform threads.",
+					System.getProperty("java.version"));
+			return ExecutionMode.PLATFORM;
+		}
+		return requested;
+	}
+
+	/**
+	 * Creates an executor that starts a new virtual thread for each task.
+	 * 
+	 * @return Virtual thread per task executor
+	 * @throws UnsupportedOperationException
+	 *             if virtual threads aren't supported by the running JVM
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor() {
+		if (!isVirtualThreadSupported()) {
+			throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+		}
+		try {
+			return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Method findVirtualThreadFactoryMethod() {
+		// virtual threads were a preview feature before Java 21
+		if (getJavaFeatureVersion() < 21) {
+			return null;
+		}
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private static int getJavaFeatureVersion() {
+		String specVersion = System.getProperty("java.specification.version", "1.8");
+		if (specVersion.startsWith("1.")) {
+			specVersion = specVersion.substring(2);
+		}
+		try {
+			return Integer.parseInt(specVersion);
+		} catch (NumberFormatException e) {
+			return 8;
+		}
+	}
+}
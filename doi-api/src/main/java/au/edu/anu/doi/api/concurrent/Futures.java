@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import au.edu.anu.doi.api.DoiException;
+
+/**
+ * Helper methods for working with futures of DOI requests.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public final class Futures {
+
+	private Futures() {
+	}
+
+	/**
+	 * Creates a future that is already completed exceptionally.
+	 * 
+	 * @param throwable
+	 *            Cause of the failure, wrapped in a DoiException if it isn't one
+	 * @return Failed future
+	 */
+	public static <T> CompletableFuture<T> failedFuture(Throwable throwable) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(toDoiException(throwable));
+		return future;
+	}
+
+	/**
+	 * Unwraps the exception a future was completed with and converts it into a DoiException.
+	 * 
+	 * @param throwable
+	 *            Exception, possibly wrapped in a CompletionException or ExecutionException
+	 * @return The DoiException itself, or a DoiException with the unwrapped exception as its cause
+	 */
+	public static DoiException toDoiException(Throwable throwable) {
+		while ((throwable instanceof CompletionException || throwable instanceof ExecutionException)
+				&& throwable.getCause() != null) {
+			throwable = throwable.getCause();
+		}
+		if (throwable instanceof DoiException) {
+			return (DoiException) throwable;
+		}
+		return new DoiException(throwable);
+	}
+
+	/**
+	 * Composes two asynchronous steps like {@link CompletableFuture#thenCompose(Function)}, except that cancelling the
+	 * returned future also cancels whichever step is outstanding.
+	 * 
+	 * @param source
+	 *            First step
+	 * @param fn
+	 *            Function creating the second step from the result of the first
+	 * @return Future completed with the result of the second step
+	 */
+	public static <T, U> CompletableFuture<U> thenComposeCancellable(CompletableFuture<T> source,
+			Function<? super T, CompletableFuture<U>> fn) {
+		CompletableFuture<U> result = new CompletableFuture<>();
+		source.whenComplete((value, throwable) -> {
+			if (throwable != null) {
+				result.completeExceptionally(throwable);
+				return;
+			}
+			CompletableFuture<U> next;
+			try {
+				next = fn.apply(value);
+			} catch (Throwable e) {
+				result.completeExceptionally(e);
+				return;
+			}
+			next.whenComplete((nextValue, nextThrowable) -> {
+				if (nextThrowable != null) {
+					result.completeExceptionally(nextThrowable);
+				} else {
+					result.complete(nextValue);
+				}
+			});
+			propagateCancellation(result, next);
+		});
+		propagateCancellation(result, source);
+		return result;
+	}
+
+	/**
+	 * Cancels a future when another is cancelled.
+	 * 
+	 * @param from
+	 *            Future whose cancellation is propagated
+	 * @param to
+	 *            Future to cancel
+	 */
+	public static void propagateCancellation(CompletableFuture<?> from, Future<?> to) {
+		from.whenComplete((value, throwable) -> {
+			if (from.isCancelled()) {
+				to.cancel(true);
+			}
+		});
+	}
+
+	/**
+	 * Creates a future that completes like another, or exceptionally if the other doesn't complete within a timeout.
+	 * On timeout the other future is cancelled before the returned future completes, so that whatever the other
+	 * future's stages hold on cancellation is released by the time the caller sees the timeout. Cancelling the
+	 * returned future cancels the other future.
+	 * 
+	 * @param future
+	 *            Future to time out
+	 * @param timeout
+	 *            Timeout
+	 * @param unit
+	 *            Unit of timeout
+	 * @param timeoutException
+	 *            Supplies the exception the returned future completes with on timeout
+	 * @return Future completed with the result of future, or with the timeout exception
+	 */
+	public static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, long timeout, TimeUnit unit,
+			Supplier<? extends Throwable> timeoutException) {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		AtomicBoolean timedOut = new AtomicBoolean(false);
+		future.whenComplete((value, throwable) -> {
+			if (throwable == null) {
+				result.complete(value);
+			} else if (!timedOut.get()) {
+				result.completeExceptionally(throwable);
+			}
+		});
+		propagateCancellation(result, future);
+		if (!future.isDone()) {
+			DelayScheduler.schedule(() -> {
+				if (!result.isDone() && timedOut.compareAndSet(false, true)) {
+					future.cancel(true);
+					result.completeExceptionally(timeoutException.get());
+				}
+			}, timeout, unit);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.concurrent;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent latency samples of an operation and computes percentiles over them. The sorted view used for
+ * percentiles is only rebuilt after a number of new samples have been recorded, so querying a percentile for every
+ * request is cheap.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public class LatencyTracker {
+
+	private final long[] samples;
+	private final int minSamples;
+	private final int resortInterval;
+
+	private int count;
+	private int next;
+	private int samplesSinceSort;
+	private long[] sorted;
+
+	/**
+	 * @param capacity
+	 *            Number of most recent samples kept
+	 * @param minSamples
+	 *            Number of samples required before percentiles are reported
+	 */
+	public LatencyTracker(int capacity, int minSamples) {
+		if (capacity < 1 || minSamples < 1 || minSamples > capacity) {
+			throw new IllegalArgumentException("Invalid capacity or minimum samples");
+		}
+		this.samples = new long[capacity];
+		this.minSamples = minSamples;
+		this.resortInterval = Math.max(1, capacity / 16);
+	}
+
+	public synchronized void record(long latencyNanos) {
+		samples[next] = latencyNanos;
+		next = (next + 1) % samples.length;
+		if (count < samples.length) {
+			count++;
+		}
+		samplesSinceSort++;
+	}
+
+	/**
+	 * Gets a percentile of the recorded latencies.
+	 * 
+	 * @param percentile
+	 *            Percentile between 0 and 100
+	 * @return Latency in nanoseconds at the percentile, or -1 if fewer than the minimum number of samples have been
+	 *         recorded
+	 */
+	public synchronized long getPercentile(double percentile) {
+		if (count < minSamples) {
+			return -1L;
+		}
+		if (sorted == null || sorted.length != count || samplesSinceSort >= resortInterval) {
+			sorted = Arrays.copyOf(samples, count);
+			Arrays.sort(sorted);
+			samplesSinceSort = 0;
+		}
+		int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+	}
+
+	public synchronized int getSampleCount() {
+		return count;
+	}
+}
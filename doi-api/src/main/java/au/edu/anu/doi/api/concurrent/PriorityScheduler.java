@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.concurrent;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import au.edu.anu.doi.api.RequestPriority;
+
+/**
+ * Dispatches requests of different priorities through a fixed number of slots. When all slots are taken requests wait
+ * in a FIFO queue per priority, and a freed slot goes to the oldest interactive request ahead of any bulk request.
+ * Bulk requests aren't starved by a steady stream of interactive requests: after {@code interactiveWeight} interactive
+ * requests have been dispatched while bulk requests were waiting, the next slot goes to a bulk request.
+ * <p>
+ * The time each request waits for a slot is recorded per priority.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public class PriorityScheduler {
+
+	private static final int WAIT_TIME_SAMPLES = 1000;
+
+	private final int maxConcurrent;
+
+	private final PriorityWaitQueue<Waiter> waiters;
+	private final Map<RequestPriority, LatencyTracker> waitTimes = new EnumMap<>(RequestPriority.class);
+	private final Map<RequestPriority, LongAdder> totalWaitNanos = new EnumMap<>(RequestPriority.class);
+	private final Map<RequestPriority, LongAdder> dispatched = new EnumMap<>(RequestPriority.class);
+	private int inFlight;
+
+	/**
+	 * @param maxConcurrent
+	 *            Maximum number of requests holding a permit, at least 1
+	 * @param interactiveWeight
+	 *            Number of interactive requests dispatched for each bulk request while both are waiting, at least 1
+	 */
+	public PriorityScheduler(int maxConcurrent, int interactiveWeight) {
+		if (maxConcurrent < 1) {
+			throw new IllegalArgumentException("maxConcurrent must be at least 1");
+		}
+		this.maxConcurrent = maxConcurrent;
+		this.waiters = new PriorityWaitQueue<>(interactiveWeight);
+		for (RequestPriority priority : RequestPriority.values()) {
+			waitTimes.put(priority, new LatencyTracker(WAIT_TIME_SAMPLES, 1));
+			totalWaitNanos.put(priority, new LongAdder());
+			dispatched.put(priority, new LongAdder());
+		}
+	}
+
+	/**
+	 * Acquires a permit for a request of the specified priority. The returned future completes once the request is
+	 * dispatched. Cancelling the returned future while queued removes it from the queue. The permit must be released
+	 * once the request has completed.
+	 * 
+	 * @param priority
+	 *            Priority of the request
+	 * @return Future completed with a permit
+	 */
+	public CompletableFuture<Permit> acquire(RequestPriority priority) {
+		long enqueuedNanos = System.nanoTime();
+		CompletableFuture<Permit> permitFuture = new CompletableFuture<>();
+		synchronized (this) {
+			if (inFlight >= maxConcurrent || !waiters.isEmpty()) {
+				Waiter waiter = new Waiter(priority, permitFuture, enqueuedNanos);
+				waiters.add(priority, waiter);
+				permitFuture.whenComplete((permit, throwable) -> {
+					if (permitFuture.isCancelled()) {
+						removeWaiter(waiter);
+					}
+				});
+				return permitFuture;
+			}
+			inFlight++;
+		}
+		recordWait(priority, enqueuedNanos);
+		permitFuture.complete(new Permit());
+		return permitFuture;
+	}
+
+	/**
+	 * @return Number of requests holding a permit
+	 */
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * @param priority
+	 *            Priority
+	 * @return Number of requests of the priority waiting for a permit
+	 */
+	public synchronized int getQueueDepth(RequestPriority priority) {
+		return waiters.size(priority);
+	}
+
+	/**
+	 * Gets a percentile of the time recent requests of a priority waited for a permit.
+	 * 
+	 * @param priority
+	 *            Priority
+	 * @param percentile
+	 *            Percentile between 0 and 100
+	 * @return Wait time in nanoseconds, or -1 if no request of the priority has been dispatched
+	 */
+	public long getWaitTimePercentile(RequestPriority priority, double percentile) {
+		return waitTimes.get(priority).getPercentile(percentile);
+	}
+
+	/**
+	 * Gets the mean time requests of a priority waited for a permit.
+	 * 
+	 * @param priority
+	 *            Priority
+	 * @return Mean wait time in nanoseconds, 0 if no request of the priority has been dispatched
+	 */
+	public double getMeanWaitTime(RequestPriority priority) {
+		long count = dispatched.get(priority).sum();
+		return count > 0 ? (double) totalWaitNanos.get(priority).sum() / count : 0.0;
+	}
+
+	/**
+	 * @param priority
+	 *            Priority
+	 * @return Number of requests of the priority dispatched
+	 */
+	public long getDispatched(RequestPriority priority) {
+		return dispatched.get(priority).sum();
+	}
+
+	private synchronized void removeWaiter(Waiter waiter) {
+		waiters.remove(waiter.priority, waiter);
+	}
+
+	private void recordWait(RequestPriority priority, long enqueuedNanos) {
+		long waitNanos = System.nanoTime() - enqueuedNanos;
+		waitTimes.get(priority).record(waitNanos);
+		totalWaitNanos.get(priority).add(waitNanos);
+		dispatched.get(priority).increment();
+	}
+
+	private void releaseSlot() {
+		Waiter next;
+		synchronized (this) {
+			next = waiters.poll();
+			if (next == null) {
+				inFlight--;
+				return;
+			}
+		}
+		// the slot passes to the next waiter, completed outside the lock as dependent stages run synchronously
+		Permit permit = new Permit();
+		if (next.permitFuture.complete(permit)) {
+			recordWait(next.priority, next.enqueuedNanos);
+		} else {
+			permit.release();
+		}
+	}
+
+	private static class Waiter {
+		private final RequestPriority priority;
+		private final CompletableFuture<Permit> permitFuture;
+		private final long enqueuedNanos;
+
+		private Waiter(RequestPriority priority, CompletableFuture<Permit> permitFuture, long enqueuedNanos) {
+			this.priority = priority;
+			this.permitFuture = permitFuture;
+			this.enqueuedNanos = enqueuedNanos;
+		}
+	}
+
+	/**
+	 * Permit to submit a single request.
+	 */
+	public class Permit {
+		private final AtomicBoolean released = new AtomicBoolean(false);
+
+		/**
+		 * Releases the permit. Subsequent calls have no effect.
+		 */
+		public void release() {
+			if (released.compareAndSet(false, true)) {
+				releaseSlot();
+			}
+		}
+	}
+}
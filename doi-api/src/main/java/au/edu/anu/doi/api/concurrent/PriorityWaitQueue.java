@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+
+import au.edu.anu.doi.api.RequestPriority;
+
+/**
+ * Queues waiters in a FIFO queue per priority. The oldest interactive waiter is polled ahead of any bulk waiter, but
+ * bulk waiters aren't starved by a steady stream of interactive ones: after {@code interactiveWeight} interactive
+ * waiters have been polled while bulk waiters were waiting, the next waiter polled is a bulk waiter.
+ * <p>
+ * Not thread-safe. Callers hold their own lock while using it.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+class PriorityWaitQueue<T> {
+
+	private final int interactiveWeight;
+	private final Map<RequestPriority, Deque<T>> queues = new EnumMap<>(RequestPriority.class);
+	// interactive waiters polled in a row while bulk waiters were waiting
+	private int interactiveStreak;
+
+	/**
+	 * @param interactiveWeight
+	 *            Number of interactive waiters polled for each bulk waiter while both are waiting, at least 1
+	 */
+	PriorityWaitQueue(int interactiveWeight) {
+		if (interactiveWeight < 1) {
+			throw new IllegalArgumentException("interactiveWeight must be at least 1");
+		}
+		this.interactiveWeight = interactiveWeight;
+		for (RequestPriority priority : RequestPriority.values()) {
+			queues.put(priority, new ArrayDeque<>());
+		}
+	}
+
+	void add(RequestPriority priority, T waiter) {
+		queues.get(priority).addLast(waiter);
+	}
+
+	void remove(RequestPriority priority, T waiter) {
+		queues.get(priority).remove(waiter);
+	}
+
+	int size(RequestPriority priority) {
+		return queues.get(priority).size();
+	}
+
+	boolean isEmpty() {
+		for (Deque<T> queue : queues.values()) {
+			if (!queue.isEmpty()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the next waiter.
+	 * 
+	 * @return Waiter, or null if no waiter is queued
+	 */
+	T poll() {
+		Deque<T> interactive = queues.get(RequestPriority.INTERACTIVE);
+		Deque<T> bulk = queues.get(RequestPriority.BULK);
+		if (!interactive.isEmpty() && (bulk.isEmpty() || interactiveStreak < interactiveWeight)) {
+			if (!bulk.isEmpty()) {
+				interactiveStreak++;
+			}
+			return interactive.pollFirst();
+		}
+		interactiveStreak = 0;
+		return bulk.pollFirst();
+	}
+}
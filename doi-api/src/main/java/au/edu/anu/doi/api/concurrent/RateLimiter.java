@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.concurrent;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Rate limits requests per key, such as the App ID a request is submitted under, using a {@link TokenBucket} for each
+ * key.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public class RateLimiter {
+
+	private final double permitsPerSecond;
+	private final int burst;
+	private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+	/**
+	 * @param permitsPerSecond
+	 *            Sustained number of requests per second allowed for each key
+	 * @param burst
+	 *            Number of requests for each key that may be submitted at once
+	 */
+	public RateLimiter(double permitsPerSecond, int burst) {
+		// validate eagerly rather than on first use of a key
+		new TokenBucket(permitsPerSecond, burst);
+		this.permitsPerSecond = permitsPerSecond;
+		this.burst = burst;
+	}
+
+	public boolean tryAcquire(String key) {
+		return getBucket(key).tryAcquire();
+	}
+
+	public void acquire(String key) throws InterruptedException {
+		getBucket(key).acquire();
+	}
+
+	public CompletableFuture<Void> acquireAsync(String key) {
+		return getBucket(key).acquireAsync();
+	}
+
+	private TokenBucket getBucket(String key) {
+		Objects.requireNonNull(key);
+		TokenBucket bucket = buckets.get(key);
+		if (bucket == null) {
+			bucket = buckets.computeIfAbsent(key, k -> new TokenBucket(permitsPerSecond, burst));
+		}
+		return bucket;
+	}
+}
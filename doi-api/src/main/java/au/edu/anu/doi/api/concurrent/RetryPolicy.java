@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.concurrent;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Number of attempts and backoff between attempts of a retried request. The backoff before retry {@code n} is drawn
+ * uniformly from {@code [0, min(maxDelay, baseDelay * 2^(n - 1))]} (full jitter) so that clients that failed together
+ * don't retry together.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public class RetryPolicy {
+
+	private final int maxAttempts;
+	private final long baseDelayNanos;
+	private final long maxDelayNanos;
+
+	/**
+	 * @param maxAttempts
+	 *            Maximum number of attempts including the first, at least 1
+	 * @param baseDelay
+	 *            Upper bound of the backoff before the first retry
+	 * @param maxDelay
+	 *            Upper bound of the backoff before any retry
+	 * @param unit
+	 *            Unit of baseDelay and maxDelay
+	 */
+	public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay, TimeUnit unit) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("maxAttempts must be at least 1");
+		}
+		if (baseDelay < 0 || maxDelay < baseDelay) {
+			throw new IllegalArgumentException("Delays must satisfy 0 <= baseDelay <= maxDelay");
+		}
+		this.maxAttempts = maxAttempts;
+		this.baseDelayNanos = unit.toNanos(baseDelay);
+		this.maxDelayNanos = unit.toNanos(maxDelay);
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * Checks whether another attempt may be made.
+	 * 
+	 * @param attempt
+	 *            Number of attempts made so far
+	 * @return true if attempt is less than the maximum number of attempts
+	 */
+	public boolean canRetry(int attempt) {
+		return attempt < maxAttempts;
+	}
+
+	/**
+	 * Gets a randomised backoff to wait before the next attempt.
+	 * 
+	 * @param attempt
+	 *            Number of attempts made so far, at least 1
+	 * @return Backoff in nanoseconds
+	 */
+	public long getBackoffNanos(int attempt) {
+		int shift = Math.min(attempt - 1, 62);
+		long ceiling = baseDelayNanos > (maxDelayNanos >> shift) ? maxDelayNanos : baseDelayNanos << shift;
+		return ceiling > 0 ? ThreadLocalRandom.current().nextLong(ceiling + 1) : 0L;
+	}
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket implemented as a generic cell rate algorithm. The only state is the theoretical arrival time
+ * of the next request, updated with compare-and-set. A full bucket allows a burst of {@code burst} requests after
+ * which requests are admitted at {@code permitsPerSecond}.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public class TokenBucket {
+
+	private final long intervalNanos;
+	private final long burstToleranceNanos;
+	private final AtomicLong theoreticalArrivalNanos;
+
+	/**
+	 * @param permitsPerSecond
+	 *            Sustained rate at which tokens are added
+	 * @param burst
+	 *            Capacity of the bucket, at least 1
+	 */
+	public TokenBucket(double permitsPerSecond, int burst) {
+		if (permitsPerSecond <= 0.0) {
+			throw new IllegalArgumentException("permitsPerSecond must be positive");
+		}
+		if (burst < 1) {
+			throw new IllegalArgumentException("burst must be at least 1");
+		}
+		this.intervalNanos = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+		this.burstToleranceNanos = intervalNanos * burst;
+		this.theoreticalArrivalNanos = new AtomicLong(System.nanoTime());
+	}
+
+	/**
+	 * Takes a token if one is available without waiting.
+	 * 
+	 * @return true if a token was taken
+	 */
+	public boolean tryAcquire() {
+		while (true) {
+			long now = System.nanoTime();
+			long tat = theoreticalArrivalNanos.get();
+			long newTat = later(tat, now) + intervalNanos;
+			if (newTat - now > burstToleranceNanos) {
+				return false;
+			}
+			if (theoreticalArrivalNanos.compareAndSet(tat, newTat)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Reserves the next token, which may only become available in the future.
+	 * 
+	 * @return Nanoseconds to wait before the reserved token can be used, 0 if it can be used immediately
+	 */
+	public long reserve() {
+		while (true) {
+			long now = System.nanoTime();
+			long tat = theoreticalArrivalNanos.get();
+			long newTat = later(tat, now) + intervalNanos;
+			if (theoreticalArrivalNanos.compareAndSet(tat, newTat)) {
+				return Math.max(0L, newTat - now - burstToleranceNanos);
+			}
+		}
+	}
+
+	/**
+	 * Takes a token, blocking until one is available.
+	 * 
+	 * @throws InterruptedException
+	 *             if interrupted while waiting. The token remains consumed.
+	 */
+	public void acquire() throws InterruptedException {
+		long waitNanos = reserve();
+		if (waitNanos > 0) {
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+		}
+	}
+
+	/**
+	 * Takes a token without blocking the calling thread.
+	 * 
+	 * @return Future completed once the token is available
+	 */
+	public CompletableFuture<Void> acquireAsync() {
+		return DelayScheduler.delay(reserve(), TimeUnit.NANOSECONDS);
+	}
+
+	private static long later(long nanos1, long nanos2) {
+		// System.nanoTime values must be compared by their difference
+		return nanos1 - nanos2 > 0 ? nanos1 : nanos2;
+	}
+}
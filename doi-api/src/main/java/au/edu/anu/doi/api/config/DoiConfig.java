@@ -21,6 +21,14 @@
 
 package au.edu.anu.doi.api.config;
 
+import au.edu.anu.doi.api.DoiService;
+import au.edu.anu.doi.api.RequestPriority;
+import au.edu.anu.doi.api.TrafficClass;
+import au.edu.anu.doi.api.concurrent.ExecutionMode;
+import au.edu.anu.doi.api.http.ContentCoding;
+import au.edu.anu.doi.api.http.DoiTransports;
+import au.edu.anu.doi.api.http.TransportType;
+
 /**
  * This interface defines the public methods to be defined in a DoiConfig object that provides configuration data to
  * {@link DoiClient} required for interacting with the DOI minting service.
@@ -63,4 +71,406 @@ public interface DoiConfig {
 	 * @return Shared secret if available, null otherwise
 	 */
 	public String getSharedSecret();
+
+	/**
+	 * Gets the kind of threads on which asynchronous and bulk requests are executed.
+	 * 
+	 * @return Execution mode. Defaults to {@link ExecutionMode#PLATFORM}
+	 */
+	public default ExecutionMode getExecutionMode() {
+		return ExecutionMode.PLATFORM;
+	}
+
+	/**
+	 * Gets the HTTP client implementation used by transports created by
+	 * {@link DoiTransports#newTransport(DoiConfig)}.
+	 * 
+	 * @return Transport type. Defaults to {@link TransportType#JERSEY}
+	 */
+	public default TransportType getTransportType() {
+		return TransportType.JERSEY;
+	}
+
+	/**
+	 * Gets whether the number of concurrent requests is limited by an adaptive concurrency limiter.
+	 * 
+	 * @return true if adaptive concurrency limiting is enabled. Defaults to false
+	 */
+	public default boolean isAdaptiveConcurrencyEnabled() {
+		return false;
+	}
+
+	/**
+	 * Gets the concurrency limit the adaptive concurrency limiter starts with.
+	 * 
+	 * @return Initial concurrency limit. Defaults to 10
+	 */
+	public default int getInitialConcurrencyLimit() {
+		return 10;
+	}
+
+	/**
+	 * Gets the lowest concurrency limit the adaptive concurrency limiter shrinks to.
+	 * 
+	 * @return Minimum concurrency limit. Defaults to 1
+	 */
+	public default int getMinConcurrencyLimit() {
+		return 1;
+	}
+
+	/**
+	 * Gets the highest concurrency limit the adaptive concurrency limiter grows to.
+	 * 
+	 * @return Maximum concurrency limit. Defaults to 100
+	 */
+	public default int getMaxConcurrencyLimit() {
+		return 100;
+	}
+
+	/**
+	 * Gets the number of requests per second allowed for each App ID. Requests beyond the rate wait until they can be
+	 * submitted.
+	 * 
+	 * @return Requests per second, 0 or less if requests aren't rate limited. Defaults to 0
+	 */
+	public default double getRateLimit() {
+		return 0.0;
+	}
+
+	/**
+	 * Gets the number of requests for each App ID that may be submitted at once before the rate limit applies.
+	 * 
+	 * @return Burst size. Defaults to 1
+	 */
+	public default int getRateLimitBurst() {
+		return 1;
+	}
+
+	/**
+	 * Gets whether read-only requests (service status and metadata) are hedged: if no response has been received
+	 * after a percentile of recent latencies, an identical request is submitted and the first response is used.
+	 * 
+	 * @return true if read-only requests are hedged. Defaults to false
+	 */
+	public default boolean isHedgingEnabled() {
+		return false;
+	}
+
+	/**
+	 * Gets the percentile of recent latencies after which a hedged request is submitted.
+	 * 
+	 * @return Percentile between 0 and 100. Defaults to 95
+	 */
+	public default double getHedgingPercentile() {
+		return 95.0;
+	}
+
+	/**
+	 * Gets the minimum time to wait for a response before submitting a hedged request.
+	 * 
+	 * @return Minimum delay in milliseconds. Defaults to 10
+	 */
+	public default long getHedgingMinDelayMillis() {
+		return 10L;
+	}
+
+	/**
+	 * Gets whether requests are rejected without being sent while the DOI service is failing.
+	 * 
+	 * @return true if the circuit breaker is enabled. Defaults to false
+	 */
+	public default boolean isCircuitBreakerEnabled() {
+		return false;
+	}
+
+	/**
+	 * Gets the number of most recent requests whose outcomes the circuit breaker considers.
+	 * 
+	 * @return Sliding window size. Defaults to 20
+	 */
+	public default int getCircuitBreakerWindowSize() {
+		return 20;
+	}
+
+	/**
+	 * Gets the minimum number of requests in the sliding window before the circuit breaker can open.
+	 * 
+	 * @return Minimum number of requests. Defaults to 10
+	 */
+	public default int getCircuitBreakerMinCalls() {
+		return 10;
+	}
+
+	/**
+	 * Gets the ratio of failed requests in the sliding window at which the circuit breaker opens.
+	 * 
+	 * @return Failure ratio between 0 and 1. Defaults to 0.5
+	 */
+	public default double getCircuitBreakerFailureRateThreshold() {
+		return 0.5;
+	}
+
+	/**
+	 * Gets the time the circuit breaker stays open before the next request checks the service status.
+	 * 
+	 * @return Open duration in milliseconds. Defaults to 30000
+	 */
+	public default long getCircuitBreakerOpenDurationMillis() {
+		return 30000L;
+	}
+
+	/**
+	 * Gets the time the service status check of a half-open circuit breaker may take. A check that takes longer is
+	 * abandoned and counts as a failure, so the breaker opens again rather than rejecting requests until the check
+	 * completes.
+	 * 
+	 * @return Probe timeout in milliseconds, 0 for no limit. Defaults to 10000
+	 */
+	public default long getCircuitBreakerProbeTimeoutMillis() {
+		return 10000L;
+	}
+
+	/**
+	 * Gets the maximum number of attempts, including the first, made for a request that fails with a connection error,
+	 * a 5xx response or a 429 response. Service status, metadata and update requests are retried; mint requests only
+	 * if {@link #isMintRetryEnabled()}. Retries are off unless an implementation turns them on.
+	 * 
+	 * @return Maximum number of attempts. 1 disables retries. Defaults to 1
+	 */
+	public default int getRetryMaxAttempts() {
+		return 1;
+	}
+
+	/**
+	 * Gets the upper bound of the randomised backoff before the first retry. The bound doubles with each retry.
+	 * 
+	 * @return Base delay in milliseconds. Defaults to 100
+	 */
+	public default long getRetryBaseDelayMillis() {
+		return 100L;
+	}
+
+	/**
+	 * Gets the upper bound of the randomised backoff before any retry.
+	 * 
+	 * @return Maximum delay in milliseconds. Defaults to 5000
+	 */
+	public default long getRetryMaxDelayMillis() {
+		return 5000L;
+	}
+
+	/**
+	 * Gets whether failed mint requests are retried. A mint request that reached the DOI service before failing may
+	 * have minted a DOI, so retrying it can mint a duplicate.
+	 * 
+	 * @return true if mint requests are retried. Defaults to false
+	 */
+	public default boolean isMintRetryEnabled() {
+		return false;
+	}
+
+	/**
+	 * Gets the path of the mint ledger, a journal of mint requests used to avoid minting duplicate DOIs when a mint
+	 * request is retried or resubmitted after its outcome was lost.
+	 * 
+	 * @return Path of the mint ledger file, or null to disable the mint ledger. Defaults to null
+	 */
+	public default String getMintLedgerFile() {
+		return null;
+	}
+
+	/**
+	 * Gets the time allowed for establishing a connection to the DOI service. Applied to clients created by
+	 * {@link au.edu.anu.doi.api.http.DoiClientFactory}.
+	 * 
+	 * @return Connect timeout in milliseconds, 0 for no timeout. Defaults to 10000
+	 */
+	public default long getConnectTimeoutMillis() {
+		return 10000L;
+	}
+
+	/**
+	 * Gets the time allowed between bytes when reading a response from the DOI service. Applied to clients created by
+	 * {@link au.edu.anu.doi.api.http.DoiClientFactory}.
+	 * 
+	 * @return Read timeout in milliseconds, 0 for no timeout. Defaults to 60000
+	 */
+	public default long getReadTimeoutMillis() {
+		return 60000L;
+	}
+
+	/**
+	 * Gets the default deadline of each DoiService call, covering building the request, retries, network time and
+	 * processing the response. Overridden by {@link au.edu.anu.doi.api.DoiService#withTimeout(long,
+	 * java.util.concurrent.TimeUnit)}.
+	 * 
+	 * @return Total timeout in milliseconds, 0 for no deadline. Defaults to 0
+	 */
+	public default long getRequestTimeoutMillis() {
+		return 0L;
+	}
+
+	/**
+	 * Gets whether each {@link TrafficClass} is limited to its own pool of concurrent requests and queue, so that one
+	 * class saturating the client doesn't starve the others.
+	 * 
+	 * @return true if bulkheads are enabled. Defaults to false
+	 */
+	public default boolean isBulkheadEnabled() {
+		return false;
+	}
+
+	/**
+	 * Gets the maximum number of concurrent requests of a traffic class.
+	 * 
+	 * @param trafficClass
+	 *            Traffic class
+	 * @return Maximum concurrent requests. Defaults to 20 for reads, 10 for writes and 2 for status checks
+	 */
+	public default int getBulkheadMaxConcurrent(TrafficClass trafficClass) {
+		switch (trafficClass) {
+		case READ:
+			return 20;
+		case WRITE:
+			return 10;
+		default:
+			return 2;
+		}
+	}
+
+	/**
+	 * Gets the maximum number of requests of a traffic class and priority waiting for a free slot. Further requests of
+	 * that priority are rejected. Interactive and bulk requests are queued separately, so a full queue of bulk
+	 * requests doesn't cause interactive requests to be rejected, and a freed slot goes to an interactive request
+	 * ahead of queued bulk requests, weighted by {@link #getSchedulerInteractiveWeight()}.
+	 * 
+	 * @param trafficClass
+	 *            Traffic class
+	 * @return Maximum queued requests of each priority. Defaults to 100 for reads, 1000 for writes and 10 for status
+	 *         checks
+	 */
+	public default int getBulkheadMaxQueued(TrafficClass trafficClass) {
+		switch (trafficClass) {
+		case READ:
+			return 100;
+		case WRITE:
+			return 1000;
+		default:
+			return 10;
+		}
+	}
+
+	/**
+	 * Gets whether requests are dispatched by priority, so that interactive requests are submitted ahead of queued bulk
+	 * requests. See {@link DoiService#withPriority(RequestPriority)}.
+	 * 
+	 * @return true if priority scheduling is enabled. Defaults to false
+	 */
+	public default boolean isPrioritySchedulingEnabled() {
+		return false;
+	}
+
+	/**
+	 * Gets the maximum number of concurrent requests dispatched by the priority scheduler. Requests beyond this wait in
+	 * a queue per priority.
+	 * 
+	 * @return Maximum concurrent requests. Defaults to 10
+	 */
+	public default int getSchedulerMaxConcurrent() {
+		return 10;
+	}
+
+	/**
+	 * Gets the number of interactive requests dispatched for each bulk request while both are waiting, so that bulk
+	 * requests aren't starved. Also applies to the queues of bulkheads.
+	 * 
+	 * @return Interactive requests per bulk request. Defaults to 4
+	 */
+	public default int getSchedulerInteractiveWeight() {
+		return 4;
+	}
+
+	/**
+	 * Checks if transports created by {@link DoiTransports#newTransport(DoiConfig)} reuse connections from a
+	 * {@link au.edu.anu.doi.api.http.ConnectionPool}.
+	 * 
+	 * @return true if connections are pooled. Defaults to false
+	 */
+	public default boolean isConnectionPoolEnabled() {
+		return false;
+	}
+
+	/**
+	 * Gets the maximum number of open connections in the connection pool.
+	 * 
+	 * @return Maximum connections. Defaults to 50
+	 */
+	public default int getConnectionPoolMaxTotal() {
+		return 50;
+	}
+
+	/**
+	 * Gets the maximum number of open connections to a single host in the connection pool.
+	 * 
+	 * @return Maximum connections per host. Defaults to 20
+	 */
+	public default int getConnectionPoolMaxPerRoute() {
+		return 20;
+	}
+
+	/**
+	 * Gets the time after which an idle pooled connection is closed.
+	 * 
+	 * @return Idle time in milliseconds, 0 to keep idle connections open. Defaults to 30000
+	 */
+	public default long getConnectionPoolIdleEvictionMillis() {
+		return 30000L;
+	}
+
+	/**
+	 * Gets the time for which a pooled connection is kept alive and reused after it's opened.
+	 * 
+	 * @return Keep-alive time in milliseconds, 0 to reuse connections indefinitely. Defaults to 60000
+	 */
+	public default long getConnectionKeepAliveMillis() {
+		return 60000L;
+	}
+
+	/**
+	 * Gets the coding the metadata documents in mint and update requests are compressed with. Only use compression if
+	 * the DOI service, or a gateway in front of it, accepts compressed request bodies.
+	 * 
+	 * @return Request content coding. Defaults to {@link ContentCoding#IDENTITY}, uncompressed
+	 */
+	public default ContentCoding getRequestContentCoding() {
+		return ContentCoding.IDENTITY;
+	}
+
+	/**
+	 * Checks if requests ask for gzip or deflate compressed responses, which are decoded transparently.
+	 * 
+	 * @return true if compressed responses are accepted. Defaults to false
+	 */
+	public default boolean isResponseCompressionEnabled() {
+		return false;
+	}
+
+	/**
+	 * Checks if clients warm up their DoiService with {@link au.edu.anu.doi.api.DoiService#warmUp()} before their
+	 * first requests.
+	 * 
+	 * @return true if the DoiService is warmed up. Defaults to false
+	 */
+	public default boolean isWarmUpEnabled() {
+		return false;
+	}
+
+	/**
+	 * Gets the number of connections to the DOI service opened when a DoiService is warmed up.
+	 * 
+	 * @return Connections opened. Defaults to 4
+	 */
+	public default int getWarmUpConnections() {
+		return 4;
+	}
 }
@@ -31,6 +31,11 @@ import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import au.edu.anu.doi.api.TrafficClass;
+import au.edu.anu.doi.api.concurrent.ExecutionMode;
+import au.edu.anu.doi.api.http.ContentCoding;
+import au.edu.anu.doi.api.http.TransportType;
+
 /**
  * This implementation of DoiConfig returns configuration information required by the DOI Client to create and send DOI
  * requests. The configuration values are read from a Properties object passed as a parameter to the constructor. The
@@ -41,6 +46,46 @@ import org.slf4j.LoggerFactory;
  * <li>doi.useTestPrefix <em>Default: true</em></li>
  * <li>doi.debug <em>Default: false</em></li>
  * <li>doi.sharedSecret></li>
+ * <li>doi.executionMode <em>platform | virtual. Default: platform</em></li>
+ * <li>doi.transport <em>jersey | java. Default: jersey</em></li>
+ * <li>doi.concurrency.adaptive <em>Default: false</em></li>
+ * <li>doi.concurrency.initialLimit <em>Default: 10</em></li>
+ * <li>doi.concurrency.minLimit <em>Default: 1</em></li>
+ * <li>doi.concurrency.maxLimit <em>Default: 100</em></li>
+ * <li>doi.rateLimit.permitsPerSecond <em>Default: 0 (unlimited)</em></li>
+ * <li>doi.rateLimit.burst <em>Default: 1</em></li>
+ * <li>doi.hedging.enabled <em>Default: false</em></li>
+ * <li>doi.hedging.percentile <em>Default: 95</em></li>
+ * <li>doi.hedging.minDelayMillis <em>Default: 10</em></li>
+ * <li>doi.circuitBreaker.enabled <em>Default: false</em></li>
+ * <li>doi.circuitBreaker.windowSize <em>Default: 20</em></li>
+ * <li>doi.circuitBreaker.minCalls <em>Default: 10</em></li>
+ * <li>doi.circuitBreaker.failureRateThreshold <em>Default: 0.5</em></li>
+ * <li>doi.circuitBreaker.openDurationMillis <em>Default: 30000</em></li>
+ * <li>doi.circuitBreaker.probeTimeoutMillis <em>Default: 10000</em></li>
+ * <li>doi.retry.maxAttempts <em>Default: 1 (no retries)</em></li>
+ * <li>doi.retry.baseDelayMillis <em>Default: 100</em></li>
+ * <li>doi.retry.maxDelayMillis <em>Default: 5000</em></li>
+ * <li>doi.retry.mint <em>Default: false</em></li>
+ * <li>doi.mint.ledgerFile <em>Default: none</em></li>
+ * <li>doi.timeout.connectMillis <em>Default: 10000</em></li>
+ * <li>doi.timeout.readMillis <em>Default: 60000</em></li>
+ * <li>doi.timeout.requestMillis <em>Default: 0</em></li>
+ * <li>doi.bulkhead.enabled <em>Default: false</em></li>
+ * <li>doi.bulkhead.{read|write|status}.maxConcurrent <em>Default: 20, 10, 2</em></li>
+ * <li>doi.bulkhead.{read|write|status}.maxQueued <em>Default: 100, 1000, 10</em></li>
+ * <li>doi.scheduler.enabled <em>Default: false</em></li>
+ * <li>doi.scheduler.maxConcurrent <em>Default: 10</em></li>
+ * <li>doi.scheduler.interactiveWeight <em>Default: 4</em></li>
+ * <li>doi.pool.enabled <em>Default: false</em></li>
+ * <li>doi.pool.maxTotal <em>Default: 50</em></li>
+ * <li>doi.pool.maxPerRoute <em>Default: 20</em></li>
+ * <li>doi.pool.idleEvictionMillis <em>Default: 30000</em></li>
+ * <li>doi.pool.keepAliveMillis <em>Default: 60000</em></li>
+ * <li>doi.compression.request <em>identity | gzip | deflate. Default: identity</em></li>
+ * <li>doi.compression.response <em>Default: false</em></li>
+ * <li>doi.warmUp.enabled <em>Default: false</em></li>
+ * <li>doi.warmUp.connections <em>Default: 4</em></li>
  * </ul>
  * 
  * @author Rahul Khanna
@@ -100,5 +145,262 @@ public class DoiConfigFile implements DoiConfig {
 		return props.getProperty("doi.sharedSecret");
 	}
 
+	@Override
+	public ExecutionMode getExecutionMode() {
+		return getEnumProperty("doi.executionMode", ExecutionMode.class, DoiConfig.super.getExecutionMode());
+	}
+
+	@Override
+	public TransportType getTransportType() {
+		return getEnumProperty("doi.transport", TransportType.class, DoiConfig.super.getTransportType());
+	}
+
+	@Override
+	public boolean isAdaptiveConcurrencyEnabled() {
+		return Boolean.parseBoolean(props.getProperty("doi.concurrency.adaptive"));
+	}
+
+	@Override
+	public int getInitialConcurrencyLimit() {
+		return getIntProperty("doi.concurrency.initialLimit", DoiConfig.super.getInitialConcurrencyLimit());
+	}
+
+	@Override
+	public int getMinConcurrencyLimit() {
+		return getIntProperty("doi.concurrency.minLimit", DoiConfig.super.getMinConcurrencyLimit());
+	}
+
+	@Override
+	public int getMaxConcurrencyLimit() {
+		return getIntProperty("doi.concurrency.maxLimit", DoiConfig.super.getMaxConcurrencyLimit());
+	}
+
+	@Override
+	public double getRateLimit() {
+		return getDoubleProperty("doi.rateLimit.permitsPerSecond", DoiConfig.super.getRateLimit());
+	}
+
+	@Override
+	public int getRateLimitBurst() {
+		return getIntProperty("doi.rateLimit.burst", DoiConfig.super.getRateLimitBurst());
+	}
+
+	@Override
+	public boolean isHedgingEnabled() {
+		return Boolean.parseBoolean(props.getProperty("doi.hedging.enabled"));
+	}
+
+	@Override
+	public double getHedgingPercentile() {
+		return getDoubleProperty("doi.hedging.percentile", DoiConfig.super.getHedgingPercentile());
+	}
+
+	@Override
+	public long getHedgingMinDelayMillis() {
+		return getLongProperty("doi.hedging.minDelayMillis", DoiConfig.super.getHedgingMinDelayMillis());
+	}
+
+	@Override
+	public boolean isCircuitBreakerEnabled() {
+		return Boolean.parseBoolean(props.getProperty("doi.circuitBreaker.enabled"));
+	}
+
+	@Override
+	public int getCircuitBreakerWindowSize() {
+		return getIntProperty("doi.circuitBreaker.windowSize", DoiConfig.super.getCircuitBreakerWindowSize());
+	}
+
+	@Override
+	public int getCircuitBreakerMinCalls() {
+		return getIntProperty("doi.circuitBreaker.minCalls", DoiConfig.super.getCircuitBreakerMinCalls());
+	}
+
+	@Override
+	public double getCircuitBreakerFailureRateThreshold() {
+		return getDoubleProperty("doi.circuitBreaker.failureRateThreshold",
+				DoiConfig.super.getCircuitBreakerFailureRateThreshold());
+	}
+
+	@Override
+	public long getCircuitBreakerOpenDurationMillis() {
+		return getLongProperty("doi.circuitBreaker.openDurationMillis",
+				DoiConfig.super.getCircuitBreakerOpenDurationMillis());
+	}
 
+	@Override
+	public long getCircuitBreakerProbeTimeoutMillis() {
+		return getLongProperty("doi.circuitBreaker.probeTimeoutMillis",
+				DoiConfig.super.getCircuitBreakerProbeTimeoutMillis());
+	}
+
+	@Override
+	public int getRetryMaxAttempts() {
+		return getIntProperty("doi.retry.maxAttempts", DoiConfig.super.getRetryMaxAttempts());
+	}
+
+	@Override
+	public long getRetryBaseDelayMillis() {
+		return getLongProperty("doi.retry.baseDelayMillis", DoiConfig.super.getRetryBaseDelayMillis());
+	}
+
+	@Override
+	public long getRetryMaxDelayMillis() {
+		return getLongProperty("doi.retry.maxDelayMillis", DoiConfig.super.getRetryMaxDelayMillis());
+	}
+
+	@Override
+	public boolean isMintRetryEnabled() {
+		return Boolean.parseBoolean(props.getProperty("doi.retry.mint"));
+	}
+
+	@Override
+	public String getMintLedgerFile() {
+		String ledgerFile = props.getProperty("doi.mint.ledgerFile");
+		return ledgerFile != null && ledgerFile.trim().length() > 0 ? ledgerFile.trim() : null;
+	}
+
+	@Override
+	public long getConnectTimeoutMillis() {
+		return getLongProperty("doi.timeout.connectMillis", DoiConfig.super.getConnectTimeoutMillis());
+	}
+
+	@Override
+	public long getReadTimeoutMillis() {
+		return getLongProperty("doi.timeout.readMillis", DoiConfig.super.getReadTimeoutMillis());
+	}
+
+	@Override
+	public long getRequestTimeoutMillis() {
+		return getLongProperty("doi.timeout.requestMillis", DoiConfig.super.getRequestTimeoutMillis());
+	}
+
+	@Override
+	public boolean isBulkheadEnabled() {
+		return Boolean.parseBoolean(props.getProperty("doi.bulkhead.enabled"));
+	}
+
+	@Override
+	public int getBulkheadMaxConcurrent(TrafficClass trafficClass) {
+		return getIntProperty("doi.bulkhead." + trafficClass + ".maxConcurrent",
+				DoiConfig.super.getBulkheadMaxConcurrent(trafficClass));
+	}
+
+	@Override
+	public int getBulkheadMaxQueued(TrafficClass trafficClass) {
+		return getIntProperty("doi.bulkhead." + trafficClass + ".maxQueued",
+				DoiConfig.super.getBulkheadMaxQueued(trafficClass));
+	}
+
+	@Override
+	public boolean isPrioritySchedulingEnabled() {
+		return Boolean.parseBoolean(props.getProperty("doi.scheduler.enabled"));
+	}
+
+	@Override
+	public int getSchedulerMaxConcurrent() {
+		return getIntProperty("doi.scheduler.maxConcurrent", DoiConfig.super.getSchedulerMaxConcurrent());
+	}
+
+	@Override
+	public int getSchedulerInteractiveWeight() {
+		return getIntProperty("doi.scheduler.interactiveWeight", DoiConfig.super.getSchedulerInteractiveWeight());
+	}
+
+	@Override
+	public boolean isConnectionPoolEnabled() {
+		return Boolean.parseBoolean(props.getProperty("doi.pool.enabled"));
+	}
+
+	@Override
+	public int getConnectionPoolMaxTotal() {
+		return getIntProperty("doi.pool.maxTotal", DoiConfig.super.getConnectionPoolMaxTotal());
+	}
+
+	@Override
+	public int getConnectionPoolMaxPerRoute() {
+		return getIntProperty("doi.pool.maxPerRoute", DoiConfig.super.getConnectionPoolMaxPerRoute());
+	}
+
+	@Override
+	public long getConnectionPoolIdleEvictionMillis() {
+		return getLongProperty("doi.pool.idleEvictionMillis", DoiConfig.super.getConnectionPoolIdleEvictionMillis());
+	}
+
+	@Override
+	public long getConnectionKeepAliveMillis() {
+		return getLongProperty("doi.pool.keepAliveMillis", DoiConfig.super.getConnectionKeepAliveMillis());
+	}
+
+	@Override
+	public ContentCoding getRequestContentCoding() {
+		return getEnumProperty("doi.compression.request", ContentCoding.class,
+				DoiConfig.super.getRequestContentCoding());
+	}
+
+	@Override
+	public boolean isResponseCompressionEnabled() {
+		return Boolean.parseBoolean(props.getProperty("doi.compression.response"));
+	}
+
+	@Override
+	public boolean isWarmUpEnabled() {
+		return Boolean.parseBoolean(props.getProperty("doi.warmUp.enabled"));
+	}
+
+	@Override
+	public int getWarmUpConnections() {
+		return getIntProperty("doi.warmUp.connections", DoiConfig.super.getWarmUpConnections());
+	}
+
+	private int getIntProperty(String key, int defaultValue) {
+		String value = props.getProperty(key);
+		if (value == null || value.trim().length() == 0) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			LOGGER.warn("Invalid value for {}: {}. Using default {}", key, value, defaultValue);
+			return defaultValue;
+		}
+	}
+
+	private long getLongProperty(String key, long defaultValue) {
+		String value = props.getProperty(key);
+		if (value == null || value.trim().length() == 0) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			LOGGER.warn("Invalid value for {}: {}. Using default {}", key, value, defaultValue);
+			return defaultValue;
+		}
+	}
+
+	private double getDoubleProperty(String key, double defaultValue) {
+		String value = props.getProperty(key);
+		if (value == null || value.trim().length() == 0) {
+			return defaultValue;
+		}
+		try {
+			return Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			LOGGER.warn("Invalid value for {}: {}. Using default {}", key, value, defaultValue);
+			return defaultValue;
+		}
+	}
+
+	private <E extends Enum<E>> E getEnumProperty(String key, Class<E> enumType, E defaultValue) {
+		String value = props.getProperty(key);
+		if (value == null || value.trim().length() == 0) {
+			return defaultValue;
+		}
+		try {
+			return Enum.valueOf(enumType, value.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			LOGGER.warn("Invalid value for {}: {}. Using default {}", key, value, defaultValue);
+			return defaultValue;
+		}
+	}
 }
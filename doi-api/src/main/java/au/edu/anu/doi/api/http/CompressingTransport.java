@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+import javax.ws.rs.core.HttpHeaders;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Transport that compresses the metadata documents sent in request bodies and asks for compressed responses, which
+ * it decodes transparently. Requests and responses are sent and received by another transport. Compressed bodies are
+ * counted in a {@link CompressionStats}.
+ * <p>
+ * Only use request compression with a DOI service, or a gateway in front of it, that accepts compressed request
+ * bodies.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public class CompressingTransport implements DoiTransport {
+
+	static final String ACCEPTED_ENCODINGS = ContentCoding.GZIP + ", " + ContentCoding.DEFLATE;
+
+	private final DoiTransport transport;
+	private final ContentCoding requestCoding;
+	private final boolean acceptCompressedResponses;
+	private final CompressionStats compressionStats;
+
+	/**
+	 * @param transport
+	 *            Transport sending the requests
+	 * @param requestCoding
+	 *            Coding request bodies are compressed with, {@link ContentCoding#IDENTITY} to send them uncompressed
+	 * @param acceptCompressedResponses
+	 *            true to ask for compressed responses
+	 * @param compressionStats
+	 *            Counts of compressed bodies
+	 */
+	public CompressingTransport(DoiTransport transport, ContentCoding requestCoding,
+			boolean acceptCompressedResponses, CompressionStats compressionStats) {
+		this.transport = Objects.requireNonNull(transport);
+		this.requestCoding = Objects.requireNonNull(requestCoding);
+		this.acceptCompressedResponses = acceptCompressedResponses;
+		this.compressionStats = Objects.requireNonNull(compressionStats);
+	}
+
+	@Override
+	public DoiHttpResponse send(DoiHttpRequest request) throws InterruptedException {
+		return new DecodingResponse(transport.send(encode(request)));
+	}
+
+	@Override
+	public CompletableFuture<DoiHttpResponse> sendAsync(DoiHttpRequest request) {
+		return transport.sendAsync(encode(request)).thenApply(DecodingResponse::new);
+	}
+
+	/**
+	 * Closes the transport sending the requests.
+	 */
+	@Override
+	public void close() {
+		transport.close();
+	}
+
+	private DoiHttpRequest encode(DoiHttpRequest request) {
+		return request.withContentCoding(requestCoding, acceptCompressedResponses, compressionStats);
+	}
+
+	/**
+	 * Response whose body is decoded according to its Content-Encoding header.
+	 */
+	private class DecodingResponse implements DoiHttpResponse {
+		private final DoiHttpResponse response;
+		private final ContentCoding contentCoding;
+
+		private DecodingResponse(DoiHttpResponse response) {
+			this.response = response;
+			ContentCoding coding = ContentCoding.fromHeader(response.getHeader(HttpHeaders.CONTENT_ENCODING));
+			// an unsupported coding is left for the caller to handle
+			this.contentCoding = coding != null ? coding : ContentCoding.IDENTITY;
+		}
+
+		@Override
+		public int getStatus() {
+			return response.getStatus();
+		}
+
+		@Override
+		public String getHeader(String name) {
+			return response.getHeader(name);
+		}
+
+		@Override
+		public String readBodyAsString() {
+			if (contentCoding == ContentCoding.IDENTITY) {
+				return response.readBodyAsString();
+			}
+			try (InputStream body = readBody()) {
+				return new String(IOUtils.toByteArray(body), getCharset());
+			} catch (IOException e) {
+				throw new DoiTransportException(e.toString(), e);
+			}
+		}
+
+		@Override
+		public InputStream readBody() {
+			if (contentCoding == ContentCoding.IDENTITY) {
+				return response.readBody();
+			}
+			InputStream body = response.readBody();
+			try {
+				return compressionStats.decodeResponseBody(body, contentCoding);
+			} catch (IOException e) {
+				IOUtils.closeQuietly(body);
+				throw new DoiTransportException(e.toString(), e);
+			}
+		}
+
+		@Override
+		public void close() {
+			response.close();
+		}
+
+		private Charset getCharset() {
+			Charset charset = ResponseBody.charsetOf(response.getHeader(HttpHeaders.CONTENT_TYPE));
+			return charset != null ? charset : StandardCharsets.UTF_8;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.io.input.CountingInputStream;
+
+/**
+ * Counts the bytes of compressed request and response bodies before and after compression, to show how much
+ * compression saves on the wire. Bodies sent or received uncompressed aren't counted. A body is counted when its
+ * stream is closed.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public class CompressionStats {
+
+	private final LongAdder requestBytesUncompressed = new LongAdder();
+	private final LongAdder requestBytesCompressed = new LongAdder();
+	private final LongAdder responseBytesCompressed = new LongAdder();
+	private final LongAdder responseBytesUncompressed = new LongAdder();
+
+	/**
+	 * @return Bytes of compressed request bodies before compression
+	 */
+	public long getRequestBytesUncompressed() {
+		return requestBytesUncompressed.sum();
+	}
+
+	/**
+	 * @return Bytes of compressed request bodies sent
+	 */
+	public long getRequestBytesCompressed() {
+		return requestBytesCompressed.sum();
+	}
+
+	/**
+	 * @return Bytes of compressed response bodies received
+	 */
+	public long getResponseBytesCompressed() {
+		return responseBytesCompressed.sum();
+	}
+
+	/**
+	 * @return Bytes of compressed response bodies after decompression
+	 */
+	public long getResponseBytesUncompressed() {
+		return responseBytesUncompressed.sum();
+	}
+
+	/**
+	 * Encodes a request body, counting its bytes before and after encoding.
+	 */
+	InputStream encodeRequestBody(InputStream body, ContentCoding contentCoding) {
+		CountingInputStream uncompressed = new CountingInputStream(body);
+		CountingInputStream compressed = new CountingInputStream(contentCoding.encode(uncompressed));
+		return new CountedStream(compressed, () -> {
+			requestBytesUncompressed.add(uncompressed.getByteCount());
+			requestBytesCompressed.add(compressed.getByteCount());
+		});
+	}
+
+	/**
+	 * Decodes a response body, counting its bytes before and after decoding.
+	 */
+	InputStream decodeResponseBody(InputStream body, ContentCoding contentCoding) throws IOException {
+		CountingInputStream compressed = new CountingInputStream(body);
+		CountingInputStream uncompressed = new CountingInputStream(contentCoding.decode(compressed));
+		return new CountedStream(uncompressed, () -> {
+			responseBytesCompressed.add(compressed.getByteCount());
+			responseBytesUncompressed.add(uncompressed.getByteCount());
+		});
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"CompressionStats [requestBytesUncompressed=%d, requestBytesCompressed=%d, responseBytesCompressed=%d, responseBytesUncompressed=%d]",
+				getRequestBytesUncompressed(), getRequestBytesCompressed(), getResponseBytesCompressed(),
+				getResponseBytesUncompressed());
+	}
+
+	/**
+	 * Stream that records its byte counts once, when it's closed.
+	 */
+	private static class CountedStream extends FilterInputStream {
+		private final Runnable recorder;
+		private final AtomicBoolean closed = new AtomicBoolean(false);
+
+		private CountedStream(InputStream in, Runnable recorder) {
+			super(in);
+			this.recorder = recorder;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed.compareAndSet(false, true)) {
+				try {
+					super.close();
+				} finally {
+					recorder.run();
+				}
+			}
+		}
+	}
+}
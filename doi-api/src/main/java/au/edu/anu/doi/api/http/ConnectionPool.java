@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.http;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.IdleConnectionEvictor;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import au.edu.anu.doi.api.config.DoiConfig;
+
+/**
+ * Pool of persistent HTTP connections to the DOI service, shared by the requests of a client so that each request
+ * doesn't pay for its own TCP and TLS handshake. Connections idle for longer than the idle eviction time are closed in
+ * the background, and no connection is reused once its keep-alive time has passed. Use
+ * {@link DoiClientFactory#newPooledClient(DoiConfig, ConnectionPool)} to create a client using the pool.
+ * <p>
+ * The pool reports how many connections are leased to requests or available for reuse, how many requests are waiting
+ * for a connection and how long they waited.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public class ConnectionPool implements AutoCloseable {
+
+	private final TimedConnectionManager connectionManager;
+	private final IdleConnectionEvictor idleConnectionEvictor;
+	private final LongAdder connectionWaits = new LongAdder();
+	private final LongAdder connectionWaitNanos = new LongAdder();
+
+	/**
+	 * Creates a connection pool with the limits specified in a DOI configuration.
+	 * 
+	 * @param doiConfig
+	 *            DOI service configuration
+	 */
+	public ConnectionPool(DoiConfig doiConfig) {
+		this(doiConfig.getConnectionPoolMaxTotal(), doiConfig.getConnectionPoolMaxPerRoute(),
+				doiConfig.getConnectionPoolIdleEvictionMillis(), doiConfig.getConnectionKeepAliveMillis(),
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param maxTotal
+	 *            Maximum number of connections, at least 1
+	 * @param maxPerRoute
+	 *            Maximum number of connections to a single host, at least 1
+	 * @param idleEviction
+	 *            Time after which an idle connection is closed, 0 to keep idle connections open
+	 * @param keepAlive
+	 *            Time after which a connection isn't reused, 0 to reuse connections indefinitely
+	 * @param unit
+	 *            Unit of idleEviction and keepAlive
+	 */
+	public ConnectionPool(int maxTotal, int maxPerRoute, long idleEviction, long keepAlive, TimeUnit unit) {
+		if (maxTotal < 1 || maxPerRoute < 1) {
+			throw new IllegalArgumentException(
+					String.format("Invalid connection pool limits: max total %d, max per route %d", maxTotal,
+							maxPerRoute));
+		}
+		// a time to live of 0 or less means connections don't expire
+		this.connectionManager = new TimedConnectionManager(keepAlive > 0 ? keepAlive : -1L, unit);
+		this.connectionManager.setMaxTotal(maxTotal);
+		this.connectionManager.setDefaultMaxPerRoute(Math.min(maxPerRoute, maxTotal));
+		if (idleEviction > 0) {
+			// expired connections are closed as well as idle ones
+			this.idleConnectionEvictor = new IdleConnectionEvictor(connectionManager, r -> {
+				Thread t = new Thread(r, "doi-connection-evictor");
+				t.setDaemon(true);
+				return t;
+			}, idleEviction, unit, idleEviction, unit);
+			this.idleConnectionEvictor.start();
+		} else {
+			this.idleConnectionEvictor = null;
+		}
+	}
+
+	/**
+	 * Gets the connection manager to be used by an Apache HTTP client.
+	 * 
+	 * @return Connection manager
+	 */
+	public HttpClientConnectionManager getConnectionManager() {
+		return connectionManager;
+	}
+
+	/**
+	 * @return Number of connections in use by requests
+	 */
+	public int getLeased() {
+		return connectionManager.getTotalStats().getLeased();
+	}
+
+	/**
+	 * @return Number of idle connections available for reuse
+	 */
+	public int getAvailable() {
+		return connectionManager.getTotalStats().getAvailable();
+	}
+
+	/**
+	 * @return Number of requests waiting for a connection because the pool is at its limit
+	 */
+	public int getPending() {
+		return connectionManager.getTotalStats().getPending();
+	}
+
+	/**
+	 * @return Maximum number of connections
+	 */
+	public int getMaxTotal() {
+		return connectionManager.getMaxTotal();
+	}
+
+	/**
+	 * Gets the number of times a request obtained, or gave up waiting for, a connection from the pool.
+	 * 
+	 * @return Number of connection requests
+	 */
+	public long getConnectionRequests() {
+		return connectionWaits.sum();
+	}
+
+	/**
+	 * Gets the total time requests spent waiting for a connection from the pool.
+	 * 
+	 * @return Total wait time in milliseconds
+	 */
+	public double getTotalConnectionWaitMillis() {
+		return connectionWaitNanos.sum() / 1000000.0;
+	}
+
+	/**
+	 * Gets the mean time requests spent waiting for a connection from the pool.
+	 * 
+	 * @return Mean wait time in milliseconds, 0 if no connection has been requested
+	 */
+	public double getMeanConnectionWaitMillis() {
+		long waits = connectionWaits.sum();
+		return waits > 0 ? connectionWaitNanos.sum() / 1000000.0 / waits : 0.0;
+	}
+
+	/**
+	 * Closes all connections and stops the idle connection eviction. Clients using the pool can't be used afterwards.
+	 */
+	@Override
+	public void close() {
+		if (idleConnectionEvictor != null) {
+			idleConnectionEvictor.shutdown();
+		}
+		connectionManager.shutdown();
+	}
+
+	@Override
+	public String toString() {
+		PoolStats stats = connectionManager.getTotalStats();
+		return String.format(
+				"ConnectionPool [leased=%d, available=%d, pending=%d, max=%d, connectionRequests=%d, meanConnectionWaitMillis=%.3f]",
+				stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax(), getConnectionRequests(),
+				getMeanConnectionWaitMillis());
+	}
+
+	/**
+	 * Connection manager that records the time each request waits for a connection.
+	 */
+	private class TimedConnectionManager extends PoolingHttpClientConnectionManager {
+
+		private TimedConnectionManager(long timeToLive, TimeUnit unit) {
+			super(timeToLive, unit);
+		}
+
+		@Override
+		public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+			final ConnectionRequest connectionRequest = super.requestConnection(route, state);
+			return new ConnectionRequest() {
+				@Override
+				public HttpClientConnection get(long timeout, TimeUnit unit)
+						throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+					long startNanos = System.nanoTime();
+					try {
+						return connectionRequest.get(timeout, unit);
+					} finally {
+						connectionWaitNanos.add(System.nanoTime() - startNanos);
+						connectionWaits.increment();
+					}
+				}
+
+				@Override
+				public boolean cancel() {
+					return connectionRequest.cancel();
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * HTTP content codings that request and response bodies can be compressed with.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public enum ContentCoding {
+	IDENTITY, GZIP, DEFLATE;
+
+	/**
+	 * Gets the content coding of an HTTP Content-Encoding header.
+	 * 
+	 * @param contentEncoding
+	 *            Content-Encoding header value, may be null
+	 * @return Content coding, {@link #IDENTITY} if the header is absent, or null if the coding isn't supported
+	 */
+	public static ContentCoding fromHeader(String contentEncoding) {
+		if (contentEncoding == null || contentEncoding.trim().isEmpty()) {
+			return IDENTITY;
+		}
+		switch (contentEncoding.trim().toLowerCase()) {
+		case "identity":
+			return IDENTITY;
+		case "gzip":
+		case "x-gzip":
+			return GZIP;
+		case "deflate":
+			return DEFLATE;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Wraps a stream so that reading it returns the stream's bytes encoded with this coding.
+	 * 
+	 * @param in
+	 *            Stream to encode
+	 * @return Encoded stream
+	 */
+	public InputStream encode(InputStream in) {
+		switch (this) {
+		case GZIP:
+			return new GzipCompressingInputStream(in);
+		case DEFLATE:
+			return new DeflaterInputStream(in);
+		default:
+			return in;
+		}
+	}
+
+	/**
+	 * Wraps a stream encoded with this coding so that reading it returns the decoded bytes.
+	 * 
+	 * @param in
+	 *            Encoded stream
+	 * @return Decoded stream
+	 * @throws IOException
+	 *             if the stream doesn't start with a valid header of this coding
+	 */
+	public InputStream decode(InputStream in) throws IOException {
+		switch (this) {
+		case GZIP:
+			return new GZIPInputStream(in);
+		case DEFLATE:
+			return new InflaterInputStream(in);
+		default:
+			return in;
+		}
+	}
+
+	/**
+	 * @return Content coding as used in HTTP headers
+	 */
+	@Override
+	public String toString() {
+		return super.toString().toLowerCase();
+	}
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.http;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+
+import au.edu.anu.doi.api.config.DoiConfig;
+
+/**
+ * Creates JAX-RS clients configured for the DOI service.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public final class DoiClientFactory {
+
+	private DoiClientFactory() {
+	}
+
+	/**
+	 * Creates a client with the connect and read timeouts specified in a DOI configuration.
+	 * 
+	 * @param doiConfig
+	 *            DOI service configuration
+	 * @return Client
+	 */
+	public static Client newClient(DoiConfig doiConfig) {
+		Client client = ClientBuilder.newClient();
+		applyTimeouts(client, doiConfig);
+		return client;
+	}
+
+	/**
+	 * Creates a client that reuses connections from a connection pool, with the connect and read timeouts specified in
+	 * a DOI configuration. Closing the client leaves the pool open, so a pool can be shared by several clients and must
+	 * be closed separately.
+	 * 
+	 * @param doiConfig
+	 *            DOI service configuration
+	 * @param connectionPool
+	 *            Connection pool
+	 * @return Client
+	 */
+	public static Client newPooledClient(DoiConfig doiConfig, ConnectionPool connectionPool) {
+		ClientConfig clientConfig = new ClientConfig();
+		clientConfig.connectorProvider(new ApacheConnectorProvider());
+		clientConfig.property(ApacheClientProperties.CONNECTION_MANAGER, connectionPool.getConnectionManager());
+		clientConfig.property(ApacheClientProperties.CONNECTION_MANAGER_SHARED, true);
+		Client client = ClientBuilder.newClient(clientConfig);
+		applyTimeouts(client, doiConfig);
+		return client;
+	}
+
+	/**
+	 * Applies the connect and read timeouts specified in a DOI configuration to a client. A timeout of 0 leaves the
+	 * client's timeout unchanged.
+	 * 
+	 * @param client
+	 *            Client to configure
+	 * @param doiConfig
+	 *            DOI service configuration
+	 */
+	public static void applyTimeouts(Client client, DoiConfig doiConfig) {
+		if (doiConfig.getConnectTimeoutMillis() > 0) {
+			client.property(ClientProperties.CONNECT_TIMEOUT, toIntMillis(doiConfig.getConnectTimeoutMillis()));
+		}
+		if (doiConfig.getReadTimeoutMillis() > 0) {
+			client.property(ClientProperties.READ_TIMEOUT, toIntMillis(doiConfig.getReadTimeoutMillis()));
+		}
+	}
+
+	private static int toIntMillis(long millis) {
+		return (int) Math.min(millis, Integer.MAX_VALUE);
+	}
+}
@@ -21,29 +21,32 @@
 
 package au.edu.anu.doi.api.http;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidParameterException;
-import java.util.Base64;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Objects;
 
 import javax.ws.rs.HttpMethod;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.Form;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedHashMap;
 import javax.ws.rs.core.MultivaluedMap;
-import javax.ws.rs.core.UriBuilder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import au.edu.anu.doi.api.DoiServiceEventListener.DoiServiceEventType;
 import au.edu.anu.doi.api.config.DoiConfig;
 
 /**
+ * A request to the DOI service. Requests are created by their builders and are immutable once built, so a request
+ * can be submitted, retried and hedged from any thread.
+ * 
  * @author Rahul Khanna
  *
  */
@@ -53,6 +56,11 @@ public class DoiHttpRequest {
 	private URI uri;
 	private MultivaluedMap<String, String> headers = new MultivaluedHashMap<>(1);
 	private Entity<Form> entity;
+	private ResourceDocSource resourceDocSource;
+	private ContentCoding contentCoding = ContentCoding.IDENTITY;
+	private CompressionStats compressionStats;
+	private String appId;
+	private DoiServiceEventType requestType;
 	
 	private DoiHttpRequest() {
 	}
@@ -65,18 +73,120 @@ public class DoiHttpRequest {
 		return uri;
 	}
 	
+	/**
+	 * Gets a copy of the HTTP headers of the request.
+	 * 
+	 * @return HTTP headers
+	 */
 	public MultivaluedMap<String, String> getHeaders() {
-		return headers;
+		return new MultivaluedHashMap<String, String>(headers);
 	}
 	
+	/**
+	 * Gets the form sent as the body of the request. Null if the request has no body or its metadata document is
+	 * streamed from a {@link ResourceDocSource}.
+	 * 
+	 * @return Form entity
+	 */
 	public Entity<Form> getEntity() {
 		return entity;
 	}
+
+	/**
+	 * Gets the source of the metadata document streamed as the body of the request.
+	 * 
+	 * @return Metadata document source, or null if the body, if any, is held in {@link #getEntity()}
+	 */
+	public ResourceDocSource getResourceDocSource() {
+		return resourceDocSource;
+	}
+
+	/**
+	 * Opens a stream reading the body of a request whose metadata document is streamed, encoded as
+	 * application/x-www-form-urlencoded.
+	 * 
+	 * @return Stream of the request body, to be closed by the caller
+	 * @throws IOException
+	 *             if the metadata document can't be opened
+	 * @throws IllegalStateException
+	 *             if the request has no streamed body, or its metadata document can only be read once and already has
+	 *             been
+	 */
+	public InputStream openStreamingBody() throws IOException {
+		if (resourceDocSource == null) {
+			throw new IllegalStateException("Request body isn't streamed");
+		}
+		InputStream body = resourceDocSource.openFormEncoded("xml");
+		return contentCoding != ContentCoding.IDENTITY ? compressionStats.encodeRequestBody(body, contentCoding)
+				: body;
+	}
+
+	/**
+	 * Creates a copy of this request that compresses its metadata document, if it has one, and asks for a compressed
+	 * response. A compressed document is always streamed.
+	 */
+	DoiHttpRequest withContentCoding(ContentCoding requestCoding, boolean acceptCompressedResponses,
+			CompressionStats stats) {
+		DoiHttpRequest req = new DoiHttpRequest();
+		req.method = method;
+		req.uri = uri;
+		req.headers = new MultivaluedHashMap<String, String>(headers);
+		req.entity = entity;
+		req.resourceDocSource = resourceDocSource;
+		req.appId = appId;
+		req.requestType = requestType;
+		if (acceptCompressedResponses) {
+			req.headers.putSingle(HttpHeaders.ACCEPT_ENCODING, CompressingTransport.ACCEPTED_ENCODINGS);
+		}
+		if (requestCoding != ContentCoding.IDENTITY) {
+			if (req.resourceDocSource == null && entity != null) {
+				String resourceDoc = entity.getEntity().asMap().getFirst("xml");
+				if (resourceDoc != null) {
+					req.resourceDocSource = ResourceDocSource.of(resourceDoc.getBytes(StandardCharsets.UTF_8));
+					req.entity = null;
+				}
+			}
+			if (req.resourceDocSource != null) {
+				req.contentCoding = requestCoding;
+				req.compressionStats = stats;
+				req.headers.putSingle(HttpHeaders.CONTENT_ENCODING, requestCoding.toString());
+			}
+		}
+		return req;
+	}
+
+	/**
+	 * Checks if the request can be submitted more than once, which isn't the case if its metadata document is
+	 * streamed from a source that can only be read once.
+	 * 
+	 * @return true if the request can be retried
+	 */
+	public boolean isRepeatable() {
+		return resourceDocSource == null || resourceDocSource.isRepeatable();
+	}
+	
+	/**
+	 * Gets the App ID, including the test prefix if applicable, the request is submitted under.
+	 * 
+	 * @return App ID
+	 */
+	public String getAppId() {
+		return appId;
+	}
+	
+	/**
+	 * Gets the type of DOI service operation the request performs.
+	 * 
+	 * @return Request type
+	 */
+	public DoiServiceEventType getRequestType() {
+		return requestType;
+	}
 	
 	@Override
 	public String toString() {
 		return String.format("DoiHttpRequest [method=%s, uri=%s, headers=%s, entity=%s]", method, uri, headers,
-				entity.getEntity().asMap());
+				entity != null ? entity.getEntity().asMap() : resourceDocSource);
 	}
 
 
@@ -92,11 +202,11 @@ public class DoiHttpRequest {
 		protected DoiConfig doiConfig;
 		
 		protected ResponseType responseType = ResponseType.XML;
-		protected Map<String, Object> templateValues = new HashMap<String, Object>();
 
 		protected String doi;
 		protected String url;
 		protected String resourceDoc;
+		protected ResourceDocSource resourceDocSource;
 		
 		
 		public AbstractBuilder(DoiConfig doiConfig) {
@@ -107,18 +217,25 @@ public class DoiHttpRequest {
 
 		public abstract DoiHttpRequest build();
 		
-		protected UriBuilder getBaseUri() {
-			return UriBuilder.fromPath(doiConfig.getBaseUri());
+		protected DoiHttpRequest newRequest(DoiServiceEventType requestType, RequestTemplates templates) {
+			DoiHttpRequest req = new DoiHttpRequest();
+			req.appId = templates.getApplicableAppId();
+			req.requestType = requestType;
+			return req;
 		}
-
-		protected void addTemplateValues() {
-			templateValues.put("responseType", responseType);
-			templateValues.put("appId", getApplicableAppId());
-			if (url != null) {
-				templateValues.put("url", url);
-			}
+		
+		protected RequestTemplates getTemplates() {
+			return RequestTemplates.of(doiConfig, responseType);
 		}
 		
+		protected void setBody(DoiHttpRequest req) {
+			if (resourceDocSource != null) {
+				req.resourceDocSource = resourceDocSource;
+			} else {
+				req.entity = createEntity(resourceDoc);
+			}
+		}
+
 		protected Entity<Form> createEntity(String resourceDoc) {
 			Form form = new Form();
 			if (resourceDoc != null && resourceDoc.length() > 0) {
@@ -127,24 +244,13 @@ public class DoiHttpRequest {
 			return Entity.entity(form, MediaType.APPLICATION_FORM_URLENCODED_TYPE);
 		}
 
-		protected void addAuthHeader(MultivaluedMap<String,String> headers) {
-			if (doiConfig.getSharedSecret() != null && doiConfig.getSharedSecret().length() > 0) {
-				String appId = getApplicableAppId();
-				String authValue = String.format("%s:%s", appId, doiConfig.getSharedSecret());
-				authValue = Base64.getEncoder().encodeToString(authValue.getBytes(StandardCharsets.UTF_8));
-				authValue = String.format("Basic %s", authValue);
+		protected void addAuthHeader(MultivaluedMap<String,String> headers, RequestTemplates templates) {
+			String authValue = templates.getAuthorization();
+			if (authValue != null) {
 				headers.add("Authorization", authValue);
 			}
 		}
 		
-		protected String getApplicableAppId() {
-			String appId = doiConfig.getAppId();
-			if (doiConfig.useTestPrefix()) {
-				appId = String.format("TEST%s", appId);
-			}
-			return appId;
-		}
-		
 		protected void verifyNonZeroLength(String s) throws NullPointerException, IllegalArgumentException {
 			Objects.requireNonNull(s);
 			if (s.length() == 0) {
@@ -174,16 +280,14 @@ public class DoiHttpRequest {
 		
 		@Override
 		public DoiHttpRequest build() {
-			DoiHttpRequest req = new DoiHttpRequest();
+			RequestTemplates templates = getTemplates();
+			DoiHttpRequest req = newRequest(DoiServiceEventType.SERVICE_STATUS, templates);
 			
 			// method
 			req.method = HttpMethod.GET;
 			
 			// url
-			UriBuilder ub = getBaseUri().path("/status.{responseType}/");
-			addTemplateValues();
-			ub.resolveTemplates(this.templateValues, true);
-			req.uri = ub.build();
+			req.uri = templates.getStatusUri();
 			
 			return req;
 		}
@@ -199,35 +303,34 @@ public class DoiHttpRequest {
 			verifyNonZeroLength(resourceDoc);
 			this.resourceDoc = resourceDoc;
 		}
+
+		public MintDoiBuilder(DoiConfig doiConfig, String url, ResourceDocSource resourceDoc) {
+			super(doiConfig);
+			verifyNonZeroLength(url);
+			this.url = url;
+			Objects.requireNonNull(resourceDoc);
+			this.resourceDocSource = resourceDoc;
+		}
 	
 		@Override
 		public DoiHttpRequest build() {
-			DoiHttpRequest req = new DoiHttpRequest();
+			RequestTemplates templates = getTemplates();
+			DoiHttpRequest req = newRequest(DoiServiceEventType.MINT_DOI, templates);
 			
 			// method
 			req.method = HttpMethod.POST;
 			
 			// url
-			UriBuilder ub = getBaseUri().path("/mint.{responseType}/");
-			ub = ub.queryParam("app_id", "{appId}");
-			ub = ub.queryParam("url", "{url}");
-			addTemplateValues();
-			ub.resolveTemplates(this.templateValues, true);
-			req.uri = ub.build();
+			req.uri = templates.getMintUri(url);
 			
 			// header
-			addAuthHeader(req.headers);
+			addAuthHeader(req.headers, templates);
 			
 			// entity
-			req.entity = createEntity(resourceDoc);
+			setBody(req);
 			
 			return req;
 		}
-		
-		@Override
-		protected void addTemplateValues() {
-			super.addTemplateValues();
-		}
 	}
 	
 	public static class UpdateDoiBuilder extends AbstractBuilder {
@@ -240,9 +343,10 @@ public class DoiHttpRequest {
 
 		@Override
 		public DoiHttpRequest build() {
-			DoiHttpRequest req = new DoiHttpRequest();
+			RequestTemplates templates = getTemplates();
+			DoiHttpRequest req = newRequest(DoiServiceEventType.UPDATE_DOI, templates);
 
-			if (isNullOrZeroLength(this.url) && isNullOrZeroLength(this.resourceDoc)) {
+			if (isNullOrZeroLength(this.url) && isNullOrZeroLength(this.resourceDoc) && this.resourceDocSource == null) {
 				throw new IllegalArgumentException(
 						"At least one new URL or XML must be specified for a DOI Update request");
 			}
@@ -251,20 +355,13 @@ public class DoiHttpRequest {
 			req.method = HttpMethod.POST;
 
 			// url
-			UriBuilder ub = getBaseUri().path("/update.{responseType}/");
-			ub = ub.queryParam("app_id", "{appId}");
-			if (url != null) {
-				ub = ub.queryParam("url", "{url}");
-			}
-			addTemplateValues();
-			ub.resolveTemplates(this.templateValues, true);
-			req.uri = ub.build();
+			req.uri = templates.getUpdateUri(url);
 
 			// header
-			addAuthHeader(req.headers);
+			addAuthHeader(req.headers, templates);
 
 			// entity
-			req.entity = createEntity(resourceDoc);
+			setBody(req);
 
 			return req;
 		}
@@ -278,6 +375,14 @@ public class DoiHttpRequest {
 		public UpdateDoiBuilder newXml(String resourceDoc) {
 			Objects.requireNonNull(resourceDoc);
 			this.resourceDoc = resourceDoc;
+			this.resourceDocSource = null;
+			return this;
+		}
+
+		public UpdateDoiBuilder newXml(ResourceDocSource resourceDoc) {
+			Objects.requireNonNull(resourceDoc);
+			this.resourceDocSource = resourceDoc;
+			this.resourceDoc = null;
 			return this;
 		}
 	}
@@ -327,25 +432,16 @@ public class DoiHttpRequest {
 
 		@Override
 		public DoiHttpRequest build() {
-			DoiHttpRequest req = new DoiHttpRequest();
+			RequestTemplates templates = getTemplates();
+			DoiHttpRequest req = newRequest(DoiServiceEventType.GET_METADATA, templates);
 			
 			// method
 			req.method = HttpMethod.GET;
 			
 			// url
-			UriBuilder ub = getBaseUri().path("/xml.{responseType}/");
-			ub = ub.queryParam("doi", "{doi}");
-			addTemplateValues();
-			ub.resolveTemplates(this.templateValues, true);
-			req.uri = ub.build();
+			req.uri = templates.getMetadataUri(doi);
 			
 			return req;
 		}
-		
-		@Override
-		protected void addTemplateValues() {
-			super.addTemplateValues();
-			templateValues.put("doi", this.doi);
-		}
 	}
 }
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.http;
+
+import java.io.InputStream;
+
+/**
+ * Response to a {@link DoiHttpRequest} received by a {@link DoiTransport}. The body is read lazily, and at most once.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public interface DoiHttpResponse extends AutoCloseable {
+
+	/**
+	 * @return HTTP status code
+	 */
+	int getStatus();
+
+	/**
+	 * Gets the value of a response header. If the header occurs more than once, its values are joined by commas.
+	 * 
+	 * @param name
+	 *            Header name, case insensitive
+	 * @return Header value, or null if the response doesn't have the header
+	 */
+	String getHeader(String name);
+
+	/**
+	 * Reads the body of the response as a string, using the charset in its content type or UTF-8 if it has none.
+	 * 
+	 * @return Body, empty if the response has no body
+	 * @throws DoiTransportException
+	 *             if the body couldn't be read
+	 */
+	String readBodyAsString();
+
+	/**
+	 * Gets the body of the response as a stream of undecoded bytes. Closing the stream releases the connection of the
+	 * response.
+	 * 
+	 * @return Body, empty if the response has no body
+	 * @throws DoiTransportException
+	 *             if the body couldn't be read
+	 */
+	InputStream readBody();
+
+	/**
+	 * Releases the connection of the response, discarding any unread body. Subsequent calls have no effect.
+	 */
+	@Override
+	void close();
+}
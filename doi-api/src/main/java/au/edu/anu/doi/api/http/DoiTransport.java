@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.http;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends {@link DoiHttpRequest}s to the DOI service over HTTP. Implementations must be thread-safe.
+ * <p>
+ * A failure to send a request or receive its response, such as a connection failure, reset or timeout, is reported as
+ * a {@link DoiTransportException}. A response is returned whatever its HTTP status.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public interface DoiTransport extends AutoCloseable {
+
+	/**
+	 * Sends a request and blocks until its response status and headers have been received.
+	 * 
+	 * @param request
+	 *            Request to send
+	 * @return Response, which must be closed once read
+	 * @throws DoiTransportException
+	 *             if the request couldn't be sent or no response was received
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the response
+	 */
+	DoiHttpResponse send(DoiHttpRequest request) throws InterruptedException;
+
+	/**
+	 * Sends a request asynchronously. The returned future is completed once the response status and headers have been
+	 * received, possibly on an I/O thread of the transport, so no significant processing should be done in stages
+	 * attached to it directly. Cancelling the returned future aborts the request if possible, and a response received
+	 * after cancellation is closed.
+	 * 
+	 * @param request
+	 *            Request to send
+	 * @return Future completed with the response, which must be closed once read, or exceptionally with a
+	 *         {@link DoiTransportException}
+	 */
+	CompletableFuture<DoiHttpResponse> sendAsync(DoiHttpRequest request);
+
+	/**
+	 * Releases the resources held by the transport. Resources passed to the transport when it was created are left
+	 * open.
+	 */
+	@Override
+	void close();
+}
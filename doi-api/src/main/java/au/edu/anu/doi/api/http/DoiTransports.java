@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.http;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import au.edu.anu.doi.api.config.DoiConfig;
+
+/**
+ * Creates the {@link DoiTransport} for each {@link TransportType}. The java.net.http transport is only compiled when
+ * building with Java 11 or later, so it's looked up reflectively and this class compiles and runs on the Java 8
+ * baseline.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public final class DoiTransports {
+	private static final Logger LOGGER = LoggerFactory.getLogger(DoiTransports.class);
+
+	private static final String JAVA_HTTP_TRANSPORT_CLASS = "au.edu.anu.doi.api.http.JavaHttpTransport";
+
+	private static final Constructor<?> JAVA_HTTP_TRANSPORT_CONSTRUCTOR = findJavaHttpTransportConstructor();
+
+	private DoiTransports() {
+	}
+
+	/**
+	 * Checks if the java.net.http transport is available in the running JVM.
+	 * 
+	 * @return true if the java.net.http transport can be used
+	 */
+	public static boolean isJavaHttpTransportSupported() {
+		return JAVA_HTTP_TRANSPORT_CONSTRUCTOR != null;
+	}
+
+	/**
+	 * Resolves the transport type that can actually be used in the running JVM.
+	 * 
+	 * @param requested
+	 *            Requested transport type
+	 * @return The requested type, or {@link TransportType#JERSEY} if the java.net.http transport was requested but
+	 *         isn't available
+	 */
+	public static TransportType effectiveType(TransportType requested) {
+		if (requested == TransportType.JAVA && !isJavaHttpTransportSupported()) {
+			LOGGER.warn("The java.net.http transport requires Java 11 or later. Running on {}, falling back to Jersey.",
+					System.getProperty("java.version"));
+			return TransportType.JERSEY;
+		}
+		return requested;
+	}
+
+	/**
+	 * Creates a transport of the type specified in a DOI configuration, with its connect and read timeouts. The
+	 * transport owns its HTTP client, which is released when the transport is closed. If connection pooling is enabled
+	 * the Jersey transport uses a {@link ConnectionPool} with the configured limits. The java.net.http client always
+	 * keeps its own pool of connections.
+	 * 
+	 * @param doiConfig
+	 *            DOI service configuration
+	 * @return Transport
+	 */
+	public static DoiTransport newTransport(DoiConfig doiConfig) {
+		if (effectiveType(doiConfig.getTransportType()) == TransportType.JAVA) {
+			return newJavaHttpTransport(doiConfig);
+		}
+		if (doiConfig.isConnectionPoolEnabled()) {
+			ConnectionPool connectionPool = new ConnectionPool(doiConfig);
+			return new JerseyTransport(DoiClientFactory.newPooledClient(doiConfig, connectionPool), connectionPool);
+		}
+		return new JerseyTransport(DoiClientFactory.newClient(doiConfig), true);
+	}
+
+	/**
+	 * Creates a transport using java.net.http.HttpClient with the connect and read timeouts specified in a DOI
+	 * configuration.
+	 * 
+	 * @param doiConfig
+	 *            DOI service configuration
+	 * @return Transport
+	 * @throws UnsupportedOperationException
+	 *             if the java.net.http transport isn't available in the running JVM
+	 */
+	public static DoiTransport newJavaHttpTransport(DoiConfig doiConfig) {
+		if (!isJavaHttpTransportSupported()) {
+			throw new UnsupportedOperationException("The java.net.http transport requires Java 11 or later");
+		}
+		try {
+			return (DoiTransport) JAVA_HTTP_TRANSPORT_CONSTRUCTOR.newInstance(doiConfig);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Constructor<?> findJavaHttpTransportConstructor() {
+		try {
+			return Class.forName(JAVA_HTTP_TRANSPORT_CLASS).getConstructor(DoiConfig.class);
+		} catch (ReflectiveOperationException | LinkageError e) {
+			// not built with Java 11, or running on an earlier JVM
+			return null;
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes the bytes of a stream as the value of an application/x-www-form-urlencoded parameter as they're read, in the
+ * same way as {@link URLEncoder} encodes UTF-8 text, so the value never has to be held in memory.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+final class FormEncodedInputStream extends InputStream {
+
+	private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+	private final InputStream in;
+	private final byte[] prefix;
+	private final byte[] inBuffer = new byte[8192];
+	private final byte[] escape = new byte[3];
+	private int prefixPos = 0;
+	private int inPos = 0;
+	private int inLength = 0;
+	private int escapePos = 3;
+	private boolean endOfInput = false;
+
+	FormEncodedInputStream(String name, InputStream in) {
+		this.in = in;
+		try {
+			this.prefix = (URLEncoder.encode(name, "UTF-8") + "=").getBytes(StandardCharsets.US_ASCII);
+		} catch (UnsupportedEncodingException e) {
+			// every Java platform is required to support UTF-8
+			throw new IllegalStateException(e);
+		}
+		escape[0] = '%';
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		int n = 0;
+		while (n < len) {
+			if (prefixPos < prefix.length) {
+				b[off + n++] = prefix[prefixPos++];
+			} else if (escapePos < escape.length) {
+				b[off + n++] = escape[escapePos++];
+			} else if (inPos < inLength) {
+				int c = inBuffer[inPos++] & 0xFF;
+				if (isUnreserved(c)) {
+					b[off + n++] = (byte) c;
+				} else if (c == ' ') {
+					b[off + n++] = '+';
+				} else {
+					escape[1] = HEX_DIGITS[c >> 4];
+					escape[2] = HEX_DIGITS[c & 0xF];
+					escapePos = 1;
+					b[off + n++] = '%';
+				}
+			} else if (endOfInput || n > 0) {
+				// return what's been encoded rather than block for more input
+				break;
+			} else {
+				inLength = in.read(inBuffer);
+				inPos = 0;
+				if (inLength == -1) {
+					inLength = 0;
+					endOfInput = true;
+				}
+			}
+		}
+		return n == 0 ? -1 : n;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	private static boolean isUnreserved(int c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' || c == '-'
+				|| c == '*' || c == '_';
+	}
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+
+/**
+ * Compresses the bytes of a stream in the gzip format as they're read. The JDK only provides an OutputStream that
+ * compresses to gzip, which can't be used where the body of a request is pulled from an InputStream.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+final class GzipCompressingInputStream extends InputStream {
+
+	// magic number, deflate, no flags, no modification time, no extra flags, unknown OS
+	private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+	private static final int TRAILER_LENGTH = 8;
+
+	private final CRC32 crc = new CRC32();
+	private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+	private final InputStream deflated;
+	private final byte[] trailer = new byte[TRAILER_LENGTH];
+	private int headerPos = 0;
+	private int trailerPos = -1;
+
+	GzipCompressingInputStream(InputStream in) {
+		this.deflated = new DeflaterInputStream(new CheckedInputStream(in, crc), deflater);
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (headerPos < HEADER.length) {
+			int n = Math.min(len, HEADER.length - headerPos);
+			System.arraycopy(HEADER, headerPos, b, off, n);
+			headerPos += n;
+			return n;
+		}
+		if (trailerPos == -1) {
+			int n = deflated.read(b, off, len);
+			if (n != -1) {
+				return n;
+			}
+			// CRC-32 and length of the uncompressed data, little-endian
+			writeIntLE((int) crc.getValue(), trailer, 0);
+			writeIntLE((int) deflater.getBytesRead(), trailer, 4);
+			trailerPos = 0;
+		}
+		if (trailerPos == TRAILER_LENGTH) {
+			return -1;
+		}
+		int n = Math.min(len, TRAILER_LENGTH - trailerPos);
+		System.arraycopy(trailer, trailerPos, b, off, n);
+		trailerPos += n;
+		return n;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			deflated.close();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static void writeIntLE(int value, byte[] b, int off) {
+		for (int i = 0; i < 4; i++) {
+			b[off + i] = (byte) (value >>> (8 * i));
+		}
+	}
+}
@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation.Builder;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.Variant;
+
+import org.apache.commons.io.IOUtils;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.RequestEntityProcessing;
+
+import au.edu.anu.doi.api.concurrent.Futures;
+
+/**
+ * Transport that sends requests using a JAX-RS {@link Client}. Asynchronous requests use the client's asynchronous
+ * invoker.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public class JerseyTransport implements DoiTransport {
+
+	private final Client client;
+	private final boolean ownsClient;
+	private final ConnectionPool connectionPool;
+
+	/**
+	 * Creates a transport using a client owned by the caller, which isn't closed when the transport is closed.
+	 * 
+	 * @param client
+	 *            JAX-RS client
+	 */
+	public JerseyTransport(Client client) {
+		this(client, false);
+	}
+
+	/**
+	 * @param client
+	 *            JAX-RS client
+	 * @param ownsClient
+	 *            true to close the client when the transport is closed
+	 */
+	public JerseyTransport(Client client, boolean ownsClient) {
+		Objects.requireNonNull(client);
+		this.client = client;
+		this.ownsClient = ownsClient;
+		this.connectionPool = null;
+	}
+
+	/**
+	 * Creates a transport using a client whose connections come from a connection pool. The transport owns both, and
+	 * closes them when it's closed.
+	 * 
+	 * @param client
+	 *            JAX-RS client created by {@link DoiClientFactory#newPooledClient(DoiConfig, ConnectionPool)}
+	 * @param connectionPool
+	 *            Connection pool used by the client
+	 */
+	public JerseyTransport(Client client, ConnectionPool connectionPool) {
+		Objects.requireNonNull(client);
+		Objects.requireNonNull(connectionPool);
+		this.client = client;
+		this.ownsClient = true;
+		this.connectionPool = connectionPool;
+	}
+
+	/**
+	 * Gets the connection pool used by this transport, whose metrics show how connections are being used.
+	 * 
+	 * @return Connection pool, or null if the client doesn't use one owned by this transport
+	 */
+	public ConnectionPool getConnectionPool() {
+		return connectionPool;
+	}
+
+	@Override
+	public DoiHttpResponse send(DoiHttpRequest request) {
+		try {
+			return new JerseyResponse(
+					createInvocationBuilder(request).method(request.getMethod(), createEntity(request)));
+		} catch (ProcessingException e) {
+			throw new DoiTransportException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public CompletableFuture<DoiHttpResponse> sendAsync(DoiHttpRequest request) {
+		final CompletableFuture<DoiHttpResponse> respFuture = new CompletableFuture<>();
+		Future<Response> invocation = createInvocationBuilder(request).async().method(request.getMethod(),
+				createEntity(request), new InvocationCallback<Response>() {
+					@Override
+					public void completed(Response response) {
+						if (!respFuture.complete(new JerseyResponse(response))) {
+							// cancelled, nobody will read this response
+							response.close();
+						}
+					}
+
+					@Override
+					public void failed(Throwable throwable) {
+						respFuture.completeExceptionally(throwable instanceof ProcessingException
+								? new DoiTransportException(throwable.getMessage(), throwable) : throwable);
+					}
+				});
+		Futures.propagateCancellation(respFuture, invocation);
+		return respFuture;
+	}
+
+	@Override
+	public void close() {
+		if (ownsClient) {
+			client.close();
+		}
+		if (connectionPool != null) {
+			connectionPool.close();
+		}
+	}
+
+	private Builder createInvocationBuilder(DoiHttpRequest request) {
+		// create WebTarget from URI
+		WebTarget webTarget = client.target(request.getUri());
+		// add http headers, if any
+		Builder builder = webTarget.request();
+		for (Entry<String, List<String>> headerEntry : request.getHeaders().entrySet()) {
+			for (String headerValue : headerEntry.getValue()) {
+				builder = builder.header(headerEntry.getKey(), headerValue);
+			}
+		}
+		if (request.getResourceDocSource() != null) {
+			// a streamed body of unknown length would otherwise be buffered in memory to set Content-Length
+			builder = builder.property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.CHUNKED);
+		}
+		return builder;
+	}
+
+	/**
+	 * Creates the entity of a request. A streamed metadata document is read and encoded as the entity is written.
+	 */
+	private static Entity<?> createEntity(DoiHttpRequest request) {
+		if (request.getResourceDocSource() != null) {
+			StreamingOutput body = out -> {
+				try (InputStream in = request.openStreamingBody()) {
+					IOUtils.copy(in, out);
+				}
+			};
+			// the entity's variant sets Content-Encoding, replacing the header of a compressed body
+			return Entity.entity(body, new Variant(MediaType.APPLICATION_FORM_URLENCODED_TYPE, (String) null,
+					request.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)));
+		}
+		return request.getEntity();
+	}
+
+	private static class JerseyResponse implements DoiHttpResponse {
+		private final Response response;
+
+		private JerseyResponse(Response response) {
+			this.response = response;
+		}
+
+		@Override
+		public int getStatus() {
+			return response.getStatus();
+		}
+
+		@Override
+		public String getHeader(String name) {
+			return response.getHeaderString(name);
+		}
+
+		@Override
+		public String readBodyAsString() {
+			try {
+				String body = response.readEntity(String.class);
+				return body != null ? body : "";
+			} catch (ProcessingException e) {
+				throw new DoiTransportException(e.getMessage(), e);
+			}
+		}
+
+		@Override
+		public InputStream readBody() {
+			try {
+				InputStream body = response.readEntity(InputStream.class);
+				return body != null ? body : new ByteArrayInputStream(new byte[0]);
+			} catch (ProcessingException e) {
+				throw new DoiTransportException(e.getMessage(), e);
+			}
+		}
+
+		@Override
+		public void close() {
+			response.close();
+		}
+	}
+}
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.http;
+
+import java.lang.ref.WeakReference;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.ws.rs.core.UriBuilder;
+
+import org.glassfish.jersey.uri.UriComponent;
+
+import au.edu.anu.doi.api.config.DoiConfig;
+import au.edu.anu.doi.api.http.DoiHttpRequest.AbstractBuilder.ResponseType;
+
+/**
+ * The parts of DOI service requests that only depend on the configuration: the URI of each operation up to its
+ * per-request parameters, the applicable App ID and the Authorization header value. Templates are computed once per
+ * {@link DoiConfig} and reused by the request builders, so only a DOI or URL is encoded when a request is built.
+ * <p>
+ * Templates are computed the first time a configuration instance is used and its settings aren't read again, so a
+ * configuration whose base URI, App ID, test prefix or shared secret changes must be replaced by a new instance for
+ * the change to apply. Looking up the templates of a configuration takes no locks.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+final class RequestTemplates {
+
+	// the most recently added configurations in use. A process usually has one, so a lookup is a single comparison
+	private static final int MAX_CACHED = 16;
+
+	// replaced as a whole when templates are added, so it's read without locking. Configurations are weakly referenced
+	// so a discarded one doesn't stay reachable; templates don't refer to their configuration
+	private static final AtomicReference<CacheEntry[]> CACHE = new AtomicReference<>(new CacheEntry[0]);
+
+	private final String applicableAppId;
+	private final String authorization;
+	private final URI statusUri;
+	private final String mintUriPrefix;
+	private final String updateUriPrefix;
+	private final String getMetadataUriPrefix;
+
+	private RequestTemplates(DoiConfig doiConfig, ResponseType responseType) {
+		String baseUri = doiConfig.getBaseUri();
+		String appId = doiConfig.getAppId();
+		boolean useTestPrefix = doiConfig.useTestPrefix();
+		String sharedSecret = doiConfig.getSharedSecret();
+
+		this.applicableAppId = useTestPrefix ? String.format("TEST%s", appId) : appId;
+		if (sharedSecret != null && sharedSecret.length() > 0) {
+			String credentials = String.format("%s:%s", applicableAppId, sharedSecret);
+			this.authorization = String.format("Basic %s",
+					Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+		} else {
+			this.authorization = null;
+		}
+
+		Map<String, Object> templateValues = new HashMap<String, Object>();
+		templateValues.put("responseType", responseType);
+		templateValues.put("appId", applicableAppId);
+		this.statusUri = resolve(UriBuilder.fromPath(baseUri).path("/status.{responseType}/"), templateValues);
+		this.mintUriPrefix = resolve(
+				UriBuilder.fromPath(baseUri).path("/mint.{responseType}/").queryParam("app_id", "{appId}"),
+				templateValues).toString() + "&url=";
+		this.updateUriPrefix = resolve(
+				UriBuilder.fromPath(baseUri).path("/update.{responseType}/").queryParam("app_id", "{appId}"),
+				templateValues).toString();
+		this.getMetadataUriPrefix = resolve(UriBuilder.fromPath(baseUri).path("/xml.{responseType}/"),
+				templateValues).toString() + "?doi=";
+	}
+
+	/**
+	 * Gets the templates for a configuration instance, computing them if they haven't been.
+	 * 
+	 * @param doiConfig
+	 *            Configuration of the DOI service
+	 * @param responseType
+	 *            Format of the responses requested
+	 * @return Request templates
+	 */
+	static RequestTemplates of(DoiConfig doiConfig, ResponseType responseType) {
+		for (CacheEntry entry : CACHE.get()) {
+			if (entry.get() == doiConfig && entry.responseType == responseType) {
+				return entry.templates;
+			}
+		}
+		CacheEntry newEntry = new CacheEntry(doiConfig, responseType, new RequestTemplates(doiConfig, responseType));
+		CACHE.updateAndGet(entries -> addEntry(entries, newEntry));
+		return newEntry.templates;
+	}
+
+	/**
+	 * Creates a copy of the cache entries with an entry added, dropping entries whose configuration has been
+	 * discarded or replaced by the new entry, and the oldest entries beyond the maximum.
+	 */
+	private static CacheEntry[] addEntry(CacheEntry[] entries, CacheEntry newEntry) {
+		List<CacheEntry> newEntries = new ArrayList<>(entries.length + 1);
+		newEntries.add(newEntry);
+		for (CacheEntry entry : entries) {
+			DoiConfig doiConfig = entry.get();
+			if (doiConfig != null && !(doiConfig == newEntry.get() && entry.responseType == newEntry.responseType)
+					&& newEntries.size() < MAX_CACHED) {
+				newEntries.add(entry);
+			}
+		}
+		return newEntries.toArray(new CacheEntry[newEntries.size()]);
+	}
+
+	private static URI resolve(UriBuilder ub, Map<String, Object> templateValues) {
+		return ub.resolveTemplates(templateValues, true).build();
+	}
+
+	/**
+	 * Encodes a value as a query parameter the same way resolving a {@link UriBuilder} query template does.
+	 */
+	private static String encodeQueryParam(String value) {
+		return UriComponent.encode(value, UriComponent.Type.QUERY_PARAM);
+	}
+
+	String getApplicableAppId() {
+		return applicableAppId;
+	}
+
+	/**
+	 * Gets the value of the Authorization header.
+	 * 
+	 * @return Authorization header value, or null if no shared secret is configured
+	 */
+	String getAuthorization() {
+		return authorization;
+	}
+
+	URI getStatusUri() {
+		return statusUri;
+	}
+
+	URI getMintUri(String url) {
+		return URI.create(mintUriPrefix + encodeQueryParam(url));
+	}
+
+	URI getUpdateUri(String url) {
+		if (url == null) {
+			return URI.create(updateUriPrefix);
+		}
+		return URI.create(updateUriPrefix + "&url=" + encodeQueryParam(url));
+	}
+
+	URI getMetadataUri(String doi) {
+		return URI.create(getMetadataUriPrefix + encodeQueryParam(doi));
+	}
+
+	private static final class CacheEntry extends WeakReference<DoiConfig> {
+		private final ResponseType responseType;
+		private final RequestTemplates templates;
+
+		private CacheEntry(DoiConfig doiConfig, ResponseType responseType, RequestTemplates templates) {
+			super(doiConfig);
+			this.responseType = responseType;
+			this.templates = templates;
+		}
+	}
+}
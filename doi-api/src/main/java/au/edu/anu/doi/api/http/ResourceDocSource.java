@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A metadata document that's streamed into the body of a mint or update request instead of being held in memory. The
+ * document is read as UTF-8 bytes.
+ * <p>
+ * A document read from a file can be read again, so requests using it can be retried. A document read from an
+ * InputStream or a channel can only be read once, so requests using it are submitted once and aren't retried. The
+ * stream or channel is read to its end but isn't closed.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public final class ResourceDocSource {
+
+	private interface Opener {
+		InputStream open() throws IOException;
+	}
+
+	private final Opener opener;
+	private final boolean repeatable;
+	private final AtomicBoolean opened = new AtomicBoolean(false);
+	private final String description;
+
+	private ResourceDocSource(Opener opener, boolean repeatable, String description) {
+		this.opener = opener;
+		this.repeatable = repeatable;
+		this.description = description;
+	}
+
+	/**
+	 * Creates a source reading a metadata document from a file each time it's opened.
+	 * 
+	 * @param path
+	 *            Metadata document file
+	 * @return Source of the metadata document
+	 */
+	public static ResourceDocSource of(Path path) {
+		Objects.requireNonNull(path);
+		return new ResourceDocSource(() -> Files.newInputStream(path), true, path.toString());
+	}
+
+	/**
+	 * Creates a source reading a metadata document once from an InputStream.
+	 * 
+	 * @param inputStream
+	 *            Metadata document stream, closed by the caller
+	 * @return Source of the metadata document
+	 */
+	public static ResourceDocSource of(InputStream inputStream) {
+		Objects.requireNonNull(inputStream);
+		return new ResourceDocSource(() -> new NonClosingInputStream(inputStream), false, "InputStream");
+	}
+
+	/**
+	 * Creates a source reading a metadata document once from a channel.
+	 * 
+	 * @param channel
+	 *            Metadata document channel, closed by the caller
+	 * @return Source of the metadata document
+	 */
+	public static ResourceDocSource of(ReadableByteChannel channel) {
+		Objects.requireNonNull(channel);
+		return new ResourceDocSource(() -> new NonClosingInputStream(Channels.newInputStream(channel)), false,
+				"ReadableByteChannel");
+	}
+
+	/**
+	 * Creates a source reading a metadata document held in memory.
+	 */
+	static ResourceDocSource of(byte[] resourceDoc) {
+		Objects.requireNonNull(resourceDoc);
+		return new ResourceDocSource(() -> new ByteArrayInputStream(resourceDoc), true,
+				String.format("byte[%d]", resourceDoc.length));
+	}
+
+	/**
+	 * Checks if the document can be read more than once.
+	 * 
+	 * @return true if the document isn't read from an InputStream or channel
+	 */
+	public boolean isRepeatable() {
+		return repeatable;
+	}
+
+	/**
+	 * Opens a stream reading the document.
+	 * 
+	 * @return Stream of the document's bytes, to be closed by the caller
+	 * @throws IOException
+	 *             if the document can't be opened
+	 * @throws IllegalStateException
+	 *             if the document can only be read once and has already been opened
+	 */
+	public InputStream open() throws IOException {
+		if (!repeatable && !opened.compareAndSet(false, true)) {
+			throw new IllegalStateException(description + " has already been read");
+		}
+		return opener.open();
+	}
+
+	/**
+	 * Opens a stream reading the document encoded as an application/x-www-form-urlencoded parameter.
+	 * 
+	 * @param name
+	 *            Parameter name
+	 * @return Stream of the encoded parameter, to be closed by the caller
+	 * @throws IOException
+	 *             if the document can't be opened
+	 * @throws IllegalStateException
+	 *             if the document can only be read once and has already been opened
+	 */
+	public InputStream openFormEncoded(String name) throws IOException {
+		return new FormEncodedInputStream(name, open());
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ResourceDocSource [%s]", description);
+	}
+
+	private static class NonClosingInputStream extends FilterInputStream {
+		private NonClosingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public void close() {
+			// the caller owns the stream
+		}
+	}
+}
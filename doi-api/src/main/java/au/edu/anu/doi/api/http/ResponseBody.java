@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * The body of a response read into a bounded buffer. The body can be parsed from its bytes as received, and is only
+ * decoded to a string when it's reported, for example in an exception. A body longer than the buffer is truncated.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public final class ResponseBody {
+
+	private static final int INITIAL_BUFFER_SIZE = 1024;
+
+	private final byte[] buffer;
+	private final int length;
+	private final boolean truncated;
+	private final Charset charset;
+
+	private ResponseBody(byte[] buffer, int length, boolean truncated, Charset charset) {
+		this.buffer = buffer;
+		this.length = length;
+		this.truncated = truncated;
+		this.charset = charset;
+	}
+
+	/**
+	 * Reads the body of a response. The response isn't closed.
+	 * 
+	 * @param response
+	 *            Response whose body is read
+	 * @param maxBytes
+	 *            Maximum number of bytes read, beyond which the body is truncated
+	 * @return Response body
+	 * @throws DoiTransportException
+	 *             if the body couldn't be read
+	 */
+	public static ResponseBody read(DoiHttpResponse response, int maxBytes) {
+		if (maxBytes < 1) {
+			throw new IllegalArgumentException("maxBytes must be at least 1");
+		}
+		byte[] buffer = new byte[Math.min(maxBytes, INITIAL_BUFFER_SIZE)];
+		int length = 0;
+		boolean truncated = false;
+		try (InputStream body = response.readBody()) {
+			while (true) {
+				if (length == buffer.length) {
+					if (length == maxBytes) {
+						truncated = body.read() != -1;
+						break;
+					}
+					buffer = Arrays.copyOf(buffer, (int) Math.min(maxBytes, length * 2L));
+				}
+				int nRead = body.read(buffer, length, buffer.length - length);
+				if (nRead == -1) {
+					break;
+				}
+				length += nRead;
+			}
+		} catch (IOException e) {
+			throw new DoiTransportException(e.toString(), e);
+		}
+		return new ResponseBody(buffer, length, truncated, charsetOf(response.getHeader(HttpHeaders.CONTENT_TYPE)));
+	}
+
+	/**
+	 * Gets the buffer holding the body, which isn't copied and mustn't be modified. The body starts at index 0.
+	 * 
+	 * @return Buffer
+	 */
+	public byte[] getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * @return Number of bytes of the body in the buffer
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return true if the body was longer than the buffer, which only holds its beginning
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	/**
+	 * Gets the charset in the content type of the response.
+	 * 
+	 * @return Charset, or null if the content type doesn't specify a supported one
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Decodes the body using the charset in the content type of the response, or UTF-8 if it has none.
+	 * 
+	 * @return Body, ending with "..." if it was truncated
+	 */
+	@Override
+	public String toString() {
+		String body = new String(buffer, 0, length, charset != null ? charset : StandardCharsets.UTF_8);
+		return truncated ? body + "..." : body;
+	}
+
+	/**
+	 * Gets the charset parameter of a content type.
+	 * 
+	 * @param contentType
+	 *            Value of a Content-Type header
+	 * @return Charset, or null if the content type is null, invalid, has no charset or an unsupported one
+	 */
+	static Charset charsetOf(String contentType) {
+		if (contentType == null) {
+			return null;
+		}
+		try {
+			String charset = MediaType.valueOf(contentType).getParameters().get(MediaType.CHARSET_PARAMETER);
+			return charset != null ? Charset.forName(charset) : null;
+		} catch (IllegalArgumentException e) {
+			// invalid content type or unsupported charset
+			return null;
+		}
+	}
+}
@@ -0,0 +1,291 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.jaxb;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.JAXBIntrospector;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.transform.Result;
+import javax.xml.transform.Source;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides thread-safe marshalling and unmarshalling for a JAXB binding package, such as
+ * {@code org.datacite.schema.kernel_3} or {@code org.datacite.schema.kernel_2_2}. A JAXBContext is expensive to create,
+ * so one is created per binding package and class loader, and shared. Keeping class loaders apart means that webapps
+ * in a container that each load the same binding package get contexts for their own classes. Unmarshallers and
+ * marshallers are cheaper but aren't thread-safe, so a provider pools them: a caller borrows one for a single operation
+ * and returns it afterwards, or uses {@link #unmarshal(Source, Class)} and {@link #marshal(Object, Result)}, which do
+ * both.
+ * <p>
+ * A borrowed marshaller or unmarshaller has its schema and listener reset when it's returned. Its event handler and
+ * other properties are kept, so a caller that changes them shouldn't return it, and a caller that always needs different
+ * ones should create its own from {@link #getContext()}.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public final class JaxbProvider {
+	private static final Logger LOGGER = LoggerFactory.getLogger(JaxbProvider.class);
+
+	private static final int DEFAULT_MAX_POOLED = 16;
+
+	// shared providers by class loader and package. A provider holds its context, which holds the bound classes and
+	// so their class loader, so it's only referred to weakly here and kept by the bound classes it's been requested
+	// for, which lets a class loader that's no longer used be collected
+	private static final Map<ClassLoader, Map<String, WeakReference<JaxbProvider>>> SHARED_PROVIDERS =
+			new WeakHashMap<>();
+	private static final ClassValue<AtomicReference<JaxbProvider>> BOUND_PROVIDERS =
+			new ClassValue<AtomicReference<JaxbProvider>>() {
+				@Override
+				protected AtomicReference<JaxbProvider> computeValue(Class<?> type) {
+					return new AtomicReference<>();
+				}
+			};
+
+	private final JAXBContext context;
+	private final ObjectPool<Unmarshaller> unmarshallers;
+	private final ObjectPool<Marshaller> marshallers;
+
+	private JaxbProvider(JAXBContext context, int maxPooled) {
+		this.context = context;
+		this.unmarshallers = new ObjectPool<>(context::createUnmarshaller, maxPooled);
+		this.marshallers = new ObjectPool<>(context::createMarshaller, maxPooled);
+	}
+
+	/**
+	 * Gets the provider shared by all callers for the binding package of the specified class, as loaded by its class
+	 * loader. The package must contain an ObjectFactory or a jaxb.index listing its bound classes.
+	 * 
+	 * @param boundClass
+	 *            A class in the binding package, e.g. {@code org.datacite.schema.kernel_3.Resource}
+	 * @return JaxbProvider
+	 * @throws JAXBException
+	 *             if a JAXBContext cannot be created for the package
+	 */
+	public static JaxbProvider of(Class<?> boundClass) throws JAXBException {
+		AtomicReference<JaxbProvider> boundProvider = BOUND_PROVIDERS.get(boundClass);
+		JaxbProvider provider = boundProvider.get();
+		if (provider == null) {
+			provider = getSharedProvider(boundClass);
+			boundProvider.set(provider);
+		}
+		return provider;
+	}
+
+	private static JaxbProvider getSharedProvider(Class<?> boundClass) throws JAXBException {
+		ClassLoader classLoader = boundClass.getClassLoader();
+		String contextPath = boundClass.getPackage().getName();
+		JaxbProvider provider = findSharedProvider(classLoader, contextPath);
+		if (provider == null) {
+			// contexts for the same package created concurrently are equivalent, so only one of them is kept
+			JAXBContext context = JAXBContext.newInstance(contextPath, classLoader);
+			LOGGER.debug("Created JAXBContext for {}", contextPath);
+			synchronized (SHARED_PROVIDERS) {
+				provider = findSharedProvider(classLoader, contextPath);
+				if (provider == null) {
+					provider = new JaxbProvider(context, DEFAULT_MAX_POOLED);
+					SHARED_PROVIDERS.computeIfAbsent(classLoader, k -> new HashMap<>()).put(contextPath,
+							new WeakReference<>(provider));
+				}
+			}
+		}
+		return provider;
+	}
+
+	private static JaxbProvider findSharedProvider(ClassLoader classLoader, String contextPath) {
+		synchronized (SHARED_PROVIDERS) {
+			Map<String, WeakReference<JaxbProvider>> providers = SHARED_PROVIDERS.get(classLoader);
+			WeakReference<JaxbProvider> providerRef = providers == null ? null : providers.get(contextPath);
+			return providerRef == null ? null : providerRef.get();
+		}
+	}
+
+	/**
+	 * Creates a provider for the binding package of the specified class with pools of its own, for a caller that
+	 * wants its marshallers kept apart from the shared ones. The JAXBContext is still shared.
+	 * 
+	 * @param boundClass
+	 *            A class in the binding package
+	 * @param maxPooled
+	 *            Maximum number of idle unmarshallers, and of idle marshallers, kept for reuse
+	 * @return JaxbProvider
+	 * @throws JAXBException
+	 *             if a JAXBContext cannot be created for the package
+	 */
+	public static JaxbProvider newProvider(Class<?> boundClass, int maxPooled) throws JAXBException {
+		return new JaxbProvider(getContext(boundClass), maxPooled);
+	}
+
+	/**
+	 * Gets the JAXBContext for the binding package of the specified class, as loaded by its class loader, creating it
+	 * on first use.
+	 * 
+	 * @param boundClass
+	 *            A class in the binding package
+	 * @return JAXBContext
+	 * @throws JAXBException
+	 *             if a JAXBContext cannot be created for the package
+	 */
+	public static JAXBContext getContext(Class<?> boundClass) throws JAXBException {
+		return of(boundClass).getContext();
+	}
+
+	public JAXBContext getContext() {
+		return context;
+	}
+
+	/**
+	 * Unmarshals a document to an object of the specified type with a pooled unmarshaller.
+	 * 
+	 * @param source
+	 *            Document to unmarshal
+	 * @param type
+	 *            Type of the document's root object
+	 * @return Unmarshalled object
+	 * @throws JAXBException
+	 *             if the document cannot be unmarshalled, or its root isn't of the specified type
+	 */
+	public <T> T unmarshal(Source source, Class<T> type) throws JAXBException {
+		Unmarshaller unmarshaller = borrowUnmarshaller();
+		Object value;
+		try {
+			value = JAXBIntrospector.getValue(unmarshaller.unmarshal(source));
+		} finally {
+			returnUnmarshaller(unmarshaller);
+		}
+		if (!type.isInstance(value)) {
+			throw new JAXBException(String.format("Expected %s, unmarshalled %s", type.getName(),
+					value == null ? null : value.getClass().getName()));
+		}
+		return type.cast(value);
+	}
+
+	/**
+	 * Marshals an object with a pooled marshaller.
+	 * 
+	 * @param obj
+	 *            Object to marshal
+	 * @param result
+	 *            Where the document is written
+	 * @throws JAXBException
+	 *             if the object cannot be marshalled
+	 */
+	public void marshal(Object obj, Result result) throws JAXBException {
+		Marshaller marshaller = borrowMarshaller();
+		try {
+			marshaller.marshal(obj, result);
+		} finally {
+			returnMarshaller(marshaller);
+		}
+	}
+
+	/**
+	 * Borrows an unmarshaller, which must be used by one thread at a time and returned with
+	 * {@link #returnUnmarshaller(Unmarshaller)} when done.
+	 * 
+	 * @return Unmarshaller
+	 * @throws JAXBException
+	 *             if a new unmarshaller cannot be created
+	 */
+	public Unmarshaller borrowUnmarshaller() throws JAXBException {
+		return unmarshallers.borrow();
+	}
+
+	/**
+	 * Returns an unmarshaller borrowed from this provider to its pool.
+	 * 
+	 * @param unmarshaller
+	 *            Unmarshaller to return
+	 */
+	public void returnUnmarshaller(Unmarshaller unmarshaller) {
+		unmarshaller.setSchema(null);
+		unmarshaller.setListener(null);
+		unmarshallers.release(unmarshaller);
+	}
+
+	/**
+	 * Borrows a marshaller, which must be used by one thread at a time and returned with
+	 * {@link #returnMarshaller(Marshaller)} when done.
+	 * 
+	 * @return Marshaller
+	 * @throws JAXBException
+	 *             if a new marshaller cannot be created
+	 */
+	public Marshaller borrowMarshaller() throws JAXBException {
+		return marshallers.borrow();
+	}
+
+	/**
+	 * Returns a marshaller borrowed from this provider to its pool.
+	 * 
+	 * @param marshaller
+	 *            Marshaller to return
+	 */
+	public void returnMarshaller(Marshaller marshaller) {
+		marshaller.setSchema(null);
+		marshaller.setListener(null);
+		marshallers.release(marshaller);
+	}
+
+	/**
+	 * Creates idle unmarshallers until the pool holds the specified number, up to its maximum, so that the first
+	 * concurrent unmarshals don't each create one.
+	 * 
+	 * @param count
+	 *            Number of idle unmarshallers wanted
+	 * @throws JAXBException
+	 *             if an unmarshaller cannot be created
+	 */
+	public void prefillUnmarshallers(int count) throws JAXBException {
+		unmarshallers.prefill(count);
+	}
+
+	/**
+	 * Gets the number of idle unmarshallers in the pool.
+	 * 
+	 * @return Number of idle unmarshallers
+	 */
+	public int getIdleUnmarshallers() {
+		return unmarshallers.getIdleCount();
+	}
+
+	/**
+	 * Gets the number of idle marshallers in the pool.
+	 * 
+	 * @return Number of idle marshallers
+	 */
+	public int getIdleMarshallers() {
+		return marshallers.getIdleCount();
+	}
+
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.jaxb;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.bind.JAXBException;
+
+/**
+ * Bounded pool of objects that aren't thread-safe, such as JAXB unmarshallers and marshallers. An object is borrowed
+ * for the duration of one operation and returned afterwards. Objects are created on demand, so the pool grows to the
+ * number of concurrent borrowers up to a maximum, beyond which surplus objects returned are discarded.
+ * 
+ * @author Rahul Khanna
+ *
+ * @param <T>
+ *            Type of objects pooled
+ */
+class ObjectPool<T> {
+
+	/**
+	 * Creates the objects in a pool.
+	 */
+	@FunctionalInterface
+	interface Factory<T> {
+		T create() throws JAXBException;
+	}
+
+	private final Queue<T> idle = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger idleCount = new AtomicInteger();
+	private final Factory<T> factory;
+	private final int maxIdle;
+
+	ObjectPool(Factory<T> factory, int maxIdle) {
+		if (maxIdle < 1) {
+			throw new IllegalArgumentException("maxPooled must be at least 1");
+		}
+		this.factory = factory;
+		this.maxIdle = maxIdle;
+	}
+
+	T borrow() throws JAXBException {
+		T obj = idle.poll();
+		if (obj != null) {
+			idleCount.decrementAndGet();
+			return obj;
+		}
+		return factory.create();
+	}
+
+	void release(T obj) {
+		// the count may briefly exceed the pool's size, which at worst discards an object that could be kept
+		if (idleCount.incrementAndGet() <= maxIdle) {
+			idle.offer(obj);
+		} else {
+			idleCount.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Creates idle objects until the pool holds the specified number, up to its maximum.
+	 */
+	void prefill(int count) throws JAXBException {
+		int target = Math.min(count, maxIdle);
+		while (idleCount.get() < target) {
+			release(factory.create());
+		}
+	}
+
+	int getIdleCount() {
+		return idleCount.get();
+	}
+
+}
@@ -0,0 +1,315 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.ledger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import au.edu.anu.doi.api.ledger.LedgerEntry.State;
+
+/**
+ * Durable record of mint requests, used to ensure that a URL and metadata document is minted at most once. A mint
+ * request is recorded as pending before it's submitted and as completed, with the minted DOI, once a response is
+ * received. An entry left pending by a crash or an ambiguous failure must be resolved before the request is minted
+ * again.
+ * <p>
+ * Entries are kept in memory and every change is appended to a journal file and synced to disk before the method
+ * making the change returns. The journal is compacted when the ledger is opened.
+ * <p>
+ * An open ledger holds an exclusive lock on a lock file next to its journal, named after the journal with a
+ * {@code .lock} suffix, so that a journal can't be used by two ledgers, in the same or different processes, at once.
+ * The lock is released when the ledger is closed.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public class IdempotencyLedger implements Closeable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(IdempotencyLedger.class);
+
+	private static final String PENDING = "P";
+	private static final String COMPLETED = "C";
+	private static final String REMOVED = "R";
+
+	private final Path journalFile;
+	private final Map<MintKey, LedgerEntry> entries = new ConcurrentHashMap<>();
+	private final FileChannel lockChannel;
+	private final FileLock lock;
+
+	/**
+	 * Opens a ledger, creating the journal file if it doesn't exist.
+	 * 
+	 * @param journalFile
+	 *            Journal file
+	 * @throws IOException
+	 *             if the journal is in use by another ledger, or can't be read or compacted
+	 */
+	public IdempotencyLedger(Path journalFile) throws IOException {
+		this.journalFile = journalFile;
+		Files.createDirectories(journalFile.toAbsolutePath().getParent());
+		Path lockFile = journalFile.resolveSibling(journalFile.getFileName() + ".lock");
+		this.lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		try {
+			this.lock = tryLock(lockChannel);
+			if (lock == null) {
+				throw new IOException("Mint ledger " + journalFile + " is in use by another process");
+			}
+			if (Files.exists(journalFile)) {
+				load();
+			}
+			compact();
+		} catch (IOException | RuntimeException e) {
+			lockChannel.close();
+			throw e;
+		}
+	}
+
+	private FileLock tryLock(FileChannel channel) throws IOException {
+		try {
+			return channel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			throw new IOException("Mint ledger " + journalFile + " is already open", e);
+		}
+	}
+
+	/**
+	 * Releases the ledger's lock on its journal. Changes are already on disk, so nothing is written.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (lockChannel.isOpen()) {
+			// closing the channel releases the lock
+			lockChannel.close();
+		}
+	}
+
+	/**
+	 * Gets the entry of a mint request.
+	 * 
+	 * @param key
+	 *            Key of the mint request
+	 * @return Entry, or null if the request isn't recorded
+	 */
+	public LedgerEntry get(MintKey key) {
+		return entries.get(key);
+	}
+
+	/**
+	 * Gets the entries whose outcome isn't known.
+	 * 
+	 * @return Pending entries
+	 */
+	public List<LedgerEntry> getPendingEntries() {
+		List<LedgerEntry> pendingEntries = new ArrayList<>();
+		for (LedgerEntry entry : entries.values()) {
+			if (entry.getState() == State.PENDING) {
+				pendingEntries.add(entry);
+			}
+		}
+		return pendingEntries;
+	}
+
+	/**
+	 * Records that a mint request is about to be submitted.
+	 * 
+	 * @param key
+	 *            Key of the mint request
+	 * @throws IOException
+	 *             if the entry can't be written to the journal
+	 */
+	public synchronized void markPending(MintKey key) throws IOException {
+		LedgerEntry entry = new LedgerEntry(key, State.PENDING, null, new Date());
+		append(PENDING, entry);
+		entries.put(key, entry);
+	}
+
+	/**
+	 * Records that a mint request minted a DOI.
+	 * 
+	 * @param key
+	 *            Key of the mint request
+	 * @param doi
+	 *            Minted DOI
+	 * @throws IOException
+	 *             if the entry can't be written to the journal
+	 */
+	public synchronized void markCompleted(MintKey key, String doi) throws IOException {
+		LedgerEntry entry = new LedgerEntry(key, State.COMPLETED, doi, new Date());
+		append(COMPLETED, entry);
+		entries.put(key, entry);
+	}
+
+	/**
+	 * Removes the entry of a mint request that certainly didn't mint a DOI, so that it can be minted again.
+	 * 
+	 * @param key
+	 *            Key of the mint request
+	 * @throws IOException
+	 *             if the removal can't be written to the journal
+	 */
+	public synchronized void remove(MintKey key) throws IOException {
+		if (entries.containsKey(key)) {
+			append(REMOVED, new LedgerEntry(key, null, null, new Date()));
+			entries.remove(key);
+		}
+	}
+
+	private void append(String op, LedgerEntry entry) throws IOException {
+		if (!lock.isValid()) {
+			throw new IOException("Mint ledger " + journalFile + " is closed");
+		}
+		byte[] line = toLine(op, entry).getBytes(StandardCharsets.UTF_8);
+		Files.write(journalFile, line, StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE,
+				StandardOpenOption.DSYNC);
+	}
+
+	/**
+	 * Reads the entries in the journal. Each line is written with a single append that ends in a newline, so a last
+	 * line without one was cut short by a crash and is ignored, whichever field it was cut in. Compacting the journal
+	 * afterwards drops it from the file.
+	 */
+	private void load() throws IOException {
+		String journal = new String(Files.readAllBytes(journalFile), StandardCharsets.UTF_8);
+		int lineNumber = 0;
+		int lineStart = 0;
+		int lineEnd;
+		while ((lineEnd = journal.indexOf('\n', lineStart)) >= 0) {
+			lineNumber++;
+			loadLine(journal.substring(lineStart, lineEnd), lineNumber);
+			lineStart = lineEnd + 1;
+		}
+		if (lineStart < journal.length()) {
+			LOGGER.warn("Ignoring partially written line {} of mint ledger {}", lineNumber + 1, journalFile);
+		}
+	}
+
+	private void loadLine(String line, int lineNumber) {
+		String[] fields = line.split("\t", -1);
+		Date timestamp = fields.length >= 5 ? parseTimestamp(fields[4]) : null;
+		if (timestamp == null) {
+			LOGGER.warn("Ignoring malformed line {} of mint ledger {}", lineNumber, journalFile);
+			return;
+		}
+		MintKey key = new MintKey(unescape(fields[1]), unescape(fields[2]), fields[3]);
+		if (PENDING.equals(fields[0]) && fields.length == 5) {
+			entries.put(key, new LedgerEntry(key, State.PENDING, null, timestamp));
+		} else if (COMPLETED.equals(fields[0]) && fields.length == 6 && !fields[5].isEmpty()) {
+			entries.put(key, new LedgerEntry(key, State.COMPLETED, unescape(fields[5]), timestamp));
+		} else if (REMOVED.equals(fields[0]) && fields.length == 5) {
+			entries.remove(key);
+		} else {
+			LOGGER.warn("Ignoring malformed line {} of mint ledger {}", lineNumber, journalFile);
+		}
+	}
+
+	/**
+	 * Rewrites the journal with a single line for each entry, replacing the old journal atomically. The new journal is
+	 * synced to disk before it replaces the old one, and the rename is synced after, so that a crash leaves one journal
+	 * or the other intact.
+	 */
+	private synchronized void compact() throws IOException {
+		Path parent = journalFile.toAbsolutePath().getParent();
+		Path tmpFile = Files.createTempFile(parent, journalFile.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				for (LedgerEntry entry : entries.values()) {
+					ByteBuffer line = ByteBuffer.wrap(toLine(entry.getState() == State.PENDING ? PENDING : COMPLETED,
+							entry).getBytes(StandardCharsets.UTF_8));
+					while (line.hasRemaining()) {
+						channel.write(line);
+					}
+				}
+				channel.force(true);
+			}
+			Files.move(tmpFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmpFile);
+		}
+		syncDirectory(parent);
+	}
+
+	/**
+	 * Syncs a directory so that a rename within it is durable. Not every platform can open a directory, in which case
+	 * the rename is left to the file system.
+	 */
+	private static void syncDirectory(Path dir) {
+		try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			LOGGER.debug("Unable to sync directory {}", dir, e);
+		}
+	}
+
+	private static Date parseTimestamp(String str) {
+		try {
+			return new Date(Long.parseLong(str));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static String toLine(String op, LedgerEntry entry) {
+		MintKey key = entry.getKey();
+		StringBuilder line = new StringBuilder();
+		line.append(op).append('\t').append(escape(key.getAppId())).append('\t').append(escape(key.getUrl()))
+				.append('\t').append(key.getMetadataHash()).append('\t').append(entry.getTimestamp().getTime());
+		if (entry.getDoi() != null) {
+			line.append('\t').append(escape(entry.getDoi()));
+		}
+		return line.append('\n').toString();
+	}
+
+	private static String escape(String str) {
+		return str.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+	}
+
+	private static String unescape(String str) {
+		StringBuilder sb = new StringBuilder(str.length());
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			if (c == '\\' && i + 1 < str.length()) {
+				char next = str.charAt(++i);
+				sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.ledger;
+
+import java.util.Date;
+
+/**
+ * State of a mint request recorded in an {@link IdempotencyLedger}.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public final class LedgerEntry {
+
+	public enum State {
+		/**
+		 * The mint request has been, or is about to be, submitted and its outcome isn't known.
+		 */
+		PENDING,
+
+		/**
+		 * The DOI service minted a DOI for the request.
+		 */
+		COMPLETED
+	}
+
+	private final MintKey key;
+	private final State state;
+	private final String doi;
+	private final Date timestamp;
+
+	LedgerEntry(MintKey key, State state, String doi, Date timestamp) {
+		this.key = key;
+		this.state = state;
+		this.doi = doi;
+		this.timestamp = timestamp;
+	}
+
+	public MintKey getKey() {
+		return key;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * @return DOI minted for the request, or null if the entry is pending
+	 */
+	public String getDoi() {
+		return doi;
+	}
+
+	/**
+	 * @return Time the entry was recorded
+	 */
+	public Date getTimestamp() {
+		return timestamp;
+	}
+
+	@Override
+	public String toString() {
+		return "LedgerEntry [key=" + key + ", state=" + state + ", doi=" + doi + ", timestamp=" + timestamp + "]";
+	}
+}
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.ledger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
+
+/**
+ * Identifies a mint request by the App ID it's submitted with, the URL the DOI resolves to and a SHA-256 hash of the
+ * metadata document. Two mint requests with equal keys would mint duplicate DOIs.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public final class MintKey {
+
+	private final String appId;
+	private final String url;
+	private final String metadataHash;
+
+	public MintKey(String appId, String url, String metadataHash) {
+		this.appId = Objects.requireNonNull(appId);
+		this.url = Objects.requireNonNull(url);
+		this.metadataHash = Objects.requireNonNull(metadataHash);
+	}
+
+	/**
+	 * Creates a key for a mint request.
+	 * 
+	 * @param appId
+	 *            App ID the request is submitted with
+	 * @param url
+	 *            URL the DOI is to resolve to
+	 * @param resourceDoc
+	 *            Metadata document
+	 * @return Key of the mint request
+	 */
+	public static MintKey of(String appId, String url, String resourceDoc) {
+		return new MintKey(appId != null ? appId : "", url, sha256(resourceDoc != null ? resourceDoc : ""));
+	}
+
+	/**
+	 * Creates a key for a mint request whose metadata document is streamed. The key equals that of a request with the
+	 * same document as a String.
+	 * 
+	 * @param appId
+	 *            App ID the request is submitted with
+	 * @param url
+	 *            URL the DOI is to resolve to
+	 * @param resourceDoc
+	 *            Stream of the metadata document as UTF-8 bytes, read to its end
+	 * @return Key of the mint request
+	 * @throws IOException
+	 *             if the metadata document can't be read
+	 */
+	public static MintKey of(String appId, String url, InputStream resourceDoc) throws IOException {
+		MessageDigest digest = newSha256Digest();
+		byte[] buffer = new byte[8192];
+		for (int nBytesRead = resourceDoc.read(buffer); nBytesRead != -1; nBytesRead = resourceDoc.read(buffer)) {
+			digest.update(buffer, 0, nBytesRead);
+		}
+		return new MintKey(appId != null ? appId : "", url, toHex(digest.digest()));
+	}
+
+	public String getAppId() {
+		return appId;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public String getMetadataHash() {
+		return metadataHash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof MintKey)) {
+			return false;
+		}
+		MintKey other = (MintKey) obj;
+		return appId.equals(other.appId) && url.equals(other.url) && metadataHash.equals(other.metadataHash);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(appId, url, metadataHash);
+	}
+
+	@Override
+	public String toString() {
+		return "MintKey [appId=" + appId + ", url=" + url + ", metadataHash=" + metadataHash + "]";
+	}
+
+	private static String sha256(String str) {
+		return toHex(newSha256Digest().digest(str.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static MessageDigest newSha256Digest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String toHex(byte[] digest) {
+		StringBuilder hex = new StringBuilder(digest.length * 2);
+		for (byte b : digest) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+}
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.ledger;
+
+import au.edu.anu.doi.api.DoiException;
+
+/**
+ * Determines whether a mint request whose outcome is unknown, for example because it timed out, minted a DOI. An
+ * implementation could search the DOI registry for a DOI resolving to the entry's URL.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+@FunctionalInterface
+public interface PendingMintResolver {
+
+	/**
+	 * Resolves a pending mint.
+	 * 
+	 * @param pendingEntry
+	 *            Ledger entry of the mint request
+	 * @return DOI minted by the request, or null if the request certainly didn't mint a DOI
+	 * @throws DoiException
+	 *             if the outcome can't be determined
+	 */
+	String resolve(LedgerEntry pendingEntry) throws DoiException;
+}
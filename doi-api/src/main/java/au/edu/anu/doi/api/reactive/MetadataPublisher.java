@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.reactive;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import au.edu.anu.doi.api.concurrent.Futures;
+
+/**
+ * Publishes the metadata of each DOI received from an upstream publisher. DOIs are only requested from upstream, and
+ * therefore only fetched, while the subscriber has outstanding demand, with at most {@code maxConcurrency} fetches in
+ * flight. A slow subscriber thus throttles the fetches and memory use stays constant regardless of the number of DOIs.
+ * Results are published in completion order. A failed fetch is published as an unsuccessful {@link MetadataResult}
+ * and doesn't terminate the stream.
+ * <p>
+ * On Java 9 and later the publisher can be adapted to {@code java.util.concurrent.Flow} using
+ * {@code org.reactivestreams.FlowAdapters}.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public class MetadataPublisher implements Publisher<MetadataResult> {
+
+	private final Publisher<String> dois;
+	private final Function<String, CompletableFuture<String>> metadataFetcher;
+	private final int maxConcurrency;
+
+	/**
+	 * @param dois
+	 *            Publisher of DOIs whose metadata is to be fetched
+	 * @param metadataFetcher
+	 *            Function asynchronously fetching the metadata of a DOI
+	 * @param maxConcurrency
+	 *            Maximum number of fetches in flight
+	 */
+	public MetadataPublisher(Publisher<String> dois, Function<String, CompletableFuture<String>> metadataFetcher,
+			int maxConcurrency) {
+		Objects.requireNonNull(dois);
+		Objects.requireNonNull(metadataFetcher);
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException("maxConcurrency must be at least 1");
+		}
+		this.dois = dois;
+		this.metadataFetcher = metadataFetcher;
+		this.maxConcurrency = maxConcurrency;
+	}
+
+	@Override
+	public void subscribe(Subscriber<? super MetadataResult> subscriber) {
+		Objects.requireNonNull(subscriber);
+		dois.subscribe(new FetchingSubscriber(subscriber));
+	}
+
+	/**
+	 * Subscribes to the DOIs and acts as the subscription of the downstream subscriber. All downstream signals and
+	 * upstream requests are issued from {@link #drain()}, which is entered by one thread at a time.
+	 */
+	private class FetchingSubscriber implements Subscriber<String>, Subscription {
+		private final Subscriber<? super MetadataResult> downstream;
+
+		private final AtomicInteger wip = new AtomicInteger();
+		private final AtomicLong requested = new AtomicLong();
+		private final AtomicLong upstreamOutstanding = new AtomicLong();
+		private final AtomicInteger inFlight = new AtomicInteger();
+		private final Queue<MetadataResult> completed = new ConcurrentLinkedQueue<>();
+
+		private volatile Subscription upstream;
+		private volatile boolean upstreamDone;
+		private volatile Throwable upstreamError;
+		private volatile boolean cancelled;
+		private boolean terminated;
+
+		FetchingSubscriber(Subscriber<? super MetadataResult> downstream) {
+			this.downstream = downstream;
+		}
+
+		@Override
+		public void onSubscribe(Subscription subscription) {
+			Objects.requireNonNull(subscription);
+			if (upstream != null) {
+				subscription.cancel();
+				return;
+			}
+			upstream = subscription;
+			downstream.onSubscribe(this);
+			drain();
+		}
+
+		@Override
+		public void onNext(String doi) {
+			Objects.requireNonNull(doi);
+			upstreamOutstanding.decrementAndGet();
+			inFlight.incrementAndGet();
+			CompletableFuture<String> metadataFuture;
+			try {
+				metadataFuture = metadataFetcher.apply(doi);
+			} catch (RuntimeException e) {
+				metadataFuture = new CompletableFuture<>();
+				metadataFuture.completeExceptionally(e);
+			}
+			metadataFuture.whenComplete((metadata, throwable) -> {
+				// queue before decrementing in-flight so the result is never missed when computing pending items
+				completed.offer(new MetadataResult(doi, throwable == null ? metadata : null,
+						throwable == null ? null : Futures.toDoiException(throwable)));
+				inFlight.decrementAndGet();
+				drain();
+			});
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			Objects.requireNonNull(throwable);
+			upstreamError = throwable;
+			upstreamDone = true;
+			drain();
+		}
+
+		@Override
+		public void onComplete() {
+			upstreamDone = true;
+			drain();
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				// rule 3.9: stop requesting DOIs and signal an error once in-flight fetches have completed
+				upstream.cancel();
+				upstreamError = new IllegalArgumentException("Requested number of items must be positive: " + n);
+				upstreamDone = true;
+				drain();
+				return;
+			}
+			long current;
+			long updated;
+			do {
+				current = requested.get();
+				updated = current + n < 0 ? Long.MAX_VALUE : current + n;
+			} while (!requested.compareAndSet(current, updated));
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			Subscription subscription = upstream;
+			if (subscription != null) {
+				subscription.cancel();
+			}
+		}
+
+		private void drain() {
+			if (wip.getAndIncrement() != 0) {
+				return;
+			}
+			int missed = 1;
+			do {
+				if (cancelled || terminated) {
+					completed.clear();
+				} else {
+					emitCompleted();
+					if (upstreamDone && inFlight.get() == 0 && completed.isEmpty()) {
+						terminate();
+					} else if (!upstreamDone) {
+						requestUpstream();
+					}
+				}
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void emitCompleted() {
+			long demand = requested.get();
+			long emitted = 0;
+			while (emitted != demand && !cancelled) {
+				MetadataResult result = completed.poll();
+				if (result == null) {
+					break;
+				}
+				downstream.onNext(result);
+				emitted++;
+			}
+			if (emitted > 0 && demand != Long.MAX_VALUE) {
+				requested.addAndGet(-emitted);
+			}
+		}
+
+		private void terminate() {
+			terminated = true;
+			if (upstreamError != null) {
+				downstream.onError(upstreamError);
+			} else {
+				downstream.onComplete();
+			}
+		}
+
+		/**
+		 * Requests as many DOIs as there is demand for, less those already requested, being fetched or awaiting
+		 * delivery, up to the maximum concurrency.
+		 */
+		private void requestUpstream() {
+			Subscription subscription = upstream;
+			if (subscription == null) {
+				return;
+			}
+			long pending = upstreamOutstanding.get() + inFlight.get() + completed.size();
+			long toRequest = Math.min(maxConcurrency, requested.get()) - pending;
+			if (toRequest > 0) {
+				upstreamOutstanding.addAndGet(toRequest);
+				subscription.request(toRequest);
+			}
+		}
+	}
+}
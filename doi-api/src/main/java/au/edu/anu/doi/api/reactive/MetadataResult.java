@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.reactive;
+
+import au.edu.anu.doi.api.DoiException;
+
+/**
+ * Metadata retrieved for a single DOI, or the exception that prevented its retrieval.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public class MetadataResult {
+	private final String doi;
+	private final String metadata;
+	private final DoiException exception;
+
+	public MetadataResult(String doi, String metadata, DoiException exception) {
+		this.doi = doi;
+		this.metadata = metadata;
+		this.exception = exception;
+	}
+
+	public String getDoi() {
+		return doi;
+	}
+
+	public String getMetadata() {
+		return metadata;
+	}
+
+	public DoiException getException() {
+		return exception;
+	}
+
+	public boolean isSuccess() {
+		return exception == null;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("MetadataResult [doi=%s, success=%s]", doi, isSuccess());
+	}
+}
@@ -0,0 +1,483 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.response;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses DOI service responses into a {@link DoiResponse} without JAXB. A response is a {@code response} element with
+ * a {@code type} attribute and the {@code responsecode}, {@code message}, {@code doi}, {@code url}, {@code app_id} and
+ * {@code verbosemessage} elements, each holding text only. The parser reads a UTF-8 encoded document directly,
+ * decoding only the text of the attribute and elements. Entity and character references and CDATA sections are
+ * supported.
+ * <p>
+ * A document of any other shape, or with any construct the parser doesn't handle, such as a comment, a DOCTYPE or a
+ * namespace, isn't parsed and is left to JAXB, which also reports documents that aren't well-formed. Instances are
+ * thread-safe.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+final class DoiResponseParser {
+
+	private static final byte[] UTF8_BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+	private static final byte[] XML_DECLARATION_START = ascii("<?xml");
+	private static final byte[] CDATA_START = ascii("<![CDATA[");
+	private static final byte[] CDATA_END = ascii("]]>");
+	private static final byte[] RESPONSE = ascii("response");
+	private static final byte[] TYPE = ascii("type");
+
+	private static final int CODE = 0;
+	private static final int MESSAGE = 1;
+	private static final int DOI = 2;
+	private static final int URL = 3;
+	private static final int APP_ID = 4;
+	private static final int VERBOSE_MESSAGE = 5;
+	private static final byte[][] ELEMENTS = { ascii("responsecode"), ascii("message"), ascii("doi"), ascii("url"),
+			ascii("app_id"), ascii("verbosemessage") };
+
+	// thrown to abandon a document the parser doesn't handle, preallocated as it carries no stack trace
+	private static final UnexpectedDocumentException UNEXPECTED_DOCUMENT = new UnexpectedDocumentException();
+
+	/**
+	 * Parses a response document.
+	 * 
+	 * @param doc
+	 *            Response document
+	 * @return DoiResponse, or null if the document has to be unmarshalled by JAXB
+	 */
+	DoiResponse parse(String doc) {
+		// a byte order mark only marks the encoding of bytes, it isn't allowed before the root element of text
+		if (doc.length() > 0 && doc.charAt(0) == '\uFEFF') {
+			return null;
+		}
+		byte[] bytes = doc.getBytes(StandardCharsets.UTF_8);
+		return parse(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Parses a UTF-8 encoded response document.
+	 * 
+	 * @param doc
+	 *            Buffer containing the response document
+	 * @param offset
+	 *            Offset of the document in the buffer
+	 * @param length
+	 *            Length of the document in bytes
+	 * @return DoiResponse, or null if the document has to be unmarshalled by JAXB
+	 */
+	DoiResponse parse(byte[] doc, int offset, int length) {
+		try {
+			return new Scanner(doc, offset, offset + length).readDocument();
+		} catch (UnexpectedDocumentException e) {
+			return null;
+		}
+	}
+
+	private static byte[] ascii(String s) {
+		return s.getBytes(StandardCharsets.US_ASCII);
+	}
+
+
+	/**
+	 * Reads a single document. Each byte of a multi-byte UTF-8 sequence is outside the ASCII range, so markup is
+	 * recognised byte by byte and only text is decoded.
+	 */
+	private static final class Scanner {
+		private final byte[] b;
+		private final int end;
+		private int pos;
+
+		Scanner(byte[] b, int offset, int end) {
+			this.b = b;
+			this.pos = offset;
+			this.end = end;
+		}
+
+		DoiResponse readDocument() throws UnexpectedDocumentException {
+			if (startsWith(UTF8_BOM)) {
+				pos += UTF8_BOM.length;
+			}
+			if (startsWith(XML_DECLARATION_START)) {
+				readXmlDeclaration();
+			}
+			skipWhitespace();
+			expect('<');
+			expectName(RESPONSE);
+
+			DoiResponse doiResponse = new DoiResponse();
+			while (true) {
+				boolean separated = skipWhitespace();
+				if (consume('>')) {
+					break;
+				}
+				if (consume('/')) {
+					expect('>');
+					return readEndOfDocument(doiResponse);
+				}
+				if (!separated || doiResponse.getType() != null) {
+					throw UNEXPECTED_DOCUMENT;
+				}
+				expectName(TYPE);
+				skipWhitespace();
+				expect('=');
+				skipWhitespace();
+				doiResponse.setType(readAttributeValue());
+			}
+
+			while (true) {
+				// text other than whitespace between the elements isn't expected
+				skipWhitespace();
+				expect('<');
+				if (consume('/')) {
+					expectName(RESPONSE);
+					skipWhitespace();
+					expect('>');
+					return readEndOfDocument(doiResponse);
+				}
+				int element = readElementName();
+				skipWhitespace();
+				String text;
+				if (consume('/')) {
+					expect('>');
+					text = "";
+				} else {
+					expect('>');
+					text = readElementText(ELEMENTS[element]);
+				}
+				setElement(doiResponse, element, text);
+			}
+		}
+
+		private DoiResponse readEndOfDocument(DoiResponse doiResponse) throws UnexpectedDocumentException {
+			skipWhitespace();
+			if (pos != end) {
+				throw UNEXPECTED_DOCUMENT;
+			}
+			return doiResponse;
+		}
+
+		/**
+		 * Skips the XML declaration, checking that the document is encoded in UTF-8, or its subset US-ASCII.
+		 */
+		private void readXmlDeclaration() throws UnexpectedDocumentException {
+			int close = indexOf('?', '>', pos);
+			String declaration = decode(pos, close);
+			pos = close + 2;
+			int encodingIndex = declaration.indexOf("encoding");
+			if (encodingIndex >= 0) {
+				int quote = encodingIndex + "encoding".length();
+				while (quote < declaration.length() && declaration.charAt(quote) != '"'
+						&& declaration.charAt(quote) != '\'') {
+					quote++;
+				}
+				int closeQuote = quote < declaration.length() ? declaration.indexOf(declaration.charAt(quote), quote + 1)
+						: -1;
+				if (closeQuote < 0) {
+					throw UNEXPECTED_DOCUMENT;
+				}
+				String encoding = declaration.substring(quote + 1, closeQuote);
+				if (!encoding.equalsIgnoreCase("UTF-8") && !encoding.equalsIgnoreCase("US-ASCII")) {
+					throw UNEXPECTED_DOCUMENT;
+				}
+			}
+		}
+
+		private int readElementName() throws UnexpectedDocumentException {
+			for (int i = 0; i < ELEMENTS.length; i++) {
+				if (consumeName(ELEMENTS[i])) {
+					return i;
+				}
+			}
+			throw UNEXPECTED_DOCUMENT;
+		}
+
+		/**
+		 * Reads the text of an element up to and including its end tag.
+		 */
+		private String readElementText(byte[] name) throws UnexpectedDocumentException {
+			StringBuilder text = null;
+			int start = pos;
+			while (pos < end) {
+				byte c = b[pos];
+				if (c == '<') {
+					if (startsWith(CDATA_START)) {
+						text = append(text, start, pos);
+						int cdataStart = pos + CDATA_START.length;
+						int cdataEnd = indexOf(']', ']', cdataStart);
+						if (cdataEnd + 2 >= end || b[cdataEnd + 2] != '>') {
+							throw UNEXPECTED_DOCUMENT;
+						}
+						for (int i = cdataStart; i < cdataEnd; i++) {
+							checkChar(b[i]);
+						}
+						text.append(decode(cdataStart, cdataEnd));
+						pos = cdataEnd + CDATA_END.length;
+						start = pos;
+						continue;
+					}
+					String value = text != null ? append(text, start, pos).toString() : decode(start, pos);
+					pos++;
+					expect('/');
+					expectName(name);
+					skipWhitespace();
+					expect('>');
+					return value;
+				} else if (c == '&') {
+					text = append(text, start, pos);
+					readReference(text);
+					start = pos;
+				} else if (c == '>' && pos - start >= 2 && b[pos - 1] == ']' && b[pos - 2] == ']') {
+					throw UNEXPECTED_DOCUMENT;
+				} else {
+					checkChar(c);
+					pos++;
+				}
+			}
+			throw UNEXPECTED_DOCUMENT;
+		}
+
+		private String readAttributeValue() throws UnexpectedDocumentException {
+			if (pos >= end || (b[pos] != '"' && b[pos] != '\'')) {
+				throw UNEXPECTED_DOCUMENT;
+			}
+			byte quote = b[pos++];
+			StringBuilder value = null;
+			int start = pos;
+			while (pos < end) {
+				byte c = b[pos];
+				if (c == quote) {
+					String s = value != null ? append(value, start, pos).toString() : decode(start, pos);
+					pos++;
+					return s;
+				} else if (c == '&') {
+					value = append(value, start, pos);
+					readReference(value);
+					start = pos;
+				} else if (c == '<' || c == '\t' || c == '\n') {
+					// whitespace in an attribute value is normalised to spaces, leave that to JAXB
+					throw UNEXPECTED_DOCUMENT;
+				} else {
+					checkChar(c);
+					pos++;
+				}
+			}
+			throw UNEXPECTED_DOCUMENT;
+		}
+
+		/**
+		 * Reads an entity or character reference, appending the character it refers to.
+		 */
+		private void readReference(StringBuilder text) throws UnexpectedDocumentException {
+			int semicolon = pos + 1;
+			while (semicolon < end && semicolon - pos <= 10 && b[semicolon] != ';') {
+				semicolon++;
+			}
+			if (semicolon >= end || b[semicolon] != ';') {
+				throw UNEXPECTED_DOCUMENT;
+			}
+			String name = decode(pos + 1, semicolon);
+			pos = semicolon + 1;
+			switch (name) {
+			case "amp":
+				text.append('&');
+				return;
+			case "lt":
+				text.append('<');
+				return;
+			case "gt":
+				text.append('>');
+				return;
+			case "quot":
+				text.append('"');
+				return;
+			case "apos":
+				text.append('\'');
+				return;
+			default:
+				text.appendCodePoint(parseCharReference(name));
+			}
+		}
+
+		private static int parseCharReference(String name) throws UnexpectedDocumentException {
+			if (name.length() < 2 || name.charAt(0) != '#') {
+				throw UNEXPECTED_DOCUMENT;
+			}
+			int radix = name.charAt(1) == 'x' ? 16 : 10;
+			int first = radix == 16 ? 2 : 1;
+			if (first == name.length()) {
+				throw UNEXPECTED_DOCUMENT;
+			}
+			int codePoint = 0;
+			for (int i = first; i < name.length(); i++) {
+				char c = name.charAt(i);
+				int digit = c < 0x80 ? Character.digit(c, radix) : -1;
+				if (digit < 0) {
+					throw UNEXPECTED_DOCUMENT;
+				}
+				// a reference has at most 8 digits, so this can't overflow
+				codePoint = codePoint * radix + digit;
+			}
+			if (!(codePoint == 0x9 || codePoint == 0xA || codePoint == 0xD || (codePoint >= 0x20 && codePoint <= 0xD7FF)
+					|| (codePoint >= 0xE000 && codePoint <= 0xFFFD) || (codePoint >= 0x10000 && codePoint <= 0x10FFFF))) {
+				throw UNEXPECTED_DOCUMENT;
+			}
+			return codePoint;
+		}
+
+		/**
+		 * Checks that a byte of text is allowed in XML. Carriage returns are allowed, but normalised, so are left to
+		 * JAXB along with control characters.
+		 */
+		private static void checkChar(byte c) throws UnexpectedDocumentException {
+			if (c >= 0 && c < 0x20 && c != '\t' && c != '\n') {
+				throw UNEXPECTED_DOCUMENT;
+			}
+		}
+
+		private StringBuilder append(StringBuilder text, int from, int to) throws UnexpectedDocumentException {
+			if (text == null) {
+				text = new StringBuilder(Math.max(16, (to - from) * 2));
+			}
+			return text.append(decode(from, to));
+		}
+
+		/**
+		 * Decodes UTF-8 text, rejecting malformed byte sequences rather than replacing them.
+		 */
+		private String decode(int from, int to) throws UnexpectedDocumentException {
+			for (int i = from; i < to; i++) {
+				if (b[i] < 0) {
+					try {
+						return StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(b, from, to - from))
+								.toString();
+					} catch (CharacterCodingException e) {
+						throw UNEXPECTED_DOCUMENT;
+					}
+				}
+			}
+			return new String(b, from, to - from, StandardCharsets.US_ASCII);
+		}
+
+		private int indexOf(char first, char second, int from) throws UnexpectedDocumentException {
+			for (int i = from; i + 1 < end; i++) {
+				if (b[i] == first && b[i + 1] == second) {
+					return i;
+				}
+			}
+			throw UNEXPECTED_DOCUMENT;
+		}
+
+		private boolean skipWhitespace() {
+			int start = pos;
+			while (pos < end && (b[pos] == ' ' || b[pos] == '\n' || b[pos] == '\t' || b[pos] == '\r')) {
+				pos++;
+			}
+			return pos > start;
+		}
+
+		private boolean startsWith(byte[] prefix) {
+			if (end - pos < prefix.length) {
+				return false;
+			}
+			for (int i = 0; i < prefix.length; i++) {
+				if (b[pos + i] != prefix[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private boolean consume(char c) {
+			if (pos < end && b[pos] == c) {
+				pos++;
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(char c) throws UnexpectedDocumentException {
+			if (!consume(c)) {
+				throw UNEXPECTED_DOCUMENT;
+			}
+		}
+
+		/**
+		 * Consumes a name if it's next, and isn't merely the start of a longer name.
+		 */
+		private boolean consumeName(byte[] name) {
+			if (!startsWith(name)) {
+				return false;
+			}
+			int next = pos + name.length;
+			if (next < end) {
+				byte c = b[next];
+				if (c != ' ' && c != '\n' && c != '\t' && c != '\r' && c != '/' && c != '>' && c != '=') {
+					return false;
+				}
+			}
+			pos = next;
+			return true;
+		}
+
+		private void expectName(byte[] name) throws UnexpectedDocumentException {
+			if (!consumeName(name)) {
+				throw UNEXPECTED_DOCUMENT;
+			}
+		}
+	}
+
+	private static void setElement(DoiResponse doiResponse, int element, String text) {
+		switch (element) {
+		case CODE:
+			doiResponse.setCode(text);
+			break;
+		case MESSAGE:
+			doiResponse.setMessage(text);
+			break;
+		case DOI:
+			doiResponse.setDoi(text);
+			break;
+		case URL:
+			doiResponse.setUrl(text);
+			break;
+		case APP_ID:
+			doiResponse.setAppId(text);
+			break;
+		case VERBOSE_MESSAGE:
+			doiResponse.setVerboseMsg(text);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown element " + element);
+		}
+	}
+
+	private static final class UnexpectedDocumentException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		UnexpectedDocumentException() {
+			super(null, null, false, false);
+		}
+	}
+}
@@ -21,59 +21,152 @@
 
 package au.edu.anu.doi.api.response;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.UnmarshalException;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.commons.io.IOUtils;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import au.edu.anu.doi.api.jaxb.JaxbProvider;
+
 /**
+ * Unmarshals DOI service responses. Responses are parsed by a {@link DoiResponseParser}, falling back to JAXB for a
+ * document the parser doesn't expect. Instances are thread-safe. A JAXB Unmarshaller isn't, so each unmarshal borrows
+ * one from a {@link JaxbProvider} and returns it afterwards. By default the provider's unmarshallers are shared by all
+ * instances.
+ * 
  * @author Rahul Khanna
  *
  */
 public class DoiResponseUnmarshaller {
 	private static final Logger LOGGER = LoggerFactory.getLogger(DoiResponseUnmarshaller.class);
 
-	private static JAXBContext doiResponseContext;
+	private static final DoiResponseParser PARSER = new DoiResponseParser();
 
-	private Unmarshaller doiResponseUnmarshaller;
+	private final JaxbProvider jaxbProvider;
 
-	static {
+	public DoiResponseUnmarshaller() {
 		try {
-			doiResponseContext = JAXBContext.newInstance(DoiResponse.class);
+			this.jaxbProvider = JaxbProvider.of(DoiResponse.class);
+			// create the first unmarshaller upfront so that a JAXB setup error is reported here
+			jaxbProvider.prefillUnmarshallers(1);
 		} catch (JAXBException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
-	public DoiResponseUnmarshaller() {
-		setupMarshaller();
+	/**
+	 * Creates a DoiResponseUnmarshaller with a pool of its own that keeps up to the specified number of idle JAXB
+	 * unmarshallers for reuse.
+	 * 
+	 * @param maxPooled
+	 *            Maximum number of idle unmarshallers kept
+	 */
+	public DoiResponseUnmarshaller(int maxPooled) {
+		try {
+			this.jaxbProvider = JaxbProvider.newProvider(DoiResponse.class, maxPooled);
+			jaxbProvider.prefillUnmarshallers(1);
+		} catch (JAXBException e) {
+			throw new RuntimeException(e);
+		}
 	}
 
 	public DoiResponse unmarshal(String doc) throws JAXBException {
-		return unmarshal(new StringReader(doc));
+		DoiResponse doiResponse = parse(doc);
+		if (doiResponse == null) {
+			doiResponse = unmarshalWithJaxb(new StringReader(doc));
+		}
+		LOGGER.trace("Unmarshalled to DOI Response: [{}]",  doiResponse);
+		return doiResponse;
 	}
 	
 	public DoiResponse unmarshal(Reader doc) throws JAXBException {
-		DoiResponse doiResponse = (DoiResponse) doiResponseUnmarshaller.unmarshal(doc);
+		// read upfront so that the document can be unmarshalled again if the parser can't parse it
+		String docStr;
+		try {
+			docStr = IOUtils.toString(doc);
+		} catch (IOException e) {
+			throw new UnmarshalException(e);
+		}
+		return unmarshal(docStr);
+	}
+
+	/**
+	 * Unmarshals a response document from its bytes, as received, without decoding it to a string first. The document
+	 * is decoded as specified by its XML declaration, or as UTF-8 if it has none.
+	 * 
+	 * @param doc
+	 *            Buffer containing the response document
+	 * @param offset
+	 *            Offset of the document in the buffer
+	 * @param length
+	 *            Length of the document in bytes
+	 * @return DoiResponse
+	 * @throws JAXBException
+	 *             if the document isn't a valid response
+	 */
+	public DoiResponse unmarshal(byte[] doc, int offset, int length) throws JAXBException {
+		DoiResponse doiResponse = PARSER.parse(doc, offset, length);
+		if (doiResponse == null) {
+			LOGGER.debug("Unexpected DOI response document, unmarshalling with JAXB");
+			doiResponse = unmarshalWithJaxb(new StreamSource(new ByteArrayInputStream(doc, offset, length)));
+		}
 		LOGGER.trace("Unmarshalled to DOI Response: [{}]",  doiResponse);
 		return doiResponse;
 	}
-	
+
+	/**
+	 * Parses a response without JAXB.
+	 * 
+	 * @return DoiResponse, or null if the document has to be unmarshalled by JAXB
+	 */
+	private static DoiResponse parse(String doc) {
+		DoiResponse doiResponse = PARSER.parse(doc);
+		if (doiResponse == null) {
+			LOGGER.debug("Unexpected DOI response document, unmarshalling with JAXB: {}", doc);
+		}
+		return doiResponse;
+	}
+
+	DoiResponse unmarshalWithJaxb(Reader doc) throws JAXBException {
+		return unmarshalWithJaxb(new StreamSource(doc));
+	}
+
+	private DoiResponse unmarshalWithJaxb(Source doc) throws JAXBException {
+		return jaxbProvider.unmarshal(doc, DoiResponse.class);
+	}
+
 	/**
-	 * Sets up the marshallers and unmarshallers required to marshal/unmarshall requests to and responses from the DOI
-	 * service.
+	 * Creates idle unmarshallers until the pool holds the specified number, up to its maximum, so that the first
+	 * concurrent unmarshals don't each create one.
+	 * 
+	 * @param count
+	 *            Number of idle unmarshallers wanted
 	 */
-	private void setupMarshaller() {
+	public void prefill(int count) {
 		try {
-			doiResponseUnmarshaller = doiResponseContext.createUnmarshaller();
+			jaxbProvider.prefillUnmarshallers(count);
 		} catch (JAXBException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	/**
+	 * Gets the number of idle unmarshallers in the pool.
+	 * 
+	 * @return Number of idle unmarshallers
+	 */
+	int getPooledCount() {
+		return jaxbProvider.getIdleUnmarshallers();
+	}
+
 }
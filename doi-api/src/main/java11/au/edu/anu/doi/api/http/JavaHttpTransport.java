@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.ws.rs.core.Form;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+
+import au.edu.anu.doi.api.concurrent.Futures;
+import au.edu.anu.doi.api.config.DoiConfig;
+
+/**
+ * Transport that sends requests using {@link HttpClient}. Requests are sent natively asynchronously and, where the DOI
+ * service supports HTTP/2, concurrent requests are multiplexed over a single connection instead of each holding a
+ * connection of their own. Response bodies are streamed, so they're read on the thread that processes the response
+ * rather than the client's I/O thread.
+ * <p>
+ * Requires Java 11 or later. Use {@link DoiTransports} to create one from code that must also run on Java 8.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public class JavaHttpTransport implements DoiTransport {
+
+	private final HttpClient httpClient;
+	private final Duration readTimeout;
+
+	/**
+	 * Creates a transport with a new HTTP/2 client, with the connect timeout specified in a DOI configuration. The
+	 * read timeout in the configuration is applied to each request as the time allowed to receive its response
+	 * headers.
+	 * 
+	 * @param doiConfig
+	 *            DOI service configuration
+	 */
+	public JavaHttpTransport(DoiConfig doiConfig) {
+		this(newHttpClient(doiConfig),
+				doiConfig.getReadTimeoutMillis() > 0 ? Duration.ofMillis(doiConfig.getReadTimeoutMillis()) : null);
+	}
+
+	/**
+	 * @param httpClient
+	 *            HTTP client
+	 * @param readTimeout
+	 *            Time allowed to receive the response headers of each request, or null for no timeout
+	 */
+	public JavaHttpTransport(HttpClient httpClient, Duration readTimeout) {
+		Objects.requireNonNull(httpClient);
+		this.httpClient = httpClient;
+		this.readTimeout = readTimeout;
+	}
+
+	@Override
+	public DoiHttpResponse send(DoiHttpRequest request) throws InterruptedException {
+		try {
+			return new JavaHttpResponse(httpClient.send(toHttpRequest(request), BodyHandlers.ofInputStream()));
+		} catch (IOException e) {
+			throw new DoiTransportException(e.toString(), e);
+		}
+	}
+
+	@Override
+	public CompletableFuture<DoiHttpResponse> sendAsync(DoiHttpRequest request) {
+		CompletableFuture<DoiHttpResponse> respFuture = new CompletableFuture<>();
+		CompletableFuture<HttpResponse<InputStream>> exchange = httpClient.sendAsync(toHttpRequest(request),
+				BodyHandlers.ofInputStream());
+		exchange.whenComplete((httpResponse, throwable) -> {
+			if (throwable != null) {
+				Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+						? throwable.getCause() : throwable;
+				respFuture.completeExceptionally(
+						cause instanceof IOException ? new DoiTransportException(cause.toString(), cause) : cause);
+				return;
+			}
+			JavaHttpResponse response = new JavaHttpResponse(httpResponse);
+			if (!respFuture.complete(response)) {
+				// cancelled, nobody will read this response
+				response.close();
+			}
+		});
+		Futures.propagateCancellation(respFuture, exchange);
+		return respFuture;
+	}
+
+	/**
+	 * Does nothing. The HTTP client's connections are released once it's no longer referenced.
+	 */
+	@Override
+	public void close() {
+	}
+
+	private HttpRequest toHttpRequest(DoiHttpRequest request) {
+		HttpRequest.Builder builder = HttpRequest.newBuilder(request.getUri());
+		if (readTimeout != null) {
+			builder.timeout(readTimeout);
+		}
+		for (Entry<String, List<String>> headerEntry : request.getHeaders().entrySet()) {
+			for (String headerValue : headerEntry.getValue()) {
+				builder.header(headerEntry.getKey(), headerValue);
+			}
+		}
+		BodyPublisher body = BodyPublishers.noBody();
+		if (request.getResourceDocSource() != null) {
+			builder.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_FORM_URLENCODED);
+			body = BodyPublishers.ofInputStream(() -> {
+				try {
+					return request.openStreamingBody();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} else if (request.getEntity() != null) {
+			builder.header(HttpHeaders.CONTENT_TYPE, request.getEntity().getMediaType().toString());
+			body = BodyPublishers.ofString(encodeForm(request.getEntity().getEntity()), StandardCharsets.UTF_8);
+		}
+		return builder.method(request.getMethod(), body).build();
+	}
+
+	/**
+	 * Encodes a form as application/x-www-form-urlencoded.
+	 */
+	private static String encodeForm(Form form) {
+		StringBuilder encoded = new StringBuilder();
+		for (Entry<String, List<String>> param : form.asMap().entrySet()) {
+			for (String value : param.getValue()) {
+				if (encoded.length() > 0) {
+					encoded.append('&');
+				}
+				encoded.append(URLEncoder.encode(param.getKey(), StandardCharsets.UTF_8)).append('=')
+						.append(URLEncoder.encode(value, StandardCharsets.UTF_8));
+			}
+		}
+		return encoded.toString();
+	}
+
+	private static HttpClient newHttpClient(DoiConfig doiConfig) {
+		HttpClient.Builder builder = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2);
+		if (doiConfig.getConnectTimeoutMillis() > 0) {
+			builder.connectTimeout(Duration.ofMillis(doiConfig.getConnectTimeoutMillis()));
+		}
+		return builder.build();
+	}
+
+	private static class JavaHttpResponse implements DoiHttpResponse {
+		private final HttpResponse<InputStream> httpResponse;
+		private final AtomicBoolean closed = new AtomicBoolean(false);
+
+		private JavaHttpResponse(HttpResponse<InputStream> httpResponse) {
+			this.httpResponse = httpResponse;
+		}
+
+		@Override
+		public int getStatus() {
+			return httpResponse.statusCode();
+		}
+
+		@Override
+		public String getHeader(String name) {
+			List<String> values = httpResponse.headers().allValues(name);
+			return values.isEmpty() ? null : String.join(",", values);
+		}
+
+		@Override
+		public String readBodyAsString() {
+			try (InputStream body = httpResponse.body()) {
+				return new String(body.readAllBytes(), getCharset());
+			} catch (IOException e) {
+				throw new DoiTransportException(e.toString(), e);
+			}
+		}
+
+		@Override
+		public InputStream readBody() {
+			return httpResponse.body();
+		}
+
+		@Override
+		public void close() {
+			if (closed.compareAndSet(false, true)) {
+				try {
+					httpResponse.body().close();
+				} catch (IOException e) {
+					// nothing more can be done with the response
+				}
+			}
+		}
+
+		private Charset getCharset() {
+			String contentType = httpResponse.headers().firstValue(HttpHeaders.CONTENT_TYPE).orElse("");
+			for (String param : contentType.split(";")) {
+				String[] nameValue = param.trim().split("=", 2);
+				if (nameValue.length == 2 && nameValue[0].trim().equalsIgnoreCase("charset")) {
+					try {
+						return Charset.forName(nameValue[1].trim().replace("\"", ""));
+					} catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+						break;
+					}
+				}
+			}
+			return StandardCharsets.UTF_8;
+		}
+	}
+}
@@ -21,31 +21,74 @@
 
 package au.edu.anu.doi.api;
 
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.WebTarget;
 
+import org.apache.commons.io.IOUtils;
 import org.hamcrest.Matchers;
 import org.junit.After;
 import org.junit.AfterClass;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Ignore;
+import org.junit.Rule;
 import org.junit.Test;
-import org.mockito.InjectMocks;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import au.edu.anu.doi.api.DoiServiceEventListener.CircuitBreakerStateEvent;
+import au.edu.anu.doi.api.bulk.BulkOptions;
+import au.edu.anu.doi.api.bulk.BulkResult;
+import au.edu.anu.doi.api.bulk.BulkSummary;
+import au.edu.anu.doi.api.bulk.MintRequest;
+import au.edu.anu.doi.api.concurrent.CircuitBreaker;
+import au.edu.anu.doi.api.concurrent.DoiExecutors;
+import au.edu.anu.doi.api.concurrent.ExecutionMode;
 import au.edu.anu.doi.api.config.DoiConfig;
+import au.edu.anu.doi.api.http.ConnectionPool;
+import au.edu.anu.doi.api.http.ContentCoding;
+import au.edu.anu.doi.api.http.DoiClientFactory;
+import au.edu.anu.doi.api.http.JerseyTransport;
+import au.edu.anu.doi.api.http.ResourceDocSource;
 import au.edu.anu.doi.api.response.DoiResponse;
 import au.edu.anu.doi.api.response.DoiResponseUnmarshaller;
 
@@ -60,7 +103,14 @@ public class DoiServiceTest {
 	@Mock private DoiConfig doiConfig;
 	@Mock private Client client;
 	
-	@InjectMocks private DoiService doiSvc;
+	private DoiService doiSvc;
+	
+	private MockDoiServer doiServer;
+	private Client realClient;
+	private ExecutorService responseExecutor;
+	
+	@Rule
+	public TemporaryFolder tmpFolder = new TemporaryFolder();
 	
 	/**
 	 * @throws java.lang.Exception
@@ -82,6 +132,7 @@ public class DoiServiceTest {
 	@Before
 	public void setUp() throws Exception {
 		MockitoAnnotations.initMocks(this);
+		doiSvc = new DoiService(client, doiConfig);
 	}
 
 	/**
@@ -89,6 +140,15 @@ public class DoiServiceTest {
 	 */
 	@After
 	public void tearDown() throws Exception {
+		if (realClient != null) {
+			realClient.close();
+		}
+		if (doiServer != null) {
+			doiServer.close();
+		}
+		if (responseExecutor != null) {
+			responseExecutor.shutdownNow();
+		}
 	}
 	
 	@Ignore
@@ -116,4 +176,1005 @@ public class DoiServiceTest {
 		assertThat(resp, Matchers.notNullValue());
 	}
 
+	@Test
+	public void testMintAsync() throws Exception {
+		DoiService svc = createServiceForMockServer();
+		
+		CompletableFuture<DoiResponse> respFuture = svc.mintAsync("http://abc.com", "<resource/>");
+		DoiResponse doiResp = respFuture.get(10, TimeUnit.SECONDS);
+		assertThat(doiResp.getCode(), is("MT001"));
+		assertThat(doiServer.getRequestCount(MockDoiServer.MINT_PATH), is(1));
+	}
+
+	@Test
+	public void testAsyncOperationsProcessedOnResponseExecutor() throws Exception {
+		DoiService svc = createServiceForMockServer();
+		
+		CompletableFuture<Boolean> onExecutor = svc.getServiceStatusAsync()
+				.thenApply(resp -> Thread.currentThread().getName().startsWith("doi-resp-"));
+		assertThat(onExecutor.get(10, TimeUnit.SECONDS), is(true));
+		assertThat(svc.getMetadataAsync("10.5072/00/ABC").get(10, TimeUnit.SECONDS),
+				is("<resource>metadata</resource>"));
+		assertThat(svc.updateAsync("10.5072/00/ABC", "http://abc.com", null).get(10, TimeUnit.SECONDS).getCode(),
+				is("MT002"));
+	}
+
+	@Test
+	public void testAsyncFailureCompletesWithDoiException() throws Exception {
+		DoiService svc = createServiceForMockServer();
+		doiServer.setHandler(MockDoiServer.MINT_PATH, (exchange, body) -> MockDoiServer.respond(exchange, 500, "Oops"));
+		
+		try {
+			svc.mintAsync("http://abc.com", "<resource/>").get(10, TimeUnit.SECONDS);
+			fail("Expected DoiException");
+		} catch (ExecutionException e) {
+			assertThat(e.getCause(), instanceOf(DoiException.class));
+			assertThat(((DoiException) e.getCause()).getRespStr(), is("Oops"));
+		}
+	}
+
+	@Test
+	public void testResponseParsedFromBody() throws Exception {
+		DoiService svc = createServiceForMockServer();
+		doiServer.setHandler(MockDoiServer.STATUS_PATH, (exchange, body) -> {
+			byte[] resp = "<response type=\"success\"><responsecode>MT090</responsecode><message>caf\u00e9</message></response>"
+					.getBytes(StandardCharsets.ISO_8859_1);
+			exchange.getResponseHeaders().add("Content-Type", "application/xml; charset=ISO-8859-1");
+			exchange.sendResponseHeaders(200, resp.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(resp);
+			}
+		});
+		assertThat(svc.getServiceStatus().getMessage(), is("caf\u00e9"));
+		
+		String failure = MockDoiServer.successResponse("MT090", "").replace("success", "failure");
+		doiServer.setHandler(MockDoiServer.STATUS_PATH, (exchange, body) -> MockDoiServer.respond(exchange, 200, failure));
+		try {
+			svc.getServiceStatusAsync().get(10, TimeUnit.SECONDS);
+			fail("Expected DoiException");
+		} catch (ExecutionException e) {
+			DoiException doiException = (DoiException) e.getCause();
+			assertThat(doiException.getResp().getType(), is("failure"));
+			assertThat(doiException.getRespStr(), is(failure));
+		}
+	}
+
+	@Test
+	public void testMintAll() throws Exception {
+		DoiService svc = createServiceForMockServer();
+		List<MintRequest> mintRequests = Arrays.asList(new MintRequest("http://abc.com/1", "<resource/>"),
+				new MintRequest("http://abc.com/2", "<resource/>"), new MintRequest("http://abc.com/3", "<resource/>"));
+		List<BulkResult<MintRequest, DoiResponse>> results = new ArrayList<>();
+		
+		BulkSummary summary = svc.mintAll(mintRequests, new BulkOptions().maxInFlight(2), results::add);
+		
+		assertThat(summary.getSucceeded(), is(3L));
+		assertThat(results.size(), is(3));
+		assertThat(doiServer.getRequestCount(MockDoiServer.MINT_PATH), is(3));
+	}
+
+	@Test
+	public void testConcurrentGetMetadataCoalesced() throws Exception {
+		DoiService svc = createServiceForMockServer();
+		doiServer.setDelayMillis(300);
+		
+		List<CompletableFuture<String>> futures = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			futures.add(svc.getMetadataAsync("10.5072/00/ABC"));
+		}
+		CompletableFuture<String> syncResult = CompletableFuture.supplyAsync(() -> {
+			try {
+				return svc.getMetadata("10.5072/00/ABC");
+			} catch (DoiException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		for (CompletableFuture<String> future : futures) {
+			assertThat(future.get(10, TimeUnit.SECONDS), is("<resource>metadata</resource>"));
+		}
+		assertThat(syncResult.get(10, TimeUnit.SECONDS), is("<resource>metadata</resource>"));
+		assertThat(doiServer.getRequestCount(MockDoiServer.METADATA_PATH), is(1));
+		assertThat(svc.getMetrics().getCoalescedRequests(), is(10L));
+		
+		// completed requests are not reused
+		svc.getMetadata("10.5072/00/ABC");
+		assertThat(doiServer.getRequestCount(MockDoiServer.METADATA_PATH), is(2));
+	}
+
+	@Test
+	public void testSlowGetServiceStatusHedged() throws Exception {
+		when(doiConfig.isHedgingEnabled()).thenReturn(true);
+		when(doiConfig.getHedgingPercentile()).thenReturn(95.0);
+		when(doiConfig.getHedgingMinDelayMillis()).thenReturn(50L);
+		DoiService svc = createServiceForMockServer();
+		
+		// establish the latency distribution, no hedging until there are enough samples
+		for (int i = 0; i < 20; i++) {
+			svc.getServiceStatus();
+		}
+		assertThat(svc.getMetrics().getHedgedRequests(), is(0L));
+		
+		AtomicInteger requestNumber = new AtomicInteger();
+		doiServer.setHandler(MockDoiServer.STATUS_PATH, (exchange, body) -> {
+			if (requestNumber.incrementAndGet() == 1) {
+				try {
+					Thread.sleep(5000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			MockDoiServer.respond(exchange, 200, MockDoiServer.successResponse("MT090", ""));
+		});
+		
+		long start = System.nanoTime();
+		DoiResponse doiResp = svc.getServiceStatusAsync().get(10, TimeUnit.SECONDS);
+		assertThat(doiResp.getCode(), is("MT090"));
+		assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000L, is(true));
+		assertThat(svc.getMetrics().getHedgedRequests(), is(1L));
+		assertThat(doiServer.getRequestCount(MockDoiServer.STATUS_PATH), is(22));
+	}
+
+	@Test
+	public void testMintNeverHedged() throws Exception {
+		when(doiConfig.isHedgingEnabled()).thenReturn(true);
+		when(doiConfig.getHedgingPercentile()).thenReturn(95.0);
+		DoiService svc = createServiceForMockServer();
+		for (int i = 0; i < 20; i++) {
+			svc.mint("http://abc.com", "<resource/>");
+		}
+		doiServer.setDelayMillis(200);
+		
+		svc.mintAsync("http://abc.com", "<resource/>").get(10, TimeUnit.SECONDS);
+		assertThat(doiServer.getRequestCount(MockDoiServer.MINT_PATH), is(21));
+		assertThat(svc.getMetrics().getHedgedRequests(), is(0L));
+	}
+
+	@Test
+	public void testCircuitBreakerOpensAndProbesServiceStatus() throws Exception {
+		when(doiConfig.isCircuitBreakerEnabled()).thenReturn(true);
+		when(doiConfig.getCircuitBreakerWindowSize()).thenReturn(4);
+		when(doiConfig.getCircuitBreakerMinCalls()).thenReturn(4);
+		when(doiConfig.getCircuitBreakerFailureRateThreshold()).thenReturn(0.5);
+		when(doiConfig.getCircuitBreakerOpenDurationMillis()).thenReturn(200L);
+		DoiService svc = createServiceForMockServer();
+		List<CircuitBreaker.State> states = new CopyOnWriteArrayList<>();
+		svc.addListener(evt -> states.add(((CircuitBreakerStateEvent) evt).getState()));
+		doiServer.setHandler(MockDoiServer.MINT_PATH, (exchange, body) -> MockDoiServer.respond(exchange, 503, "Down"));
+		
+		for (int i = 0; i < 4; i++) {
+			try {
+				svc.mint("http://abc.com", "<resource/>");
+				fail("Expected DoiException");
+			} catch (DoiException e) {
+				assertThat(e, not(instanceOf(CircuitBreakerOpenException.class)));
+			}
+		}
+		assertThat(svc.getMetrics().getCircuitBreakerState(), is(CircuitBreaker.State.OPEN));
+		
+		// rejected without being sent
+		try {
+			svc.mint("http://abc.com", "<resource/>");
+			fail("Expected CircuitBreakerOpenException");
+		} catch (CircuitBreakerOpenException e) {
+		}
+		try {
+			svc.getMetadataAsync("10.5072/00/ABC").get(10, TimeUnit.SECONDS);
+			fail("Expected CircuitBreakerOpenException");
+		} catch (ExecutionException e) {
+			assertThat(e.getCause(), instanceOf(CircuitBreakerOpenException.class));
+		}
+		assertThat(doiServer.getRequestCount(MockDoiServer.MINT_PATH), is(4));
+		assertThat(doiServer.getRequestCount(MockDoiServer.METADATA_PATH), is(0));
+		
+		// nothing probes the service until a request is made after the open duration
+		Thread.sleep(300);
+		assertThat(doiServer.getRequestCount(MockDoiServer.STATUS_PATH), is(0));
+		try {
+			svc.getMetadata("10.5072/00/ABC");
+			fail("Expected CircuitBreakerOpenException");
+		} catch (CircuitBreakerOpenException e) {
+		}
+		
+		// service status probe closes the breaker
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (svc.getMetrics().getCircuitBreakerState() != CircuitBreaker.State.CLOSED
+				&& System.nanoTime() < deadline) {
+			Thread.sleep(20);
+		}
+		assertThat(states, contains(CircuitBreaker.State.OPEN, CircuitBreaker.State.HALF_OPEN,
+				CircuitBreaker.State.CLOSED));
+		assertThat(doiServer.getRequestCount(MockDoiServer.STATUS_PATH), is(1));
+		assertThat(svc.getMetadata("10.5072/00/ABC"), is("<resource>metadata</resource>"));
+	}
+
+	@Test
+	public void testHungCircuitBreakerProbeTimesOut() throws Exception {
+		when(doiConfig.isCircuitBreakerEnabled()).thenReturn(true);
+		when(doiConfig.getCircuitBreakerWindowSize()).thenReturn(4);
+		when(doiConfig.getCircuitBreakerMinCalls()).thenReturn(4);
+		when(doiConfig.getCircuitBreakerFailureRateThreshold()).thenReturn(0.5);
+		when(doiConfig.getCircuitBreakerOpenDurationMillis()).thenReturn(200L);
+		when(doiConfig.getCircuitBreakerProbeTimeoutMillis()).thenReturn(200L);
+		DoiService svc = createServiceForMockServer();
+		List<CircuitBreaker.State> states = new CopyOnWriteArrayList<>();
+		svc.addListener(evt -> states.add(((CircuitBreakerStateEvent) evt).getState()));
+		doiServer.setHandler(MockDoiServer.MINT_PATH, (exchange, body) -> MockDoiServer.respond(exchange, 503, "Down"));
+		for (int i = 0; i < 4; i++) {
+			try {
+				svc.mint("http://abc.com", "<resource/>");
+				fail("Expected DoiException");
+			} catch (DoiException e) {
+				assertThat(e, not(instanceOf(CircuitBreakerOpenException.class)));
+			}
+		}
+		assertThat(svc.getMetrics().getCircuitBreakerState(), is(CircuitBreaker.State.OPEN));
+		
+		// the service status check hangs, the probe gives up and the breaker opens again
+		doiServer.setDelayMillis(3000);
+		Thread.sleep(300);
+		try {
+			svc.getMetadata("10.5072/00/ABC");
+			fail("Expected CircuitBreakerOpenException");
+		} catch (CircuitBreakerOpenException e) {
+		}
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+		while (states.size() < 3 && System.nanoTime() < deadline) {
+			Thread.sleep(20);
+		}
+		assertThat(states, contains(CircuitBreaker.State.OPEN, CircuitBreaker.State.HALF_OPEN,
+				CircuitBreaker.State.OPEN));
+		
+		// once the service responds again, the next probe closes the breaker
+		doiServer.setDelayMillis(0);
+		Thread.sleep(300);
+		try {
+			svc.getMetadata("10.5072/00/ABC");
+			fail("Expected CircuitBreakerOpenException");
+		} catch (CircuitBreakerOpenException e) {
+		}
+		deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (svc.getMetrics().getCircuitBreakerState() != CircuitBreaker.State.CLOSED
+				&& System.nanoTime() < deadline) {
+			Thread.sleep(20);
+		}
+		assertThat(states, contains(CircuitBreaker.State.OPEN, CircuitBreaker.State.HALF_OPEN,
+				CircuitBreaker.State.OPEN, CircuitBreaker.State.HALF_OPEN, CircuitBreaker.State.CLOSED));
+		assertThat(svc.getMetadata("10.5072/00/ABC"), is("<resource>metadata</resource>"));
+	}
+
+	@Test
+	public void testTransientFailuresRetried() throws Exception {
+		when(doiConfig.getRetryMaxAttempts()).thenReturn(3);
+		when(doiConfig.getRetryBaseDelayMillis()).thenReturn(10L);
+		when(doiConfig.getRetryMaxDelayMillis()).thenReturn(50L);
+		DoiService svc = createServiceForMockServer();
+		AtomicInteger requestNumber = new AtomicInteger();
+		MockDoiServer.Handler failTwice = (exchange, body) -> {
+			if (requestNumber.incrementAndGet() % 3 != 0) {
+				MockDoiServer.respond(exchange, requestNumber.get() % 3 == 1 ? 503 : 429, "Busy");
+			} else {
+				MockDoiServer.respond(exchange, 200, MockDoiServer.successResponse("MT002", ""));
+			}
+		};
+		doiServer.setHandler(MockDoiServer.UPDATE_PATH, failTwice);
+		
+		assertThat(svc.update("10.5072/00/ABC", "http://abc.com", null).getCode(), is("MT002"));
+		assertThat(svc.updateAsync("10.5072/00/ABC", "http://abc.com", null).get(10, TimeUnit.SECONDS).getCode(),
+				is("MT002"));
+		assertThat(doiServer.getRequestCount(MockDoiServer.UPDATE_PATH), is(6));
+		assertThat(svc.getMetrics().getRetries(), is(4L));
+	}
+
+	@Test
+	public void testTerminalFailuresAndMintNotRetried() throws Exception {
+		when(doiConfig.getRetryMaxAttempts()).thenReturn(3);
+		when(doiConfig.getRetryBaseDelayMillis()).thenReturn(10L);
+		when(doiConfig.getRetryMaxDelayMillis()).thenReturn(50L);
+		DoiService svc = createServiceForMockServer();
+		doiServer.setHandler(MockDoiServer.UPDATE_PATH, (exchange, body) -> MockDoiServer.respond(exchange, 403, "No"));
+		doiServer.setHandler(MockDoiServer.MINT_PATH, (exchange, body) -> MockDoiServer.respond(exchange, 503, "Busy"));
+		
+		try {
+			svc.update("10.5072/00/ABC", "http://abc.com", null);
+			fail("Expected DoiException");
+		} catch (DoiException e) {
+		}
+		assertThat(doiServer.getRequestCount(MockDoiServer.UPDATE_PATH), is(1));
+		
+		try {
+			svc.mintAsync("http://abc.com", "<resource/>").get(10, TimeUnit.SECONDS);
+			fail("Expected DoiException");
+		} catch (ExecutionException e) {
+		}
+		assertThat(doiServer.getRequestCount(MockDoiServer.MINT_PATH), is(1));
+		
+		// mint retries are opt-in
+		when(doiConfig.isMintRetryEnabled()).thenReturn(true);
+		try {
+			svc.mint("http://abc.com", "<resource/>");
+			fail("Expected DoiException");
+		} catch (DoiException e) {
+		}
+		assertThat(doiServer.getRequestCount(MockDoiServer.MINT_PATH), is(4));
+		assertThat(svc.getMetrics().getRetries(), is(2L));
+	}
+
+	@Test
+	public void testConnectionFailureRetriedUntilMaxAttempts() throws Exception {
+		when(doiConfig.getRetryMaxAttempts()).thenReturn(2);
+		when(doiConfig.getRetryBaseDelayMillis()).thenReturn(10L);
+		when(doiConfig.getRetryMaxDelayMillis()).thenReturn(10L);
+		DoiService svc = createServiceForMockServer();
+		doiServer.close();
+		
+		try {
+			svc.getMetadataAsync("10.5072/00/ABC").get(10, TimeUnit.SECONDS);
+			fail("Expected DoiException");
+		} catch (ExecutionException e) {
+			assertThat(e.getCause(), instanceOf(DoiException.class));
+		}
+		assertThat(svc.getMetrics().getRetries(), is(1L));
+	}
+
+	@Test
+	public void testMintLedgerPreventsDuplicateMint() throws Exception {
+		when(doiConfig.getMintLedgerFile()).thenReturn(tmpFolder.getRoot().toPath().resolve("mint.ledger").toString());
+		DoiService svc = createServiceForMockServer();
+		
+		DoiResponse minted = svc.mint("http://abc.com", "<resource/>");
+		DoiResponse mintedAgain = svc.mintAsync("http://abc.com", "<resource/>").get(10, TimeUnit.SECONDS);
+		assertThat(mintedAgain.getDoi(), is(minted.getDoi()));
+		assertThat(doiServer.getRequestCount(MockDoiServer.MINT_PATH), is(1));
+		
+		// different metadata is a different mint
+		svc.mint("http://abc.com", "<resource>changed</resource>");
+		assertThat(doiServer.getRequestCount(MockDoiServer.MINT_PATH), is(2));
+	}
+
+	@Test
+	public void testMintLedgerResolvesUnknownOutcome() throws Exception {
+		String ledgerFile = tmpFolder.getRoot().toPath().resolve("mint.ledger").toString();
+		when(doiConfig.getMintLedgerFile()).thenReturn(ledgerFile);
+		DoiService svc = createServiceForMockServer();
+		doiServer.setHandler(MockDoiServer.MINT_PATH, (exchange, body) -> MockDoiServer.respond(exchange, 500, "Oops"));
+		try {
+			svc.mint("http://abc.com", "<resource/>");
+			fail("Expected DoiException");
+		} catch (DoiException e) {
+		}
+		
+		// after a restart the pending entry blocks minting until resolved
+		svc.close();
+		DoiService restartedSvc = new DoiService(realClient, doiConfig, responseExecutor);
+		try {
+			restartedSvc.mint("http://abc.com", "<resource/>");
+			fail("Expected DoiException");
+		} catch (DoiException e) {
+			assertThat(e.getMessage(), Matchers.containsString("unknown"));
+		}
+		assertThat(doiServer.getRequestCount(MockDoiServer.MINT_PATH), is(1));
+		
+		restartedSvc.setPendingMintResolver(entry -> "10.5072/00/RESOLVED");
+		assertThat(restartedSvc.resolvePendingMints().size(), is(0));
+		assertThat(restartedSvc.mint("http://abc.com", "<resource/>").getDoi(), is("10.5072/00/RESOLVED"));
+		assertThat(doiServer.getRequestCount(MockDoiServer.MINT_PATH), is(1));
+	}
+
+	@Test
+	public void testPendingMintResolvedByUrl() throws Exception {
+		when(doiConfig.getMintLedgerFile()).thenReturn(tmpFolder.getRoot().toPath().resolve("mint.ledger").toString());
+		DoiService svc = createServiceForMockServer();
+		doiServer.setHandler(MockDoiServer.MINT_PATH, (exchange, body) -> MockDoiServer.respond(exchange, 500, "Oops"));
+		try {
+			svc.mint("http://abc.com", "<resource/>");
+			fail("Expected DoiException");
+		} catch (DoiException e) {
+		}
+		assertThat(svc.getPendingMints().size(), is(1));
+		assertThat(svc.resolvePendingMints("http://xyz.com", null), is(0));
+		
+		// resolved as not minted, so the URL can be minted again
+		assertThat(svc.resolvePendingMints("http://abc.com", null), is(1));
+		assertThat(svc.getPendingMints().size(), is(0));
+		doiServer.setHandler(MockDoiServer.MINT_PATH, (exchange, body) -> MockDoiServer.respond(exchange, 200,
+				MockDoiServer.successResponse("MT001", "10.5072/00/ABC")));
+		assertThat(svc.mint("http://abc.com", "<resource/>").getDoi(), is("10.5072/00/ABC"));
+		assertThat(doiServer.getRequestCount(MockDoiServer.MINT_PATH), is(2));
+	}
+
+	@Test
+	public void testMintLedgerRetriesRejectedMint() throws Exception {
+		when(doiConfig.getMintLedgerFile()).thenReturn(tmpFolder.getRoot().toPath().resolve("mint.ledger").toString());
+		when(doiConfig.getRetryMaxAttempts()).thenReturn(3);
+		when(doiConfig.getRetryBaseDelayMillis()).thenReturn(10L);
+		when(doiConfig.getRetryMaxDelayMillis()).thenReturn(10L);
+		when(doiConfig.isMintRetryEnabled()).thenReturn(true);
+		DoiService svc = createServiceForMockServer();
+		AtomicInteger requestNumber = new AtomicInteger();
+		doiServer.setHandler(MockDoiServer.MINT_PATH, (exchange, body) -> {
+			if (requestNumber.incrementAndGet() == 1) {
+				MockDoiServer.respond(exchange, 429, "Slow down");
+			} else {
+				MockDoiServer.respond(exchange, 200, MockDoiServer.successResponse("MT001", "10.5072/00/ABC"));
+			}
+		});
+		
+		// a rejected mint didn't mint a DOI, so it's retried without resolving
+		assertThat(svc.mint("http://abc.com", "<resource/>").getDoi(), is("10.5072/00/ABC"));
+		assertThat(doiServer.getRequestCount(MockDoiServer.MINT_PATH), is(2));
+	}
+
+	@Test
+	public void testGetMetadataIntoStreamAndFile() throws Exception {
+		DoiService svc = createServiceForMockServer();
+		String metadata = createLargeResourceDoc();
+		byte[] metadataBytes = metadata.getBytes(StandardCharsets.UTF_8);
+		doiServer.setHandler(MockDoiServer.METADATA_PATH, (exchange, body) -> MockDoiServer.respond(exchange, 200,
+				metadata));
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertThat(svc.getMetadata("10.5072/00/ABC", out), is((long) metadataBytes.length));
+		assertThat(Arrays.equals(out.toByteArray(), metadataBytes), is(true));
+		
+		// an existing file is replaced, also when copied within a deadline
+		Path target = tmpFolder.newFile("metadata.xml").toPath();
+		Files.write(target, new byte[metadataBytes.length + 100]);
+		assertThat(svc.withTimeout(10, TimeUnit.SECONDS).getMetadata("10.5072/00/ABC", target),
+				is((long) metadataBytes.length));
+		assertThat(Arrays.equals(Files.readAllBytes(target), metadataBytes), is(true));
+		
+		// an error page isn't saved as metadata
+		doiServer.setHandler(MockDoiServer.METADATA_PATH, (exchange, body) -> MockDoiServer.respond(exchange, 404,
+				"Not found"));
+		Path missingTarget = tmpFolder.getRoot().toPath().resolve("missing.xml");
+		try {
+			svc.getMetadata("10.5072/00/XYZ", missingTarget);
+			fail("Expected DoiException");
+		} catch (DoiException e) {
+			assertThat(e.getMessage(), Matchers.containsString("404"));
+		}
+		assertThat(Files.exists(missingTarget), is(false));
+	}
+
+	@Test
+	public void testMetadataCopyStoppedAtDeadline() throws Exception {
+		DoiService svc = createServiceForMockServer();
+		byte[] chunk = new byte[1000];
+		Arrays.fill(chunk, (byte) 'x');
+		CountDownLatch lastChunkSent = new CountDownLatch(1);
+		doiServer.setHandler(MockDoiServer.METADATA_PATH, (exchange, body) -> {
+			exchange.getResponseHeaders().add("Content-Type", "application/xml");
+			exchange.sendResponseHeaders(200, 0);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(chunk);
+				out.flush();
+				Thread.sleep(1500);
+				out.write(chunk);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			lastChunkSent.countDown();
+		});
+		
+		// the first request sets up the client, which could otherwise take up the deadline
+		svc.getServiceStatus();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			svc.withTimeout(500, TimeUnit.MILLISECONDS).getMetadata("10.5072/00/ABC", out);
+			fail("Expected DeadlineExceededException");
+		} catch (DeadlineExceededException e) {
+		}
+		assertThat(lastChunkSent.await(5, TimeUnit.SECONDS), is(true));
+		// time for a copy that wasn't stopped to write the last chunk
+		Thread.sleep(200);
+		assertThat(out.size(), is(chunk.length));
+	}
+
+	@Test
+	public void testCompressedRequestAndResponseBodies() throws Exception {
+		when(doiConfig.getRequestContentCoding()).thenReturn(ContentCoding.GZIP);
+		when(doiConfig.isResponseCompressionEnabled()).thenReturn(true);
+		DoiService svc = createServiceForMockServer();
+		String resourceDoc = createLargeResourceDoc();
+		AtomicReference<String> receivedBody = new AtomicReference<>();
+		doiServer.setHandler(MockDoiServer.UPDATE_PATH, (exchange, body) -> {
+			assertThat(exchange.getRequestHeaders().getFirst("Content-Encoding"), is("gzip"));
+			try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+				receivedBody.set(IOUtils.toString(in, StandardCharsets.US_ASCII));
+			}
+			MockDoiServer.respond(exchange, 200, MockDoiServer.successResponse("MT002", ""));
+		});
+		doiServer.setHandler(MockDoiServer.METADATA_PATH, (exchange, body) -> {
+			if (exchange.getRequestHeaders().getFirst("Accept-Encoding").contains("gzip")) {
+				ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+				try (OutputStream out = new GZIPOutputStream(gzipped)) {
+					out.write(resourceDoc.getBytes(StandardCharsets.UTF_8));
+				}
+				exchange.getResponseHeaders().add("Content-Type", "application/xml; charset=UTF-8");
+				exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+				exchange.sendResponseHeaders(200, gzipped.size());
+				try (OutputStream out = exchange.getResponseBody()) {
+					gzipped.writeTo(out);
+				}
+			} else {
+				MockDoiServer.respond(exchange, 200, resourceDoc);
+			}
+		});
+		
+		assertThat(svc.update("10.5072/00/ABC", null, resourceDoc).getCode(), is("MT002"));
+		assertThat(receivedBody.get(), is("xml=" + URLEncoder.encode(resourceDoc, "UTF-8")));
+		assertThat(svc.getMetadata("10.5072/00/ABC"), is(resourceDoc));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		svc.getMetadata("10.5072/00/ABC", out);
+		assertThat(out.toString("UTF-8"), is(resourceDoc));
+		
+		DoiServiceMetrics metrics = svc.getMetrics();
+		LOGGER.trace("{}", metrics);
+		assertThat(metrics.getRequestBytesUncompressed(), is((long) receivedBody.get().length()));
+		assertThat(metrics.getRequestBytesCompressed(), Matchers.lessThan(metrics.getRequestBytesUncompressed() / 5));
+		assertThat(metrics.getResponseBytesUncompressed(),
+				is(2L * resourceDoc.getBytes(StandardCharsets.UTF_8).length));
+		assertThat(metrics.getResponseBytesCompressed(), Matchers.lessThan(metrics.getResponseBytesUncompressed() / 5));
+	}
+
+	@Test
+	public void testMintAndUpdateFromStreamedDocument() throws Exception {
+		DoiService svc = createServiceForMockServer();
+		String resourceDoc = createLargeResourceDoc();
+		Path resourceDocFile = tmpFolder.newFile("resource.xml").toPath();
+		Files.write(resourceDocFile, resourceDoc.getBytes(StandardCharsets.UTF_8));
+		List<String> requestBodies = new CopyOnWriteArrayList<>();
+		doiServer.setHandler(MockDoiServer.MINT_PATH, (exchange, body) -> {
+			requestBodies.add(new String(body, StandardCharsets.US_ASCII));
+			MockDoiServer.respond(exchange, 200, MockDoiServer.successResponse("MT001", "10.5072/00/ABC"));
+		});
+		doiServer.setHandler(MockDoiServer.UPDATE_PATH, (exchange, body) -> {
+			requestBodies.add(new String(body, StandardCharsets.US_ASCII));
+			MockDoiServer.respond(exchange, 200, MockDoiServer.successResponse("MT002", ""));
+		});
+		
+		assertThat(svc.mintFrom("http://abc.com", ResourceDocSource.of(resourceDocFile)).getCode(), is("MT001"));
+		try (InputStream resourceDocStream = Files.newInputStream(resourceDocFile)) {
+			assertThat(svc.updateFromAsync("10.5072/00/ABC", null, ResourceDocSource.of(resourceDocStream))
+					.get(10, TimeUnit.SECONDS).getCode(), is("MT002"));
+		}
+		
+		String expectedBody = "xml=" + URLEncoder.encode(resourceDoc, "UTF-8");
+		assertThat(requestBodies, contains(expectedBody, expectedBody));
+	}
+
+	@Test
+	public void testStreamedDocumentRetriedOnlyIfRepeatable() throws Exception {
+		when(doiConfig.getRetryMaxAttempts()).thenReturn(3);
+		when(doiConfig.getRetryBaseDelayMillis()).thenReturn(10L);
+		when(doiConfig.getRetryMaxDelayMillis()).thenReturn(10L);
+		DoiService svc = createServiceForMockServer();
+		doiServer.setHandler(MockDoiServer.UPDATE_PATH, (exchange, body) -> MockDoiServer.respond(exchange, 503, "Busy"));
+		Path resourceDocFile = tmpFolder.newFile("resource.xml").toPath();
+		Files.write(resourceDocFile, "<resource/>".getBytes(StandardCharsets.UTF_8));
+		
+		try {
+			svc.updateFrom("10.5072/00/ABC", null,
+					ResourceDocSource.of(new ByteArrayInputStream("<resource/>".getBytes(StandardCharsets.UTF_8))));
+			fail("Expected DoiException");
+		} catch (DoiException e) {
+		}
+		assertThat(doiServer.getRequestCount(MockDoiServer.UPDATE_PATH), is(1));
+		
+		try {
+			svc.updateFrom("10.5072/00/ABC", null, ResourceDocSource.of(resourceDocFile));
+			fail("Expected DoiException");
+		} catch (DoiException e) {
+		}
+		assertThat(doiServer.getRequestCount(MockDoiServer.UPDATE_PATH), is(4));
+	}
+
+	@Test
+	public void testMintLedgerWithStreamedDocument() throws Exception {
+		when(doiConfig.getMintLedgerFile()).thenReturn(tmpFolder.getRoot().toPath().resolve("mint.ledger").toString());
+		DoiService svc = createServiceForMockServer();
+		Path resourceDocFile = tmpFolder.newFile("resource.xml").toPath();
+		Files.write(resourceDocFile, "<resource>\u00e9</resource>".getBytes(StandardCharsets.UTF_8));
+		
+		// a streamed document has the same ledger key as the same document in a String
+		DoiResponse minted = svc.mintFrom("http://abc.com", ResourceDocSource.of(resourceDocFile));
+		assertThat(svc.mint("http://abc.com", "<resource>\u00e9</resource>").getDoi(), is(minted.getDoi()));
+		assertThat(doiServer.getRequestCount(MockDoiServer.MINT_PATH), is(1));
+		
+		try {
+			svc.mintFrom("http://abc.com",
+					ResourceDocSource.of(new ByteArrayInputStream("<resource/>".getBytes(StandardCharsets.UTF_8))));
+			fail("Expected DoiException");
+		} catch (DoiException e) {
+			assertThat(e.getMessage(), Matchers.containsString("mint ledger"));
+		}
+		assertThat(doiServer.getRequestCount(MockDoiServer.MINT_PATH), is(1));
+	}
+
+	@Test
+	public void testDeadlineExceeded() throws Exception {
+		DoiService svc = createServiceForMockServer();
+		doiServer.setDelayMillis(2000);
+		DoiService svcWithDeadline = svc.withTimeout(200, TimeUnit.MILLISECONDS);
+		
+		long start = System.nanoTime();
+		try {
+			svcWithDeadline.getServiceStatus();
+			fail("Expected DeadlineExceededException");
+		} catch (DeadlineExceededException e) {
+		}
+		assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000L, is(true));
+		try {
+			svcWithDeadline.mintAsync("http://abc.com", "<resource/>").get(10, TimeUnit.SECONDS);
+			fail("Expected DeadlineExceededException");
+		} catch (ExecutionException e) {
+			assertThat(e.getCause(), instanceOf(DeadlineExceededException.class));
+		}
+		// metrics are shared with the view
+		assertThat(svc.getMetrics().getDeadlineExceeded(), is(2L));
+		
+		// the original has no deadline
+		doiServer.setDelayMillis(300);
+		assertThat(svc.getServiceStatus().getCode(), is("MT090"));
+	}
+
+	@Test
+	public void testDeadlineReleasesPermits() throws Exception {
+		when(doiConfig.isBulkheadEnabled()).thenReturn(true);
+		when(doiConfig.getBulkheadMaxConcurrent(TrafficClass.READ)).thenReturn(1);
+		when(doiConfig.isPrioritySchedulingEnabled()).thenReturn(true);
+		when(doiConfig.getSchedulerMaxConcurrent()).thenReturn(1);
+		when(doiConfig.getSchedulerInteractiveWeight()).thenReturn(1);
+		when(doiConfig.isAdaptiveConcurrencyEnabled()).thenReturn(true);
+		when(doiConfig.getInitialConcurrencyLimit()).thenReturn(1);
+		when(doiConfig.getMinConcurrencyLimit()).thenReturn(1);
+		when(doiConfig.getMaxConcurrencyLimit()).thenReturn(1);
+		DoiService svc = createServiceForMockServer();
+		doiServer.setDelayMillis(2000);
+		
+		try {
+			svc.withTimeout(200, TimeUnit.MILLISECONDS).getServiceStatus();
+			fail("Expected DeadlineExceededException");
+		} catch (DeadlineExceededException e) {
+		}
+		// the timed out request is cancelled, and holds no permits once the caller sees the exception
+		assertThat(svc.getMetrics().getBulkheadInFlight(TrafficClass.READ), is(0));
+		assertThat(svc.getMetrics().getSchedulerInFlight(), is(0));
+		assertThat(svc.getMetrics().getInFlightRequests(), is(0));
+		
+		doiServer.setDelayMillis(0);
+		long start = System.nanoTime();
+		assertThat(svc.getServiceStatus().getCode(), is("MT090"));
+		assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), Matchers.lessThan(1000L));
+	}
+
+	@Test
+	public void testVirtualThreadResponseClosedOnCancel() throws Exception {
+		Assume.assumeTrue(DoiExecutors.isVirtualThreadSupported());
+		createServiceForMockServer();
+		when(doiConfig.getExecutionMode()).thenReturn(ExecutionMode.VIRTUAL);
+		ConnectionPool pool = new ConnectionPool(5, 5, 0L, 0L, TimeUnit.MILLISECONDS);
+		try (JerseyTransport transport = new JerseyTransport(DoiClientFactory.newPooledClient(doiConfig, pool), pool);
+				DoiService svc = new DoiService(transport, doiConfig, responseExecutor)) {
+			// the first request sets up the client
+			svc.getServiceStatus();
+			doiServer.setDelayMillis(500L);
+			CompletableFuture<DoiResponse> status = svc.getServiceStatusAsync();
+			Thread.sleep(100L);
+			status.cancel(true);
+			
+			// a response received after the cancellation is closed, returning its connection to the pool
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (pool.getLeased() > 0 && System.nanoTime() < deadline) {
+				Thread.sleep(50L);
+			}
+			assertThat(pool.getLeased(), is(0));
+		}
+	}
+
+	@Test
+	public void testMintLedgerHeldUntilMintPastDeadlineCompletes() throws Exception {
+		when(doiConfig.getMintLedgerFile()).thenReturn(tmpFolder.getRoot().toPath().resolve("mint.ledger").toString());
+		DoiService svc = createServiceForMockServer();
+		doiServer.setDelayMillis(1000);
+		DoiService svcWithDeadline = svc.withTimeout(200, TimeUnit.MILLISECONDS);
+		
+		try {
+			svcWithDeadline.mintAsync("http://abc.com", "<resource/>").get(10, TimeUnit.SECONDS);
+			fail("Expected DeadlineExceededException");
+		} catch (ExecutionException e) {
+			assertThat(e.getCause(), instanceOf(DeadlineExceededException.class));
+		}
+		
+		// the mint is still in progress, so retrying it doesn't submit it again
+		try {
+			svc.mint("http://abc.com", "<resource/>");
+			fail("Expected DoiException");
+		} catch (DoiException e) {
+			assertThat(e.getMessage(), Matchers.containsString("already in progress"));
+		}
+		
+		// once the first request lands its DOI is returned without another request
+		DoiResponse minted = null;
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (minted == null && System.nanoTime() < deadline) {
+			try {
+				minted = svc.mint("http://abc.com", "<resource/>");
+			} catch (DoiException e) {
+				assertThat(e.getMessage(), Matchers.containsString("already in progress"));
+				Thread.sleep(50);
+			}
+		}
+		assertThat(minted.getCode(), is("MT001"));
+		assertThat(doiServer.getRequestCount(MockDoiServer.MINT_PATH), is(1));
+	}
+
+	@Test
+	public void testRequestTimeoutFromConfig() throws Exception {
+		when(doiConfig.getRequestTimeoutMillis()).thenReturn(200L);
+		DoiService svc = createServiceForMockServer();
+		doiServer.setDelayMillis(2000);
+		
+		try {
+			svc.getMetadata("10.5072/00/ABC");
+			fail("Expected DeadlineExceededException");
+		} catch (DeadlineExceededException e) {
+		}
+		assertThat(svc.getMetrics().getDeadlineExceeded(), is(1L));
+	}
+
+	@Test
+	public void testSaturatedWritesDontStarveReads() throws Exception {
+		when(doiConfig.isBulkheadEnabled()).thenReturn(true);
+		when(doiConfig.getBulkheadMaxConcurrent(TrafficClass.WRITE)).thenReturn(1);
+		when(doiConfig.getBulkheadMaxQueued(TrafficClass.WRITE)).thenReturn(1);
+		when(doiConfig.getBulkheadMaxConcurrent(TrafficClass.READ)).thenReturn(2);
+		DoiService svc = createServiceForMockServer();
+		CountDownLatch releaseMints = new CountDownLatch(1);
+		doiServer.setHandler(MockDoiServer.MINT_PATH, (exchange, body) -> {
+			try {
+				releaseMints.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			MockDoiServer.respond(exchange, 200, MockDoiServer.successResponse("MT001", "10.5072/00/ABC"));
+		});
+		
+		CompletableFuture<DoiResponse> inFlightMint = svc.mintAsync("http://abc.com/1", "<resource/>");
+		CompletableFuture<DoiResponse> queuedMint = svc.mintAsync("http://abc.com/2", "<resource/>");
+		try {
+			svc.mint("http://abc.com/3", "<resource/>");
+			fail("Expected BulkheadFullException");
+		} catch (BulkheadFullException e) {
+		}
+		assertThat(svc.getMetrics().getBulkheadQueueDepth(TrafficClass.WRITE), is(1));
+		assertThat(svc.getMetrics().getBulkheadRejections(TrafficClass.WRITE), is(1L));
+		
+		// reads proceed while writes are saturated
+		assertThat(svc.getMetadataAsync("10.5072/00/ABC").get(5, TimeUnit.SECONDS), is("<resource>metadata</resource>"));
+		assertThat(inFlightMint.isDone(), is(false));
+		assertThat(svc.getMetrics().getBulkheadRejections(TrafficClass.READ), is(0L));
+		
+		releaseMints.countDown();
+		assertThat(inFlightMint.get(10, TimeUnit.SECONDS).getCode(), is("MT001"));
+		assertThat(queuedMint.get(10, TimeUnit.SECONDS).getCode(), is("MT001"));
+		assertThat(svc.getMetrics().getBulkheadInFlight(TrafficClass.WRITE), is(0));
+	}
+
+	@Test
+	public void testQueuedWritesDontHoldSchedulerPermits() throws Exception {
+		when(doiConfig.isBulkheadEnabled()).thenReturn(true);
+		when(doiConfig.getBulkheadMaxConcurrent(TrafficClass.WRITE)).thenReturn(1);
+		when(doiConfig.getBulkheadMaxQueued(TrafficClass.WRITE)).thenReturn(2);
+		when(doiConfig.getBulkheadMaxConcurrent(TrafficClass.READ)).thenReturn(2);
+		when(doiConfig.isPrioritySchedulingEnabled()).thenReturn(true);
+		when(doiConfig.getSchedulerMaxConcurrent()).thenReturn(2);
+		when(doiConfig.getSchedulerInteractiveWeight()).thenReturn(4);
+		DoiService svc = createServiceForMockServer();
+		CountDownLatch releaseMints = new CountDownLatch(1);
+		doiServer.setHandler(MockDoiServer.MINT_PATH, (exchange, body) -> {
+			try {
+				releaseMints.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			MockDoiServer.respond(exchange, 200, MockDoiServer.successResponse("MT001", "10.5072/00/ABC"));
+		});
+		
+		List<CompletableFuture<DoiResponse>> mints = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			mints.add(svc.mintAsync("http://abc.com/" + i, "<resource/>"));
+		}
+		assertThat(svc.getMetrics().getBulkheadQueueDepth(TrafficClass.WRITE), is(2));
+		
+		// the queued writes hold no scheduler permits, so a read gets one
+		assertThat(svc.getMetadataAsync("10.5072/00/ABC").get(5, TimeUnit.SECONDS), is("<resource>metadata</resource>"));
+		assertThat(mints.get(0).isDone(), is(false));
+		
+		releaseMints.countDown();
+		for (CompletableFuture<DoiResponse> mint : mints) {
+			assertThat(mint.get(10, TimeUnit.SECONDS).getCode(), is("MT001"));
+		}
+		assertThat(svc.getMetrics().getSchedulerQueueDepth(RequestPriority.INTERACTIVE), is(0));
+	}
+
+	@Test
+	public void testInteractiveWritesOvertakeQueuedBulkWrites() throws Exception {
+		when(doiConfig.isBulkheadEnabled()).thenReturn(true);
+		when(doiConfig.getBulkheadMaxConcurrent(TrafficClass.WRITE)).thenReturn(1);
+		when(doiConfig.getBulkheadMaxQueued(TrafficClass.WRITE)).thenReturn(3);
+		when(doiConfig.isPrioritySchedulingEnabled()).thenReturn(true);
+		when(doiConfig.getSchedulerMaxConcurrent()).thenReturn(2);
+		when(doiConfig.getSchedulerInteractiveWeight()).thenReturn(4);
+		DoiService svc = createServiceForMockServer();
+		DoiService bulkSvc = svc.withPriority(RequestPriority.BULK);
+		CountDownLatch releaseFirstMint = new CountDownLatch(1);
+		List<String> mintedUrls = new CopyOnWriteArrayList<>();
+		doiServer.setHandler(MockDoiServer.MINT_PATH, (exchange, body) -> {
+			String query = exchange.getRequestURI().getQuery();
+			String url = query.substring(query.indexOf("url=") + 4);
+			if (mintedUrls.isEmpty()) {
+				try {
+					releaseFirstMint.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			mintedUrls.add(url);
+			MockDoiServer.respond(exchange, 200, MockDoiServer.successResponse("MT001", "10.5072/00/" + url));
+		});
+
+		List<CompletableFuture<DoiResponse>> bulkMints = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			bulkMints.add(bulkSvc.mintAsync("http://abc.com/bulk" + i, "<resource/>"));
+		}
+		assertThat(svc.getMetrics().getBulkheadQueueDepth(TrafficClass.WRITE), is(3));
+		// queued behind a full queue of bulk writes, but not rejected
+		CompletableFuture<DoiResponse> interactiveMint = svc.mintAsync("http://abc.com/interactive", "<resource/>");
+		assertThat(svc.getMetrics().getBulkheadQueueDepth(TrafficClass.WRITE), is(4));
+		assertThat(svc.getMetrics().getBulkheadRejections(TrafficClass.WRITE), is(0L));
+		releaseFirstMint.countDown();
+
+		interactiveMint.get(10, TimeUnit.SECONDS);
+		for (CompletableFuture<DoiResponse> bulkMint : bulkMints) {
+			bulkMint.get(10, TimeUnit.SECONDS);
+		}
+		assertThat(mintedUrls, contains("http://abc.com/bulk0", "http://abc.com/interactive", "http://abc.com/bulk1",
+				"http://abc.com/bulk2", "http://abc.com/bulk3"));
+		assertThat(svc.getMetrics().getSchedulerInFlight(), is(0));
+	}
+
+	@Test
+	public void testSharedInstanceUnderConcurrentLoad() throws Exception {
+		when(doiConfig.isAdaptiveConcurrencyEnabled()).thenReturn(true);
+		when(doiConfig.getInitialConcurrencyLimit()).thenReturn(8);
+		when(doiConfig.getMinConcurrencyLimit()).thenReturn(1);
+		when(doiConfig.getMaxConcurrencyLimit()).thenReturn(64);
+		DoiService svc = createServiceForMockServer();
+		int nThreads = 16;
+		int nIterations = 20;
+		ExecutorService callers = Executors.newFixedThreadPool(nThreads);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Throwable> errors = new CopyOnWriteArrayList<>();
+		List<CompletableFuture<Void>> workers = new ArrayList<>();
+		try {
+			for (int t = 0; t < nThreads; t++) {
+				int threadId = t;
+				workers.add(CompletableFuture.runAsync(() -> {
+					DoiServiceEventListener listener = evt -> {
+					};
+					try {
+						start.await();
+						for (int i = 0; i < nIterations; i++) {
+							svc.addListener(listener);
+							DoiResponse mintResp = svc.mint("http://abc.com/" + threadId + "/" + i, "<resource/>");
+							assertThat(mintResp.getCode(), is("MT001"));
+							CompletableFuture<DoiResponse> statusResp = svc.getServiceStatusAsync();
+							assertThat(svc.getMetadata(mintResp.getDoi()), is("<resource>metadata</resource>"));
+							assertThat(statusResp.get(10, TimeUnit.SECONDS).getCode(), is("MT090"));
+							svc.removeListener(listener);
+						}
+					} catch (Throwable e) {
+						errors.add(e);
+					}
+				}, callers));
+			}
+			start.countDown();
+			CompletableFuture.allOf(workers.toArray(new CompletableFuture<?>[0])).get(60, TimeUnit.SECONDS);
+		} finally {
+			callers.shutdownNow();
+		}
+
+		assertThat(errors, Matchers.empty());
+		assertThat(doiServer.getRequestCount(MockDoiServer.MINT_PATH), is(nThreads * nIterations));
+		assertThat(doiServer.getRequestCount(MockDoiServer.STATUS_PATH), is(nThreads * nIterations));
+		assertThat(svc.getMetrics().getInFlightRequests(), is(0));
+	}
+
+	@Test
+	public void testInteractiveRequestsDispatchedAheadOfBulk() throws Exception {
+		when(doiConfig.isPrioritySchedulingEnabled()).thenReturn(true);
+		when(doiConfig.getSchedulerMaxConcurrent()).thenReturn(1);
+		when(doiConfig.getSchedulerInteractiveWeight()).thenReturn(4);
+		DoiService svc = createServiceForMockServer();
+		DoiService bulkSvc = svc.withPriority(RequestPriority.BULK);
+		CountDownLatch releaseFirstMint = new CountDownLatch(1);
+		List<String> mintedUrls = new CopyOnWriteArrayList<>();
+		doiServer.setHandler(MockDoiServer.MINT_PATH, (exchange, body) -> {
+			String query = exchange.getRequestURI().getQuery();
+			String url = query.substring(query.indexOf("url=") + 4);
+			if (mintedUrls.isEmpty()) {
+				try {
+					releaseFirstMint.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			mintedUrls.add(url);
+			MockDoiServer.respond(exchange, 200, MockDoiServer.successResponse("MT001", "10.5072/00/" + url));
+		});
+
+		List<CompletableFuture<DoiResponse>> bulkMints = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			bulkMints.add(bulkSvc.mintAsync("http://abc.com/bulk" + i, "<resource/>"));
+		}
+		while (svc.getMetrics().getSchedulerQueueDepth(RequestPriority.BULK) < 3) {
+			Thread.sleep(10L);
+		}
+		CompletableFuture<DoiResponse> interactiveMint = svc.mintAsync("http://abc.com/interactive", "<resource/>");
+		assertThat(svc.getMetrics().getSchedulerQueueDepth(RequestPriority.INTERACTIVE), is(1));
+		releaseFirstMint.countDown();
+
+		interactiveMint.get(10, TimeUnit.SECONDS);
+		for (CompletableFuture<DoiResponse> bulkMint : bulkMints) {
+			bulkMint.get(10, TimeUnit.SECONDS);
+		}
+		assertThat(mintedUrls, contains("http://abc.com/bulk0", "http://abc.com/interactive", "http://abc.com/bulk1",
+				"http://abc.com/bulk2", "http://abc.com/bulk3"));
+		assertThat(svc.getMetrics().getSchedulerWaitMillis(RequestPriority.INTERACTIVE, 50.0),
+				Matchers.greaterThanOrEqualTo(0.0));
+		assertThat(svc.getMetrics().getSchedulerWaitMillis(RequestPriority.BULK, 100.0),
+				Matchers.greaterThanOrEqualTo(svc.getMetrics().getSchedulerWaitMillis(RequestPriority.INTERACTIVE, 100.0)));
+	}
+
+	private String createLargeResourceDoc() {
+		StringBuilder resourceDoc = new StringBuilder("<resource>\n");
+		for (int i = 0; i < 20000; i++) {
+			resourceDoc.append("<title>T\u00edtulo & m\u00e1s ").append(i).append("</title>\n");
+		}
+		return resourceDoc.append("</resource>").toString();
+	}
+
+	@Test
+	public void testWarmUpOpensPooledConnections() throws Exception {
+		createServiceForMockServer();
+		when(doiConfig.getWarmUpConnections()).thenReturn(3);
+		// keep each status request open long enough for all of them to need their own connection
+		doiServer.setDelayMillis(100L);
+		ConnectionPool pool = new ConnectionPool(5, 5, 0L, 0L, TimeUnit.MILLISECONDS);
+		try (JerseyTransport transport = new JerseyTransport(DoiClientFactory.newPooledClient(doiConfig, pool), pool)) {
+			DoiService svc = new DoiService(transport, doiConfig, responseExecutor);
+			
+			long warmUpMillis = svc.warmUp();
+			assertThat(warmUpMillis, Matchers.greaterThanOrEqualTo(100L));
+			assertThat(doiServer.getRequestCount(MockDoiServer.STATUS_PATH), is(3));
+			assertThat(pool.getLeased(), is(0));
+			assertThat(pool.getAvailable(), is(3));
+			
+			doiServer.setDelayMillis(0L);
+			assertThat(svc.getMetadata("10.5072/00/ABC"), is("<resource>metadata</resource>"));
+			assertThat(pool.getAvailable(), is(3));
+		}
+	}
+	
+	private DoiService createServiceForMockServer() throws Exception {
+		doiServer = new MockDoiServer();
+		realClient = ClientBuilder.newClient();
+		responseExecutor = Executors.newFixedThreadPool(2, r -> new Thread(r, "doi-resp-" + r.hashCode()));
+		
+		when(doiConfig.getBaseUri()).thenReturn(doiServer.getBaseUri().toString());
+		when(doiConfig.getAppId()).thenReturn("appId");
+		when(doiConfig.useTestPrefix()).thenReturn(true);
+		return new DoiService(realClient, doiConfig, responseExecutor);
+	}
 }
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import au.edu.anu.doi.api.concurrent.DoiExecutors;
+import au.edu.anu.doi.api.concurrent.ExecutionMode;
+import au.edu.anu.doi.api.config.DoiConfig;
+import au.edu.anu.doi.api.http.DoiTransport;
+import au.edu.anu.doi.api.http.DoiTransports;
+
+/**
+ * Compares the execution modes of a DoiService completing a batch of asynchronous requests. The requests are sent to a
+ * {@link MockDoiServer} that takes a fixed latency to respond, as the DOI service would. In
+ * {@link ExecutionMode#PLATFORM} mode requests are sent by the transport's asynchronous invoker, and in
+ * {@link ExecutionMode#VIRTUAL} mode each is sent as a blocking call on a virtual thread. The average time to complete
+ * a batch gives the throughput at that many requests in flight; peak live thread count and heap use are printed after
+ * each iteration. The mock server runs in the same JVM and uses a thread per request in flight, which is included in
+ * the thread count.
+ * <p>
+ * The virtual thread configurations require Java 21 or later, with a JAXB runtime on the classpath as the JDK no
+ * longer includes one: {@code mvn -Pbenchmark verify -Dbenchmark=ExecutionModeBenchmark}
+ * 
+ * @author Rahul Khanna
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExecutionModeBenchmark {
+
+	@Param({ "PLATFORM", "VIRTUAL" })
+	public ExecutionMode mode;
+
+	@Param({ "100", "1000" })
+	public int inFlight;
+
+	@Param({ "20" })
+	public long latencyMillis;
+
+	private MockDoiServer doiServer;
+	private DoiTransport transport;
+	private DoiService doiSvc;
+	private ThreadMXBean threadMXBean;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		if (mode == ExecutionMode.VIRTUAL && !DoiExecutors.isVirtualThreadSupported()) {
+			throw new IllegalStateException("Virtual threads require Java 21 or later");
+		}
+		doiServer = new MockDoiServer();
+		doiServer.setDelayMillis(latencyMillis);
+		DoiConfig doiConfig = new BenchmarkDoiConfig(doiServer.getBaseUri().toString(), mode);
+		transport = DoiTransports.newTransport(doiConfig);
+		doiSvc = new DoiService(transport, doiConfig);
+		threadMXBean = ManagementFactory.getThreadMXBean();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		doiSvc.close();
+		transport.close();
+		doiServer.close();
+	}
+
+	@Setup(Level.Iteration)
+	public void resetPeakThreadCount() {
+		threadMXBean.resetPeakThreadCount();
+	}
+
+	@TearDown(Level.Iteration)
+	public void printResourceUse() {
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		System.out.printf("%n  peak live threads: %d, heap used: %d KB%n", threadMXBean.getPeakThreadCount(),
+				heap.getUsed() / 1024);
+	}
+
+	@Benchmark
+	public void completeInFlightRequests() {
+		CompletableFuture<?>[] responses = new CompletableFuture<?>[inFlight];
+		for (int i = 0; i < inFlight; i++) {
+			responses[i] = doiSvc.getServiceStatusAsync();
+		}
+		CompletableFuture.allOf(responses).join();
+	}
+
+	private static class BenchmarkDoiConfig implements DoiConfig {
+		private final String baseUri;
+		private final ExecutionMode executionMode;
+
+		BenchmarkDoiConfig(String baseUri, ExecutionMode executionMode) {
+			this.baseUri = baseUri;
+			this.executionMode = executionMode;
+		}
+
+		@Override
+		public String getBaseUri() {
+			return baseUri;
+		}
+
+		@Override
+		public String getAppId() {
+			return "5f1e6c3a9b2d4e8f";
+		}
+
+		@Override
+		public boolean useTestPrefix() {
+			return true;
+		}
+
+		@Override
+		public boolean isDebug() {
+			return false;
+		}
+
+		@Override
+		public String getSharedSecret() {
+			return "s3cret";
+		}
+
+		@Override
+		public ExecutionMode getExecutionMode() {
+			return executionMode;
+		}
+	}
+}
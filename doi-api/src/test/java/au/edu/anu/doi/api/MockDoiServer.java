@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Minimal in-process DOI service used by tests. Responds to the status, mint, update and metadata endpoints with
+ * canned successful responses unless a handler is overridden.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+public class MockDoiServer implements AutoCloseable {
+
+	public static final String STATUS_PATH = "/status.xml/";
+	public static final String MINT_PATH = "/mint.xml/";
+	public static final String UPDATE_PATH = "/update.xml/";
+	public static final String METADATA_PATH = "/xml.xml/";
+
+	@FunctionalInterface
+	public interface Handler {
+		void handle(HttpExchange exchange, byte[] requestBody) throws IOException;
+	}
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final Map<String, Handler> handlers = new ConcurrentHashMap<>();
+	private final Map<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+	private volatile long delayMillis = 0L;
+
+	public MockDoiServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+
+		handlers.put(STATUS_PATH, (exchange, body) -> respond(exchange, 200, successResponse("MT090", "")));
+		handlers.put(MINT_PATH,
+				(exchange, body) -> respond(exchange, 200, successResponse("MT001", "10.5072/00/" + System.nanoTime())));
+		handlers.put(UPDATE_PATH, (exchange, body) -> respond(exchange, 200, successResponse("MT002", "")));
+		handlers.put(METADATA_PATH, (exchange, body) -> respond(exchange, 200, "<resource>metadata</resource>"));
+
+		for (String path : handlers.keySet()) {
+			requestCounts.put(path, new AtomicInteger());
+			server.createContext(path, exchange -> {
+				try {
+					byte[] requestBody = readFully(exchange.getRequestBody());
+					requestCounts.get(path).incrementAndGet();
+					if (delayMillis > 0) {
+						Thread.sleep(delayMillis);
+					}
+					handlers.get(path).handle(exchange, requestBody);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					exchange.close();
+				}
+			});
+		}
+		server.start();
+	}
+
+	public URI getBaseUri() {
+		return URI.create(String.format("http://127.0.0.1:%d/", server.getAddress().getPort()));
+	}
+
+	public void setHandler(String path, Handler handler) {
+		handlers.put(path, handler);
+	}
+
+	public void setDelayMillis(long delayMillis) {
+		this.delayMillis = delayMillis;
+	}
+
+	public int getRequestCount(String path) {
+		return requestCounts.get(path).get();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	public static String successResponse(String code, String doi) {
+		return String.format("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+				+ "<response type=\"success\"><responsecode>%s</responsecode><message>OK</message>"
+				+ "<doi>%s</doi><url></url><app_id></app_id><verbosemessage></verbosemessage></response>", code, doi);
+	}
+
+	public static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/xml");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		for (int nRead = in.read(buffer); nRead != -1; nRead = in.read(buffer)) {
+			out.write(buffer, 0, nRead);
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.bulk;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import au.edu.anu.doi.api.DoiException;
+
+/**
+ * @author Rahul Khanna
+ *
+ */
+public class BulkExecutorTest {
+
+	private ScheduledExecutorService scheduler;
+	private AtomicInteger inFlight;
+	private AtomicInteger maxObservedInFlight;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		scheduler = Executors.newScheduledThreadPool(4);
+		inFlight = new AtomicInteger();
+		maxObservedInFlight = new AtomicInteger();
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	public void testBoundedConcurrencyAndPerItemResults() throws Exception {
+		BulkExecutor<Integer, String> bulkExecutor = new BulkExecutor<>(this::delayedOperation,
+				new BulkOptions().maxInFlight(3));
+		List<BulkResult<Integer, String>> results = new ArrayList<>();
+
+		BulkSummary summary = bulkExecutor.execute(range(50), results::add);
+
+		assertThat(summary.getSubmitted(), is(50L));
+		assertThat(summary.getSucceeded(), is(40L));
+		assertThat(summary.getFailed(), is(10L));
+		assertThat(results.size(), is(50));
+		assertThat(maxObservedInFlight.get(), lessThanOrEqualTo(3));
+		for (BulkResult<Integer, String> result : results) {
+			if (result.getRequest() % 5 == 0) {
+				assertThat(result.isSuccess(), is(false));
+			} else {
+				assertThat(result.getResponse(), is("r" + result.getRequest()));
+			}
+		}
+	}
+
+	@Test
+	public void testInputReadLazily() throws Exception {
+		AtomicInteger itemsRead = new AtomicInteger();
+		AtomicInteger maxReadAhead = new AtomicInteger();
+		AtomicInteger handled = new AtomicInteger();
+		Iterable<Integer> input = () -> new Iterator<Integer>() {
+			@Override
+			public boolean hasNext() {
+				return itemsRead.get() < 100;
+			}
+
+			@Override
+			public Integer next() {
+				int readAhead = itemsRead.incrementAndGet() - handled.get();
+				maxReadAhead.accumulateAndGet(readAhead, Math::max);
+				return itemsRead.get();
+			}
+		};
+		BulkExecutor<Integer, String> bulkExecutor = new BulkExecutor<>(this::delayedOperation,
+				new BulkOptions().maxInFlight(4));
+
+		bulkExecutor.execute(input, result -> handled.incrementAndGet());
+
+		assertThat(handled.get(), is(100));
+		assertThat(maxReadAhead.get(), lessThanOrEqualTo(4));
+	}
+
+	@Test
+	public void testInFlightResultsHandledWhenInputFails() throws Exception {
+		Iterator<Integer> items = range(5).iterator();
+		Iterable<Integer> input = () -> new Iterator<Integer>() {
+			@Override
+			public boolean hasNext() {
+				return items.hasNext();
+			}
+
+			@Override
+			public Integer next() {
+				int item = items.next();
+				if (item == 4) {
+					throw new IllegalStateException("Unreadable item " + item);
+				}
+				return item;
+			}
+		};
+		BulkExecutor<Integer, String> bulkExecutor = new BulkExecutor<>(this::delayedOperation,
+				new BulkOptions().maxInFlight(4));
+		List<BulkResult<Integer, String>> results = new ArrayList<>();
+
+		try {
+			bulkExecutor.execute(input, results::add);
+			fail("Expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			assertThat(e.getMessage(), is("Unreadable item 4"));
+		}
+		assertThat(results.size(), is(3));
+		assertThat(inFlight.get(), is(0));
+	}
+
+	private CompletableFuture<String> delayedOperation(Integer request) {
+		maxObservedInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+		CompletableFuture<String> future = new CompletableFuture<>();
+		scheduler.schedule(() -> {
+			inFlight.decrementAndGet();
+			if (request % 5 == 0) {
+				future.completeExceptionally(new DoiException("failed " + request));
+			} else {
+				future.complete("r" + request);
+			}
+		}, 2, TimeUnit.MILLISECONDS);
+		return future;
+	}
+
+	private static Iterable<Integer> range(int count) {
+		List<Integer> items = new ArrayList<>();
+		for (int i = 1; i <= count; i++) {
+			items.add(i);
+		}
+		return items;
+	}
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.concurrent;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import au.edu.anu.doi.api.concurrent.AdaptiveConcurrencyLimiter.Permit;
+
+/**
+ * @author Rahul Khanna
+ *
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+	@Test
+	public void testRequestsQueuedBeyondLimit() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10);
+
+		Permit permit1 = limiter.acquire().getNow(null);
+		Permit permit2 = limiter.acquire().getNow(null);
+		CompletableFuture<Permit> queued = limiter.acquire();
+
+		assertThat(permit1 != null && permit2 != null, is(true));
+		assertThat(queued.isDone(), is(false));
+		assertThat(limiter.getQueueDepth(), is(1));
+
+		permit1.ignore();
+		assertThat(queued.isDone(), is(true));
+		assertThat(limiter.getQueueDepth(), is(0));
+		assertThat(limiter.getInFlight(), is(2));
+	}
+
+	@Test
+	public void testCancelledWaiterLeavesQueue() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 10);
+
+		Permit permit = limiter.acquire().getNow(null);
+		CompletableFuture<Permit> cancelled = limiter.acquire();
+		CompletableFuture<Permit> queued = limiter.acquire();
+		assertThat(limiter.getQueueDepth(), is(2));
+
+		cancelled.cancel(false);
+		assertThat(limiter.getQueueDepth(), is(1));
+
+		permit.ignore();
+		assertThat(queued.isDone(), is(true));
+		assertThat(limiter.getQueueDepth(), is(0));
+		assertThat(limiter.getInFlight(), is(1));
+	}
+
+	@Test
+	public void testLimitGrowsWhileLatencyFlat() throws Exception {
+		// latency spikes caused by GC or JIT compilation must not shrink the limit
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 50,
+				AdaptiveConcurrencyLimiter.DEFAULT_BACKOFF_RATIO, Double.MAX_VALUE);
+
+		for (int round = 0; round < 50; round++) {
+			List<Permit> permits = new ArrayList<>();
+			for (int i = 0; i < limiter.getLimit(); i++) {
+				permits.add(limiter.acquire().getNow(null));
+			}
+			permits.forEach(Permit::success);
+		}
+
+		assertThat(limiter.getLimit(), greaterThan(4));
+	}
+
+	@Test
+	public void testLimitShrinksOnDrops() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 2, 50);
+
+		for (int i = 0; i < 10; i++) {
+			limiter.acquire().getNow(null).dropped();
+		}
+
+		assertThat(limiter.getLimit(), lessThan(20));
+		for (int i = 0; i < 100; i++) {
+			limiter.acquire().getNow(null).dropped();
+		}
+		assertThat(limiter.getLimit(), is(2));
+	}
+
+	@Test
+	public void testLimitShrinksOnLatencySpike() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 1, 50);
+		for (int i = 0; i < 5; i++) {
+			limiter.acquire().getNow(null).success();
+		}
+		int limitBeforeSpike = limiter.getLimit();
+
+		Permit slowPermit = limiter.acquire().getNow(null);
+		Thread.sleep(50);
+		slowPermit.success();
+
+		assertThat(limiter.getLimit(), lessThan(limitBeforeSpike));
+	}
+}
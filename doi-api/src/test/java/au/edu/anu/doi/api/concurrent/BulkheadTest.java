@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.concurrent;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+import au.edu.anu.doi.api.BulkheadFullException;
+import au.edu.anu.doi.api.RequestPriority;
+import au.edu.anu.doi.api.concurrent.Bulkhead.Permit;
+
+/**
+ * @author Rahul Khanna
+ *
+ */
+public class BulkheadTest {
+
+	@Test
+	public void testQueuesThenRejects() throws Exception {
+		Bulkhead bulkhead = new Bulkhead("write", 2, 1, 1);
+
+		Permit permit1 = bulkhead.acquire(RequestPriority.INTERACTIVE).getNow(null);
+		Permit permit2 = bulkhead.acquire(RequestPriority.INTERACTIVE).getNow(null);
+		CompletableFuture<Permit> queued = bulkhead.acquire(RequestPriority.INTERACTIVE);
+		CompletableFuture<Permit> rejected = bulkhead.acquire(RequestPriority.INTERACTIVE);
+
+		assertThat(queued.isDone(), is(false));
+		assertThat(bulkhead.getInFlight(), is(2));
+		assertThat(bulkhead.getQueueDepth(), is(1));
+		try {
+			rejected.get();
+			fail("Expected BulkheadFullException");
+		} catch (ExecutionException e) {
+			assertThat(e.getCause(), instanceOf(BulkheadFullException.class));
+		}
+		assertThat(bulkhead.getRejections(), is(1L));
+
+		permit1.release();
+		// releasing twice has no effect
+		permit1.release();
+		assertThat(queued.isDone(), is(true));
+		assertThat(bulkhead.getInFlight(), is(2));
+		assertThat(bulkhead.getQueueDepth(), is(0));
+
+		permit2.release();
+		queued.get().release();
+		assertThat(bulkhead.getInFlight(), is(0));
+	}
+
+	@Test
+	public void testCancelledWaiterLeavesQueue() throws Exception {
+		Bulkhead bulkhead = new Bulkhead("read", 1, 1, 1);
+		Permit permit = bulkhead.acquire(RequestPriority.INTERACTIVE).getNow(null);
+		CompletableFuture<Permit> queued = bulkhead.acquire(RequestPriority.INTERACTIVE);
+
+		queued.cancel(false);
+		assertThat(bulkhead.getQueueDepth(), is(0));
+		// the freed queue slot can be used
+		CompletableFuture<Permit> queuedAgain = bulkhead.acquire(RequestPriority.INTERACTIVE);
+		assertThat(queuedAgain.isCompletedExceptionally(), is(false));
+
+		permit.release();
+		assertThat(queuedAgain.isDone(), is(true));
+		assertThat(bulkhead.getInFlight(), is(1));
+	}
+
+	@Test
+	public void testInteractiveRequestsOvertakeQueuedBulkRequests() throws Exception {
+		Bulkhead bulkhead = new Bulkhead("write", 1, 2, 2);
+		Permit permit = bulkhead.acquire(RequestPriority.BULK).getNow(null);
+		List<CompletableFuture<Permit>> bulk = new ArrayList<>();
+		bulk.add(bulkhead.acquire(RequestPriority.BULK));
+		bulk.add(bulkhead.acquire(RequestPriority.BULK));
+		assertThat(bulkhead.acquire(RequestPriority.BULK).isCompletedExceptionally(), is(true));
+
+		// a full queue of bulk requests doesn't reject interactive requests
+		List<CompletableFuture<Permit>> interactive = new ArrayList<>();
+		for (int i = 0; i < 2; i++) {
+			interactive.add(bulkhead.acquire(RequestPriority.INTERACTIVE));
+		}
+		assertThat(bulkhead.getQueueDepth(RequestPriority.INTERACTIVE), is(2));
+		assertThat(bulkhead.getQueueDepth(), is(4));
+
+		// freed slots go to the interactive requests, then to the bulk requests in order
+		permit.release();
+		assertThat(interactive.get(0).isDone(), is(true));
+		interactive.get(0).get().release();
+		assertThat(interactive.get(1).isDone(), is(true));
+		assertThat(bulk.get(0).isDone(), is(false));
+		interactive.get(1).get().release();
+		assertThat(bulk.get(0).isDone(), is(true));
+		assertThat(bulk.get(1).isDone(), is(false));
+	}
+
+	@Test
+	public void testBulkRequestsNotStarved() throws Exception {
+		Bulkhead bulkhead = new Bulkhead("write", 1, 10, 2);
+		Permit permit = bulkhead.acquire(RequestPriority.INTERACTIVE).getNow(null);
+		CompletableFuture<Permit> bulk = bulkhead.acquire(RequestPriority.BULK);
+		List<CompletableFuture<Permit>> interactive = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			interactive.add(bulkhead.acquire(RequestPriority.INTERACTIVE));
+		}
+
+		// two interactive requests are given a slot while the bulk request waits, then the bulk request is
+		permit.release();
+		interactive.get(0).get().release();
+		interactive.get(1).get().release();
+		assertThat(bulk.isDone(), is(true));
+		assertThat(interactive.get(2).isDone(), is(false));
+	}
+}
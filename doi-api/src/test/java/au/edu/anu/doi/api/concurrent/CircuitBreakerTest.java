@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.concurrent;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import au.edu.anu.doi.api.concurrent.CircuitBreaker.State;
+
+/**
+ * @author Rahul Khanna
+ *
+ */
+public class CircuitBreakerTest {
+
+	private final List<State> transitions = new CopyOnWriteArrayList<>();
+
+	@Test
+	public void testOpensAtFailureRateThreshold() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker(10, 4, 0.5, 1, TimeUnit.HOURS,
+				() -> CompletableFuture.completedFuture(true), (previous, state) -> transitions.add(state));
+
+		// not enough calls
+		breaker.onFailure();
+		breaker.onFailure();
+		breaker.onFailure();
+		assertThat(breaker.allowRequest(), is(true));
+
+		for (int i = 0; i < 3; i++) {
+			breaker.onSuccess();
+		}
+		// 3 of 6 failed, but a success never opens the breaker
+		assertThat(breaker.allowRequest(), is(true));
+		breaker.onFailure();
+		assertThat(breaker.getState(), is(State.OPEN));
+		assertThat(breaker.allowRequest(), is(false));
+		assertThat(transitions, contains(State.OPEN));
+	}
+
+	@Test
+	public void testOldOutcomesLeaveWindow() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker(4, 4, 0.75, 1, TimeUnit.HOURS,
+				() -> CompletableFuture.completedFuture(true), null);
+
+		breaker.onFailure();
+		breaker.onFailure();
+		breaker.onSuccess();
+		breaker.onSuccess();
+		breaker.onSuccess();
+		breaker.onSuccess();
+		// the first two failures have left the window, 1 of 4 failed
+		breaker.onFailure();
+		assertThat(breaker.getState(), is(State.CLOSED));
+	}
+
+	@Test
+	public void testProbeSuccessCloses() throws Exception {
+		CompletableFuture<Boolean> probeResult = new CompletableFuture<>();
+		CircuitBreaker breaker = new CircuitBreaker(2, 2, 0.5, 50, TimeUnit.MILLISECONDS, () -> probeResult,
+				(previous, state) -> transitions.add(state));
+		breaker.onFailure();
+		breaker.onFailure();
+		assertThat(breaker.getState(), is(State.OPEN));
+		assertThat(breaker.allowRequest(), is(false));
+		assertThat(breaker.getState(), is(State.OPEN));
+
+		// the first request after the open duration starts the probe, and is rejected like those while probing
+		Thread.sleep(60);
+		assertThat(breaker.allowRequest(), is(false));
+		assertThat(breaker.getState(), is(State.HALF_OPEN));
+		assertThat(breaker.allowRequest(), is(false));
+		probeResult.complete(true);
+		awaitState(breaker, State.CLOSED);
+		assertThat(breaker.allowRequest(), is(true));
+		assertThat(transitions, contains(State.OPEN, State.HALF_OPEN, State.CLOSED));
+
+		// window was reset on closing
+		breaker.onFailure();
+		breaker.onSuccess();
+		breaker.onSuccess();
+		assertThat(breaker.getState(), is(State.CLOSED));
+	}
+
+	@Test
+	public void testProbeFailureReopens() throws Exception {
+		AtomicInteger probes = new AtomicInteger();
+		CircuitBreaker breaker = new CircuitBreaker(1, 1, 1.0, 50, TimeUnit.MILLISECONDS, () -> {
+			probes.incrementAndGet();
+			return Futures.failedFuture(new RuntimeException("Unavailable"));
+		}, (previous, state) -> transitions.add(state));
+		breaker.onFailure();
+
+		for (int i = 0; i < 2; i++) {
+			Thread.sleep(60);
+			assertThat(breaker.allowRequest(), is(false));
+			// reopened for another open duration
+			assertThat(breaker.allowRequest(), is(false));
+		}
+		assertThat(probes.get(), is(2));
+		assertThat(transitions, contains(State.OPEN, State.HALF_OPEN, State.OPEN, State.HALF_OPEN, State.OPEN));
+	}
+
+	@Test
+	public void testNoProbeWithoutRequests() throws Exception {
+		AtomicInteger probes = new AtomicInteger();
+		CircuitBreaker breaker = new CircuitBreaker(1, 1, 1.0, 20, TimeUnit.MILLISECONDS, () -> {
+			probes.incrementAndGet();
+			return Futures.failedFuture(new RuntimeException("Unavailable"));
+		}, null);
+		breaker.onFailure();
+
+		Thread.sleep(100);
+		assertThat(breaker.getState(), is(State.OPEN));
+		assertThat(probes.get(), is(0));
+	}
+
+	private void awaitState(CircuitBreaker breaker, State state) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (breaker.getState() != state && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertThat(breaker.getState(), is(state));
+	}
+}
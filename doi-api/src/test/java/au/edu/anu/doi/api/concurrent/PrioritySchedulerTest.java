@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.concurrent;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import au.edu.anu.doi.api.RequestPriority;
+import au.edu.anu.doi.api.concurrent.PriorityScheduler.Permit;
+
+/**
+ * @author Rahul Khanna
+ *
+ */
+public class PrioritySchedulerTest {
+
+	@Test
+	public void testInteractiveJumpsQueue() throws Exception {
+		PriorityScheduler scheduler = new PriorityScheduler(1, 4);
+		List<String> dispatchOrder = new ArrayList<>();
+
+		Permit permit = scheduler.acquire(RequestPriority.BULK).getNow(null);
+		CompletableFuture<Permit> bulk = scheduler.acquire(RequestPriority.BULK);
+		bulk.thenAccept(p -> dispatchOrder.add("bulk"));
+		CompletableFuture<Permit> interactive = scheduler.acquire(RequestPriority.INTERACTIVE);
+		interactive.thenAccept(p -> dispatchOrder.add("interactive"));
+		assertThat(scheduler.getQueueDepth(RequestPriority.BULK), is(1));
+		assertThat(scheduler.getQueueDepth(RequestPriority.INTERACTIVE), is(1));
+
+		permit.release();
+		interactive.get().release();
+		bulk.get().release();
+
+		assertThat(dispatchOrder, contains("interactive", "bulk"));
+		assertThat(scheduler.getInFlight(), is(0));
+		assertThat(scheduler.getDispatched(RequestPriority.BULK), is(2L));
+		assertThat(scheduler.getDispatched(RequestPriority.INTERACTIVE), is(1L));
+		assertThat(scheduler.getWaitTimePercentile(RequestPriority.INTERACTIVE, 50.0), greaterThanOrEqualTo(0L));
+	}
+
+	@Test
+	public void testBulkNotStarved() throws Exception {
+		PriorityScheduler scheduler = new PriorityScheduler(1, 2);
+		List<RequestPriority> dispatchOrder = new ArrayList<>();
+
+		Permit permit = scheduler.acquire(RequestPriority.INTERACTIVE).getNow(null);
+		List<CompletableFuture<Permit>> waiters = new ArrayList<>();
+		for (int i = 0; i < 2; i++) {
+			waiters.add(acquire(scheduler, RequestPriority.BULK, dispatchOrder));
+		}
+		for (int i = 0; i < 5; i++) {
+			waiters.add(acquire(scheduler, RequestPriority.INTERACTIVE, dispatchOrder));
+		}
+
+		permit.release();
+		// each permit is released as soon as it's granted, dispatching the next waiter
+		for (CompletableFuture<Permit> waiter : waiters) {
+			waiter.get();
+		}
+		assertThat(dispatchOrder, contains(RequestPriority.INTERACTIVE, RequestPriority.INTERACTIVE,
+				RequestPriority.BULK, RequestPriority.INTERACTIVE, RequestPriority.INTERACTIVE, RequestPriority.BULK,
+				RequestPriority.INTERACTIVE));
+	}
+
+	@Test
+	public void testCancelledWaiterLeavesQueue() throws Exception {
+		PriorityScheduler scheduler = new PriorityScheduler(1, 4);
+		Permit permit = scheduler.acquire(RequestPriority.INTERACTIVE).getNow(null);
+		CompletableFuture<Permit> cancelled = scheduler.acquire(RequestPriority.INTERACTIVE);
+		CompletableFuture<Permit> bulk = scheduler.acquire(RequestPriority.BULK);
+
+		cancelled.cancel(false);
+		assertThat(scheduler.getQueueDepth(RequestPriority.INTERACTIVE), is(0));
+
+		permit.release();
+		assertThat(bulk.isDone(), is(true));
+		assertThat(scheduler.getInFlight(), is(1));
+		assertThat(scheduler.getDispatched(RequestPriority.INTERACTIVE), is(1L));
+	}
+
+	private static CompletableFuture<Permit> acquire(PriorityScheduler scheduler, RequestPriority priority,
+			List<RequestPriority> dispatchOrder) {
+		CompletableFuture<Permit> permitFuture = scheduler.acquire(priority);
+		permitFuture.thenAccept(p -> {
+			dispatchOrder.add(priority);
+			p.release();
+		});
+		return permitFuture;
+	}
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.concurrent;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author Rahul Khanna
+ *
+ */
+public class RetryPolicyTest {
+
+	@Test
+	public void testCanRetryUntilMaxAttempts() throws Exception {
+		RetryPolicy policy = new RetryPolicy(3, 100, 1000, TimeUnit.MILLISECONDS);
+
+		assertThat(policy.canRetry(1), is(true));
+		assertThat(policy.canRetry(2), is(true));
+		assertThat(policy.canRetry(3), is(false));
+	}
+
+	@Test
+	public void testBackoffBoundDoublesUpToMaxDelay() throws Exception {
+		RetryPolicy policy = new RetryPolicy(100, 100, 1000, TimeUnit.MILLISECONDS);
+
+		long maxFirst = 0;
+		long maxLater = 0;
+		for (int i = 0; i < 1000; i++) {
+			long first = policy.getBackoffNanos(1);
+			assertThat(first, greaterThanOrEqualTo(0L));
+			assertThat(first, lessThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100)));
+			maxFirst = Math.max(maxFirst, first);
+
+			long later = policy.getBackoffNanos(80);
+			assertThat(later, lessThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(1000)));
+			maxLater = Math.max(maxLater, later);
+		}
+		// jittered, but the bound is approached
+		assertThat(maxFirst, greaterThan(TimeUnit.MILLISECONDS.toNanos(50)));
+		assertThat(maxLater, greaterThan(TimeUnit.MILLISECONDS.toNanos(500)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidMaxAttempts() throws Exception {
+		new RetryPolicy(0, 100, 1000, TimeUnit.MILLISECONDS);
+	}
+}
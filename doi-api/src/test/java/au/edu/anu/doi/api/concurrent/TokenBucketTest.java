@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.concurrent;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * @author Rahul Khanna
+ *
+ */
+public class TokenBucketTest {
+
+	@Test
+	public void testBurstThenDenied() throws Exception {
+		TokenBucket bucket = new TokenBucket(1.0, 3);
+
+		assertThat(bucket.tryAcquire(), is(true));
+		assertThat(bucket.tryAcquire(), is(true));
+		assertThat(bucket.tryAcquire(), is(true));
+		assertThat(bucket.tryAcquire(), is(false));
+	}
+
+	@Test
+	public void testReserveReturnsWaitForNextToken() throws Exception {
+		TokenBucket bucket = new TokenBucket(10.0, 1);
+
+		assertThat(bucket.reserve(), is(0L));
+		long waitNanos = bucket.reserve();
+		assertThat(waitNanos, greaterThan(TimeUnit.MILLISECONDS.toNanos(50)));
+		assertThat(waitNanos, lessThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100)));
+	}
+
+	@Test
+	public void testAcquireAsyncCompletesAfterWait() throws Exception {
+		TokenBucket bucket = new TokenBucket(20.0, 1);
+		bucket.acquire();
+
+		long start = System.nanoTime();
+		bucket.acquireAsync().get(1, TimeUnit.SECONDS);
+		assertThat(System.nanoTime() - start, greaterThan(TimeUnit.MILLISECONDS.toNanos(25)));
+	}
+
+	@Test
+	public void testConcurrentTryAcquireNeverExceedsBurst() throws Exception {
+		TokenBucket bucket = new TokenBucket(0.001, 100);
+		AtomicInteger acquired = new AtomicInteger();
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int j = 0; j < 1000; j++) {
+					if (bucket.tryAcquire()) {
+						acquired.incrementAndGet();
+					}
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertThat(acquired.get(), is(100));
+	}
+}
@@ -35,6 +35,10 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import au.edu.anu.doi.api.concurrent.ExecutionMode;
+import au.edu.anu.doi.api.http.ContentCoding;
+import au.edu.anu.doi.api.http.TransportType;
+
 /**
  * @author Rahul Khanna
  *
@@ -87,4 +91,28 @@ public class DoiConfigFileTest {
 		assertThat(doiConfigFile.getSharedSecret(), is("abc123"));
 	}
 
+	@Test
+	public void testEnumProperties() throws Exception {
+		Properties props = new Properties();
+		props.setProperty("doi.executionMode", " Virtual ");
+		props.setProperty("doi.transport", "java");
+		props.setProperty("doi.compression.request", "gzip");
+		doiConfigFile = new DoiConfigFile(props);
+		assertThat(doiConfigFile.getExecutionMode(), is(ExecutionMode.VIRTUAL));
+		assertThat(doiConfigFile.getTransportType(), is(TransportType.JAVA));
+		assertThat(doiConfigFile.getRequestContentCoding(), is(ContentCoding.GZIP));
+	}
+
+	@Test
+	public void testInvalidEnumPropertiesUseDefaults() throws Exception {
+		Properties props = new Properties();
+		props.setProperty("doi.executionMode", "green");
+		props.setProperty("doi.transport", "carrier-pigeon");
+		props.setProperty("doi.compression.request", "zip");
+		doiConfigFile = new DoiConfigFile(props);
+		assertThat(doiConfigFile.getExecutionMode(), is(ExecutionMode.PLATFORM));
+		assertThat(doiConfigFile.getTransportType(), is(TransportType.JERSEY));
+		assertThat(doiConfigFile.getRequestContentCoding(), is(ContentCoding.IDENTITY));
+	}
+
 }
@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.http;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import au.edu.anu.doi.api.MockDoiServer;
+import au.edu.anu.doi.api.config.DoiConfig;
+
+/**
+ * @author Rahul Khanna
+ *
+ */
+public class ConnectionPoolTest {
+
+	private MockDoiServer doiServer;
+	private DoiConfig doiConfig;
+	private DoiTransport transport;
+
+	@Before
+	public void setUp() throws Exception {
+		doiServer = new MockDoiServer();
+		doiConfig = Mockito.mock(DoiConfig.class);
+		when(doiConfig.getBaseUri()).thenReturn(doiServer.getBaseUri().toString());
+		when(doiConfig.getAppId()).thenReturn("appId");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (transport != null) {
+			transport.close();
+		}
+		doiServer.close();
+	}
+
+	@Test
+	public void testConnectionsReused() throws Exception {
+		ConnectionPool pool = createTransport(4, 4, 0L);
+		Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+		doiServer.setHandler(MockDoiServer.METADATA_PATH, (exchange, body) -> {
+			clientPorts.add(exchange.getRemoteAddress().getPort());
+			MockDoiServer.respond(exchange, 200, "<resource>metadata</resource>");
+		});
+
+		DoiHttpRequest request = new DoiHttpRequest.GetMetadataBuilder(doiConfig, "10.5072/00/ABC").build();
+		for (int i = 0; i < 5; i++) {
+			try (DoiHttpResponse response = transport.send(request)) {
+				assertThat(response.readBodyAsString(), is("<resource>metadata</resource>"));
+			}
+		}
+
+		assertThat(clientPorts.size(), is(1));
+		assertThat(pool.getLeased(), is(0));
+		assertThat(pool.getAvailable(), is(1));
+		assertThat(pool.getConnectionRequests(), is(5L));
+	}
+
+	@Test
+	public void testRequestsWaitForConnectionAtLimit() throws Exception {
+		ConnectionPool pool = createTransport(1, 1, 0L);
+		doiServer.setDelayMillis(200L);
+
+		DoiHttpRequest request = new DoiHttpRequest.ServiceStatusBuilder(doiConfig).build();
+		List<CompletableFuture<DoiHttpResponse>> responses = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			responses.add(transport.sendAsync(request).thenApply(response -> {
+				response.readBodyAsString();
+				response.close();
+				return response;
+			}));
+		}
+		await(() -> pool.getLeased() == 1 && pool.getPending() == 2);
+		assertThat(pool.getMaxTotal(), is(1));
+
+		CompletableFuture.allOf(responses.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+		assertThat(pool.getLeased(), is(0));
+		assertThat(pool.getPending(), is(0));
+		assertThat(pool.getConnectionRequests(), is(3L));
+		// the second request waits for the first, the third for both
+		assertThat(pool.getTotalConnectionWaitMillis(), greaterThanOrEqualTo(300.0));
+	}
+
+	@Test
+	public void testIdleConnectionsEvicted() throws Exception {
+		ConnectionPool pool = createTransport(2, 2, 100L);
+		DoiHttpRequest request = new DoiHttpRequest.ServiceStatusBuilder(doiConfig).build();
+		try (DoiHttpResponse response = transport.send(request)) {
+			response.readBodyAsString();
+		}
+		assertThat(pool.getAvailable(), is(1));
+
+		await(() -> pool.getAvailable() == 0);
+	}
+
+	@Test
+	public void testNewTransportUsesPool() throws Exception {
+		when(doiConfig.isConnectionPoolEnabled()).thenReturn(true);
+		when(doiConfig.getConnectionPoolMaxTotal()).thenReturn(5);
+		when(doiConfig.getConnectionPoolMaxPerRoute()).thenReturn(3);
+		transport = DoiTransports.newTransport(doiConfig);
+
+		assertThat(transport, instanceOf(JerseyTransport.class));
+		ConnectionPool pool = ((JerseyTransport) transport).getConnectionPool();
+		assertThat(pool.getMaxTotal(), is(5));
+		try (DoiHttpResponse response = transport.send(new DoiHttpRequest.ServiceStatusBuilder(doiConfig).build())) {
+			assertThat(response.getStatus(), is(200));
+		}
+		assertThat(pool.getConnectionRequests(), is(1L));
+	}
+
+	private ConnectionPool createTransport(int maxTotal, int maxPerRoute, long idleEvictionMillis) {
+		ConnectionPool pool = new ConnectionPool(maxTotal, maxPerRoute, idleEvictionMillis, 0L, TimeUnit.MILLISECONDS);
+		transport = new JerseyTransport(DoiClientFactory.newPooledClient(doiConfig, pool), pool);
+		return pool;
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!condition.getAsBoolean()) {
+			if (System.nanoTime() > deadline) {
+				fail("Condition not met within 5 seconds");
+			}
+			Thread.sleep(10L);
+		}
+	}
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.http;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+/**
+ * @author Rahul Khanna
+ *
+ */
+public class ContentCodingTest {
+
+	@Test
+	public void testEncodedBodiesDecodedByJdk() throws Exception {
+		StringBuilder resourceDoc = new StringBuilder("<resource>");
+		for (int i = 0; i < 10000; i++) {
+			resourceDoc.append("<title>Title ").append(i).append("</title>");
+		}
+		byte[] uncompressed = resourceDoc.append("</resource>").toString().getBytes(StandardCharsets.UTF_8);
+
+		byte[] gzipped = IOUtils.toByteArray(ContentCoding.GZIP.encode(new ByteArrayInputStream(uncompressed)));
+		assertThat(gzipped.length, lessThan(uncompressed.length / 5));
+		// GZIPInputStream verifies the CRC and length in the trailer
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+			assertThat(Arrays.equals(IOUtils.toByteArray(in), uncompressed), is(true));
+		}
+
+		byte[] deflated = IOUtils.toByteArray(ContentCoding.DEFLATE.encode(new ByteArrayInputStream(uncompressed)));
+		try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(deflated))) {
+			assertThat(Arrays.equals(IOUtils.toByteArray(in), uncompressed), is(true));
+		}
+
+		for (ContentCoding coding : ContentCoding.values()) {
+			byte[] encoded = IOUtils.toByteArray(coding.encode(new ByteArrayInputStream(uncompressed)));
+			try (InputStream in = coding.decode(new ByteArrayInputStream(encoded))) {
+				assertThat(Arrays.equals(IOUtils.toByteArray(in), uncompressed), is(true));
+			}
+		}
+	}
+
+	@Test
+	public void testEmptyBodyGzipped() throws Exception {
+		byte[] gzipped = IOUtils.toByteArray(ContentCoding.GZIP.encode(new ByteArrayInputStream(new byte[0])));
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+			assertThat(IOUtils.toByteArray(in).length, is(0));
+		}
+	}
+
+	@Test
+	public void testFromHeader() throws Exception {
+		assertThat(ContentCoding.fromHeader(null), is(ContentCoding.IDENTITY));
+		assertThat(ContentCoding.fromHeader("GZip "), is(ContentCoding.GZIP));
+		assertThat(ContentCoding.fromHeader("x-gzip"), is(ContentCoding.GZIP));
+		assertThat(ContentCoding.fromHeader("deflate"), is(ContentCoding.DEFLATE));
+		assertThat(ContentCoding.fromHeader("br"), is(nullValue()));
+		assertThat(ContentCoding.GZIP.toString(), is("gzip"));
+	}
+}
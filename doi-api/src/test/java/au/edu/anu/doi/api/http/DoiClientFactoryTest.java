@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.http;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.when;
+
+import javax.ws.rs.client.Client;
+
+import org.glassfish.jersey.client.ClientProperties;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import au.edu.anu.doi.api.config.DoiConfig;
+
+/**
+ * @author Rahul Khanna
+ *
+ */
+public class DoiClientFactoryTest {
+
+	@Test
+	public void testTimeoutsApplied() throws Exception {
+		DoiConfig doiConfig = Mockito.mock(DoiConfig.class);
+		when(doiConfig.getConnectTimeoutMillis()).thenReturn(1500L);
+		when(doiConfig.getReadTimeoutMillis()).thenReturn(30000L);
+
+		Client client = DoiClientFactory.newClient(doiConfig);
+		try {
+			assertThat(client.getConfiguration().getProperty(ClientProperties.CONNECT_TIMEOUT), is(1500));
+			assertThat(client.getConfiguration().getProperty(ClientProperties.READ_TIMEOUT), is(30000));
+		} finally {
+			client.close();
+		}
+	}
+
+	@Test
+	public void testZeroTimeoutNotApplied() throws Exception {
+		Client client = DoiClientFactory.newClient(Mockito.mock(DoiConfig.class));
+		try {
+			assertThat(client.getConfiguration().getProperty(ClientProperties.CONNECT_TIMEOUT), is(nullValue()));
+		} finally {
+			client.close();
+		}
+	}
+}
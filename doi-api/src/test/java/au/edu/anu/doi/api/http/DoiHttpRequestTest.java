@@ -30,16 +30,29 @@ import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
+import java.net.URI;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.UriBuilder;
 
 import org.apache.commons.io.IOUtils;
 import org.hamcrest.Matchers;
@@ -47,7 +60,9 @@ import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.slf4j.Logger;
@@ -67,6 +82,9 @@ public class DoiHttpRequestTest {
 	
 	private DoiHttpRequest httpRequest;
 	
+	@Rule
+	public TemporaryFolder tmpFolder = new TemporaryFolder();
+	
 	
 	/**
 	 * @throws java.lang.Exception
@@ -125,6 +143,52 @@ public class DoiHttpRequestTest {
 		assertThat(httpRequest.getEntity().getEntity().asMap(), hasEntry("xml", Arrays.asList(xml)));
 	}
 	
+	@Test
+	public void testMintWithStreamedDocument() throws Exception {
+		String xml = readSampleXmlFile() + "<!-- \u00e9 & \u00fc + ~ -->";
+		byte[] xmlBytes = xml.getBytes(StandardCharsets.UTF_8);
+		httpRequest = new DoiHttpRequest.MintDoiBuilder(doiConfig, "http://abc.com",
+				ResourceDocSource.of(new ByteArrayInputStream(xmlBytes))).build();
+		
+		assertThat(httpRequest.getMethod(), is(HttpMethod.POST));
+		assertThat(httpRequest.getEntity(), is(nullValue()));
+		assertThat(httpRequest.getResourceDocSource(), is(notNullValue()));
+		assertThat(httpRequest.isRepeatable(), is(false));
+		
+		// read a byte at a time so escapes are split across reads
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		try (InputStream bodyStream = httpRequest.openStreamingBody()) {
+			for (int b = bodyStream.read(); b != -1; b = bodyStream.read()) {
+				body.write(b);
+			}
+		}
+		assertThat(body.toString("US-ASCII"), is("xml=" + URLEncoder.encode(xml, "UTF-8")));
+		
+		try {
+			httpRequest.openStreamingBody();
+			fail("Expected IllegalStateException");
+		} catch (IllegalStateException e) {
+		}
+	}
+	
+	@Test
+	public void testUpdateWithDocumentFromFile() throws Exception {
+		String xml = readSampleXmlFile();
+		Path xmlFile = tmpFolder.newFile("resource.xml").toPath();
+		Files.write(xmlFile, xml.getBytes(StandardCharsets.UTF_8));
+		httpRequest = new DoiHttpRequest.UpdateDoiBuilder(doiConfig, "10.5072/13/50639BFE25F18")
+				.newXml(ResourceDocSource.of(xmlFile)).build();
+		
+		assertThat(httpRequest.getEntity(), is(nullValue()));
+		assertThat(httpRequest.isRepeatable(), is(true));
+		for (int i = 0; i < 2; i++) {
+			try (InputStream bodyStream = httpRequest.openStreamingBody()) {
+				assertThat(IOUtils.toString(bodyStream, StandardCharsets.US_ASCII),
+						is("xml=" + URLEncoder.encode(xml, "UTF-8")));
+			}
+		}
+	}
+	
 	@Test
 	public void testMintWithSharedSecret() throws Exception {
 		when(doiConfig.getSharedSecret()).thenReturn("s3cret");
@@ -216,6 +280,58 @@ public class DoiHttpRequestTest {
 		assertThat(httpRequest.getEntity(), is(nullValue()));
 	}
 	
+	@Test
+	public void testApplicableAppId() throws Exception {
+		assertThat(new DoiHttpRequest.ServiceStatusBuilder(doiConfig).build().getAppId(), is("applicationIdentifier"));
+		
+		DoiConfig testPrefixConfig = mock(DoiConfig.class);
+		when(testPrefixConfig.getBaseUri()).thenReturn("https://doiservice.org.au/api/doi/");
+		when(testPrefixConfig.getAppId()).thenReturn("applicationIdentifier");
+		when(testPrefixConfig.useTestPrefix()).thenReturn(true);
+		httpRequest = new DoiHttpRequest.GetMetadataBuilder(testPrefixConfig, "10.5072/13/50639BFE25F18").build();
+		assertThat(httpRequest.getAppId(), is("TESTapplicationIdentifier"));
+	}
+	
+	@Test
+	public void testTemplatesComputedOncePerConfig() throws Exception {
+		String xml = readSampleXmlFile();
+		assertThat(new DoiHttpRequest.MintDoiBuilder(doiConfig, "http://abc.com", xml).build().getHeaders().entrySet(),
+				hasSize(0));
+		httpRequest = new DoiHttpRequest.UpdateDoiBuilder(doiConfig, "10.5072/13/50639BFE25F18").newXml(xml).build();
+		assertThat(httpRequest.getUri().toString(),
+				is("https://doiservice.org.au/api/doi/update.xml/?app_id=applicationIdentifier"));
+		new DoiHttpRequest.GetMetadataBuilder(doiConfig, "10.5072/13/50639BFE25F18").build();
+		verify(doiConfig, times(1)).getBaseUri();
+		verify(doiConfig, times(1)).getSharedSecret();
+		
+		// a different configuration instance has its own templates
+		DoiConfig otherConfig = mock(DoiConfig.class);
+		when(otherConfig.getBaseUri()).thenReturn("https://test.doiservice.org.au/api/doi");
+		when(otherConfig.getAppId()).thenReturn("applicationIdentifier");
+		when(otherConfig.getSharedSecret()).thenReturn("s3cret");
+		httpRequest = new DoiHttpRequest.MintDoiBuilder(otherConfig, "http://abc.com", xml).build();
+		assertThat(httpRequest.getUri().toString(), startsWith("https://test.doiservice.org.au/api/doi/mint.xml/?"));
+		assertThat(httpRequest.getHeaders(),
+				hasEntry("Authorization", Arrays.asList("Basic YXBwbGljYXRpb25JZGVudGlmaWVyOnMzY3JldA==")));
+		assertThat(new DoiHttpRequest.MintDoiBuilder(doiConfig, "http://abc.com", xml).build().getHeaders().entrySet(),
+				hasSize(0));
+	}
+	
+	@Test
+	public void testUrlEncodedAsQueryParam() throws Exception {
+		String url = "http://abc.com/a b?c=d&e=f+g%20#h/\u00e9{x}";
+		httpRequest = new DoiHttpRequest.MintDoiBuilder(doiConfig, url, readSampleXmlFile()).build();
+		
+		// as resolved from a query parameter template
+		Map<String, Object> templateValues = new HashMap<String, Object>();
+		templateValues.put("appId", "applicationIdentifier");
+		templateValues.put("url", url);
+		URI expected = UriBuilder.fromPath("https://doiservice.org.au/api/doi/").path("/mint.xml/")
+				.queryParam("app_id", "{appId}").queryParam("url", "{url}").resolveTemplates(templateValues, true)
+				.build();
+		assertThat(httpRequest.getUri(), is(expected));
+	}
+	
 	private String readSampleXmlFile() throws IOException {
 		StringWriter sw = new StringWriter();
 		InputStream xmlStream = new BufferedInputStream(this.getClass().getResourceAsStream("resource-sample1.xml"));
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.http;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.when;
+
+import java.net.ConnectException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import au.edu.anu.doi.api.MockDoiServer;
+import au.edu.anu.doi.api.config.DoiConfig;
+
+/**
+ * @author Rahul Khanna
+ *
+ */
+public class JerseyTransportTest {
+
+	private MockDoiServer doiServer;
+	private DoiConfig doiConfig;
+	private Client client;
+	private DoiTransport transport;
+
+	@Before
+	public void setUp() throws Exception {
+		doiServer = new MockDoiServer();
+		doiConfig = Mockito.mock(DoiConfig.class);
+		when(doiConfig.getBaseUri()).thenReturn(doiServer.getBaseUri().toString());
+		when(doiConfig.getAppId()).thenReturn("appId");
+		client = ClientBuilder.newClient();
+		transport = new JerseyTransport(client);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		transport.close();
+		client.close();
+		doiServer.close();
+	}
+
+	@Test
+	public void testSend() throws Exception {
+		DoiHttpRequest request = new DoiHttpRequest.GetMetadataBuilder(doiConfig, "10.5072/00/ABC").build();
+		try (DoiHttpResponse response = transport.send(request)) {
+			assertThat(response.getStatus(), is(200));
+			assertThat(response.readBodyAsString(), is("<resource>metadata</resource>"));
+		}
+		try (DoiHttpResponse response = transport.sendAsync(request).get(10, TimeUnit.SECONDS)) {
+			assertThat(response.getStatus(), is(200));
+			assertThat(response.readBodyAsString(), is("<resource>metadata</resource>"));
+		}
+	}
+
+	@Test
+	public void testConnectionFailure() throws Exception {
+		DoiHttpRequest request = new DoiHttpRequest.ServiceStatusBuilder(doiConfig).build();
+		doiServer.close();
+		try {
+			transport.send(request).close();
+			fail("Expected DoiTransportException");
+		} catch (DoiTransportException e) {
+			assertThat(e.getCause().getCause(), instanceOf(ConnectException.class));
+		}
+		try {
+			transport.sendAsync(request).get(10, TimeUnit.SECONDS).close();
+			fail("Expected DoiTransportException");
+		} catch (ExecutionException e) {
+			assertThat(e.getCause(), instanceOf(DoiTransportException.class));
+		}
+	}
+
+	@Test
+	public void testNewTransportFallsBackToJersey() throws Exception {
+		when(doiConfig.getTransportType()).thenReturn(TransportType.JAVA);
+		DoiTransport newTransport = DoiTransports.newTransport(doiConfig);
+		try {
+			if (DoiTransports.isJavaHttpTransportSupported()) {
+				assertThat(newTransport.getClass().getSimpleName(), is("JavaHttpTransport"));
+			} else {
+				assertThat(newTransport, instanceOf(JerseyTransport.class));
+			}
+		} finally {
+			newTransport.close();
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.http;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import au.edu.anu.doi.api.config.DoiConfig;
+
+/**
+ * Compares building the URI and Authorization header of mint and get metadata requests from cached
+ * {@link RequestTemplates} against resolving {@link UriBuilder} templates and encoding the credentials for every
+ * request, as the builders did before templates were cached. Run with the GC profiler for the bytes allocated per
+ * request: {@code mvn -Pbenchmark verify -Dbenchmark=RequestBuilderBenchmark}, adding {@code -prof gc} when running
+ * {@code org.openjdk.jmh.Main} directly
+ * 
+ * @author Rahul Khanna
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestBuilderBenchmark {
+
+	private static final String DOI = "10.5072/13/50639BFE25F18";
+	private static final String URL = "https://datacommons.anu.edu.au/DataCommons/item/anudc:5432";
+	private static final String RESOURCE_DOC = "<resource/>";
+
+	private final DoiConfig doiConfig = new BenchmarkDoiConfig();
+
+	@Benchmark
+	public void mintWithUriBuilder(Blackhole bh) {
+		Map<String, Object> templateValues = new HashMap<String, Object>();
+		UriBuilder ub = UriBuilder.fromPath(doiConfig.getBaseUri()).path("/mint.{responseType}/");
+		ub = ub.queryParam("app_id", "{appId}");
+		ub = ub.queryParam("url", "{url}");
+		templateValues.put("responseType", "xml");
+		templateValues.put("appId", getApplicableAppId());
+		templateValues.put("url", URL);
+		ub.resolveTemplates(templateValues, true);
+		bh.consume(ub.build());
+
+		MultivaluedMap<String, String> headers = new MultivaluedHashMap<>(1);
+		String authValue = String.format("%s:%s", getApplicableAppId(), doiConfig.getSharedSecret());
+		authValue = Base64.getEncoder().encodeToString(authValue.getBytes(StandardCharsets.UTF_8));
+		headers.add("Authorization", String.format("Basic %s", authValue));
+		bh.consume(headers);
+	}
+
+	@Benchmark
+	public void mintWithRequestTemplates(Blackhole bh) {
+		RequestTemplates templates = RequestTemplates.of(doiConfig, DoiHttpRequest.AbstractBuilder.ResponseType.XML);
+		bh.consume(templates.getMintUri(URL));
+
+		MultivaluedMap<String, String> headers = new MultivaluedHashMap<>(1);
+		headers.add("Authorization", templates.getAuthorization());
+		bh.consume(headers);
+	}
+
+	@Benchmark
+	public URI getMetadataWithUriBuilder() {
+		Map<String, Object> templateValues = new HashMap<String, Object>();
+		UriBuilder ub = UriBuilder.fromPath(doiConfig.getBaseUri()).path("/xml.{responseType}/");
+		ub = ub.queryParam("doi", "{doi}");
+		templateValues.put("responseType", "xml");
+		templateValues.put("appId", getApplicableAppId());
+		templateValues.put("doi", DOI);
+		ub.resolveTemplates(templateValues, true);
+		return ub.build();
+	}
+
+	@Benchmark
+	public URI getMetadataWithRequestTemplates() {
+		return RequestTemplates.of(doiConfig, DoiHttpRequest.AbstractBuilder.ResponseType.XML).getMetadataUri(DOI);
+	}
+
+	@Benchmark
+	public DoiHttpRequest buildMintRequest() {
+		return new DoiHttpRequest.MintDoiBuilder(doiConfig, URL, RESOURCE_DOC).build();
+	}
+
+	private String getApplicableAppId() {
+		return doiConfig.useTestPrefix() ? String.format("TEST%s", doiConfig.getAppId()) : doiConfig.getAppId();
+	}
+
+
+	private static class BenchmarkDoiConfig implements DoiConfig {
+
+		@Override
+		public String getBaseUri() {
+			return "https://services.ands.org.au/doi/1.1/";
+		}
+
+		@Override
+		public String getAppId() {
+			return "5f1e6c3a9b2d4e8f";
+		}
+
+		@Override
+		public boolean useTestPrefix() {
+			return true;
+		}
+
+		@Override
+		public boolean isDebug() {
+			return false;
+		}
+
+		@Override
+		public String getSharedSecret() {
+			return "s3cret";
+		}
+	}
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.http;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.ws.rs.core.HttpHeaders;
+
+import org.junit.Test;
+
+/**
+ * @author Rahul Khanna
+ *
+ */
+public class ResponseBodyTest {
+
+	@Test
+	public void testReadBody() throws Exception {
+		StringBuilder doc = new StringBuilder("<response>");
+		for (int i = 0; i < 1000; i++) {
+			doc.append("<message>café ").append(i).append("</message>");
+		}
+		String expected = doc.append("</response>").toString();
+		DoiHttpResponse response = mockResponse(expected.getBytes(StandardCharsets.UTF_8), "application/xml");
+
+		ResponseBody body = ResponseBody.read(response, 1024 * 1024);
+		assertThat(body.getLength(), is(expected.getBytes(StandardCharsets.UTF_8).length));
+		assertThat(body.isTruncated(), is(false));
+		assertThat(body.getCharset(), is(nullValue()));
+		assertThat(body.toString(), is(expected));
+	}
+
+	@Test
+	public void testBodyTruncated() throws Exception {
+		DoiHttpResponse response = mockResponse("0123456789".getBytes(StandardCharsets.US_ASCII), null);
+
+		ResponseBody body = ResponseBody.read(response, 4);
+		assertThat(body.getLength(), is(4));
+		assertThat(body.isTruncated(), is(true));
+		assertThat(body.toString(), is("0123..."));
+
+		response = mockResponse("0123".getBytes(StandardCharsets.US_ASCII), null);
+		assertThat(ResponseBody.read(response, 4).isTruncated(), is(false));
+	}
+
+	@Test
+	public void testBodyDecodedWithContentTypeCharset() throws Exception {
+		DoiHttpResponse response = mockResponse("café".getBytes(StandardCharsets.ISO_8859_1),
+				"text/plain; charset=ISO-8859-1");
+
+		ResponseBody body = ResponseBody.read(response, 100);
+		assertThat(body.getCharset(), is(StandardCharsets.ISO_8859_1));
+		assertThat(body.toString(), is("café"));
+		assertThat(ResponseBody.charsetOf("text/plain; charset=unsupported"), is(nullValue()));
+		assertThat(ResponseBody.charsetOf("not a content type"), is(nullValue()));
+	}
+
+	private static DoiHttpResponse mockResponse(byte[] body, String contentType) {
+		DoiHttpResponse response = mock(DoiHttpResponse.class);
+		when(response.readBody()).thenReturn(new ByteArrayInputStream(body));
+		when(response.getHeader(HttpHeaders.CONTENT_TYPE)).thenReturn(contentType);
+		return response;
+	}
+}
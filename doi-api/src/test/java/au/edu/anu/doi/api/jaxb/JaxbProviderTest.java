@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.jaxb;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.XMLConstants;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.SchemaFactory;
+
+import org.datacite.schema.kernel_3.Resource;
+import org.junit.Test;
+
+/**
+ * @author Rahul Khanna
+ *
+ */
+public class JaxbProviderTest {
+
+	@Test
+	public void testSharedPerBindingPackage() throws Exception {
+		JaxbProvider kernel3 = JaxbProvider.of(Resource.class);
+		assertThat(JaxbProvider.of(org.datacite.schema.kernel_3.ObjectFactory.class), is(sameInstance(kernel3)));
+		assertThat(JaxbProvider.getContext(Resource.class), is(sameInstance(kernel3.getContext())));
+
+		JaxbProvider kernel22 = JaxbProvider.of(org.datacite.schema.kernel_2_2.Resource.class);
+		assertThat(kernel22, is(not(sameInstance(kernel3))));
+		assertThat(kernel22.getContext(), is(not(sameInstance(kernel3.getContext()))));
+
+		JaxbProvider dedicated = JaxbProvider.newProvider(Resource.class, 2);
+		assertThat(dedicated, is(not(sameInstance(kernel3))));
+		assertThat(dedicated.getContext(), is(sameInstance(kernel3.getContext())));
+	}
+
+	@Test
+	public void testSharedPerClassLoader() throws Exception {
+		JaxbProvider kernel3 = JaxbProvider.of(Resource.class);
+		URL bindings = Resource.class.getProtectionDomain().getCodeSource().getLocation();
+		try (URLClassLoader classLoader = new URLClassLoader(new URL[] { bindings }, null)) {
+			Class<?> otherResource = classLoader.loadClass(Resource.class.getName());
+			JaxbProvider other = JaxbProvider.of(otherResource);
+			assertThat(other, is(not(sameInstance(kernel3))));
+			assertThat(other.getContext(), is(not(sameInstance(kernel3.getContext()))));
+			Class<?> otherObjectFactory = classLoader
+					.loadClass(org.datacite.schema.kernel_3.ObjectFactory.class.getName());
+			assertThat(JaxbProvider.of(otherObjectFactory), is(sameInstance(other)));
+
+			String doc = marshal(kernel3, createKernel3Resource("10.5072/kernel-3"));
+			Object resource = other.unmarshal(new StreamSource(new StringReader(doc)), otherResource);
+			assertThat(resource.getClass(), is(sameInstance(otherResource)));
+		}
+	}
+
+	@Test
+	public void testKernel3RoundTrip() throws Exception {
+		JaxbProvider provider = JaxbProvider.newProvider(Resource.class, 2);
+		String doc = marshal(provider, createKernel3Resource("10.5072/kernel-3"));
+		assertThat(doc, containsString("http://datacite.org/schema/kernel-3"));
+		assertThat(provider.getIdleMarshallers(), is(1));
+
+		Resource resource = provider.unmarshal(new StreamSource(new StringReader(doc)), Resource.class);
+		assertThat(resource.getIdentifier().getValue(), is("10.5072/kernel-3"));
+		assertThat(resource.getPublisher(), is("ANU"));
+		assertThat(provider.getIdleUnmarshallers(), is(1));
+	}
+
+	@Test
+	public void testKernel22RoundTrip() throws Exception {
+		JaxbProvider provider = JaxbProvider.of(org.datacite.schema.kernel_2_2.Resource.class);
+		org.datacite.schema.kernel_2_2.Resource resource = new org.datacite.schema.kernel_2_2.Resource();
+		org.datacite.schema.kernel_2_2.Resource.Identifier identifier = new org.datacite.schema.kernel_2_2.Resource.Identifier();
+		identifier.setValue("10.5072/kernel-2.2");
+		resource.setIdentifier(identifier);
+		resource.setPublisher("ANU");
+		String doc = marshal(provider, resource);
+		assertThat(doc, containsString("http://datacite.org/schema/kernel-2.2"));
+
+		resource = provider.unmarshal(new StreamSource(new StringReader(doc)),
+				org.datacite.schema.kernel_2_2.Resource.class);
+		assertThat(resource.getIdentifier().getValue(), is("10.5072/kernel-2.2"));
+		assertThat(resource.getPublisher(), is("ANU"));
+	}
+
+	@Test(expected = JAXBException.class)
+	public void testUnexpectedRootType() throws Exception {
+		JaxbProvider provider = JaxbProvider.of(Resource.class);
+		String doc = marshal(provider, createKernel3Resource("10.5072/kernel-3"));
+		provider.unmarshal(new StreamSource(new StringReader(doc)), String.class);
+	}
+
+	@Test
+	public void testReturnedUnmarshallerReset() throws Exception {
+		JaxbProvider provider = JaxbProvider.newProvider(Resource.class, 1);
+		Unmarshaller unmarshaller = provider.borrowUnmarshaller();
+		unmarshaller.setSchema(SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema());
+		unmarshaller.setListener(new Unmarshaller.Listener() {
+		});
+		provider.returnUnmarshaller(unmarshaller);
+
+		Unmarshaller reused = provider.borrowUnmarshaller();
+		assertThat(reused, is(sameInstance(unmarshaller)));
+		assertThat(reused.getSchema(), is(nullValue()));
+		assertThat(reused.getListener(), is(nullValue()));
+		assertThat(provider.getIdleUnmarshallers(), is(0));
+	}
+
+	@Test
+	public void testPoolBounded() throws Exception {
+		JaxbProvider provider = JaxbProvider.newProvider(Resource.class, 2);
+		List<Unmarshaller> borrowed = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			borrowed.add(provider.borrowUnmarshaller());
+		}
+		borrowed.forEach(provider::returnUnmarshaller);
+		assertThat(provider.getIdleUnmarshallers(), is(2));
+
+		provider.prefillUnmarshallers(10);
+		assertThat(provider.getIdleUnmarshallers(), is(2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidMaxPooled() throws Exception {
+		JaxbProvider.newProvider(Resource.class, 0);
+	}
+
+	@Test
+	public void testConcurrentRoundTrips() throws Exception {
+		JaxbProvider provider = JaxbProvider.newProvider(Resource.class, 4);
+		int nThreads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+		CountDownLatch start = new CountDownLatch(1);
+		try {
+			List<Future<Void>> results = new ArrayList<>();
+			for (int t = 0; t < nThreads; t++) {
+				int thread = t;
+				results.add(executor.submit(() -> {
+					start.await();
+					for (int i = 0; i < 200; i++) {
+						String doi = String.format("10.5072/%d/%d", thread, i);
+						String doc = marshal(provider, createKernel3Resource(doi));
+						Resource resource = provider.unmarshal(new StreamSource(new StringReader(doc)),
+								Resource.class);
+						assertThat(resource.getIdentifier().getValue(), is(doi));
+					}
+					return null;
+				}));
+			}
+			start.countDown();
+			for (Future<Void> result : results) {
+				result.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertThat(provider.getIdleMarshallers(), is(both(greaterThan(0)).and(lessThanOrEqualTo(4))));
+		assertThat(provider.getIdleUnmarshallers(), is(both(greaterThan(0)).and(lessThanOrEqualTo(4))));
+	}
+
+	private static Resource createKernel3Resource(String doi) {
+		Resource resource = new Resource();
+		Resource.Identifier identifier = new Resource.Identifier();
+		identifier.setValue(doi);
+		resource.setIdentifier(identifier);
+		resource.setPublisher("ANU");
+		resource.setPublicationYear("2016");
+		return resource;
+	}
+
+	private static String marshal(JaxbProvider provider, Object obj) throws JAXBException {
+		StringWriter writer = new StringWriter();
+		provider.marshal(obj, new StreamResult(writer));
+		return writer.toString();
+	}
+
+}
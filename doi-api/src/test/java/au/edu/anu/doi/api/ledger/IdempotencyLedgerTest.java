@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.ledger;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import au.edu.anu.doi.api.ledger.LedgerEntry.State;
+
+/**
+ * @author Rahul Khanna
+ *
+ */
+public class IdempotencyLedgerTest {
+
+	@Rule
+	public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+	@Test
+	public void testEntriesSurviveReopen() throws Exception {
+		Path journal = tmpFolder.getRoot().toPath().resolve("mint.ledger");
+		MintKey pendingKey = MintKey.of("appId", "http://abc.com/1", "<resource/>");
+		MintKey completedKey = MintKey.of("appId", "http://abc.com/2\tx", "<resource/>");
+		MintKey removedKey = MintKey.of("appId", "http://abc.com/3", "<resource/>");
+
+		IdempotencyLedger ledger = new IdempotencyLedger(journal);
+		ledger.markPending(pendingKey);
+		ledger.markPending(completedKey);
+		ledger.markCompleted(completedKey, "10.5072/00/ABC");
+		ledger.markPending(removedKey);
+		ledger.remove(removedKey);
+		ledger.close();
+
+		IdempotencyLedger reopened = new IdempotencyLedger(journal);
+		assertThat(reopened.get(pendingKey).getState(), is(State.PENDING));
+		assertThat(reopened.get(completedKey).getState(), is(State.COMPLETED));
+		assertThat(reopened.get(completedKey).getDoi(), is("10.5072/00/ABC"));
+		assertThat(reopened.get(removedKey), is(nullValue()));
+		assertThat(reopened.getPendingEntries().size(), is(1));
+		// compacted to one line per entry
+		assertThat(Files.readAllLines(journal).size(), is(2));
+	}
+
+	@Test
+	public void testPartiallyWrittenLineIgnored() throws Exception {
+		Path journal = tmpFolder.getRoot().toPath().resolve("mint.ledger");
+		MintKey key = MintKey.of("appId", "http://abc.com/1", "<resource/>");
+		try (IdempotencyLedger ledger = new IdempotencyLedger(journal)) {
+			ledger.markCompleted(key, "10.5072/00/ABC");
+		}
+		Files.write(journal, "P\tappId\thttp://abc.com/2\t12".getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+
+		IdempotencyLedger reopened = new IdempotencyLedger(journal);
+		assertThat(reopened.get(key).getDoi(), is("10.5072/00/ABC"));
+		assertThat(reopened.getPendingEntries().size(), is(0));
+	}
+
+	@Test
+	public void testLineCutShortInDoiIgnored() throws Exception {
+		Path journal = tmpFolder.getRoot().toPath().resolve("mint.ledger");
+		MintKey key = MintKey.of("appId", "http://abc.com/1", "<resource/>");
+		try (IdempotencyLedger ledger = new IdempotencyLedger(journal)) {
+			ledger.markPending(key);
+		}
+		String completedLine = "C\tappId\thttp://abc.com/1\t" + key.getMetadataHash() + "\t12\t10.5072/00/A";
+		Files.write(journal, completedLine.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+		try (IdempotencyLedger reopened = new IdempotencyLedger(journal)) {
+			assertThat(reopened.get(key).getState(), is(State.PENDING));
+			assertThat(reopened.get(key).getDoi(), is(nullValue()));
+		}
+		// compaction dropped the partial line
+		assertThat(Files.readAllLines(journal).size(), is(1));
+	}
+
+	@Test
+	public void testJournalLockedWhileOpen() throws Exception {
+		Path journal = tmpFolder.getRoot().toPath().resolve("mint.ledger");
+		MintKey key = MintKey.of("appId", "http://abc.com/1", "<resource/>");
+		IdempotencyLedger ledger = new IdempotencyLedger(journal);
+		try {
+			new IdempotencyLedger(journal);
+			fail("Expected IOException");
+		} catch (IOException e) {
+			assertThat(e.getMessage(), containsString("already open"));
+		}
+		ledger.markCompleted(key, "10.5072/00/ABC");
+		ledger.close();
+		try {
+			ledger.markPending(key);
+			fail("Expected IOException");
+		} catch (IOException e) {
+			assertThat(e.getMessage(), containsString("closed"));
+		}
+
+		try (IdempotencyLedger reopened = new IdempotencyLedger(journal)) {
+			assertThat(reopened.get(key).getDoi(), is("10.5072/00/ABC"));
+		}
+	}
+
+	@Test
+	public void testKeyDependsOnMetadata() throws Exception {
+		assertThat(MintKey.of("appId", "http://abc.com", "<resource/>"),
+				is(MintKey.of("appId", "http://abc.com", "<resource/>")));
+		assertThat(MintKey.of("appId", "http://abc.com", "<resource/>")
+				.equals(MintKey.of("appId", "http://abc.com", "<resource></resource>")), is(false));
+	}
+}
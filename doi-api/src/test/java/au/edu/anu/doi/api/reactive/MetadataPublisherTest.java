@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.reactive;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import au.edu.anu.doi.api.DoiException;
+
+/**
+ * @author Rahul Khanna
+ *
+ */
+public class MetadataPublisherTest {
+
+	private ScheduledExecutorService scheduler;
+	private AtomicInteger inFlight;
+	private AtomicInteger maxInFlight;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		scheduler = Executors.newScheduledThreadPool(4);
+		inFlight = new AtomicInteger();
+		maxInFlight = new AtomicInteger();
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	public void testAllResultsPublished() throws Exception {
+		MetadataPublisher publisher = new MetadataPublisher(new IterablePublisher(dois(40)), this::fetch, 8);
+		CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+
+		publisher.subscribe(subscriber);
+
+		assertThat(subscriber.completed.await(10, TimeUnit.SECONDS), is(true));
+		assertThat(subscriber.results.size(), is(40));
+		assertThat(maxInFlight.get(), lessThanOrEqualTo(8));
+		long failures = subscriber.results.stream().filter(r -> !r.isSuccess()).count();
+		assertThat(failures, is(4L));
+	}
+
+	@Test
+	public void testSlowSubscriberThrottlesFetches() throws Exception {
+		MetadataPublisher publisher = new MetadataPublisher(new IterablePublisher(dois(20)), this::fetch, 8);
+		// requests one result at a time
+		CollectingSubscriber subscriber = new CollectingSubscriber(1);
+
+		publisher.subscribe(subscriber);
+
+		assertThat(subscriber.completed.await(10, TimeUnit.SECONDS), is(true));
+		assertThat(subscriber.results.size(), is(20));
+		assertThat(maxInFlight.get(), is(1));
+	}
+
+	private CompletableFuture<String> fetch(String doi) {
+		maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+		CompletableFuture<String> future = new CompletableFuture<>();
+		scheduler.schedule(() -> {
+			inFlight.decrementAndGet();
+			if (doi.endsWith("0")) {
+				future.completeExceptionally(new DoiException("Not found: " + doi));
+			} else {
+				future.complete("<resource>" + doi + "</resource>");
+			}
+		}, 2, TimeUnit.MILLISECONDS);
+		return future;
+	}
+
+	private static List<String> dois(int count) {
+		List<String> dois = new ArrayList<>();
+		for (int i = 1; i <= count; i++) {
+			dois.add("10.5072/00/" + i);
+		}
+		return dois;
+	}
+
+	/**
+	 * Requests the specified number of results on subscription and again after each batch is received.
+	 */
+	private static class CollectingSubscriber implements Subscriber<MetadataResult> {
+		private final long batchSize;
+		private final List<MetadataResult> results = Collections.synchronizedList(new ArrayList<>());
+		private final CountDownLatch completed = new CountDownLatch(1);
+		private Subscription subscription;
+		private long receivedInBatch;
+
+		CollectingSubscriber(long batchSize) {
+			this.batchSize = batchSize;
+		}
+
+		@Override
+		public void onSubscribe(Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request(batchSize);
+		}
+
+		@Override
+		public void onNext(MetadataResult result) {
+			results.add(result);
+			if (++receivedInBatch == batchSize) {
+				receivedInBatch = 0;
+				subscription.request(batchSize);
+			}
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			completed.countDown();
+		}
+
+		@Override
+		public void onComplete() {
+			completed.countDown();
+		}
+	}
+
+	/**
+	 * Publishes the items of an iterable honouring demand.
+	 */
+	private static class IterablePublisher implements Publisher<String> {
+		private final Iterable<String> items;
+
+		IterablePublisher(Iterable<String> items) {
+			this.items = items;
+		}
+
+		@Override
+		public void subscribe(Subscriber<? super String> subscriber) {
+			Iterator<String> iter = items.iterator();
+			subscriber.onSubscribe(new Subscription() {
+				private long requested;
+				private boolean emitting;
+				private boolean done;
+
+				@Override
+				public synchronized void request(long n) {
+					requested += n;
+					if (emitting) {
+						return;
+					}
+					emitting = true;
+					while (requested > 0 && iter.hasNext()) {
+						requested--;
+						subscriber.onNext(iter.next());
+					}
+					if (!iter.hasNext() && !done) {
+						done = true;
+						subscriber.onComplete();
+					}
+					emitting = false;
+				}
+
+				@Override
+				public synchronized void cancel() {
+					done = true;
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.response;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares parsing a mint response with {@link DoiResponseParser} against unmarshalling it with a pooled JAXB
+ * Unmarshaller, and unmarshalling a response body from its bytes against decoding it to a string first. Run with the
+ * GC profiler for the bytes allocated per response: {@code mvn -Pbenchmark verify
+ * -Dbenchmark=DoiResponseParserBenchmark}, adding {@code -prof gc} when running {@code org.openjdk.jmh.Main} directly.
+ * The test logging configuration traces every unmarshalled response, point {@code -Dlog4j.configuration} at one with a
+ * higher level for the unmarshal benchmarks.
+ * 
+ * @author Rahul Khanna
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DoiResponseParserBenchmark {
+
+	private static final String MINT_RESPONSE = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+			+ "<response type=\"success\"><responsecode>MT001</responsecode>"
+			+ "<message>DOI 10.5072/00/5432ABCD was successfully minted.</message><doi>10.5072/00/5432ABCD</doi>"
+			+ "<url>https://datacommons.anu.edu.au/DataCommons/item/anudc:5432</url><app_id>TEST5f1e6c3a9b2d4e8f</app_id>"
+			+ "<verbosemessage>(took 1565ms)</verbosemessage></response>";
+
+	private static final byte[] MINT_RESPONSE_BODY = MINT_RESPONSE.getBytes(StandardCharsets.UTF_8);
+
+	private final DoiResponseParser parser = new DoiResponseParser();
+	private final DoiResponseUnmarshaller unmarshaller = new DoiResponseUnmarshaller();
+
+	@Benchmark
+	public DoiResponse parse() {
+		return parser.parse(MINT_RESPONSE);
+	}
+
+	@Benchmark
+	public DoiResponse unmarshalWithJaxb() throws JAXBException {
+		return unmarshaller.unmarshalWithJaxb(new StringReader(MINT_RESPONSE));
+	}
+
+	@Benchmark
+	public DoiResponse unmarshalDecodedBody() throws JAXBException {
+		return unmarshaller.unmarshal(new String(MINT_RESPONSE_BODY, StandardCharsets.UTF_8));
+	}
+
+	@Benchmark
+	public DoiResponse unmarshalBody() throws JAXBException {
+		return unmarshaller.unmarshal(MINT_RESPONSE_BODY, 0, MINT_RESPONSE_BODY.length);
+	}
+}
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.response;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.bind.JAXBException;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Rahul Khanna
+ *
+ */
+public class DoiResponseParserTest {
+
+	private DoiResponseParser parser;
+	private DoiResponseUnmarshaller jaxbUnmarshaller;
+
+	@Before
+	public void setUp() throws Exception {
+		parser = new DoiResponseParser();
+		jaxbUnmarshaller = new DoiResponseUnmarshaller();
+	}
+
+	@Test
+	public void testStatusResponse() throws Exception {
+		byte[] doc;
+		try (InputStream docStream = this.getClass().getResourceAsStream("doistatusresp1.xml")) {
+			doc = IOUtils.toByteArray(docStream);
+		}
+		DoiResponse doiResp = parser.parse(doc, 0, doc.length);
+		assertThat(doiResp.getType(), is("success"));
+		assertThat(doiResp.getCode(), is("MT090"));
+		assertThat(doiResp.getMessage(), is("The rocket is ready to blast off -- all systems are go!"));
+		assertThat(doiResp.getDoi(), is(""));
+		assertThat(doiResp.getVerboseMsg(), is("(took 1565ms)"));
+	}
+
+	@Test
+	public void testMatchesJaxb() throws Exception {
+		List<String> docs = Arrays.asList(
+				"<response type=\"failure\"><responsecode>MT010</responsecode>"
+						+ "<message>Bad &amp; &lt;invalid&gt; &quot;request&apos;</message><doi>10.5072/00/ABC</doi>"
+						+ "<url><![CDATA[http://abc.com/?a=1&b=2]]></url><app_id>TESTappId</app_id>"
+						+ "<verbosemessage/></response>",
+				"<?xml version='1.0'?>\n<response type='success' >\n\t<message >café &#233;&#xE9; 😀"
+						+ "</message >\n\t<doi>&#x1F600;</doi><doi>last wins</doi>\n</response >\n",
+				"<response type=\"success\"/>",
+				"<response><responsecode></responsecode></response>");
+		for (String doc : docs) {
+			DoiResponse parsed = parser.parse(doc);
+			assertThat(doc, parsed, is(notNullValue()));
+			assertThat(doc, parsed.toString(),
+					is(jaxbUnmarshaller.unmarshalWithJaxb(new StringReader(doc)).toString()));
+		}
+	}
+
+	@Test
+	public void testUnexpectedDocumentsNotParsed() throws Exception {
+		List<String> docs = Arrays.asList(
+				// handled by JAXB
+				"<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><response type=\"success\"/>",
+				"<!-- comment --><response type=\"success\"/>",
+				"<response type=\"success\"><!-- comment --><message>OK</message></response>",
+				"<response type=\"success\"><extra>1</extra><message>OK</message></response>",
+				"<response type=\"success\" other=\"1\"><message>OK</message></response>",
+				"<response xmlns=\"urn:x\" type=\"success\"/>",
+				"<response type=\"success\">text<message>OK</message></response>",
+				"<response type=\"success\"><message>line\r\nbreak</message></response>",
+				"<response type=\"a\tb\"/>",
+				// not well-formed
+				"<response type=\"success\"><message>OK</doi></response>",
+				"<response type=\"success\"><message>OK</message>",
+				"<response type=\"success\"><message>&undefined;</message></response>",
+				"<response type=\"success\"><message>&#+65;</message></response>",
+				"<response type=\"success\"><message>&#0;</message></response>",
+				"<response type=\"success\"><message>a]]>b</message></response>",
+				"<response type=\"a\" type=\"b\"/>",
+				"<response type=\"success\"/>trailing",
+				"<response type=\"success\"/><response/>",
+				"<response type=\"success\" <message>OK</message></response>",
+				"");
+		for (String doc : docs) {
+			assertThat(doc, parser.parse(doc), is(nullValue()));
+		}
+	}
+
+	@Test
+	public void testMalformedUtf8NotParsed() throws Exception {
+		byte[] doc = "<response type=\"success\"><message>café</message></response>"
+				.getBytes(StandardCharsets.UTF_8);
+		// truncate the two byte encoding of the accented character
+		byte[] malformed = new byte[doc.length - 1];
+		int accent = new String(doc, StandardCharsets.ISO_8859_1).indexOf("</message>") - 2;
+		System.arraycopy(doc, 0, malformed, 0, accent + 1);
+		System.arraycopy(doc, accent + 2, malformed, accent + 1, doc.length - accent - 2);
+		assertThat(parser.parse(malformed, 0, malformed.length), is(nullValue()));
+
+		try {
+			jaxbUnmarshaller.unmarshalWithJaxb(new StringReader("<response><message>OK</doi></response>"));
+			fail("Expected JAXBException");
+		} catch (JAXBException e) {
+		}
+	}
+
+	@Test
+	public void testByteOrderMark() throws Exception {
+		byte[] doc = "\uFEFF<?xml version=\"1.0\" encoding=\"UTF-8\"?><response type=\"success\"/>"
+				.getBytes(StandardCharsets.UTF_8);
+		assertThat(parser.parse(doc, 0, doc.length).getType(), is("success"));
+		assertThat(parser.parse(new String(doc, StandardCharsets.UTF_8)), is(nullValue()));
+	}
+
+	@Test
+	public void testParseRangeOfBuffer() throws Exception {
+		String doc = "<response type=\"success\"><responsecode>MT001</responsecode></response>";
+		byte[] buffer = ("garbage" + doc + "garbage").getBytes(StandardCharsets.US_ASCII);
+		DoiResponse doiResp = parser.parse(buffer, "garbage".length(), doc.length());
+		assertThat(doiResp.getCode(), is("MT001"));
+	}
+}
@@ -22,11 +22,20 @@
 package au.edu.anu.doi.api.response;
 
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.*;
 
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.bind.JAXBException;
 
 import org.hamcrest.Matchers;
 import org.junit.After;
@@ -88,6 +97,67 @@ public class DoiResponseUnmarshallerTest {
 		assertThat(doiResp.getMessage(), is("The rocket is ready to blast off -- all systems are go!"));
 	}
 
+	@Test
+	public void testUnexpectedDocumentUnmarshalledWithJaxb() throws Exception {
+		String doc = "<response type=\"success\"><responsecode>MT090</responsecode><extra><a>1</a></extra>"
+				+ "<message>OK</message></response>";
+		assertThat(new DoiResponseParser().parse(doc), is(nullValue()));
+		
+		DoiResponse doiResp = doiRespUnmarshaller.unmarshal(doc);
+		assertThat(doiResp.getCode(), is("MT090"));
+		assertThat(doiResp.getMessage(), is("OK"));
+	}
+
+	@Test(expected = JAXBException.class)
+	public void testMalformedDocument() throws Exception {
+		doiRespUnmarshaller.unmarshal("<response type=\"success\"><responsecode>MT090</response>");
+	}
+
+	@Test
+	public void testConcurrentUnmarshal() throws Exception {
+		DoiResponseUnmarshaller sharedUnmarshaller = new DoiResponseUnmarshaller(4);
+		int nThreads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+		CountDownLatch start = new CountDownLatch(1);
+		try {
+			List<Future<Void>> results = new ArrayList<>();
+			for (int t = 0; t < nThreads; t++) {
+				String code = String.format("MT%03d", t);
+				results.add(executor.submit(() -> {
+					start.await();
+					for (int i = 0; i < 500; i++) {
+						String doi = String.format("10.5072/%d/%d", i, System.nanoTime());
+						DoiResponse doiResp = sharedUnmarshaller.unmarshal(String.format(
+								"<response type=\"success\"><responsecode>%s</responsecode><doi>%s</doi></response>",
+								code, doi));
+						assertThat(doiResp.getCode(), is(code));
+						assertThat(doiResp.getDoi(), is(doi));
+					}
+					return null;
+				}));
+			}
+			start.countDown();
+			for (Future<Void> result : results) {
+				result.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertThat(sharedUnmarshaller.getPooledCount(), Matchers.lessThanOrEqualTo(4));
+		assertThat(sharedUnmarshaller.getPooledCount(), Matchers.greaterThan(0));
+	}
+
+	@Test
+	public void testPrefillUpToMaxPooled() throws Exception {
+		DoiResponseUnmarshaller unmarshaller = new DoiResponseUnmarshaller(4);
+		assertThat(unmarshaller.getPooledCount(), is(1));
+		
+		unmarshaller.prefill(3);
+		assertThat(unmarshaller.getPooledCount(), is(3));
+		unmarshaller.prefill(10);
+		assertThat(unmarshaller.getPooledCount(), is(4));
+	}
+
 	private InputStreamReader getResourceFile(String filename) {
 		return new InputStreamReader(this.getClass().getResourceAsStream(filename), StandardCharsets.UTF_8);
 	}
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Australian National University Data Commons
+ * Copyright (C) 2013  The Australian National University
+ * 
+ * This file is part of Australian National University Data Commons.
+ * 
+ * Australian National University Data Commons is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package au.edu.anu.doi.api.http;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.net.ConnectException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import au.edu.anu.doi.api.MockDoiServer;
+import au.edu.anu.doi.api.config.DoiConfig;
+
+/**
+ * @author Rahul Khanna
+ *
+ */
+public class JavaHttpTransportTest {
+
+	private MockDoiServer doiServer;
+	private DoiConfig doiConfig;
+	private DoiTransport transport;
+
+	@Before
+	public void setUp() throws Exception {
+		doiServer = new MockDoiServer();
+		doiConfig = new TestDoiConfig(doiServer.getBaseUri().toString());
+		transport = DoiTransports.newTransport(doiConfig);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		transport.close();
+		doiServer.close();
+	}
+
+	@Test
+	public void testCreatedForJavaTransportType() throws Exception {
+		assertThat(transport, instanceOf(JavaHttpTransport.class));
+	}
+
+	@Test
+	public void testSend() throws Exception {
+		DoiHttpRequest request = new DoiHttpRequest.GetMetadataBuilder(doiConfig, "10.5072/00/ABC").build();
+		try (DoiHttpResponse response = transport.send(request)) {
+			assertThat(response.getStatus(), is(200));
+			assertThat(response.readBodyAsString(), is("<resource>metadata</resource>"));
+		}
+	}
+
+	@Test
+	public void testSendAsyncPostsForm() throws Exception {
+		AtomicReference<String> receivedBody = new AtomicReference<>();
+		AtomicReference<String> receivedAuth = new AtomicReference<>();
+		doiServer.setHandler(MockDoiServer.MINT_PATH, (exchange, body) -> {
+			receivedBody.set(URLDecoder.decode(new String(body, StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+			receivedAuth.set(exchange.getRequestHeaders().getFirst("Authorization"));
+			MockDoiServer.respond(exchange, 200, MockDoiServer.successResponse("MT001", "10.5072/00/ABC"));
+		});
+		DoiHttpRequest request = new DoiHttpRequest.MintDoiBuilder(doiConfig, "http://abc.com/1",
+				"<resource>a & b</resource>").build();
+
+		CompletableFuture<DoiHttpResponse> respFuture = transport.sendAsync(request);
+		try (DoiHttpResponse response = respFuture.get(10, TimeUnit.SECONDS)) {
+			assertThat(response.getStatus(), is(200));
+			assertThat(response.readBodyAsString(), is(MockDoiServer.successResponse("MT001", "10.5072/00/ABC")));
+		}
+		assertThat(receivedBody.get(), is("xml=<resource>a & b</resource>"));
+		assertThat(receivedAuth.get(), is(request.getHeaders().getFirst("Authorization")));
+	}
+
+	@Test
+	public void testSendStreamedDocument() throws Exception {
+		AtomicReference<String> receivedBody = new AtomicReference<>();
+		doiServer.setHandler(MockDoiServer.UPDATE_PATH, (exchange, body) -> {
+			receivedBody.set(URLDecoder.decode(new String(body, StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+			MockDoiServer.respond(exchange, 200, MockDoiServer.successResponse("MT002", ""));
+		});
+		String resourceDoc = "<resource>\u00e9 & \u00fc</resource>";
+		DoiHttpRequest request = new DoiHttpRequest.UpdateDoiBuilder(doiConfig, "10.5072/00/ABC")
+				.newXml(ResourceDocSource.of(new ByteArrayInputStream(resourceDoc.getBytes(StandardCharsets.UTF_8))))
+				.build();
+
+		try (DoiHttpResponse response = transport.send(request)) {
+			assertThat(response.getStatus(), is(200));
+		}
+		assertThat(receivedBody.get(), is("xml=" + resourceDoc));
+	}
+
+	@Test
+	public void testConnectionFailure() throws Exception {
+		DoiHttpRequest request = new DoiHttpRequest.ServiceStatusBuilder(doiConfig).build();
+		doiServer.close();
+		try {
+			transport.send(request).close();
+			fail("Expected DoiTransportException");
+		} catch (DoiTransportException e) {
+			assertThat(e.getCause(), instanceOf(ConnectException.class));
+		}
+		try {
+			transport.sendAsync(request).get(10, TimeUnit.SECONDS).close();
+			fail("Expected DoiTransportException");
+		} catch (ExecutionException e) {
+			assertThat(e.getCause(), instanceOf(DoiTransportException.class));
+			assertThat(e.getCause().getCause(), instanceOf(ConnectException.class));
+		}
+	}
+
+	private static class TestDoiConfig implements DoiConfig {
+		private final String baseUri;
+
+		private TestDoiConfig(String baseUri) {
+			this.baseUri = baseUri;
+		}
+
+		@Override
+		public String getBaseUri() {
+			return baseUri;
+		}
+
+		@Override
+		public String getAppId() {
+			return "appId";
+		}
+
+		@Override
+		public boolean useTestPrefix() {
+			return true;
+		}
+
+		@Override
+		public boolean isDebug() {
+			return false;
+		}
+
+		@Override
+		public String getSharedSecret() {
+			return "s3cret";
+		}
+
+		@Override
+		public TransportType getTransportType() {
+			return TransportType.JAVA;
+		}
+	}
+}
@@ -22,19 +22,22 @@
 package au.edu.anu.doi.cmd;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Properties;
 
 import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -47,8 +50,19 @@ import org.apache.commons.io.IOUtils;
 
 import au.edu.anu.doi.api.DoiException;
 import au.edu.anu.doi.api.DoiService;
+import au.edu.anu.doi.api.bulk.BulkOptions;
+import au.edu.anu.doi.api.bulk.BulkResult;
+import au.edu.anu.doi.api.bulk.BulkSummary;
+import au.edu.anu.doi.api.bulk.MintRequest;
 import au.edu.anu.doi.api.config.DoiConfig;
 import au.edu.anu.doi.api.config.DoiConfigFile;
+import au.edu.anu.doi.api.http.ConnectionPool;
+import au.edu.anu.doi.api.http.DoiClientFactory;
+import au.edu.anu.doi.api.http.DoiTransports;
+import au.edu.anu.doi.api.http.JerseyTransport;
+import au.edu.anu.doi.api.http.ResourceDocSource;
+import au.edu.anu.doi.api.http.TransportType;
+import au.edu.anu.doi.api.ledger.LedgerEntry;
 import au.edu.anu.doi.api.response.DoiResponse;
 
 /**
@@ -87,27 +101,63 @@ public class DoiCmd {
 			}
 
 			// create DOI Service client
-			Client client = ClientBuilder.newClient();
-			
-			client.register(new HttpLoggingFilter());
-			doiSvc = new DoiService(client, doiConfig);
-
-			if (args[0].equals("status")) {
-				execGetServiceStatus();
-			} else if (args[0].equals("metadata")) {
-				execGetMetadata();
-			} else if (args[0].equals("mint")) {
-				execMint();
-			} else if (args[0].equals("update")) {
-				execUpdate();
-			} else if (args[0].equals("activate")) {
-				execActivate();
-			} else if (args[0].equals("deactivate")) {
-				execDeactivate();
+			if (DoiTransports.effectiveType(doiConfig.getTransportType()) == TransportType.JAVA) {
+				doiSvc = new DoiService(DoiTransports.newTransport(doiConfig), doiConfig);
+			} else if (doiConfig.isConnectionPoolEnabled()) {
+				ConnectionPool connectionPool = new ConnectionPool(doiConfig);
+				Client client = DoiClientFactory.newPooledClient(doiConfig, connectionPool);
+				
+				client.register(new HttpLoggingFilter());
+				doiSvc = new DoiService(new JerseyTransport(client, connectionPool), doiConfig);
+			} else {
+				Client client = DoiClientFactory.newClient(doiConfig);
+				
+				client.register(new HttpLoggingFilter());
+				doiSvc = new DoiService(client, doiConfig);
+			}
+			try {
+				if (doiConfig.isWarmUpEnabled()) {
+					warmUp();
+				}
+
+				if (args[0].equals("status")) {
+					execGetServiceStatus();
+				} else if (args[0].equals("metadata")) {
+					execGetMetadata();
+				} else if (args[0].equals("mint")) {
+					execMint();
+				} else if (args[0].equals("mintall")) {
+					execMintAll();
+				} else if (args[0].equals("update")) {
+					execUpdate();
+				} else if (args[0].equals("activate")) {
+					execActivate();
+				} else if (args[0].equals("deactivate")) {
+					execDeactivate();
+				} else if (args[0].equals("pending")) {
+					execListPendingMints();
+				} else if (args[0].equals("resolve")) {
+					execResolvePendingMints();
+				}
+			} finally {
+				// releases the mint ledger for the next run
+				doiSvc.close();
 			}
 		}
 	}
 
+	/**
+	 * Opens connections to the DOI service ahead of the command's requests. A failure is reported on stderr, leaving
+	 * stdout to the command, and is otherwise left for the command's own requests to report.
+	 */
+	private void warmUp() {
+		try {
+			doiSvc.warmUp();
+		} catch (DoiException e) {
+			System.err.println("Unable to warm up DOI service connections: " + e.getMessage());
+		}
+	}
+
 	private void execGetServiceStatus() {
 		try {
 			DoiResponse serviceStatusResp = doiSvc.getServiceStatus();
@@ -125,20 +175,15 @@ public class DoiCmd {
 		}
 		
 		try {
-			String serviceStatusResp = doiSvc.getMetadata(cmdLine.getOptionValue("doi"));
-			
-			// if file specified on command line, save xml to that file, else write to stdout
+			// if file specified on command line, save xml to that file, else write to stdout. The response is copied
+			// as it's received rather than read into memory
 			if (cmdLine.hasOption("file")) {
 				Path outputFile = Paths.get(cmdLine.getOptionValue("file"));
-				try (BufferedWriter metadataWriter = Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8,
-						StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
-					metadataWriter.write(serviceStatusResp);
-				}
+				doiSvc.getMetadata(cmdLine.getOptionValue("doi"), outputFile);
 			} else {
-				print(serviceStatusResp);
+				doiSvc.getMetadata(cmdLine.getOptionValue("doi"), System.out);
+				System.out.println();
 			}
-		} catch (IOException e) {
-			e.printStackTrace();
 		} catch (DoiException e) {
 			handleDoiException(e);
 		}
@@ -154,34 +199,12 @@ public class DoiCmd {
 		
 		String doiUrl = cmdLine.getOptionValue("url", null);
 		String metadataFile = cmdLine.getOptionValue("file", null);
-		StringBuilder resourceDoc = new StringBuilder();
 
 		if (metadataFile != null) {
-			BufferedReader metadataReader;
 			try {
-				if (!metadataFile.equals("-")) {
-					// point reader to file
-					metadataReader = Files.newBufferedReader(Paths.get(metadataFile), StandardCharsets.UTF_8);
-				} else {
-					// point reader to stdin
-					metadataReader = new BufferedReader(new InputStreamReader(System.in));
-				}
-
-				char[] buffer = new char[8192];
-				for (int nCharsRead = metadataReader.read(buffer); nCharsRead != -1; nCharsRead = metadataReader
-						.read(buffer)) {
-					resourceDoc.append(buffer, 0, nCharsRead);
-				}
-
-				// close stream if non-file
-				if (!metadataFile.equals("-")) {
-					IOUtils.closeQuietly(metadataReader);
-				}
-				
-				DoiResponse mintResponse = doiSvc.mint(doiUrl, resourceDoc.toString());
+				// metadata is streamed from the file or stdin rather than read into memory
+				DoiResponse mintResponse = doiSvc.mintFrom(doiUrl, createResourceDocSource(metadataFile));
 				printResponse(mintResponse);
-			} catch (IOException e) {
-				e.printStackTrace();
 			} catch (DoiException e) {
 				handleDoiException(e);
 			}
@@ -189,6 +212,61 @@ public class DoiCmd {
 
 	}
 
+	/**
+	 * Mints a DOI for each line of the batch file. Each line contains the URL the DOI will resolve to and the path of
+	 * its metadata file separated by a tab. Requests are executed concurrently using the execution mode set in the
+	 * configuration file.
+	 */
+	private void execMintAll() {
+		if (!cmdLine.hasOption("file")) {
+			print("Batch file not provided.");
+			dispUsageHelp();
+			return;
+		}
+
+		BulkOptions bulkOptions = new BulkOptions();
+		if (cmdLine.hasOption("threads")) {
+			Integer maxInFlight = parsePositiveInt("threads");
+			if (maxInFlight == null) {
+				dispUsageHelp();
+				return;
+			}
+			bulkOptions.maxInFlight(maxInFlight);
+		}
+
+		String batchFile = cmdLine.getOptionValue("file");
+		BufferedReader batchReader = null;
+		try {
+			if (!batchFile.equals("-")) {
+				batchReader = Files.newBufferedReader(Paths.get(batchFile), StandardCharsets.UTF_8);
+			} else {
+				batchReader = new BufferedReader(new InputStreamReader(System.in));
+			}
+
+			MintRequestReader mintRequestReader = new MintRequestReader(batchReader);
+			BulkSummary summary = doiSvc.mintAll(mintRequestReader, bulkOptions, this::printMintResult);
+			print("Minted: %s, Failed: %s, Time taken: %sms", String.valueOf(summary.getSucceeded()),
+					String.valueOf(summary.getFailed() + mintRequestReader.getInvalidLines()),
+					String.valueOf(summary.getElapsedMillis()));
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			if (batchReader != null && !batchFile.equals("-")) {
+				IOUtils.closeQuietly(batchReader);
+			}
+		}
+	}
+
+	private void printMintResult(BulkResult<MintRequest, DoiResponse> result) {
+		if (result.isSuccess()) {
+			print("%s\t%s", result.getResponse().getDoi(), result.getRequest().getUrl());
+		} else {
+			print("FAILED\t%s\t%s", result.getRequest().getUrl(), result.getException().getMessage());
+		}
+	}
+
 	/**
 	 * Execute DOI update.
 	 * 
@@ -211,38 +289,14 @@ public class DoiCmd {
 		String doi = cmdLine.getOptionValue("doi");
 		String doiUrl = cmdLine.getOptionValue("url", null);
 		String metadataFile = cmdLine.getOptionValue("file", null);
-		String resourceDoc = null;
-		if (metadataFile != null) {
-			StringBuilder resourceDocSb = new StringBuilder();
-			BufferedReader metadataReader;
-			try {
-				if (!metadataFile.equals("-")) {
-					// point reader to file
-					metadataReader = Files.newBufferedReader(Paths.get(metadataFile), StandardCharsets.UTF_8);
-				} else {
-					// point reader to stdin
-					metadataReader = new BufferedReader(new InputStreamReader(System.in));
-				}
-
-				char[] buffer = new char[8192];
-				for (int nCharsRead = metadataReader.read(buffer); nCharsRead != -1; nCharsRead = metadataReader
-						.read(buffer)) {
-					resourceDocSb.append(buffer, 0, nCharsRead);
-				}
-
-				// close stream if non-file
-				if (!metadataFile.equals("-")) {
-					IOUtils.closeQuietly(metadataReader);
-				}
-				
-				resourceDoc = resourceDocSb.toString();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-		}
 		
 		try {
-			DoiResponse updateResponse = doiSvc.update(doi, doiUrl, resourceDoc);
+			DoiResponse updateResponse;
+			if (metadataFile != null) {
+				updateResponse = doiSvc.updateFrom(doi, doiUrl, createResourceDocSource(metadataFile));
+			} else {
+				updateResponse = doiSvc.update(doi, doiUrl, null);
+			}
 			printResponse(updateResponse);
 		} catch (DoiException e) {
 			handleDoiException(e);
@@ -250,6 +304,56 @@ public class DoiCmd {
 
 	}
 
+	/**
+	 * Creates the source of a metadata document read from a file, or from stdin if the filename is "-".
+	 */
+	private ResourceDocSource createResourceDocSource(String metadataFile) {
+		if (metadataFile.equals("-")) {
+			return ResourceDocSource.of(System.in);
+		}
+		return ResourceDocSource.of(Paths.get(metadataFile));
+	}
+
+	/**
+	 * Lists the mints recorded as pending in the mint ledger. A mint is left pending when its outcome is unknown, for
+	 * example when it timed out, and its URL can't be minted again until it's resolved.
+	 */
+	private void execListPendingMints() {
+		List<LedgerEntry> pendingMints = doiSvc.getPendingMints();
+		for (LedgerEntry pendingMint : pendingMints) {
+			print("%s\t%s\t%s", pendingMint.getKey().getUrl(), pendingMint.getKey().getAppId(),
+					pendingMint.getTimestamp().toString());
+		}
+		print("Pending: %s", String.valueOf(pendingMints.size()));
+	}
+
+	/**
+	 * Resolves the pending mints of a URL. If a DOI is provided, the mints are recorded as having minted that DOI.
+	 * Otherwise they're recorded as not having minted a DOI, and the URL can be minted again.
+	 */
+	private void execResolvePendingMints() {
+		if (!cmdLine.hasOption("url")) {
+			print("URL of the pending mint not provided.");
+			dispUsageHelp();
+			return;
+		}
+
+		String doiUrl = cmdLine.getOptionValue("url");
+		String doi = cmdLine.getOptionValue("doi", null);
+		try {
+			int resolved = doiSvc.resolvePendingMints(doiUrl, doi);
+			if (resolved == 0) {
+				print("No pending mint of %s", doiUrl);
+			} else if (doi != null) {
+				print("Pending mint of %s recorded as minting %s", doiUrl, doi);
+			} else {
+				print("Pending mint of %s recorded as not minted", doiUrl);
+			}
+		} catch (DoiException e) {
+			handleDoiException(e);
+		}
+	}
+
 	private void execActivate() {
 		// TODO Auto-generated method stub
 		
@@ -273,15 +377,46 @@ public class DoiCmd {
 			configFilepath = Paths.get(cmdLine.getOptionValue("config"));
 		}
 		
-		DoiConfigFile doiConfigFile;
 		Objects.requireNonNull(configFilepath, "Unable to find configuration file.");
-		doiConfigFile = new DoiConfigFile(configFilepath.toFile());
-		return doiConfigFile;
+		Properties configProps = new Properties();
+		try (InputStream configStream = Files.newInputStream(configFilepath)) {
+			configProps.load(configStream);
+		}
+		
+		// retries are off unless the config file or the command line turns them on
+		if (cmdLine.hasOption("retries")) {
+			Integer retryMaxAttempts = parsePositiveInt("retries");
+			if (retryMaxAttempts == null) {
+				return null;
+			}
+			configProps.setProperty("doi.retry.maxAttempts", String.valueOf(retryMaxAttempts));
+		}
+		return new DoiConfigFile(configProps);
+	}
+
+	/**
+	 * Parses the value of an option as a positive integer, printing an error if it isn't one.
+	 * 
+	 * @return Value, or null if the value is invalid
+	 */
+	private Integer parsePositiveInt(String optionName) {
+		String value = cmdLine.getOptionValue(optionName);
+		try {
+			int intValue = Integer.parseInt(value.trim());
+			if (intValue > 0) {
+				return intValue;
+			}
+		} catch (NumberFormatException e) {
+		}
+		print("Invalid value for %s: %s. A positive integer is required.", optionName, value);
+		return null;
 	}
 
 	private void dispUsageHelp() {
 		HelpFormatter helpFormatter = new HelpFormatter();
-		helpFormatter.printHelp("doi-cmd [status | metadata | mint | update | activate | deactivate]", options);
+		helpFormatter.printHelp(
+				"doi-cmd [status | metadata | mint | mintall | update | activate | deactivate | pending | resolve]",
+				options);
 	}
 
 	private CommandLine parseCommandLine(Options options, String[] args) {
@@ -308,12 +443,17 @@ public class DoiCmd {
 		Option config = new Option("c", "config", true, "location of config file");
 		Option url = new Option("u", "url", true, "url the DOI resolves to");
 		Option file = new Option("f", "file", true, "file to read/write metadata as XML to (defaults to stdin/stdout)");
+		Option threads = new Option("t", "threads", true, "maximum number of concurrent requests for mintall");
+		Option retries = new Option("r", "retries", true,
+				"maximum number of attempts, including the first, for a failed request (defaults to 1, no retries)");
 
 		options.addOption(help);
 		options.addOption(doi);
 		options.addOption(config);
 		options.addOption(url);
 		options.addOption(file);
+		options.addOption(threads);
+		options.addOption(retries);
 		
 		return options;
 	}
@@ -338,7 +478,103 @@ public class DoiCmd {
 	}
 
 	private void print(String msg, String... args) {
-		System.out.format(msg, (Object[]) args);
-		System.out.println();
+		// a single call, so that lines printed by concurrent mintall results don't interleave
+		System.out.println(String.format(msg, (Object[]) args));
+	}
+
+	/**
+	 * Reads mint requests from a batch file one line at a time, loading each metadata file only when the request is
+	 * about to be submitted. A line that isn't a URL and a readable metadata file is reported as a failure and
+	 * skipped, and a failure to read the batch file itself ends the batch, so that the requests already submitted
+	 * complete and are reported.
+	 */
+	private class MintRequestReader implements Iterable<MintRequest> {
+		private final BufferedReader batchReader;
+		private long invalidLines = 0L;
+
+		MintRequestReader(BufferedReader batchReader) {
+			this.batchReader = batchReader;
+		}
+
+		/**
+		 * Gets the number of lines reported as failures instead of being submitted.
+		 */
+		long getInvalidLines() {
+			return invalidLines;
+		}
+
+		@Override
+		public Iterator<MintRequest> iterator() {
+			return new Iterator<MintRequest>() {
+				private int lineNumber = 0;
+				private MintRequest nextRequest;
+				private boolean endOfBatch = false;
+
+				@Override
+				public boolean hasNext() {
+					while (nextRequest == null && !endOfBatch) {
+						String line = readLine();
+						if (line != null) {
+							nextRequest = parse(line);
+						}
+					}
+					return nextRequest != null;
+				}
+
+				@Override
+				public MintRequest next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					MintRequest mintRequest = nextRequest;
+					nextRequest = null;
+					return mintRequest;
+				}
+
+				/**
+				 * Parses a line of the batch file, reporting it as a failure if it isn't a valid request.
+				 * 
+				 * @return Mint request, or null if the line isn't valid
+				 */
+				private MintRequest parse(String line) {
+					String[] parts = line.split("\t", 2);
+					if (parts.length != 2) {
+						reportInvalidLine(line, "Expected URL and metadata file separated by a tab");
+						return null;
+					}
+					try {
+						String resourceDoc = new String(Files.readAllBytes(Paths.get(parts[1].trim())),
+								StandardCharsets.UTF_8);
+						return new MintRequest(parts[0].trim(), resourceDoc);
+					} catch (IOException | InvalidPathException e) {
+						reportInvalidLine(parts[0].trim(), "Unable to read metadata file " + parts[1].trim() + ": " + e);
+						return null;
+					}
+				}
+
+				private void reportInvalidLine(String line, String reason) {
+					invalidLines++;
+					print("FAILED\t%s\tLine %s: %s", line, String.valueOf(lineNumber), reason);
+				}
+
+				private String readLine() {
+					try {
+						String line;
+						do {
+							line = batchReader.readLine();
+							lineNumber++;
+						} while (line != null && line.trim().isEmpty());
+						if (line == null) {
+							endOfBatch = true;
+						}
+						return line;
+					} catch (IOException e) {
+						System.err.println("Unable to read batch file, no further requests submitted: " + e);
+						endOfBatch = true;
+						return null;
+					}
+				}
+			};
+		}
 	}
 }